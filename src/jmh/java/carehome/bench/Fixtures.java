@@ -0,0 +1,98 @@
+package carehome.bench;
+
+
+// shared benchmark state: a generated facility of a given size with a given number of days of history.
+import carehome.model.*;
+import carehome.service.CareHome;
+import carehome.sim.WorkloadGenerator;
+
+import java.io.*;
+import java.time.LocalDate;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+final class Fixtures {
+    static final LocalDate START = LocalDate.of(2030, 1, 1);
+    /** PRN prescription added on the bench day, for administration benchmarks. */
+    static final String BENCH_PRESCRIPTION = "PB1";
+
+    private Fixtures() {}
+
+    /** Wards of 200 beds (50 rooms of 4), enough wards for {@code beds}. */
+    static String layout(int beds) {
+        StringBuilder sb = new StringBuilder();
+        for (int w = 1; w <= Math.max(1, (beds + 199) / 200); w++) sb.append('W').append(w).append(": 4x50\n");
+        return sb.toString();
+    }
+
+    /** First day after the generated history; benchmarks run "on" this day. */
+    static LocalDate benchDay(int days) {
+        return START.plusDays(days);
+    }
+
+    /**
+     * {@code days} days of generated history (seed 1) for a half-full facility, then a bench day
+     * with N1 on 08–16, N2 on 14–22 and D1 at 08:00, one extra empty ward, and a PRN prescription
+     * {@link #BENCH_PRESCRIPTION} for the first resident.
+     */
+    static CareHome facility(int beds, int days) {
+        // generation is deterministic but slow at large sizes; generate once per fork, hand out copies
+        byte[] snapshot = SNAPSHOTS.computeIfAbsent(beds + "x" + days, k -> serialise(generate(beds, days)));
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(snapshot))) {
+            CareHome ch = (CareHome) in.readObject();
+            ch.setEchoLogs(false);
+            return ch;
+        } catch (IOException | ClassNotFoundException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static final Map<String, byte[]> SNAPSHOTS = new HashMap<>();
+
+    private static byte[] serialise(CareHome ch) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(ch);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static CareHome generate(int beds, int days) {
+        WorkloadGenerator.Config cfg = new WorkloadGenerator.Config();
+        cfg.seed = 1;
+        cfg.beds = beds;
+        cfg.days = days;
+        cfg.start = START;
+        cfg.occupancy = 0.5;
+        cfg.layout = WorkloadGenerator.defaultLayout(beds);
+        CareHome ch = new WorkloadGenerator(cfg).generate();
+        ch.setEchoLogs(false);
+
+        int spareWard = ch.getBedsByKey().lastKey().ward() + 1;
+        ch.loadLayout(FacilityLayout.parse(cfg.layout + "W" + spareWard + ": 2 2 2 2\n"));
+        LocalDate day = benchDay(days);
+        rosterDay(ch, day);
+
+        Bed first = ch.getBedsByKey().values().stream().filter(b -> !b.isVacant()).findFirst().orElseThrow();
+        ch.addPrescription("D1", first.id, new Prescription(BENCH_PRESCRIPTION, "D1", first.occupant.id, day.atTime(8, 30),
+                List.of(new MedicationDose("Paracetamol", "1g", "PRN"))), day.atTime(8, 30));
+        return ch;
+    }
+
+    static void rosterDay(CareHome ch, LocalDate day) {
+        ch.allocateShift("M1", new Shift("N1", day.atTime(8, 0), day.atTime(16, 0)));
+        ch.allocateShift("M1", new Shift("N2", day.atTime(14, 0), day.atTime(22, 0)));
+        ch.allocateShift("M1", new Shift("D1", day.atTime(8, 0), day.atTime(9, 0)));
+    }
+
+    /** A vacant bed in a room nobody else is in, so either gender may be placed there. */
+    static String emptyRoomBed(CareHome ch) {
+        for (Bed b : ch.getBedsByKey().values()) {
+            if (ch.getBedsInRoom(b.key).values().stream().allMatch(Bed::isVacant)) return b.key.toString();
+        }
+        throw new IllegalStateException("no empty room");
+    }
+}
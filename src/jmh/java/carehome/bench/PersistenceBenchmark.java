@@ -0,0 +1,91 @@
+package carehome.bench;
+
+
+// full snapshot save and load: SQLite, the binary snapshot file, and default Java serialization.
+import carehome.persistence.JdbcStore;
+import carehome.persistence.SnapshotFile;
+import carehome.service.CareHome;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Thread)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class PersistenceBenchmark {
+
+    @Param({"200", "2000"})
+    public int beds;
+
+    @Param({"30", "365"})
+    public int days;
+
+    private Path dir;
+    private JdbcStore store;
+    private SnapshotFile snapshot;
+    private Path serialized;
+    private CareHome ch;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("carehome-bench");
+        store = new JdbcStore("jdbc:sqlite:" + dir.resolve("bench.db"));
+        store.init();
+        ch = Fixtures.facility(beds, days);
+        store.saveAll(ch);
+        snapshot = new SnapshotFile(dir.resolve("bench.chs"));
+        snapshot.save(ch);
+        serialized = dir.resolve("bench.ser");
+        javaWrite();
+        // file sizes go to the log once per trial; JMH itself only reports times
+        System.out.printf("%nfile sizes for beds=%d days=%d: sqlite=%,d binary=%,d java=%,d bytes%n", beds, days,
+                Files.size(dir.resolve("bench.db")), Files.size(snapshot.getPath()), Files.size(serialized));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        try (var files = Files.list(dir)) {
+            for (Path p : files.toList()) Files.deleteIfExists(p);
+        }
+        Files.deleteIfExists(dir);
+    }
+
+    @Benchmark
+    public void saveAll() {
+        store.saveAll(ch);
+    }
+
+    @Benchmark
+    public CareHome loadAll() {
+        return store.loadAll();
+    }
+
+    @Benchmark
+    public long binaryWrite() throws IOException {
+        return snapshot.save(ch);
+    }
+
+    @Benchmark
+    public CareHome binaryRead() throws IOException {
+        return snapshot.load();
+    }
+
+    @Benchmark
+    public void javaWrite() throws IOException {
+        try (ObjectOutputStream out = new ObjectOutputStream(new BufferedOutputStream(Files.newOutputStream(serialized)))) {
+            out.writeObject(ch);
+        }
+    }
+
+    @Benchmark
+    public CareHome javaRead() throws IOException, ClassNotFoundException {
+        try (ObjectInputStream in = new ObjectInputStream(new BufferedInputStream(Files.newInputStream(serialized)))) {
+            return (CareHome) in.readObject();
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package carehome.bench;
+
+
+// bed operations: admit, move, discharge, history lookups, batch admission and whole-ward transfers.
+import carehome.model.*;
+import carehome.service.CareHome;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class ResidentBenchmark {
+
+    @State(Scope.Thread)
+    public static class Facility {
+        @Param({"200", "2000"})
+        public int beds;
+
+        @Param({"30", "365"})
+        public int days;
+
+        CareHome ch;
+        String residentId;
+        String emptyA, emptyB;
+        boolean movedToB;
+        LocalDateTime when;
+        int admitted;
+
+        @Setup(Level.Iteration)
+        public void setUp() {
+            ch = Fixtures.facility(beds, days);
+            residentId = ch.getActivePrescriptionsByResident().keySet().iterator().next();
+            emptyA = Fixtures.emptyRoomBed(ch);
+            ch.addResidentToBed("M1", emptyA, new Resident(null, "Mover", Gender.FEMALE, 80));
+            emptyB = Fixtures.emptyRoomBed(ch);
+            movedToB = false;
+            when = Fixtures.benchDay(days).atTime(10, 0);
+        }
+    }
+
+    /** Admission into an empty room followed by discharge, so the facility stays the same size. */
+    @Benchmark
+    public ArchivedStay admitAndDischarge(Facility f) {
+        String bed = f.emptyB;
+        f.ch.addResidentToBed("M1", bed, new Resident(null, "Temp " + f.admitted++, Gender.MALE, 75));
+        return f.ch.dischargeResident("N1", bed, f.when);
+    }
+
+    @Benchmark
+    public void moveResident(Facility f) {
+        if (f.movedToB) f.ch.moveResident("N1", f.emptyB, f.emptyA, f.when);
+        else f.ch.moveResident("N1", f.emptyA, f.emptyB, f.when);
+        f.movedToB = !f.movedToB;
+    }
+
+    /** Scans the full administration history, which grows with {@code days}. */
+    @Benchmark
+    public List<Administration> getAdministrationsForResident(Facility f) {
+        return f.ch.getAdministrationsForResident(f.residentId);
+    }
+
+    // 50 residents into an empty 200-bed facility: one admitResidents call vs a loop of addResidentToBed
+
+    @State(Scope.Thread)
+    public static class EmptyFacility {
+        CareHome ch;
+        List<Resident> group;
+
+        @Setup(Level.Invocation)
+        public void setUp() {
+            ch = new CareHome();
+            ch.loadLayout(FacilityLayout.parse(Fixtures.layout(200)));
+            ch.addOrUpdateStaff("SYSTEM", new Staff("M1", "Manager", Role.MANAGER), "m", "p");
+            group = new ArrayList<>();
+            for (int i = 0; i < 50; i++) group.add(new Resident(null, "New " + i, i % 2 == 0 ? Gender.FEMALE : Gender.MALE, 80));
+        }
+    }
+
+    @Benchmark
+    public Map<String, String> admitBatch(EmptyFacility f) {
+        return f.ch.admitResidents("M1", f.group, null);
+    }
+
+    @Benchmark
+    public void admitOneAtATime(EmptyFacility f, Blackhole bh) {
+        for (Resident r : f.group) {
+            String bed = f.ch.findBestBed(r.gender, null).orElseThrow();
+            f.ch.addResidentToBed("M1", bed, r);
+            bh.consume(bed);
+        }
+    }
+
+    // 200 residents moved between two wards, alternating direction
+
+    @State(Scope.Thread)
+    public static class TwoWards {
+        CareHome ch;
+        boolean inFirst;
+        LocalDateTime when;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            ch = new CareHome();
+            ch.loadLayout(FacilityLayout.parse("W1: 4x50\nW2: 4x50"));
+            ch.addOrUpdateStaff("SYSTEM", new Staff("M1", "Manager", Role.MANAGER), "m", "p");
+            ch.addOrUpdateStaff("M1", new Staff("N1", "Nurse", Role.NURSE), "n", "p");
+            ch.allocateShift("M1", new Shift("N1", Fixtures.START.atTime(8, 0), Fixtures.START.atTime(16, 0)));
+            List<Resident> group = new ArrayList<>();
+            for (int i = 0; i < 200; i++) group.add(new Resident(null, "P" + i, i < 100 ? Gender.FEMALE : Gender.MALE, 75));
+            ch.admitResidents("M1", group, 1);
+            inFirst = true;
+            when = Fixtures.START.atTime(9, 0);
+        }
+    }
+
+    @Benchmark
+    public Map<String, String> transferWard(TwoWards t) {
+        Map<String, String> moves = t.inFirst ? t.ch.transferWard("N1", 1, 2, t.when) : t.ch.transferWard("N1", 2, 1, t.when);
+        t.inFirst = !t.inFirst;
+        return moves;
+    }
+}
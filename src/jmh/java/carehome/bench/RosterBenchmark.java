@@ -0,0 +1,63 @@
+package carehome.bench;
+
+
+// shift allocation, roster checks on the administration path, and the compliance sweep.
+import carehome.model.Administration;
+import carehome.model.Shift;
+import carehome.service.CareHome;
+import org.openjdk.jmh.annotations.*;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Thread)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class RosterBenchmark {
+
+    @Param({"200", "2000"})
+    public int beds;
+
+    @Param({"30", "365"})
+    public int days;
+
+    private CareHome ch;
+    private String bed;
+    private String prescriptionId;
+    private LocalDate nextDay;
+    private int hour;
+    private LocalDateTime lastShift;
+
+    // the calls below append to the roster and the administration list, so start each iteration fresh
+    @Setup(Level.Iteration)
+    public void setUp() {
+        ch = Fixtures.facility(beds, days);
+        prescriptionId = Fixtures.BENCH_PRESCRIPTION;
+        bed = ch.findResidentBed(ch.getPrescription(prescriptionId).orElseThrow().residentId).orElseThrow();
+        nextDay = Fixtures.benchDay(days).plusDays(1);
+        hour = 0;
+        lastShift = Fixtures.benchDay(days).atTime(10, 0);
+    }
+
+    /** One-hour doctor shifts on days after the history; every call adds one. */
+    @Benchmark
+    public void allocateShift() {
+        if (hour == 23) { hour = 0; nextDay = nextDay.plusDays(1); }
+        ch.allocateShift("M1", new Shift("D1", nextDay.atTime(hour, 0), nextDay.atTime(hour + 1, 0)));
+        hour++;
+    }
+
+    /** PRN dose on the bench day: the roster check scans every shift. */
+    @Benchmark
+    public void administerMedication() {
+        ch.administerMedication("N1", bed, new Administration("N1", prescriptionId, "Paracetamol", lastShift, ""), lastShift);
+    }
+
+    @Benchmark
+    public void checkCompliance() {
+        ch.checkCompliance();
+    }
+}
@@ -0,0 +1,7 @@
+package carehome.exception;
+
+
+// thrown when a dose is recorded inside its frequency window (possible double dosing).
+public class DuplicateDoseException extends CareHomeException {
+    public DuplicateDoseException(String m){ super(m); }
+}
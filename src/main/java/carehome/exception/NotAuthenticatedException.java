@@ -0,0 +1,7 @@
+package carehome.exception;
+
+
+// request without a valid login session.
+public class NotAuthenticatedException extends UnauthorizedException {
+    public NotAuthenticatedException(String m){ super(m); }
+}
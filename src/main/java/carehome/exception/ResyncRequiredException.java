@@ -0,0 +1,7 @@
+package carehome.exception;
+
+
+// a client fell further behind the change feed than the server keeps; it must reload the snapshot.
+public class ResyncRequiredException extends CareHomeException {
+    public ResyncRequiredException(String m){ super(m); }
+}
@@ -0,0 +1,7 @@
+package carehome.exception;
+
+
+// a conditional update was based on a bed, prescription or roster that has changed since it was read.
+public class VersionConflictException extends CareHomeException {
+    public VersionConflictException(String m){ super(m); }
+}
@@ -0,0 +1,87 @@
+package carehome.metrics;
+
+
+// lock-free latency histogram with log-linear buckets (HdrHistogram-style, ~6% relative error).
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts, errors and a latency distribution for one operation. Values are nanoseconds; each
+ * power of two is split into 16 linear sub-buckets, so a percentile is never off by more than
+ * 1/16 of its value. Recording is a few atomic adds and never allocates.
+ */
+final class LatencyHistogram {
+    static final int SUB_BITS = 4;
+    private static final int SUB = 1 << SUB_BITS;
+    // values below SUB get a bucket each; above that, SUB buckets per power of two up to 2^63
+    static final int BUCKETS = (64 - SUB_BITS + 1) * SUB;
+
+    final String name;
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+    private final LongAdder totalNanos = new LongAdder();
+    private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+
+    LatencyHistogram(String name) {
+        this.name = name;
+    }
+
+    void record(long nanos) {
+        if (nanos < 0) nanos = 0;
+        buckets.incrementAndGet(bucketOf(nanos));
+        count.increment();
+        totalNanos.add(nanos);
+        maxNanos.accumulate(nanos);
+    }
+
+    void error() {
+        errors.increment();
+    }
+
+    static int bucketOf(long v) {
+        if (v < SUB) return (int) v;
+        int exp = 63 - Long.numberOfLeadingZeros(v);       // >= SUB_BITS
+        int sub = (int) (v >>> (exp - SUB_BITS)) & (SUB - 1);
+        return (exp - SUB_BITS + 1) * SUB + sub;
+    }
+
+    /** Largest value that falls in bucket {@code i}. */
+    static long upperBound(int i) {
+        if (i < SUB) return i;
+        int exp = i / SUB + SUB_BITS - 1;
+        long lower = (long) (SUB + i % SUB) << (exp - SUB_BITS);
+        long width = 1L << (exp - SUB_BITS);
+        return lower + (width - 1);
+    }
+
+    OperationStats snapshot() {
+        long[] copy = new long[BUCKETS];
+        long n = 0;
+        for (int i = 0; i < BUCKETS; i++) n += (copy[i] = buckets.get(i));
+        long max = maxNanos.get();
+        return new OperationStats(name, count.sum(), errors.sum(), n == 0 ? 0 : totalNanos.sum() / n,
+                percentile(copy, n, 0.50, max), percentile(copy, n, 0.90, max),
+                percentile(copy, n, 0.99, max), percentile(copy, n, 0.999, max), max);
+    }
+
+    private static long percentile(long[] buckets, long n, double q, long max) {
+        if (n == 0) return 0;
+        long rank = Math.max(1, (long) Math.ceil(q * n));
+        long seen = 0;
+        for (int i = 0; i < buckets.length; i++) {
+            seen += buckets[i];
+            if (seen >= rank) return Math.min(upperBound(i), max);
+        }
+        return max;
+    }
+
+    void reset() {
+        for (int i = 0; i < BUCKETS; i++) buckets.set(i, 0);
+        count.reset();
+        errors.reset();
+        totalNanos.reset();
+        maxNanos.reset();
+    }
+}
@@ -0,0 +1,79 @@
+package carehome.metrics;
+
+
+// per-operation counters + latency histograms for CareHome operations and JdbcStore phases.
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * Registry of named operations. Callers take {@link System#nanoTime()} before the work and pass
+ * it to {@link #record}; failures additionally call {@link #error}. One {@link #shared()} registry
+ * serves the whole process so numbers survive a reload of the care home from the database.
+ */
+public final class Metrics implements MetricsMXBean {
+    private static final Metrics SHARED = new Metrics();
+    public static final String OBJECT_NAME = "carehome:type=Metrics";
+
+    private final ConcurrentHashMap<String, LatencyHistogram> ops = new ConcurrentHashMap<>();
+    private volatile Supplier<Map<String, Integer>> entityCounts;
+
+    public static Metrics shared() {
+        return SHARED;
+    }
+
+    public void record(String op, long startNanos) {
+        histogram(op).record(System.nanoTime() - startNanos);
+    }
+
+    public void error(String op) {
+        histogram(op).error();
+    }
+
+    private LatencyHistogram histogram(String op) {
+        LatencyHistogram h = ops.get(op);
+        return h != null ? h : ops.computeIfAbsent(op, LatencyHistogram::new);
+    }
+
+    public Optional<OperationStats> get(String op) {
+        LatencyHistogram h = ops.get(op);
+        return h == null ? Optional.empty() : Optional.of(h.snapshot());
+    }
+
+    @Override
+    public List<OperationStats> getOperations() {
+        List<OperationStats> out = new ArrayList<>();
+        for (LatencyHistogram h : new TreeMap<>(ops).values()) out.add(h.snapshot());
+        return out;
+    }
+
+    /** Source of {@link #getEntityCounts()}, usually {@code careHome::getEntityCounts}. */
+    public void watch(Supplier<Map<String, Integer>> entityCounts) {
+        this.entityCounts = entityCounts;
+    }
+
+    @Override
+    public Map<String, Integer> getEntityCounts() {
+        Supplier<Map<String, Integer>> s = entityCounts;
+        return s == null ? Map.of() : s.get();
+    }
+
+    @Override
+    public void reset() {
+        ops.values().forEach(LatencyHistogram::reset);
+    }
+
+    /** Registers this registry with the platform MBean server; does nothing if already there. */
+    public synchronized void registerMBean() {
+        try {
+            var server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            if (!server.isRegistered(name)) server.registerMBean(this, name);
+        } catch (JMException e) {
+            throw new IllegalStateException("Could not register " + OBJECT_NAME, e);
+        }
+    }
+}
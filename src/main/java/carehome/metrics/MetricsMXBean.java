@@ -0,0 +1,16 @@
+package carehome.metrics;
+
+
+// JMX view of the metrics registry (registered as carehome:type=Metrics).
+import java.util.List;
+import java.util.Map;
+
+public interface MetricsMXBean {
+    /** Every operation recorded so far, sorted by name. */
+    List<OperationStats> getOperations();
+
+    /** Collection sizes of the care home being watched; empty when none is. */
+    Map<String, Integer> getEntityCounts();
+
+    void reset();
+}
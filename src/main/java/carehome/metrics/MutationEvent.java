@@ -0,0 +1,45 @@
+package carehome.metrics;
+
+
+// JFR event for one CareHome mutation (admit, move, prescribe, administer, roster, ...).
+import jdk.jfr.*;
+
+/**
+ * Emitted by every state-changing CareHome operation. {@link #start} and {@link #end} cost a
+ * couple of field writes when no recording is running; attributes are only copied in when the
+ * event will actually be committed.
+ */
+@Name("carehome.Mutation")
+@Label("CareHome Mutation")
+@Category({"CareHome", "Operations"})
+@Description("A state-changing CareHome operation, with the staff member and beds involved")
+public final class MutationEvent extends Event {
+    @Label("Operation") String operation;
+    @Label("Actor") @Description("Staff id performing the operation") String actor;
+    @Label("Bed") @Description("Bed id, or ward number for ward-level operations") String bed;
+    @Label("Target") @Description("Destination bed or ward number for moves, transfers and batch admissions") String target;
+    @Label("Subject") @Description("Resident, prescription or staff member the operation is about") String subject;
+    @Label("Error") String error;
+
+    public static MutationEvent start(String operation) {
+        MutationEvent e = new MutationEvent();
+        e.operation = operation;
+        e.begin();
+        return e;
+    }
+
+    public void failed(RuntimeException ex) {
+        error = ex.getClass().getSimpleName() + ": " + ex.getMessage();
+    }
+
+    /** Bed and target may be ids or ward numbers; they are only turned into strings when recorded. */
+    public void end(String actor, Object bed, Object target, String subject) {
+        end();
+        if (!shouldCommit()) return;
+        this.actor = actor;
+        this.bed = bed == null ? null : bed.toString();
+        this.target = target == null ? null : target.toString();
+        this.subject = subject;
+        commit();
+    }
+}
@@ -0,0 +1,48 @@
+package carehome.metrics;
+
+
+// point-in-time view of one operation's counters and latency percentiles (nanoseconds).
+import java.beans.ConstructorProperties;
+
+/** Immutable snapshot of one operation. Getters so JMX can expose it as composite data. */
+public final class OperationStats {
+    public final String name;
+    public final long count;
+    public final long errors;
+    public final long meanNanos;
+    public final long p50Nanos;
+    public final long p90Nanos;
+    public final long p99Nanos;
+    public final long p999Nanos;
+    public final long maxNanos;
+
+    @ConstructorProperties({"name", "count", "errors", "meanNanos", "p50Nanos", "p90Nanos", "p99Nanos", "p999Nanos", "maxNanos"})
+    public OperationStats(String name, long count, long errors, long meanNanos,
+                          long p50Nanos, long p90Nanos, long p99Nanos, long p999Nanos, long maxNanos) {
+        this.name = name;
+        this.count = count;
+        this.errors = errors;
+        this.meanNanos = meanNanos;
+        this.p50Nanos = p50Nanos;
+        this.p90Nanos = p90Nanos;
+        this.p99Nanos = p99Nanos;
+        this.p999Nanos = p999Nanos;
+        this.maxNanos = maxNanos;
+    }
+
+    public String getName() { return name; }
+    public long getCount() { return count; }
+    public long getErrors() { return errors; }
+    public long getMeanNanos() { return meanNanos; }
+    public long getP50Nanos() { return p50Nanos; }
+    public long getP90Nanos() { return p90Nanos; }
+    public long getP99Nanos() { return p99Nanos; }
+    public long getP999Nanos() { return p999Nanos; }
+    public long getMaxNanos() { return maxNanos; }
+
+    @Override
+    public String toString() {
+        return String.format("%s n=%d err=%d mean=%.1fus p50=%.1fus p99=%.1fus max=%.1fus",
+                name, count, errors, meanNanos / 1e3, p50Nanos / 1e3, p99Nanos / 1e3, maxNanos / 1e3);
+    }
+}
@@ -0,0 +1,32 @@
+package carehome.metrics;
+
+
+// JFR event for one business-rule check (room gender, roster, compliance sweep).
+import jdk.jfr.*;
+
+@Name("carehome.RuleCheck")
+@Label("CareHome Rule Check")
+@Category({"CareHome", "Rules"})
+@Description("A business-rule check and whether it passed")
+@StackTrace(false)
+public final class RuleCheckEvent extends Event {
+    @Label("Rule") String rule;
+    @Label("Subject") @Description("Room, staff id, shift count or failure reason the rule was checked for") String subject;
+    @Label("Passed") boolean passed;
+
+    public static RuleCheckEvent start() {
+        RuleCheckEvent e = new RuleCheckEvent();
+        e.begin();
+        return e;
+    }
+
+    /** {@code subject} is only turned into a string when the event is recorded. */
+    public void end(String rule, Object subject, boolean passed) {
+        end();
+        if (!shouldCommit()) return;
+        this.rule = rule;
+        this.subject = subject == null ? null : subject.toString();
+        this.passed = passed;
+        commit();
+    }
+}
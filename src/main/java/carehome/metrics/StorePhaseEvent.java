@@ -0,0 +1,35 @@
+package carehome.metrics;
+
+
+// JFR event for one table phase of JdbcStore.saveAll / loadAll.
+import jdk.jfr.*;
+
+@Name("carehome.StorePhase")
+@Label("Store Phase")
+@Category({"CareHome", "Persistence"})
+@Description("One table phase of a full save or load, with the number of rows involved")
+@StackTrace(false)
+public final class StorePhaseEvent extends Event {
+    @Label("Phase") String phase;
+    @Label("Rows") @Description("Entities written or read in this phase; -1 when not tracked") int rows;
+    @Label("Database") String database;
+
+    public static StorePhaseEvent start() {
+        StorePhaseEvent e = new StorePhaseEvent();
+        e.begin();
+        return e;
+    }
+
+    /** Ends the phase; true when the event will be recorded, so the caller can gather its row count. */
+    public boolean stop() {
+        end();
+        return shouldCommit();
+    }
+
+    public void commit(String phase, int rows, String database) {
+        this.phase = phase;
+        this.rows = rows;
+        this.database = database;
+        commit();
+    }
+}
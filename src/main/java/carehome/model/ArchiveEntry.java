@@ -0,0 +1,71 @@
+package carehome.model;
+
+
+// list row for an archived stay: who, where and when, plus the stay itself or where to find it.
+import java.io.Serializable;
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * A stay is "hot" while {@link #stay} holds it on heap. Once compacted into the cold archive only
+ * these header fields stay in memory and {@link #coldPosition} says where the rest is;
+ * {@code CareHome.openArchivedStay} decodes it again.
+ */
+public class ArchiveEntry implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    public final String residentId;
+    public final String residentName;
+    public final Gender gender;
+    public final int age;
+    public final String lastBedId;
+    public final LocalDateTime dischargedAt;
+    public final List<String> prescriptionIds; // kept with the header: archived ids stay reserved while cold
+
+    public final ArchivedStay stay;     // null once cold
+    public final long coldPosition;     // -1 while hot
+
+    private ArchiveEntry(ArchivedStay header, List<String> prescriptionIds, ArchivedStay stay, long coldPosition) {
+        this.residentId = header.residentId;
+        this.residentName = header.residentName;
+        this.gender = header.gender;
+        this.age = header.age;
+        this.lastBedId = header.lastBedId;
+        this.dischargedAt = header.dischargedAt;
+        this.prescriptionIds = prescriptionIds;
+        this.stay = stay;
+        this.coldPosition = coldPosition;
+    }
+
+    public static ArchiveEntry hot(ArchivedStay stay) {
+        return new ArchiveEntry(stay, idsOf(stay), stay, -1);
+    }
+
+    /** Header of {@code stay}, whose history now lives at {@code position} in the cold archive. */
+    public static ArchiveEntry cold(ArchivedStay stay, long position) {
+        return cold(stay, idsOf(stay), position);
+    }
+
+    /**
+     * As above, for loaders that only have the header fields of {@code header} and the ids of
+     * its prescriptions; its prescription and administration lists are not looked at.
+     */
+    public static ArchiveEntry cold(ArchivedStay header, List<String> prescriptionIds, long position) {
+        return new ArchiveEntry(header, List.copyOf(prescriptionIds), null, position);
+    }
+
+    private static List<String> idsOf(ArchivedStay stay) {
+        if (stay.prescriptions == null) return List.of();
+        return stay.prescriptions.stream().filter(p -> p != null && p.id != null).map(p -> p.id).toList();
+    }
+
+    public boolean isCold() {
+        return stay == null;
+    }
+
+    @Override
+    public String toString() {
+        return "ArchiveEntry{" + residentId + " " + residentName + " @ " + lastBedId + " on " + dischargedAt
+                + (isCold() ? ", cold@" + coldPosition : "") + "}";
+    }
+}
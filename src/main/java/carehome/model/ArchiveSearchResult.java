@@ -0,0 +1,39 @@
+package carehome.model;
+
+
+// one page of ranked full-text matches over archived stays.
+import java.io.Serializable;
+import java.util.List;
+
+public class ArchiveSearchResult implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    /** A matching stay with its relevance score and the query words it matched. */
+    public static class Hit implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        public final ArchivedStay stay;
+        public final double score;
+        public final List<String> matchedTerms;
+
+        public Hit(ArchivedStay stay, double score, List<String> matchedTerms) {
+            this.stay = stay;
+            this.score = score;
+            this.matchedTerms = matchedTerms;
+        }
+    }
+
+    public final int total;      // matches across all pages
+    public final int offset;
+    public final List<Hit> hits;
+
+    public ArchiveSearchResult(int total, int offset, List<Hit> hits) {
+        this.total = total;
+        this.offset = offset;
+        this.hits = hits;
+    }
+
+    public boolean hasMore() {
+        return offset + hits.size() < total;
+    }
+}
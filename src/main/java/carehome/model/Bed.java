@@ -8,10 +8,18 @@ public class Bed implements Serializable {
     private static final long serialVersionUID = 1L;
 
     public final String id;
+    public final BedKey key; // null only for ids outside the W<n>-R<n>-B<n> scheme
     public Resident occupant;
+    public long version; // bumped on every occupancy change; see CareHome conditional operations
 
     public Bed(String id) {
         this.id = id;
+        this.key = BedKey.tryParse(id);
+    }
+
+    public Bed(BedKey key) {
+        this.id = key.toString();
+        this.key = key;
     }
 
     public boolean isVacant() {
@@ -0,0 +1,131 @@
+package carehome.model;
+
+
+// compact ward/room/bed identity packed into one int.
+import java.io.Serializable;
+
+/**
+ * Structured bed identity. The canonical string form is {@code W<ward>-R<room>-B<bed>}
+ * (for example {@code W1-R3-B2}); internally the three numbers are packed into a single
+ * int so grouping by room or ward and range queries are plain arithmetic.
+ */
+public final class BedKey implements Comparable<BedKey>, Serializable {
+    private static final long serialVersionUID = 1L;
+
+    // bit layout: [ward:10][room:13][bed:8]; compared unsigned so range ends past the last ward still sort last
+    public static final int BED_BITS = 8;
+    public static final int ROOM_BITS = 13;
+    public static final int WARD_BITS = 10;
+
+    public static final int MAX_BED  = (1 << BED_BITS) - 1;
+    public static final int MAX_ROOM = (1 << ROOM_BITS) - 1;
+    public static final int MAX_WARD = (1 << WARD_BITS) - 1;
+
+    private final int packed;
+
+    private BedKey(int packed) {
+        this.packed = packed;
+    }
+
+    public static BedKey of(int ward, int room, int bed) {
+        check(ward, MAX_WARD, "ward");
+        check(room, MAX_ROOM, "room");
+        check(bed, MAX_BED, "bed");
+        return new BedKey((ward << (ROOM_BITS + BED_BITS)) | (room << BED_BITS) | bed);
+    }
+
+    public static BedKey fromPacked(int packed) {
+        return of(packed >>> (ROOM_BITS + BED_BITS), (packed >>> BED_BITS) & MAX_ROOM, packed & MAX_BED);
+    }
+
+    private static void check(int v, int max, String what) {
+        if (v < 1 || v > max)
+            throw new IllegalArgumentException("Bed key " + what + " must be 1.." + max + " (was " + v + ")");
+    }
+
+    /** Parses {@code W1-R3-B2} (case-insensitive). Throws IllegalArgumentException on any other shape. */
+    public static BedKey parse(String bedId) {
+        BedKey k = tryParse(bedId);
+        if (k == null) throw new IllegalArgumentException("Invalid bed id: " + bedId + " (expected W<n>-R<n>-B<n>)");
+        return k;
+    }
+
+    /** Same as {@link #parse} but returns null instead of throwing. Single pass, no regex. */
+    public static BedKey tryParse(String bedId) {
+        if (bedId == null) return null;
+        String s = bedId.trim();
+        int[] out = new int[3];
+        char[] tags = {'W', 'R', 'B'};
+        int i = 0;
+        for (int part = 0; part < 3; part++) {
+            if (part > 0) {
+                if (i >= s.length() || s.charAt(i) != '-') return null;
+                i++;
+            }
+            if (i >= s.length() || Character.toUpperCase(s.charAt(i)) != tags[part]) return null;
+            i++;
+            int start = i, v = 0;
+            while (i < s.length() && s.charAt(i) >= '0' && s.charAt(i) <= '9') {
+                v = v * 10 + (s.charAt(i) - '0');
+                if (v > MAX_ROOM) return null;
+                i++;
+            }
+            if (i == start) return null;
+            out[part] = v;
+        }
+        if (i != s.length()) return null;
+        if (out[0] < 1 || out[0] > MAX_WARD || out[1] < 1 || out[1] > MAX_ROOM || out[2] < 1 || out[2] > MAX_BED)
+            return null;
+        return of(out[0], out[1], out[2]);
+    }
+
+    public int ward() { return packed >>> (ROOM_BITS + BED_BITS); }
+    public int room() { return (packed >>> BED_BITS) & MAX_ROOM; }
+    public int bed()  { return packed & MAX_BED; }
+
+    public int packed() { return packed; }
+
+    /** Identifies the room (ward + room); beds in the same room share this value. */
+    public int roomCode() { return packed >>> BED_BITS; }
+
+    /** First possible key in this bed's room (inclusive lower bound for range queries). */
+    public BedKey roomStart() { return new BedKey(packed & ~MAX_BED); }
+
+    /** First possible key after this bed's room (exclusive upper bound for range queries). */
+    public BedKey roomEnd() { return new BedKey((packed & ~MAX_BED) + (1 << BED_BITS)); }
+
+    /** First possible key in the given ward. */
+    public static BedKey wardStart(int ward) {
+        check(ward, MAX_WARD, "ward");
+        return new BedKey(ward << (ROOM_BITS + BED_BITS));
+    }
+
+    /** First possible key after the given ward. */
+    public static BedKey wardEnd(int ward) {
+        check(ward, MAX_WARD, "ward");
+        return new BedKey((ward + 1) << (ROOM_BITS + BED_BITS));
+    }
+
+    /** Canonical room label, e.g. {@code W1-R3}. */
+    public String roomLabel() { return "W" + ward() + "-R" + room(); }
+
+    @Override
+    public int compareTo(BedKey o) {
+        return Integer.compareUnsigned(packed, o.packed);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof BedKey k && k.packed == packed;
+    }
+
+    @Override
+    public int hashCode() {
+        return packed;
+    }
+
+    @Override
+    public String toString() {
+        return "W" + ward() + "-R" + room() + "-B" + bed();
+    }
+}
@@ -0,0 +1,84 @@
+package carehome.model;
+
+
+// structured form of the free-text MedicationDose.frequency.
+import java.io.Serializable;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A fixed-interval dose schedule parsed from what doctors type, e.g. {@code 8h}, {@code q6h},
+ * {@code every 12 hours}, {@code 30m}, {@code daily}, {@code BD}, {@code TDS}, {@code QID},
+ * {@code weekly}. {@code PRN} / {@code as needed} parse to an as-needed schedule with no interval.
+ * Intervals longer than {@link #MAX_INTERVAL} are not understood.
+ */
+public final class DoseSchedule implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    public static final Duration MAX_INTERVAL = Duration.ofDays(366);
+
+    private static final Pattern EVERY = Pattern.compile(
+            "^(?:q|every\\s*|each\\s*)?(\\d+)\\s*(m|min|mins|minutes?|h|hr|hrs|hours?|d|days?)(?:ly)?$");
+
+    private final Duration interval; // null when as-needed
+    private final String source;
+
+    private DoseSchedule(Duration interval, String source) {
+        this.interval = interval;
+        this.source = source;
+    }
+
+    /** Parses a frequency; returns null when the text is not understood. */
+    public static DoseSchedule parse(String frequency) {
+        if (frequency == null) return null;
+        String f = frequency.trim().toLowerCase(Locale.ROOT).replaceAll("[.\\-]", " ").replaceAll("\\s+", " ");
+        if (f.isEmpty()) return null;
+
+        switch (f) {
+            case "prn", "as needed", "as required", "when required" -> { return new DoseSchedule(null, frequency); }
+            case "daily", "once daily", "od", "qd", "nocte", "mane", "once a day" -> { return every(Duration.ofHours(24), frequency); }
+            case "bd", "bid", "twice daily", "twice a day" -> { return every(Duration.ofHours(12), frequency); }
+            case "tds", "tid", "three times daily", "three times a day" -> { return every(Duration.ofHours(8), frequency); }
+            case "qid", "qds", "four times daily", "four times a day" -> { return every(Duration.ofHours(6), frequency); }
+            case "weekly", "once weekly" -> { return every(Duration.ofDays(7), frequency); }
+            case "hourly" -> { return every(Duration.ofHours(1), frequency); }
+            default -> { }
+        }
+
+        Matcher m = EVERY.matcher(f.replace(" ", ""));
+        if (!m.matches()) m = EVERY.matcher(f);
+        if (!m.matches()) return null;
+        // at most 9 digits, so the number and the Duration built from it cannot overflow
+        if (m.group(1).length() > 9) return null;
+        long n = Long.parseLong(m.group(1));
+        if (n <= 0) return null;
+        String unit = m.group(2);
+        Duration d = unit.startsWith("m") ? Duration.ofMinutes(n)
+                : unit.startsWith("h") ? Duration.ofHours(n)
+                : Duration.ofDays(n);
+        return d.compareTo(MAX_INTERVAL) > 0 ? null : every(d, frequency);
+    }
+
+    private static DoseSchedule every(Duration d, String source) {
+        return new DoseSchedule(d, source);
+    }
+
+    public boolean isAsNeeded() { return interval == null; }
+
+    /** Interval between doses, or null for as-needed. */
+    public Duration getInterval() { return interval; }
+
+    /** When the next dose is due after one given at {@code last}; null for as-needed. Never past LocalDateTime.MAX. */
+    public LocalDateTime nextAfter(LocalDateTime last) {
+        if (interval == null || last == null) return null;
+        return last.isAfter(LocalDateTime.MAX.minus(interval)) ? LocalDateTime.MAX : last.plus(interval);
+    }
+
+    @Override
+    public String toString() {
+        return interval == null ? "as needed" : "every " + interval.toMinutes() + " min (" + source + ")";
+    }
+}
@@ -0,0 +1,40 @@
+package carehome.model;
+
+
+// one scheduled dose that is due (or overdue) for a resident.
+import java.io.Serializable;
+import java.time.LocalDateTime;
+
+public class DueDose implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    public final String bedId;
+    public final String residentId;
+    public final String residentName;
+    public final String prescriptionId;
+    public final String medicine;
+    public final String dosage;
+    public final String frequency;
+    public final LocalDateTime dueAt;
+
+    public DueDose(String bedId, String residentId, String residentName, String prescriptionId,
+                   String medicine, String dosage, String frequency, LocalDateTime dueAt) {
+        this.bedId = bedId;
+        this.residentId = residentId;
+        this.residentName = residentName;
+        this.prescriptionId = prescriptionId;
+        this.medicine = medicine;
+        this.dosage = dosage;
+        this.frequency = frequency;
+        this.dueAt = dueAt;
+    }
+
+    public boolean isOverdueAt(LocalDateTime t) {
+        return dueAt.isBefore(t);
+    }
+
+    @Override
+    public String toString() {
+        return medicine + " " + dosage + " for " + residentId + " (" + bedId + ") due " + dueAt;
+    }
+}
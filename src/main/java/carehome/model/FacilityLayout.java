@@ -0,0 +1,165 @@
+package carehome.model;
+
+
+// ward/room/bed layout of a facility, read from a small text format.
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+/**
+ * Layout file format, one ward per line:
+ * <pre>
+ * # comments and blank lines are ignored
+ * W1 North Wing: 1 2 4 3 4 3     # six rooms, bed counts listed per room
+ * W2: 4x50 2x10                  # 50 four-bed rooms then 10 two-bed rooms
+ * </pre>
+ * The label after the ward number is optional. {@code <beds>x<rooms>} repeats a room size.
+ */
+public final class FacilityLayout implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    public record Ward(int number, String label, int[] bedsPerRoom) implements Serializable {
+        public int bedCount() {
+            int n = 0;
+            for (int c : bedsPerRoom) n += c;
+            return n;
+        }
+    }
+
+    private final List<Ward> wards;
+
+    public FacilityLayout(List<Ward> wards) {
+        List<Ward> sorted = new ArrayList<>(wards);
+        sorted.sort(Comparator.comparingInt(Ward::number));
+        for (int i = 0; i < sorted.size(); i++) {
+            Ward w = sorted.get(i);
+            if (w.number() < 1 || w.number() > BedKey.MAX_WARD)
+                throw new IllegalArgumentException("Ward number must be 1.." + BedKey.MAX_WARD);
+            if (i > 0 && sorted.get(i - 1).number() == w.number())
+                throw new IllegalArgumentException("Duplicate ward W" + w.number());
+            if (w.bedsPerRoom().length < 1 || w.bedsPerRoom().length > BedKey.MAX_ROOM)
+                throw new IllegalArgumentException("Ward W" + w.number() + " must have 1.." + BedKey.MAX_ROOM + " rooms");
+            for (int c : w.bedsPerRoom()) {
+                if (c < 1 || c > BedKey.MAX_BED)
+                    throw new IllegalArgumentException("Room bed count must be 1.." + BedKey.MAX_BED + " (ward W" + w.number() + ")");
+            }
+        }
+        this.wards = List.copyOf(sorted);
+    }
+
+    /** The two-ward layout the app has always shipped with. */
+    public static FacilityLayout defaultLayout() {
+        return new FacilityLayout(List.of(
+                new Ward(1, "Ward 1", new int[]{1, 2, 4, 3, 4, 3}),
+                new Ward(2, "Ward 2", new int[]{1, 2, 4, 3, 4, 3})));
+    }
+
+    public static FacilityLayout load(Path file) throws IOException {
+        try (Reader r = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            return parse(r);
+        }
+    }
+
+    public static FacilityLayout parse(String text) {
+        try {
+            return parse(new StringReader(text));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public static FacilityLayout parse(Reader in) throws IOException {
+        BufferedReader br = in instanceof BufferedReader b ? b : new BufferedReader(in);
+        List<Ward> wards = new ArrayList<>();
+        String line;
+        int lineNo = 0;
+        while ((line = br.readLine()) != null) {
+            lineNo++;
+            int hash = line.indexOf('#');
+            if (hash >= 0) line = line.substring(0, hash);
+            line = line.trim();
+            if (line.isEmpty()) continue;
+
+            int colon = line.indexOf(':');
+            if (colon < 0) throw new IllegalArgumentException("Layout line " + lineNo + ": expected 'W<n> [label]: <rooms>'");
+            String head = line.substring(0, colon).trim();
+            String body = line.substring(colon + 1).trim();
+
+            String[] headParts = head.split("\\s+", 2);
+            String wardTok = headParts[0];
+            if (wardTok.length() < 2 || Character.toUpperCase(wardTok.charAt(0)) != 'W')
+                throw new IllegalArgumentException("Layout line " + lineNo + ": ward must look like W<n>");
+            int ward = parseInt(wardTok.substring(1), lineNo);
+            String label = headParts.length > 1 ? headParts[1].trim() : "Ward " + ward;
+
+            List<Integer> rooms = new ArrayList<>();
+            for (String tok : body.split("[\\s,]+")) {
+                if (tok.isEmpty()) continue;
+                int x = tok.toLowerCase(Locale.ROOT).indexOf('x');
+                if (x < 0) {
+                    rooms.add(parseInt(tok, lineNo));
+                } else {
+                    int beds = parseInt(tok.substring(0, x), lineNo);
+                    int repeat = parseInt(tok.substring(x + 1), lineNo);
+                    if (repeat < 1 || rooms.size() + repeat > BedKey.MAX_ROOM)
+                        throw new IllegalArgumentException("Layout line " + lineNo + ": room repeat out of range");
+                    for (int i = 0; i < repeat; i++) rooms.add(beds);
+                }
+            }
+            wards.add(new Ward(ward, label, rooms.stream().mapToInt(Integer::intValue).toArray()));
+        }
+        try {
+            return new FacilityLayout(wards);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Layout: " + e.getMessage(), e);
+        }
+    }
+
+    private static int parseInt(String s, int lineNo) {
+        try {
+            return Integer.parseInt(s.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Layout line " + lineNo + ": not a number '" + s + "'");
+        }
+    }
+
+    public List<Ward> getWards() { return wards; }
+
+    public int bedCount() {
+        int n = 0;
+        for (Ward w : wards) n += w.bedCount();
+        return n;
+    }
+
+    /** All bed keys of the layout in ascending key order. */
+    public List<BedKey> bedKeys() {
+        List<BedKey> keys = new ArrayList<>(bedCount());
+        for (Ward w : wards) {
+            int[] rooms = w.bedsPerRoom();
+            for (int room = 1; room <= rooms.length; room++) {
+                for (int bed = 1; bed <= rooms[room - 1]; bed++) keys.add(BedKey.of(w.number(), room, bed));
+            }
+        }
+        return keys;
+    }
+
+    /** Writes the layout back in the same text format that {@link #parse} reads. */
+    public String toText() {
+        StringBuilder sb = new StringBuilder();
+        for (Ward w : wards) {
+            sb.append('W').append(w.number()).append(' ').append(w.label()).append(':');
+            int[] rooms = w.bedsPerRoom();
+            for (int i = 0; i < rooms.length; ) {
+                int j = i;
+                while (j < rooms.length && rooms[j] == rooms[i]) j++;
+                sb.append(' ').append(rooms[i]);
+                if (j - i > 1) sb.append('x').append(j - i);
+                i = j;
+            }
+            sb.append('\n');
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,197 @@
+package carehome.model;
+
+
+// dictionary of medicine names: one canonical String per drug, small int ids, prefix autocomplete.
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+/**
+ * Catalog file format: one medicine per line, {@code #} starts a comment, blank lines are ignored.
+ * Names match case-insensitively with whitespace collapsed ({@link #key}), so
+ * {@code "amoxicillin "} and {@code "Amoxicillin"} are the same entry; the first spelling added
+ * is the canonical one. Ids are dense and start at 1. The catalog only grows, and only through
+ * {@link #add}: names typed into a prescription never get an id, are not kept, and do not show up
+ * in {@link #complete}, so a typo is not suggested back to the next user.
+ */
+public final class MedicineCatalog implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private final List<String> names = new ArrayList<>();          // id - 1 -> canonical name
+    private final Map<String, Integer> idsByKey = new HashMap<>();  // normalised name -> id
+    private transient Node root;                                    // rebuilt lazily after deserialisation
+
+    /** The medicines the app ships with; sites extend it with their own file. */
+    public static MedicineCatalog defaultCatalog() {
+        MedicineCatalog c = new MedicineCatalog();
+        for (String n : List.of(
+                "Allopurinol", "Amitriptyline", "Amlodipine", "Amoxicillin", "Apixaban", "Aspirin",
+                "Atenolol", "Atorvastatin", "Bisoprolol", "Candesartan", "Cephalexin", "Citalopram",
+                "Clopidogrel", "Codeine", "Diazepam", "Digoxin", "Donepezil", "Doxycycline",
+                "Enalapril", "Esomeprazole", "Frusemide", "Gabapentin", "Gliclazide", "Haloperidol",
+                "Ibuprofen", "Insulin glargine", "Irbesartan", "Lactulose", "Levothyroxine",
+                "Lisinopril", "Loratadine", "Lorazepam", "Macrogol", "Metformin", "Metoprolol",
+                "Mirtazapine", "Morphine", "Oxycodone", "Pantoprazole", "Paracetamol", "Perindopril",
+                "Prednisolone", "Pregabalin", "Quetiapine", "Ramipril", "Risperidone", "Rivaroxaban",
+                "Rosuvastatin", "Salbutamol", "Senna", "Sertraline", "Simvastatin", "Spironolactone",
+                "Tamsulosin", "Temazepam", "Tramadol", "Trimethoprim", "Vitamin D", "Warfarin")) {
+            c.add(n);
+        }
+        return c;
+    }
+
+    public static MedicineCatalog load(Path file) throws IOException {
+        try (Reader r = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            return parse(r);
+        }
+    }
+
+    public static MedicineCatalog parse(String text) {
+        try {
+            return parse(new StringReader(text));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public static MedicineCatalog parse(Reader in) throws IOException {
+        BufferedReader br = in instanceof BufferedReader b ? b : new BufferedReader(in);
+        MedicineCatalog c = new MedicineCatalog();
+        String line;
+        while ((line = br.readLine()) != null) {
+            int hash = line.indexOf('#');
+            if (hash >= 0) line = line.substring(0, hash);
+            c.add(line);
+        }
+        return c;
+    }
+
+    /** Adds a name to the catalog (no-op when it is already there) and returns the canonical spelling. */
+    public String add(String name) {
+        String key = key(name);
+        if (key.isEmpty()) return name;
+        Integer id = idsByKey.get(key);
+        if (id != null) return names.get(id - 1);
+
+        String canonical = name.trim().replaceAll("\\s+", " ");
+        names.add(canonical);
+        id = names.size();
+        idsByKey.put(key, id);
+        if (root != null) insert(root, key, id);
+        return canonical;
+    }
+
+    /**
+     * Canonical instance for this name: the catalog's spelling when it has the medicine, else the
+     * name with whitespace collapsed. Only catalog names are shared, so free text cannot grow the
+     * catalog's memory. Null and blank names are returned unchanged so callers can pass free text
+     * straight through.
+     */
+    public String intern(String name) {
+        String key = key(name);
+        if (key.isEmpty()) return name;
+        Integer id = idsByKey.get(key);
+        return id != null ? names.get(id - 1) : name.trim().replaceAll("\\s+", " ");
+    }
+
+    public void addAll(MedicineCatalog other) {
+        for (String n : other.names) add(n);
+    }
+
+    /** Dictionary id of the name, or -1 when it is not in the catalog. */
+    public int idOf(String name) {
+        Integer id = idsByKey.get(key(name));
+        return id == null ? -1 : id;
+    }
+
+    public String name(int id) {
+        return id >= 1 && id <= names.size() ? names.get(id - 1) : null;
+    }
+
+    public boolean contains(String name) {
+        return idOf(name) > 0;
+    }
+
+    public int size() {
+        return names.size();
+    }
+
+    public List<String> names() {
+        return Collections.unmodifiableList(names);
+    }
+
+    /** Up to {@code limit} catalog names starting with {@code prefix}, alphabetical. */
+    public List<String> complete(String prefix, int limit) {
+        if (limit <= 0) return List.of();
+        String key = key(prefix);
+        Node n = trie();
+        for (int i = 0; i < key.length() && n != null; i++) n = n.child(key.charAt(i));
+        if (n == null) return List.of();
+
+        // depth-first, children in char order, so results come out sorted
+        List<String> out = new ArrayList<>(Math.min(limit, 16));
+        Deque<Node> stack = new ArrayDeque<>();
+        stack.push(n);
+        while (!stack.isEmpty() && out.size() < limit) {
+            Node cur = stack.pop();
+            if (cur.id > 0) out.add(names.get(cur.id - 1));
+            for (int i = cur.kids.length - 1; i >= 0; i--) stack.push(cur.kids[i]);
+        }
+        return out;
+    }
+
+    private Node trie() {
+        if (root == null) {
+            Node r = new Node();
+            for (var e : idsByKey.entrySet()) insert(r, e.getKey(), e.getValue());
+            root = r;
+        }
+        return root;
+    }
+
+    private static void insert(Node n, String key, int id) {
+        for (int i = 0; i < key.length(); i++) n = n.childOrAdd(key.charAt(i));
+        n.id = id;
+    }
+
+    /** Lookup key of a name: trimmed, inner whitespace collapsed to one space, lower case. */
+    public static String key(String name) {
+        if (name == null) return "";
+        return name.trim().replaceAll("\\s+", " ").toLowerCase(Locale.ROOT);
+    }
+
+    // children kept as parallel sorted arrays: no per-edge map objects, binary search on lookup
+    private static final class Node {
+        private static final char[] NO_LABELS = new char[0];
+        private static final Node[] NO_KIDS = new Node[0];
+
+        char[] labels = NO_LABELS;
+        Node[] kids = NO_KIDS;
+        int id; // 0 when no name ends here
+
+        Node child(char c) {
+            int i = Arrays.binarySearch(labels, c);
+            return i >= 0 ? kids[i] : null;
+        }
+
+        Node childOrAdd(char c) {
+            int i = Arrays.binarySearch(labels, c);
+            if (i >= 0) return kids[i];
+            i = -i - 1;
+            char[] l = new char[labels.length + 1];
+            Node[] k = new Node[kids.length + 1];
+            System.arraycopy(labels, 0, l, 0, i);
+            System.arraycopy(kids, 0, k, 0, i);
+            System.arraycopy(labels, i, l, i + 1, labels.length - i);
+            System.arraycopy(kids, i, k, i + 1, kids.length - i);
+            Node n = new Node();
+            l[i] = c;
+            k[i] = n;
+            labels = l;
+            kids = k;
+            return n;
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package carehome.model;
+
+
+// one active prescription with where its resident currently is.
+import java.io.Serializable;
+
+public class WorklistItem implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    public final String bedId;
+    public final String residentId;
+    public final String residentName;
+    public final Prescription prescription;
+
+    public WorklistItem(String bedId, String residentId, String residentName, Prescription prescription) {
+        this.bedId = bedId;
+        this.residentId = residentId;
+        this.residentName = residentName;
+        this.prescription = prescription;
+    }
+
+    @Override
+    public String toString() {
+        return prescription.id + " for " + residentName + " (" + bedId + ")";
+    }
+}
@@ -0,0 +1,279 @@
+package carehome.persistence;
+
+
+// append-only, memory-mapped file of archived stays: the cold tier behind CareHome.compactArchives.
+import carehome.metrics.Metrics;
+import carehome.model.*;
+import carehome.service.ColdArchive;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.util.*;
+
+/**
+ * File layout (big-endian):
+ * <pre>
+ *   "CHAR"  u16 format version  u16 reserved
+ *   per stay:  u32 record length  record
+ * </pre>
+ * A record starts with the resident id and discharge time, so opening the file rebuilds the
+ * (resident, discharge) -&gt; position index by reading only those two fields of each record.
+ * Then come the rest of the header (name, gender, age, last bed), a string table local to the
+ * record (ids, medicine names, dosages, frequencies; encoded as in {@link BinaryOut}) and the
+ * prescriptions and administrations referring to it. Records are never rewritten, so a position
+ * handed out stays valid for the life of the file.
+ * <p>
+ * Appends are positional writes that are not forced to disk: the database still holds every
+ * stay, and a record torn by a crash is cut off the end the next time the file is opened. Reads
+ * go through one read-only mapping of the file, remapped when it has grown; the mapping limits
+ * the file to 2 GiB.
+ */
+public class ArchiveFile implements ColdArchive, Closeable {
+    public static final int FORMAT_VERSION = 1;
+
+    private static final int MAGIC = ('C' << 24) | ('H' << 16) | ('A' << 8) | 'R';
+    private static final int HEADER = 8;
+
+    private record Key(String residentId, LocalDateTime dischargedAt) {}
+
+    private static final Comparator<Key> ORDER = Comparator.comparing(Key::residentId, Comparator.nullsFirst(Comparator.naturalOrder()))
+            .thenComparing(Key::dischargedAt, Comparator.nullsFirst(Comparator.naturalOrder()));
+
+    private final Path file;
+    private final FileChannel channel;
+    private final NavigableMap<Key, Long> index = new TreeMap<>(ORDER);
+    private MappedByteBuffer map;
+    private long length;
+    private int records;
+    private Metrics metrics = Metrics.shared();
+
+    /** Opens the file, creating it when missing, and indexes the stays already in it. */
+    public ArchiveFile(Path file) throws IOException {
+        this.file = Objects.requireNonNull(file);
+        Path dir = file.toAbsolutePath().getParent();
+        if (dir != null) Files.createDirectories(dir);
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            if (channel.size() == 0) {
+                writeFully(ByteBuffer.allocate(HEADER).putInt(MAGIC).putShort((short) FORMAT_VERSION).putShort((short) 0).flip(), 0);
+            }
+            length = channel.size();
+            scan();
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    public Path getPath() {
+        return file;
+    }
+
+    public void setMetrics(Metrics metrics) {
+        this.metrics = Objects.requireNonNull(metrics);
+    }
+
+    /** Number of stays in the file. */
+    public synchronized int size() {
+        return records;
+    }
+
+    /** File length in bytes. */
+    public synchronized long length() {
+        return length;
+    }
+
+    @Override
+    public synchronized long find(String residentId, LocalDateTime dischargedAt) {
+        return index.getOrDefault(new Key(residentId, dischargedAt), -1L);
+    }
+
+    @Override
+    public synchronized long append(ArchivedStay stay) {
+        long start = System.nanoTime();
+        try {
+            BinaryOut rec = encode(stay);
+            long at = length;
+            if (at + 4 + rec.size() > Integer.MAX_VALUE) throw new IOException("Archive " + file + " is full (2 GiB)");
+            writeFully(ByteBuffer.allocate(4).putInt(rec.size()).flip(), at);
+            writeFully(rec.buffer(), at + 4);
+            length = at + 4 + rec.size();
+            records++;
+            index.put(new Key(stay.residentId, stay.dischargedAt), at);
+            return at;
+        } catch (IOException e) {
+            metrics.error("archive.append");
+            throw new UncheckedIOException(e);
+        } catch (RuntimeException e) {
+            metrics.error("archive.append");
+            throw e;
+        } finally {
+            metrics.record("archive.append", start);
+        }
+    }
+
+    @Override
+    public synchronized ArchivedStay read(long position) {
+        long start = System.nanoTime();
+        try {
+            if (position < HEADER || position + 4 > length) throw new IOException("No archived stay at " + position + " in " + file);
+            ByteBuffer buf = mapped().duplicate().position((int) position);
+            int len = buf.getInt();
+            if (len < 0 || position + 4 + len > length) throw new IOException("Corrupt record at " + position + " in " + file);
+            return decode(new BinaryIn(buf.slice(buf.position(), len)));
+        } catch (IOException e) {
+            metrics.error("archive.read");
+            throw new UncheckedIOException(e);
+        } catch (BufferUnderflowException e) {
+            metrics.error("archive.read");
+            throw new UncheckedIOException(new IOException("Truncated record at " + position + " in " + file, e));
+        } catch (RuntimeException e) {
+            metrics.error("archive.read");
+            throw e;
+        } finally {
+            metrics.record("archive.read", start);
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        map = null;
+        channel.close();
+    }
+
+    //  file
+
+    // checks the header and indexes every whole record; a torn last record is cut off
+    private void scan() throws IOException {
+        if (length < HEADER) throw new IOException(file + " is not a care home archive");
+        ByteBuffer buf = mapped().duplicate();
+        if (buf.getInt() != MAGIC) throw new IOException(file + " is not a care home archive");
+        int version = buf.getShort() & 0xFFFF;
+        if (version > FORMAT_VERSION)
+            throw new IOException("Archive " + file + " has format version " + version + "; this build reads up to " + FORMAT_VERSION);
+        long at = HEADER;
+        while (at + 4 <= length) {
+            int len = buf.position((int) at).getInt();
+            if (len < 0 || at + 4 + len > length) break;
+            BinaryIn in = new BinaryIn(buf.slice((int) at + 4, len));
+            try {
+                index.put(new Key(in.string(), in.time()), at);
+            } catch (BufferUnderflowException e) {
+                throw new IOException("Corrupt record at " + at + " in " + file, e);
+            }
+            records++;
+            at += 4 + len;
+        }
+        if (at < length) {
+            channel.truncate(at);
+            length = at;
+            map = null;
+        }
+    }
+
+    private MappedByteBuffer mapped() throws IOException {
+        if (map == null || map.capacity() < length) map = channel.map(FileChannel.MapMode.READ_ONLY, 0, length);
+        return map;
+    }
+
+    private void writeFully(ByteBuffer b, long at) throws IOException {
+        while (b.hasRemaining()) at += channel.write(b, at);
+    }
+
+    //  records
+
+    private static BinaryOut encode(ArchivedStay s) {
+        Map<String, Integer> ids = new HashMap<>();
+        BinaryOut strings = new BinaryOut(256);
+        List<Prescription> ps = s.prescriptions == null ? List.of() : s.prescriptions;
+        List<Administration> as = s.administrations == null ? List.of() : s.administrations;
+        BinaryOut body = new BinaryOut(64 + 24 * as.size());
+        body.varint(ps.size());
+        for (Prescription p : ps) {
+            ref(body, ids, strings, p.id);
+            ref(body, ids, strings, p.doctorId);
+            ref(body, ids, strings, p.residentId);
+            body.time(p.dateTime);
+            List<MedicationDose> meds = p.meds == null ? List.of() : p.meds;
+            body.varint(meds.size());
+            for (MedicationDose md : meds) {
+                ref(body, ids, strings, md.medicine);
+                ref(body, ids, strings, md.dosage);
+                ref(body, ids, strings, md.frequency);
+            }
+        }
+        body.varint(as.size());
+        for (Administration a : as) {
+            ref(body, ids, strings, a.nurseId);
+            ref(body, ids, strings, a.prescriptionId);
+            ref(body, ids, strings, a.medicine);
+            body.time(a.administeredAt);
+            body.string(a.notes);
+        }
+
+        BinaryOut rec = new BinaryOut(64 + strings.size() + body.size());
+        rec.string(s.residentId).time(s.dischargedAt).string(s.residentName)
+                .u8(s.gender == null ? 0 : s.gender.ordinal() + 1).varint(s.age).string(s.lastBedId);
+        rec.varint(ids.size()).bytes(strings.buffer()).bytes(body.buffer());
+        return rec;
+    }
+
+    private static ArchivedStay decode(BinaryIn in) throws IOException {
+        String rid = in.string();
+        LocalDateTime at = in.time();
+        String name = in.string();
+        int g = in.u8();
+        if (g > Gender.values().length) throw new IOException("Unknown gender code " + g);
+        Gender gender = g == 0 ? null : Gender.values()[g - 1];
+        int age = in.count();
+        String bed = in.string();
+
+        String[] strings = new String[in.count() + 1];
+        for (int i = 1; i < strings.length; i++) strings[i] = in.string();
+
+        int np = in.count();
+        List<Prescription> ps = new ArrayList<>(np);
+        for (int i = 0; i < np; i++) {
+            String id = ref(in, strings), doctor = ref(in, strings), resident = ref(in, strings);
+            LocalDateTime written = in.time();
+            int nm = in.count();
+            List<MedicationDose> meds = new ArrayList<>(nm);
+            for (int j = 0; j < nm; j++) meds.add(new MedicationDose(ref(in, strings), ref(in, strings), ref(in, strings)));
+            ps.add(new Prescription(id, doctor, resident, written, meds));
+        }
+        int na = in.count();
+        List<Administration> as = new ArrayList<>(na);
+        for (int i = 0; i < na; i++) {
+            String nurse = ref(in, strings), presc = ref(in, strings), medicine = ref(in, strings);
+            as.add(new Administration(nurse, presc, medicine, in.time(), in.string()));
+        }
+        return new ArchivedStay(rid, name, gender, age, bed, at, ps, as);
+    }
+
+    // record-local dictionary, numbered from 1 in order of first use; 0 is null
+    private static void ref(BinaryOut o, Map<String, Integer> ids, BinaryOut strings, String s) {
+        if (s == null) { o.varint(0); return; }
+        Integer id = ids.get(s);
+        if (id == null) {
+            id = ids.size() + 1;
+            ids.put(s, id);
+            strings.string(s);
+        }
+        o.varint(id);
+    }
+
+    private static String ref(BinaryIn in, String[] strings) throws IOException {
+        int id = in.count();
+        if (id >= strings.length) throw new IOException("String reference " + id + " out of range");
+        return strings[id];
+    }
+}
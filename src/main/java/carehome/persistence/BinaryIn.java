@@ -0,0 +1,78 @@
+package carehome.persistence;
+
+
+// reads what BinaryOut wrote, straight from a (usually memory-mapped) ByteBuffer.
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+
+final class BinaryIn {
+    private final ByteBuffer buf;
+
+    BinaryIn(ByteBuffer buf) {
+        this.buf = buf;
+    }
+
+    boolean hasRemaining() {
+        return buf.hasRemaining();
+    }
+
+    int position() {
+        return buf.position();
+    }
+
+    int u8() {
+        return buf.get() & 0xFF;
+    }
+
+    int u32() {
+        return buf.getInt();
+    }
+
+    long varint() throws IOException {
+        long v = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = buf.get();
+            v |= (long) (b & 0x7F) << shift;
+            if (b >= 0) return v;
+        }
+        throw new IOException("Malformed varint at offset " + buf.position());
+    }
+
+    /** A varint that must fit a non-negative int, e.g. a count or a length. */
+    int count() throws IOException {
+        long v = varint();
+        if (v < 0 || v > Integer.MAX_VALUE) throw new IOException("Count out of range at offset " + buf.position());
+        return (int) v;
+    }
+
+    long zigzag() throws IOException {
+        long v = varint();
+        return (v >>> 1) ^ -(v & 1);
+    }
+
+    String string() throws IOException {
+        int n = count();
+        if (n == 0) return null;
+        byte[] b = new byte[n - 1];
+        buf.get(b);
+        return new String(b, StandardCharsets.UTF_8);
+    }
+
+    LocalDateTime time() throws IOException {
+        int nanos = count();
+        if (nanos == 0) return null;
+        return LocalDateTime.ofEpochSecond(zigzag(), nanos - 1, ZoneOffset.UTC);
+    }
+
+    /** The next {@code n} bytes as their own buffer; this reader moves past them. */
+    ByteBuffer slice(int n) {
+        if (n > buf.remaining()) throw new BufferUnderflowException();
+        ByteBuffer s = buf.slice(buf.position(), n);
+        buf.position(buf.position() + n);
+        return s;
+    }
+}
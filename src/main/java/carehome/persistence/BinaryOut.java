@@ -0,0 +1,92 @@
+package carehome.persistence;
+
+
+// growable byte buffer with the varint, string and timestamp encodings of the binary file formats.
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+
+/**
+ * Unsigned varints are LEB128 (7 bits per byte, low first); signed values are zig-zagged first so
+ * small negatives stay short. A string is {@code varint(utf8 length + 1)} then its bytes, 0 being
+ * null. A timestamp is {@code varint(nanos + 1)} (0 = null) then the zig-zagged epoch second of
+ * the local date-time read as UTC. {@link BinaryIn} reads all of these back.
+ */
+final class BinaryOut {
+    private byte[] buf;
+    private int size;
+
+    BinaryOut(int capacity) {
+        buf = new byte[Math.max(16, capacity)];
+    }
+
+    int size() {
+        return size;
+    }
+
+    /** The bytes written so far, without copying; valid until the next write. */
+    ByteBuffer buffer() {
+        return ByteBuffer.wrap(buf, 0, size);
+    }
+
+    BinaryOut u8(int v) {
+        ensure(1);
+        buf[size++] = (byte) v;
+        return this;
+    }
+
+    BinaryOut u32(int v) {
+        ensure(4);
+        buf[size++] = (byte) (v >>> 24);
+        buf[size++] = (byte) (v >>> 16);
+        buf[size++] = (byte) (v >>> 8);
+        buf[size++] = (byte) v;
+        return this;
+    }
+
+    BinaryOut varint(long v) {
+        ensure(10);
+        while ((v & ~0x7FL) != 0) {
+            buf[size++] = (byte) ((v & 0x7F) | 0x80);
+            v >>>= 7;
+        }
+        buf[size++] = (byte) v;
+        return this;
+    }
+
+    BinaryOut zigzag(long v) {
+        return varint((v << 1) ^ (v >> 63));
+    }
+
+    BinaryOut bytes(byte[] b) {
+        ensure(b.length);
+        System.arraycopy(b, 0, buf, size, b.length);
+        size += b.length;
+        return this;
+    }
+
+    BinaryOut bytes(ByteBuffer b) {
+        int n = b.remaining();
+        ensure(n);
+        b.get(buf, size, n);
+        size += n;
+        return this;
+    }
+
+    BinaryOut string(String s) {
+        if (s == null) return varint(0);
+        byte[] b = s.getBytes(StandardCharsets.UTF_8);
+        return varint(b.length + 1L).bytes(b);
+    }
+
+    BinaryOut time(LocalDateTime t) {
+        if (t == null) return varint(0);
+        return varint(t.getNano() + 1L).zigzag(t.toEpochSecond(ZoneOffset.UTC));
+    }
+
+    private void ensure(int n) {
+        if (size + n > buf.length) buf = Arrays.copyOf(buf, Math.max(buf.length * 2, size + n));
+    }
+}
@@ -2,15 +2,21 @@ package carehome.persistence;
 
 
 // small helper class.
+import carehome.metrics.Metrics;
+import carehome.metrics.StorePhaseEvent;
 import carehome.model.*;
 import carehome.service.CareHome;
+import carehome.service.CareHomeSnapshot;
 
 import java.sql.*;
 import java.time.LocalDateTime;
 import java.util.*;
+import java.util.function.Supplier;
+import java.util.function.UnaryOperator;
 
 public class JdbcStore {
     private final String url;
+    private Metrics metrics = Metrics.shared();
 
     public JdbcStore() { this(makeUrl()); }
 
@@ -19,6 +25,48 @@ public class JdbcStore {
         ensureDriverLoaded();
     }
 
+    // shared with StreamingExporter, which reads the same tables with its own cursors
+    Connection connect() throws SQLException {
+        return DriverManager.getConnection(url);
+    }
+
+    /** Streaming CSV/NDJSON export of the archive and log tables in this database. */
+    public StreamingExporter exporter() {
+        return new StreamingExporter(this);
+    }
+
+    public void setMetrics(Metrics metrics) {
+        this.metrics = Objects.requireNonNull(metrics);
+    }
+
+    // consecutive table phases of one save or load: each goes to the metrics registry as
+    // store.<prefix>.<phase> and, while a JFR recording is running, out as a StorePhaseEvent
+    private final class Phases {
+        private final String prefix;
+        private final Supplier<Map<String, Integer>> counts;
+        private long start;
+        private StorePhaseEvent event;
+
+        Phases(String prefix, Supplier<Map<String, Integer>> counts) {
+            this.prefix = prefix;
+            this.counts = counts;
+            next();
+        }
+
+        private void next() {
+            start = System.nanoTime();
+            event = StorePhaseEvent.start();
+        }
+
+        /** Ends the current phase; {@code entity} is the getEntityCounts() key for its row count. */
+        void end(String phase, String entity) {
+            metrics.record("store." + prefix + "." + phase, start);
+            if (event.stop())
+                event.commit(prefix + "." + phase, entity == null ? -1 : counts.get().getOrDefault(entity, -1), url);
+            next();
+        }
+    }
+
     private static void ensureDriverLoaded() {
         try {
             Class.forName("org.sqlite.JDBC");
@@ -48,7 +96,7 @@ public class JdbcStore {
                   FOREIGN KEY(staff_id) REFERENCES staff(id)
                 );
                 CREATE TABLE IF NOT EXISTS beds(
-                  bed_id TEXT PRIMARY KEY
+                  bed_id TEXT PRIMARY KEY, bed_key INTEGER
                 );
                 CREATE TABLE IF NOT EXISTS residents(
                   id TEXT PRIMARY KEY, name TEXT, gender TEXT, age INTEGER
@@ -87,10 +135,41 @@ public class JdbcStore {
                 CREATE TABLE IF NOT EXISTS meta(
                   k TEXT PRIMARY KEY, v TEXT
                 );
+                CREATE TABLE IF NOT EXISTS medicines(
+                  id INTEGER PRIMARY KEY, name TEXT NOT NULL UNIQUE COLLATE NOCASE
+                );
             """);
+            // databases created before structured bed keys existed
+            addColumnIfMissing(c, "beds", "bed_key", "INTEGER");
+            s.executeUpdate("CREATE INDEX IF NOT EXISTS idx_beds_key ON beds(bed_key)");
+            // optimistic version stamps for conditional updates; older databases start at 0
+            addColumnIfMissing(c, "beds", "version", "INTEGER NOT NULL DEFAULT 0");
+            addColumnIfMissing(c, "prescriptions", "version", "INTEGER NOT NULL DEFAULT 0");
+            // position of a stay kept in the cold archive file; such rows carry no history of their own
+            addColumnIfMissing(c, "archives", "cold_pos", "INTEGER");
+            // dictionary-encoded medicine names; the text column is only filled for names outside the catalog
+            for (String t : List.of("medication_doses", "administrations", "archive_medication_doses", "archive_administrations"))
+                addColumnIfMissing(c, t, "medicine_id", "INTEGER");
+            // readmission lookups and per-stay archive reads
+            s.executeUpdate("CREATE INDEX IF NOT EXISTS idx_archives_resident ON archives(resident_id COLLATE NOCASE)");
+            s.executeUpdate("CREATE INDEX IF NOT EXISTS idx_archive_presc_stay ON archive_prescriptions(stay_rowid)");
+            s.executeUpdate("CREATE INDEX IF NOT EXISTS idx_archive_admin_stay ON archive_administrations(stay_rowid)");
+            s.executeUpdate("CREATE INDEX IF NOT EXISTS idx_archive_doses_presc ON archive_medication_doses(presc_id)");
         } catch (SQLException e) { throw new RuntimeException(e); }
     }
 
+    private static void addColumnIfMissing(Connection c, String table, String column, String type) throws SQLException {
+        try (Statement st = c.createStatement();
+             ResultSet rs = st.executeQuery("PRAGMA table_info(" + table + ")")) {
+            while (rs.next()) {
+                if (column.equalsIgnoreCase(rs.getString("name"))) return;
+            }
+        }
+        try (Statement st = c.createStatement()) {
+            st.executeUpdate("ALTER TABLE " + table + " ADD COLUMN " + column + " " + type);
+        }
+    }
+
     private static void setStr(PreparedStatement ps, int idx, String v) throws SQLException {
         if (v == null || v.isBlank()) ps.setNull(idx, Types.VARCHAR);
         else ps.setString(idx, v);
@@ -107,19 +186,69 @@ public class JdbcStore {
     private static void setActionLogTime(PreparedStatement ps, int idx, ActionLog al) throws SQLException {
         setLdt(ps, idx, al == null ? null : al.getTime());
     }
+    // Administration.time is never filled in by CareHome; the real timestamp is administeredAt
+    private static void setAdminTime(PreparedStatement ps, int idx, Administration a) throws SQLException {
+        if (a.administeredAt != null) setLdt(ps, idx, a.administeredAt);
+        else setActionLogTime(ps, idx, a.time);
+    }
+
+    private static void setPrescriptionTime(PreparedStatement ps, int idx, Prescription p) throws SQLException {
+        if (p.dateTime != null) setLdt(ps, idx, p.dateTime);
+        else setActionLogTime(ps, idx, p.timeCreated);
+    }
+
+    private static void setMedicine(PreparedStatement ps, int textIdx, int idIdx, MedicineCatalog cat, String name) throws SQLException {
+        int id = cat.idOf(name);
+        if (id > 0) {
+            ps.setNull(textIdx, Types.VARCHAR);
+            ps.setInt(idIdx, id);
+        } else {
+            setStr(ps, textIdx, name);
+            ps.setNull(idIdx, Types.INTEGER);
+        }
+    }
+    static String getMedicine(ResultSet rs, int textIdx, int idIdx, Map<Integer, String> names) throws SQLException {
+        int id = rs.getInt(idIdx);
+        return rs.wasNull() ? rs.getString(textIdx) : names.get(id);
+    }
 
     //  SAVE
     public void saveAll(CareHome ch) {
+        saveAll(ch.snapshot());
+    }
+
+    /**
+     * Writes a snapshot. It is frozen, so this needs no lock on the care home: take the
+     * snapshot under the lock (O(1)) and let the writers carry on while the rows go out.
+     */
+    public void saveAll(CareHomeSnapshot ch) {
+        long start = System.nanoTime();
         try (Connection c = DriverManager.getConnection(url)) {
             c.setAutoCommit(false);
 
+            Phases phases = new Phases("save", ch::getEntityCounts);
+
             // clear tables
             for (String t : List.of(
                     "logs","archive_administrations","archive_medication_doses",
                     "archive_prescriptions","archives","administrations","medication_doses",
-                    "prescriptions","bed_occupancy","residents","beds","shifts","staff","meta")) {
+                    "prescriptions","bed_occupancy","residents","beds","shifts","staff","meta","medicines")) {
                 try (Statement st = c.createStatement()) { st.executeUpdate("DELETE FROM " + t); }
             }
+            phases.end("clear", null);
+
+            // medicine dictionary; dose and administration rows reference it by id
+            MedicineCatalog cat = ch.getMedicineCatalog();
+            try (PreparedStatement ps = c.prepareStatement(
+                    "INSERT INTO medicines(id,name) VALUES(?,?)")) {
+                for (int id = 1; id <= cat.size(); id++) {
+                    ps.setInt(1, id);
+                    ps.setString(2, cat.name(id));
+                    ps.addBatch();
+                }
+                ps.executeBatch();
+            }
+            phases.end("medicines", "medicines");
 
             // staff
             try (PreparedStatement ps = c.prepareStatement(
@@ -134,12 +263,31 @@ public class JdbcStore {
                 }
                 ps.executeBatch();
             }
+            phases.end("staff", "staff");
             // meta: managerId
             try (PreparedStatement ps = c.prepareStatement(
                     "INSERT INTO meta(k,v) VALUES('managerId', ?)")) {
                 setStr(ps, 1, ch.getManagerId());
                 ps.executeUpdate();
             }
+            // meta: ward labels (the bed rows themselves carry the layout)
+            try (PreparedStatement ps = c.prepareStatement(
+                    "INSERT INTO meta(k,v) VALUES(?,?)")) {
+                for (var e : ch.getWardLabels().entrySet()) {
+                    setStr(ps, 1, "ward.label." + e.getKey());
+                    setStr(ps, 2, e.getValue());
+                    ps.addBatch();
+                }
+                // prescription id generator, so ids of purged rows are never reissued
+                setStr(ps, 1, "prescriptionSeq");
+                setStr(ps, 2, String.valueOf(ch.getPrescriptionSeq()));
+                ps.addBatch();
+                setStr(ps, 1, "rosterVersion");
+                setStr(ps, 2, String.valueOf(ch.getRosterVersion()));
+                ps.addBatch();
+                ps.executeBatch();
+            }
+            phases.end("meta", null);
 
             // shifts
             try (PreparedStatement ps = c.prepareStatement(
@@ -152,21 +300,25 @@ public class JdbcStore {
                 }
                 ps.executeBatch();
             }
+            phases.end("shifts", "shifts");
 
             // beds + occupancy + residents
             try (PreparedStatement pb = c.prepareStatement(
-                    "INSERT OR IGNORE INTO beds(bed_id) VALUES(?)");
+                    "INSERT OR IGNORE INTO beds(bed_id,bed_key,version) VALUES(?,?,?)");
                  PreparedStatement po = c.prepareStatement(
                          "INSERT OR REPLACE INTO bed_occupancy(bed_id,resident_id) VALUES(?,?)");
                  PreparedStatement pr = c.prepareStatement(
                          "INSERT OR REPLACE INTO residents(id,name,gender,age) VALUES(?,?,?,?)")) {
                 for (var e : ch.getBeds().entrySet()) {
-                    String bedId = e.getKey();
-                    Bed b = e.getValue();
-                    setStr(pb, 1, bedId); pb.addBatch();
-
-                    if (b != null && !b.isVacant()) {
-                        Resident r = b.occupant;
+                    String bedId = e.getKey().toString();
+                    CareHomeSnapshot.BedState b = e.getValue();
+                    setStr(pb, 1, bedId);
+                    pb.setInt(2, e.getKey().packed());
+                    pb.setLong(3, b.version());
+                    pb.addBatch();
+
+                    if (!b.isVacant()) {
+                        Resident r = b.occupant();
                         setStr(pr, 1, r.id);
                         setStr(pr, 2, r.name);
                         setStr(pr, 3, r.gender == null ? null : r.gender.name());
@@ -180,18 +332,16 @@ public class JdbcStore {
                 }
                 pb.executeBatch(); pr.executeBatch(); po.executeBatch();
             }
+            phases.end("beds", "beds");
 
             // prescriptions + doses
             try (PreparedStatement pp = c.prepareStatement(
-                    "INSERT INTO prescriptions(id,doctor_id,resident_id,created_ts) VALUES(?,?,?,?)");
+                    "INSERT INTO prescriptions(id,doctor_id,resident_id,created_ts,version) VALUES(?,?,?,?,?)");
                  PreparedStatement pm = c.prepareStatement(
-                         "INSERT INTO medication_doses(presc_id,medicine,dose,freq) VALUES(?,?,?,?)")) {
-
-                for (var entry : ch.getBeds().entrySet()) {
-                    Bed b = entry.getValue();
-                    if (b == null || b.isVacant()) continue;
+                         "INSERT INTO medication_doses(presc_id,medicine,dose,freq,medicine_id) VALUES(?,?,?,?,?)")) {
 
-                    List<Prescription> prescs = ch.getPrescriptionsForResident(b.occupant.id);
+                // straight from the per-resident map, so this does not depend on the number of beds
+                for (List<Prescription> prescs : ch.getActivePrescriptionsByResident().values()) {
                     if (prescs == null) continue;
 
                     for (Prescription p : prescs) {
@@ -199,15 +349,16 @@ public class JdbcStore {
                         setStr(pp, 1, p.id);
                         setStr(pp, 2, p.doctorId);
                         setStr(pp, 3, p.residentId);
-                        // created_ts comes from ActionLog (Prescription.timeCreated)
-                        setActionLogTime(pp, 4, p.timeCreated);
+                        // prescribed time; ActionLog (Prescription.timeCreated) only as a fallback
+                        setPrescriptionTime(pp, 4, p);
+                        pp.setLong(5, ch.getPrescriptionVersion(p.id));
                         pp.addBatch();
 
                         if (p.meds != null) {
                             for (MedicationDose md : p.meds) {
                                 if (md == null) continue;
                                 setStr(pm, 1, p.id);
-                                setStr(pm, 2, md.medicine);
+                                setMedicine(pm, 2, 5, cat, md.medicine);
                                 setStr(pm, 3, md.dosage);     // DB column is 'dose'
                                 setStr(pm, 4, md.frequency);
                                 pm.addBatch();
@@ -217,47 +368,62 @@ public class JdbcStore {
                 }
                 pp.executeBatch(); pm.executeBatch();
             }
+            phases.end("prescriptions", "activePrescriptions");
 
             // administrations (active)
             try (PreparedStatement pa = c.prepareStatement(
-                    "INSERT INTO administrations(nurse_id,presc_id,medicine,time_ts,notes) VALUES(?,?,?,?,?)")) {
-                for (Administration a : getAllCurrentAdministrations(ch)) {
+                    "INSERT INTO administrations(nurse_id,presc_id,medicine,time_ts,notes,medicine_id) VALUES(?,?,?,?,?,?)")) {
+                for (Administration a : ch.getAdministrations()) {
                     if (a == null) continue;
                     setStr(pa, 1, a.nurseId);
                     setStr(pa, 2, a.prescriptionId);
-                    setStr(pa, 3, a.medicine);
-                    setActionLogTime(pa, 4, a.time);
+                    setMedicine(pa, 3, 6, cat, a.medicine);
+                    setAdminTime(pa, 4, a);
                     setStr(pa, 5, a.notes);
                     pa.addBatch();
                 }
                 pa.executeBatch();
             }
+            phases.end("administrations", "administrations");
 
             // archives (flatten)
             try (PreparedStatement sa = c.prepareStatement(
-                    "INSERT INTO archives(discharged_ts,resident_id,resident_name,gender,age,bed_id) VALUES(?,?,?,?,?,?)",
+                    "INSERT INTO archives(discharged_ts,resident_id,resident_name,gender,age,bed_id,cold_pos) VALUES(?,?,?,?,?,?,?)",
                     Statement.RETURN_GENERATED_KEYS);
                  PreparedStatement sp = c.prepareStatement(
                          "INSERT INTO archive_prescriptions(stay_rowid,id,doctor_id,resident_id,created_ts) VALUES(?,?,?,?,?)");
                  PreparedStatement sm = c.prepareStatement(
-                         "INSERT INTO archive_medication_doses(presc_id,medicine,dose,freq) VALUES(?,?,?,?)");
+                         "INSERT INTO archive_medication_doses(presc_id,medicine,dose,freq,medicine_id) VALUES(?,?,?,?,?)");
                  PreparedStatement sn = c.prepareStatement(
-                         "INSERT INTO archive_administrations(stay_rowid,nurse_id,presc_id,medicine,time_ts,notes) VALUES(?,?,?,?,?,?)")) {
-
-                for (ArchivedStay s : ch.getArchives()) {
-                    if (s == null) continue;
-
-                    setLdt(sa, 1, s.dischargedAt);
-                    setStr(sa, 2, s.residentId);
-                    setStr(sa, 3, s.residentName);
-                    setStr(sa, 4, s.gender == null ? null : s.gender.name());
-                    sa.setInt(5, s.age);
-                    setStr(sa, 6, s.lastBedId);
+                         "INSERT INTO archive_administrations(stay_rowid,nurse_id,presc_id,medicine,time_ts,notes,medicine_id) VALUES(?,?,?,?,?,?,?)")) {
+
+                for (ArchiveEntry e : ch.getArchiveEntries()) {
+                    setLdt(sa, 1, e.dischargedAt);
+                    setStr(sa, 2, e.residentId);
+                    setStr(sa, 3, e.residentName);
+                    setStr(sa, 4, e.gender == null ? null : e.gender.name());
+                    sa.setInt(5, e.age);
+                    setStr(sa, 6, e.lastBedId);
+                    if (e.isCold()) sa.setLong(7, e.coldPosition);
+                    else sa.setNull(7, Types.INTEGER);
                     sa.executeUpdate();
 
                     long stayRowId;
                     try (ResultSet rs = sa.getGeneratedKeys()) { rs.next(); stayRowId = rs.getLong(1); }
 
+                    // a cold stay is written by reference, not decoded; its ids go along so they stay reserved
+                    if (e.isCold()) {
+                        for (String id : e.prescriptionIds) {
+                            sp.setLong(1, stayRowId);
+                            setStr(sp, 2, id);
+                            for (int i = 3; i <= 5; i++) sp.setNull(i, Types.VARCHAR);
+                            sp.addBatch();
+                        }
+                        sp.executeBatch();
+                        continue;
+                    }
+                    ArchivedStay s = e.stay;
+
                     if (s.prescriptions != null) {
                         for (Prescription p : s.prescriptions) {
                             if (p == null) continue;
@@ -265,15 +431,15 @@ public class JdbcStore {
                             setStr(sp, 2, p.id);
                             setStr(sp, 3, p.doctorId);
                             setStr(sp, 4, p.residentId);
-                            // created_ts for archived prescriptions (ActionLog on Prescription)
-                            setActionLogTime(sp, 5, p.timeCreated);
+                            // created_ts for archived prescriptions
+                            setPrescriptionTime(sp, 5, p);
                             sp.addBatch();
 
                             if (p.meds != null) {
                                 for (MedicationDose md : p.meds) {
                                     if (md == null) continue;
                                     setStr(sm, 1, p.id);
-                                    setStr(sm, 2, md.medicine);
+                                    setMedicine(sm, 2, 5, cat, md.medicine);
                                     setStr(sm, 3, md.dosage);
                                     setStr(sm, 4, md.frequency);
                                     sm.addBatch();
@@ -289,9 +455,8 @@ public class JdbcStore {
                             sn.setLong(1, stayRowId);
                             setStr(sn, 2, a.nurseId);
                             setStr(sn, 3, a.prescriptionId);
-                            setStr(sn, 4, a.medicine);
-                            // was: setLdt(sn, 5, a.time);  // a.time is ActionLog
-                            setActionLogTime(sn, 5, a.time);   // uses ActionLog.getTime() safely
+                            setMedicine(sn, 4, 7, cat, a.medicine);
+                            setAdminTime(sn, 5, a);
                             setStr(sn, 6, a.notes);
                             sn.addBatch();
                         }
@@ -301,6 +466,7 @@ public class JdbcStore {
                     sp.executeBatch(); sm.executeBatch(); sn.executeBatch();
                 }
             }
+            phases.end("archives", "archivedStays");
 
             // logs
             try (PreparedStatement pl = c.prepareStatement(
@@ -314,8 +480,69 @@ public class JdbcStore {
                 }
                 pl.executeBatch();
             }
+            phases.end("logs", "logs");
 
             c.commit();
+            phases.end("commit", null);
+        } catch (SQLException e) {
+            metrics.error("store.saveAll");
+            throw new RuntimeException(e);
+        } finally {
+            metrics.record("store.saveAll", start);
+        }
+    }
+
+    /**
+     * Appends one medication round's administrations and the log entries it wrote in a single
+     * transaction. Writes nothing and returns false when a prescription they refer to is not in the
+     * database yet (added since the last {@link #saveAll}); the caller then saves everything.
+     */
+    public boolean appendAdministrations(List<Administration> round, List<ActionLog> logs) {
+        try (Connection c = DriverManager.getConnection(url)) {
+            c.setAutoCommit(false);
+            // names already in this database's dictionary, matched the way the catalog matches them
+            Map<String, Integer> ids = new HashMap<>();
+            try (Statement st = c.createStatement(); ResultSet rs = st.executeQuery("SELECT id,name FROM medicines")) {
+                while (rs.next()) ids.putIfAbsent(MedicineCatalog.key(rs.getString(2)), rs.getInt(1));
+            }
+            try (PreparedStatement pp = c.prepareStatement("SELECT 1 FROM prescriptions WHERE id=?")) {
+                Set<String> checked = new HashSet<>();
+                for (Administration a : round) {
+                    if (a.prescriptionId == null || !checked.add(a.prescriptionId)) continue;
+                    pp.setString(1, a.prescriptionId);
+                    try (ResultSet rs = pp.executeQuery()) {
+                        if (!rs.next()) { c.rollback(); return false; }
+                    }
+                }
+            }
+            try (PreparedStatement pa = c.prepareStatement(
+                    "INSERT INTO administrations(nurse_id,presc_id,medicine,time_ts,notes,medicine_id) VALUES(?,?,?,?,?,?)")) {
+                for (Administration a : round) {
+                    setStr(pa, 1, a.nurseId);
+                    setStr(pa, 2, a.prescriptionId);
+                    Integer mid = ids.get(MedicineCatalog.key(a.medicine));
+                    if (mid != null) { pa.setNull(3, Types.VARCHAR); pa.setInt(6, mid); }
+                    else { setStr(pa, 3, a.medicine); pa.setNull(6, Types.INTEGER); }
+                    setAdminTime(pa, 4, a);
+                    setStr(pa, 5, a.notes);
+                    pa.addBatch();
+                }
+                pa.executeBatch();
+                try (PreparedStatement pl = c.prepareStatement("INSERT INTO logs(time_ts,staff_id,action) VALUES(?,?,?)")) {
+                    for (ActionLog l : logs) {
+                        setLdt(pl, 1, l.getTime());
+                        setStr(pl, 2, l.getStaffId());
+                        setStr(pl, 3, l.getAction());
+                        pl.addBatch();
+                    }
+                    pl.executeBatch();
+                }
+                c.commit();
+                return true;
+            } catch (SQLException e) {
+                c.rollback();
+                throw e;
+            }
         } catch (SQLException e) {
             throw new RuntimeException(e);
         }
@@ -323,10 +550,13 @@ public class JdbcStore {
 
     /** LOAD  */
     public CareHome loadAll() {
+        long start = System.nanoTime();
         CareHome ch = new CareHome();
         try (Connection c = DriverManager.getConnection(url)) {
             c.setAutoCommit(false);
 
+            Phases phases = new Phases("load", ch::getEntityCounts);
+
             // staff
             Map<String, Staff> staff = new LinkedHashMap<>();
             try (PreparedStatement ps = c.prepareStatement(
@@ -340,27 +570,57 @@ public class JdbcStore {
                     staff.put(s.getId(), s);
                 }
             }
+            phases.end("staff", "staff");
 
             // beds + occupancy
             try (PreparedStatement ps = c.prepareStatement("""
-                    SELECT b.bed_id, o.resident_id, r.name, r.gender, r.age
+                    SELECT b.bed_id, o.resident_id, r.name, r.gender, r.age, b.bed_key, b.version
                     FROM beds b
                     LEFT JOIN bed_occupancy o ON b.bed_id=o.bed_id
                     LEFT JOIN residents r ON r.id=o.resident_id
+                    ORDER BY b.bed_key
                 """);
                  ResultSet rs = ps.executeQuery()) {
+                List<BedKey> keys = new ArrayList<>();
+                Map<BedKey, Resident> occupants = new HashMap<>();
+                Map<BedKey, Long> versions = new HashMap<>();
                 while (rs.next()) {
-                    String bedId = rs.getString(1);
+                    int packed = rs.getInt(6);
+                    // rows written before bed_key existed only carry the string id
+                    BedKey key = rs.wasNull() ? BedKey.parse(rs.getString(1)) : BedKey.fromPacked(packed);
+                    keys.add(key);
+                    if (rs.getLong(7) != 0) versions.put(key, rs.getLong(7));
                     if (rs.getString(2) != null) {
-                        Resident r = new Resident(
+                        occupants.put(key, new Resident(
                                 rs.getString(2), rs.getString(3),
-                                Gender.valueOf(rs.getString(4)), rs.getInt(5));
-                        ch.rawSetResidentInBed(bedId, r);
-                    } else {
-                        ch.rawSetResidentInBed(bedId, null);
+                                Gender.valueOf(rs.getString(4)), rs.getInt(5)));
                     }
                 }
+                // legacy rows have NULL keys and sort first, so re-sort before the bulk build
+                keys.sort(null);
+                ch.rawAddBeds(keys);
+                for (var e : occupants.entrySet()) ch.rawSetResidentInBed(e.getKey(), e.getValue());
+                // after the occupants, whose placement bumps the version
+                for (BedKey key : keys) ch.rawSetBedVersion(key, versions.getOrDefault(key, 0L));
+            }
+            try (PreparedStatement ps = c.prepareStatement(
+                    "SELECT k,v FROM meta WHERE k LIKE 'ward.label.%'");
+                 ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    ch.rawSetWardLabel(Integer.parseInt(rs.getString(1).substring("ward.label.".length())), rs.getString(2));
+                }
+            }
+            try (PreparedStatement ps = c.prepareStatement(
+                    "SELECT v FROM meta WHERE k='prescriptionSeq'");
+                 ResultSet rs = ps.executeQuery()) {
+                if (rs.next() && rs.getString(1) != null) ch.rawSetPrescriptionSeq(Long.parseLong(rs.getString(1)));
+            }
+            try (PreparedStatement ps = c.prepareStatement(
+                    "SELECT v FROM meta WHERE k='rosterVersion'");
+                 ResultSet rs = ps.executeQuery()) {
+                if (rs.next() && rs.getString(1) != null) ch.rawSetRosterVersion(Long.parseLong(rs.getString(1)));
             }
+            phases.end("beds", "beds");
 
             // shifts
             try (PreparedStatement ps = c.prepareStatement(
@@ -374,19 +634,28 @@ public class JdbcStore {
                     ));
                 }
             }
+            phases.end("shifts", "shifts");
+
+            // medicine dictionary (ids are local to this database; names go through the catalog)
+            Map<Integer, String> medNames = new HashMap<>();
+            try (PreparedStatement ps = c.prepareStatement("SELECT id,name FROM medicines");
+                 ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) medNames.put(rs.getInt(1), ch.rawInternMedicine(rs.getString(2)));
+            }
+            phases.end("medicines", "medicines");
 
             // prescriptions + doses
             Map<String, List<MedicationDose>> doses = new HashMap<>();
             try (PreparedStatement pm = c.prepareStatement(
-                    "SELECT presc_id,medicine,dose,freq FROM medication_doses");
+                    "SELECT presc_id,medicine,dose,freq,medicine_id FROM medication_doses");
                  ResultSet rm = pm.executeQuery()) {
                 while (rm.next()) {
                     doses.computeIfAbsent(rm.getString(1), k -> new ArrayList<>())
-                            .add(new MedicationDose(rm.getString(2), rm.getString(3), rm.getString(4)));
+                            .add(new MedicationDose(getMedicine(rm, 2, 5, medNames), rm.getString(3), rm.getString(4)));
                 }
             }
             try (PreparedStatement pp = c.prepareStatement(
-                    "SELECT id,doctor_id,resident_id,created_ts FROM prescriptions");
+                    "SELECT id,doctor_id,resident_id,created_ts,version FROM prescriptions");
                  ResultSet rp = pp.executeQuery()) {
                 while (rp.next()) {
                     String pid = rp.getString(1);
@@ -395,73 +664,34 @@ public class JdbcStore {
                             parseLdt(rp.getString(4)),
                             doses.getOrDefault(pid, List.of()));
                     ch.rawAddPrescription(p.residentId, p);
+                    ch.rawSetPrescriptionVersion(pid, rp.getLong(5));
                 }
             }
+            phases.end("prescriptions", "activePrescriptions");
 
             // administrations (active)
             try (PreparedStatement pa = c.prepareStatement(
-                    "SELECT nurse_id,presc_id,medicine,time_ts,notes FROM administrations");
+                    "SELECT nurse_id,presc_id,medicine,time_ts,notes,medicine_id FROM administrations");
                  ResultSet ra = pa.executeQuery()) {
                 while (ra.next()) {
                     ch.rawAddAdministration(new Administration(
-                            ra.getString(1), ra.getString(2), ra.getString(3),
+                            ra.getString(1), ra.getString(2), ch.rawInternMedicine(getMedicine(ra, 3, 6, medNames)),
                             parseLdt(ra.getString(4)), ra.getString(5)));
                 }
             }
+            phases.end("administrations", "administrations");
 
-            // archives (flattened)
+            // archives (flattened); cold ones stay cold, to be read from the archive file once it is attached
             try (PreparedStatement sa = c.prepareStatement(
-                    "SELECT rowid,discharged_ts,resident_id,resident_name,gender,age,bed_id FROM archives");
+                    "SELECT rowid,discharged_ts,resident_id,resident_name,gender,age,bed_id,cold_pos FROM archives");
                  ResultSet rs = sa.executeQuery()) {
                 while (rs.next()) {
-                    long row = rs.getLong(1);
-                    LocalDateTime when = parseLdt(rs.getString(2));
-                    String rid  = rs.getString(3);
-                    String name = rs.getString(4);
-                    Gender g    = Gender.valueOf(rs.getString(5));
-                    int age     = rs.getInt(6);
-                    String bedId= rs.getString(7);
-
-                    // archived prescriptions + doses
-                    Map<String, List<MedicationDose>> adoses = new HashMap<>();
-                    try (PreparedStatement sm = c.prepareStatement(
-                            "SELECT presc_id,medicine,dose,freq FROM archive_medication_doses " +
-                                    "WHERE presc_id IN (SELECT id FROM archive_prescriptions WHERE stay_rowid=?)")) {
-                        sm.setLong(1, row);
-                        try (ResultSet rm = sm.executeQuery()) {
-                            while (rm.next()) {
-                                adoses.computeIfAbsent(rm.getString(1), k -> new ArrayList<>())
-                                        .add(new MedicationDose(rm.getString(2), rm.getString(3), rm.getString(4)));
-                            }
-                        }
-                    }
-                    List<Prescription> ap = new ArrayList<>();
-                    try (PreparedStatement sp = c.prepareStatement(
-                            "SELECT id,doctor_id,resident_id,created_ts FROM archive_prescriptions WHERE stay_rowid=?")) {
-                        sp.setLong(1, row);
-                        try (ResultSet rp = sp.executeQuery()) {
-                            while (rp.next()) {
-                                String pid = rp.getString(1);
-                                ap.add(new Prescription(pid, rp.getString(2), rp.getString(3),
-                                        parseLdt(rp.getString(4)),
-                                        adoses.getOrDefault(pid, List.of())));
-                            }
-                        }
-                    }
-                    List<Administration> aa = new ArrayList<>();
-                    try (PreparedStatement sn = c.prepareStatement(
-                            "SELECT nurse_id,presc_id,medicine,time_ts,notes FROM archive_administrations WHERE stay_rowid=?")) {
-                        sn.setLong(1, row);
-                        try (ResultSet rn = sn.executeQuery()) {
-                            while (rn.next()) {
-                                aa.add(new Administration(rn.getString(1), rn.getString(2), rn.getString(3),
-                                        parseLdt(rn.getString(4)), rn.getString(5)));
-                            }
-                        }
-                    }
-                    ch.rawAddArchive(new ArchivedStay(rid, name, g, age, bedId, when, ap, aa));
+                    long coldPos = rs.getLong(8);
+                    if (rs.wasNull()) ch.rawAddArchive(readArchivedStay(c, rs, medNames, ch::rawInternMedicine));
+                    else ch.rawAddColdArchive(ArchiveEntry.cold(readArchiveHeader(rs), readColdPrescriptionIds(c, rs.getLong(1)), coldPos));
                 }
             }
+            phases.end("archives", "archivedStays");
 
             // logs
             try (PreparedStatement pl = c.prepareStatement(
@@ -475,21 +705,112 @@ public class JdbcStore {
                     ));
                 }
             }
+            phases.end("logs", "logs");
 
             c.commit();
-        } catch (SQLException e) { throw new RuntimeException(e); }
+            phases.end("commit", null);
+        } catch (SQLException e) {
+            metrics.error("store.loadAll");
+            throw new RuntimeException(e);
+        } finally {
+            metrics.record("store.loadAll", start);
+        }
         return ch;
     }
 
-    private List<Administration> getAllCurrentAdministrations(CareHome ch) {
-        try {
-            var f = CareHome.class.getDeclaredField("administrations");
-            f.setAccessible(true);
-            @SuppressWarnings("unchecked")
-            List<Administration> list = (List<Administration>) f.get(ch);
-            return (list == null) ? new java.util.ArrayList<>() : new java.util.ArrayList<>(list);
-        } catch (Exception e) {
-            throw new RuntimeException(e);
+    /**
+     * Archived stays of one resident, oldest first, straight from the database. Uses the
+     * resident_id index, so the cost does not grow with the size of the archive. A stay kept in
+     * the cold archive file comes back as its header only, without prescriptions or doses.
+     */
+    public List<ArchivedStay> loadArchivedStays(String residentId) {
+        if (residentId == null || residentId.isBlank()) return List.of();
+        List<ArchivedStay> out = new ArrayList<>();
+        try (Connection c = DriverManager.getConnection(url)) {
+            Map<Integer, String> medNames = new HashMap<>();
+            try (PreparedStatement ps = c.prepareStatement("SELECT id,name FROM medicines");
+                 ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) medNames.put(rs.getInt(1), rs.getString(2));
+            }
+            try (PreparedStatement sa = c.prepareStatement(
+                    "SELECT rowid,discharged_ts,resident_id,resident_name,gender,age,bed_id,cold_pos FROM archives " +
+                            "WHERE resident_id=? COLLATE NOCASE ORDER BY rowid")) {
+                sa.setString(1, residentId.trim());
+                try (ResultSet rs = sa.executeQuery()) {
+                    while (rs.next())
+                        out.add(rs.getObject(8) == null ? readArchivedStay(c, rs, medNames, m -> m) : readArchiveHeader(rs));
+                }
+            }
+        } catch (SQLException e) { throw new RuntimeException(e); }
+        return out;
+    }
+
+    // one archives row (rowid,discharged_ts,resident_id,resident_name,gender,age,bed_id), no history
+    private static ArchivedStay readArchiveHeader(ResultSet rs) throws SQLException {
+        return new ArchivedStay(rs.getString(3), rs.getString(4), Gender.valueOf(rs.getString(5)), rs.getInt(6),
+                rs.getString(7), parseLdt(rs.getString(2)), List.of(), List.of());
+    }
+
+    private static List<String> readColdPrescriptionIds(Connection c, long row) throws SQLException {
+        List<String> ids = new ArrayList<>();
+        try (PreparedStatement sp = c.prepareStatement("SELECT id FROM archive_prescriptions WHERE stay_rowid=?")) {
+            sp.setLong(1, row);
+            try (ResultSet rp = sp.executeQuery()) {
+                while (rp.next()) ids.add(rp.getString(1));
+            }
+        }
+        return ids;
+    }
+
+    // the same row with its prescriptions and administrations
+    private static ArchivedStay readArchivedStay(Connection c, ResultSet rs, Map<Integer, String> medNames,
+                                                 UnaryOperator<String> intern) throws SQLException {
+        long row = rs.getLong(1);
+        LocalDateTime when = parseLdt(rs.getString(2));
+        String rid  = rs.getString(3);
+        String name = rs.getString(4);
+        Gender g    = Gender.valueOf(rs.getString(5));
+        int age     = rs.getInt(6);
+        String bedId= rs.getString(7);
+
+        // archived prescriptions + doses
+        Map<String, List<MedicationDose>> adoses = new HashMap<>();
+        try (PreparedStatement sm = c.prepareStatement(
+                "SELECT presc_id,medicine,dose,freq,medicine_id FROM archive_medication_doses " +
+                        "WHERE presc_id IN (SELECT id FROM archive_prescriptions WHERE stay_rowid=?)")) {
+            sm.setLong(1, row);
+            try (ResultSet rm = sm.executeQuery()) {
+                while (rm.next()) {
+                    adoses.computeIfAbsent(rm.getString(1), k -> new ArrayList<>())
+                            .add(new MedicationDose(getMedicine(rm, 2, 5, medNames), rm.getString(3), rm.getString(4)));
+                }
+            }
+        }
+        List<Prescription> ap = new ArrayList<>();
+        try (PreparedStatement sp = c.prepareStatement(
+                "SELECT id,doctor_id,resident_id,created_ts FROM archive_prescriptions WHERE stay_rowid=?")) {
+            sp.setLong(1, row);
+            try (ResultSet rp = sp.executeQuery()) {
+                while (rp.next()) {
+                    String pid = rp.getString(1);
+                    ap.add(new Prescription(pid, rp.getString(2), rp.getString(3),
+                            parseLdt(rp.getString(4)),
+                            adoses.getOrDefault(pid, List.of())));
+                }
+            }
+        }
+        List<Administration> aa = new ArrayList<>();
+        try (PreparedStatement sn = c.prepareStatement(
+                "SELECT nurse_id,presc_id,medicine,time_ts,notes,medicine_id FROM archive_administrations WHERE stay_rowid=?")) {
+            sn.setLong(1, row);
+            try (ResultSet rn = sn.executeQuery()) {
+                while (rn.next()) {
+                    aa.add(new Administration(rn.getString(1), rn.getString(2),
+                            intern.apply(getMedicine(rn, 3, 6, medNames)),
+                            parseLdt(rn.getString(4)), rn.getString(5)));
+                }
+            }
         }
+        return new ArchivedStay(rid, name, g, age, bedId, when, ap, aa);
     }
 }
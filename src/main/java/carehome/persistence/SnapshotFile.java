@@ -0,0 +1,399 @@
+package carehome.persistence;
+
+
+// compact, versioned binary snapshot of a whole care home, for fast restarts and backups.
+import carehome.metrics.Metrics;
+import carehome.model.*;
+import carehome.service.CareHome;
+import carehome.service.CareHomeSnapshot;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.*;
+
+/**
+ * File layout (big-endian):
+ * <pre>
+ *   "CHSN"  u16 format version  u16 section count
+ *   per section:  u8 tag  u32 payload length  payload
+ * </pre>
+ * The first section is the string dictionary; ids, names, medicine names, dosages and
+ * frequencies elsewhere are varint references into it (0 = null), so each appears once however
+ * often it is used. Free text (log actions, administration notes) is stored inline. Bed keys are
+ * delta-encoded in bed order, timestamps are epoch seconds plus nanos (see {@link BinaryOut}).
+ * A reader skips sections with tags it does not know, so a later format can add sections
+ * without breaking older readers; a changed encoding of an existing section bumps the version.
+ * <p>
+ * Written to {@code <file>.part} through a FileChannel and renamed over the old file, so a crash
+ * mid-write keeps the previous snapshot. Read through a read-only memory mapping.
+ */
+public class SnapshotFile {
+    public static final int FORMAT_VERSION = 1;
+
+    private static final int MAGIC = ('C' << 24) | ('H' << 16) | ('S' << 8) | 'N';
+    private static final int STRINGS = 1, META = 2, MEDICINES = 3, STAFF = 4, WARDS = 5, BEDS = 6, SHIFTS = 7,
+            PRESCRIPTIONS = 8, ADMINISTRATIONS = 9, ARCHIVES = 10, LOGS = 11;
+
+    private final Path file;
+    private Metrics metrics = Metrics.shared();
+
+    public SnapshotFile(Path file) {
+        this.file = Objects.requireNonNull(file);
+    }
+
+    public Path getPath() {
+        return file;
+    }
+
+    public void setMetrics(Metrics metrics) {
+        this.metrics = Objects.requireNonNull(metrics);
+    }
+
+    //  SAVE
+
+    public long save(CareHome ch) throws IOException {
+        return save(ch.snapshot());
+    }
+
+    /** Writes the snapshot; returns the file size in bytes. */
+    public long save(CareHomeSnapshot snap) throws IOException {
+        long start = System.nanoTime();
+        try {
+            Writer w = new Writer();
+            w.encode(snap);
+
+            Path part = file.resolveSibling(file.getFileName() + ".part");
+            long size;
+            try (FileChannel out = FileChannel.open(part, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING)) {
+                List<ByteBuffer> gather = new ArrayList<>();
+                gather.add(ByteBuffer.allocate(8).putInt(MAGIC).putShort((short) FORMAT_VERSION)
+                        .putShort((short) w.sections.size()).flip());
+                for (var e : w.sections.entrySet()) {
+                    gather.add(ByteBuffer.allocate(5).put((byte) (int) e.getKey()).putInt(e.getValue().size()).flip());
+                    gather.add(e.getValue().buffer());
+                }
+                ByteBuffer[] array = gather.toArray(ByteBuffer[]::new);
+                while (Arrays.stream(array).anyMatch(ByteBuffer::hasRemaining)) out.write(array);
+                out.force(true);
+                size = out.size();
+            }
+            Files.move(part, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            return size;
+        } catch (IOException | RuntimeException e) {
+            metrics.error("snapshot.save");
+            throw e;
+        } finally {
+            metrics.record("snapshot.save", start);
+        }
+    }
+
+    // encodes each section into its own buffer; the dictionary fills as the others are written
+    private static final class Writer {
+        final SortedMap<Integer, BinaryOut> sections = new TreeMap<>();
+        private final Map<String, Integer> ids = new HashMap<>();
+        private final BinaryOut strings = new BinaryOut(4096);
+        private MedicineCatalog medicines;
+
+        void encode(CareHomeSnapshot s) {
+            sections.put(STRINGS, strings);
+            medicines = s.getMedicineCatalog();
+
+            BinaryOut m = section(META, 16);
+            m.varint(s.getPrescriptionSeq()).varint(s.getRosterVersion());
+
+            BinaryOut med = section(MEDICINES, 4 * medicines.size());
+            med.varint(medicines.size());
+            for (int id = 1; id <= medicines.size(); id++) ref(med, medicines.name(id));
+
+            Collection<Staff> staff = s.getStaffById().values();
+            BinaryOut st = section(STAFF, 16 * staff.size());
+            st.varint(staff.size());
+            for (Staff x : staff) {
+                ref(st, x.getId());
+                ref(st, x.getName());
+                st.u8(x.getRole() == null ? 0 : x.getRole().ordinal() + 1);
+                ref(st, x.getUsername());
+                ref(st, x.getPassword());
+            }
+
+            Map<Integer, String> labels = s.getWardLabels();
+            BinaryOut wd = section(WARDS, 8 * labels.size());
+            wd.varint(labels.size());
+            for (var e : labels.entrySet()) {
+                wd.varint(e.getKey());
+                ref(wd, e.getValue());
+            }
+
+            var beds = s.getBeds();
+            BinaryOut bd = section(BEDS, 4 * beds.size());
+            bd.varint(beds.size());
+            int prev = 0;
+            for (CareHomeSnapshot.BedState b : beds.values()) {
+                bd.varint(b.key().packed() - prev).varint(b.version());
+                prev = b.key().packed();
+                Resident r = b.occupant();
+                if (r == null) { bd.u8(0); continue; }
+                bd.u8(gender(r.gender));
+                ref(bd, r.id);
+                ref(bd, r.name);
+                bd.varint(r.age);
+            }
+
+            List<Shift> shifts = s.getShifts();
+            BinaryOut sh = section(SHIFTS, 12 * shifts.size());
+            sh.varint(shifts.size());
+            for (Shift x : shifts) {
+                ref(sh, x.getStaffId());
+                sh.time(x.getStart()).time(x.getEnd());
+            }
+
+            Map<String, List<Prescription>> active = s.getActivePrescriptionsByResident();
+            BinaryOut pr = section(PRESCRIPTIONS, 64 * active.size());
+            pr.varint(active.values().stream().mapToInt(List::size).sum());
+            for (List<Prescription> ps : active.values()) for (Prescription p : ps) {
+                prescription(pr, p);
+                pr.varint(s.getPrescriptionVersion(p.id));
+            }
+
+            List<Administration> admins = s.getAdministrations();
+            BinaryOut ad = section(ADMINISTRATIONS, 24 * admins.size());
+            ad.varint(admins.size());
+            for (Administration a : admins) administration(ad, a);
+
+            List<ArchivedStay> archives = s.getArchives();
+            BinaryOut ar = section(ARCHIVES, 128 * archives.size());
+            ar.varint(archives.size());
+            for (ArchivedStay a : archives) {
+                ref(ar, a.residentId);
+                ref(ar, a.residentName);
+                ar.u8(gender(a.gender)).varint(a.age);
+                ref(ar, a.lastBedId);
+                ar.time(a.dischargedAt);
+                List<Prescription> ps = a.prescriptions == null ? List.of() : a.prescriptions;
+                ar.varint(ps.size());
+                for (Prescription p : ps) prescription(ar, p);
+                List<Administration> as = a.administrations == null ? List.of() : a.administrations;
+                ar.varint(as.size());
+                for (Administration x : as) administration(ar, x);
+            }
+
+            List<ActionLog> logs = s.getLogs();
+            BinaryOut lg = section(LOGS, 48 * logs.size());
+            lg.varint(logs.size());
+            for (ActionLog l : logs) {
+                lg.time(l.time);
+                ref(lg, l.staffId);
+                lg.string(l.action);
+            }
+        }
+
+        private void prescription(BinaryOut o, Prescription p) {
+            ref(o, p.id);
+            ref(o, p.doctorId);
+            ref(o, p.residentId);
+            o.time(p.dateTime);
+            List<MedicationDose> meds = p.meds == null ? List.of() : p.meds;
+            o.varint(meds.size());
+            for (MedicationDose md : meds) {
+                ref(o, md.medicine);
+                ref(o, md.dosage);
+                ref(o, md.frequency);
+            }
+        }
+
+        private void administration(BinaryOut o, Administration a) {
+            ref(o, a.nurseId);
+            ref(o, a.prescriptionId);
+            ref(o, a.medicine);
+            o.time(a.administeredAt);
+            o.string(a.notes);
+        }
+
+        private BinaryOut section(int tag, int sizeHint) {
+            BinaryOut o = new BinaryOut(Math.min(sizeHint, 1 << 24));
+            sections.put(tag, o);
+            return o;
+        }
+
+        // dictionary entries are numbered in order of first use, starting at 1
+        private void ref(BinaryOut o, String s) {
+            if (s == null) { o.varint(0); return; }
+            Integer id = ids.get(s);
+            if (id == null) {
+                id = ids.size() + 1;
+                ids.put(s, id);
+                strings.string(s);
+            }
+            o.varint(id);
+        }
+
+        private static int gender(Gender g) {
+            return g == null ? 0 : g.ordinal() + 1;
+        }
+    }
+
+    //  LOAD
+
+    /** Reads the file into a new care home, in the same order as JdbcStore.loadAll. */
+    public CareHome load() throws IOException {
+        long start = System.nanoTime();
+        try (FileChannel in = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer map = in.map(FileChannel.MapMode.READ_ONLY, 0, in.size());
+            return new Reader(sections(map)).decode();
+        } catch (BufferUnderflowException e) {
+            metrics.error("snapshot.load");
+            throw new IOException("Snapshot " + file + " is truncated", e);
+        } catch (IOException | RuntimeException e) {
+            metrics.error("snapshot.load");
+            throw e;
+        } finally {
+            metrics.record("snapshot.load", start);
+        }
+    }
+
+    private Map<Integer, ByteBuffer> sections(ByteBuffer map) throws IOException {
+        BinaryIn in = new BinaryIn(map);
+        if (map.remaining() < 8 || in.u32() != MAGIC) throw new IOException(file + " is not a care home snapshot");
+        int version = (in.u8() << 8) | in.u8();
+        if (version > FORMAT_VERSION)
+            throw new IOException("Snapshot " + file + " has format version " + version + "; this build reads up to " + FORMAT_VERSION);
+        int count = (in.u8() << 8) | in.u8();
+        Map<Integer, ByteBuffer> out = new HashMap<>();
+        for (int i = 0; i < count; i++) {
+            int tag = in.u8();
+            int len = in.u32();
+            if (len < 0) throw new IOException("Snapshot " + file + " has a corrupt section header");
+            out.put(tag, in.slice(len));
+        }
+        return out;
+    }
+
+    private static final class Reader {
+        private final Map<Integer, ByteBuffer> sections;
+        private String[] strings;
+        private final CareHome ch = new CareHome();
+
+        Reader(Map<Integer, ByteBuffer> sections) {
+            this.sections = sections;
+        }
+
+        CareHome decode() throws IOException {
+            BinaryIn s = section(STRINGS);
+            List<String> table = new ArrayList<>();
+            table.add(null);
+            while (s.hasRemaining()) table.add(s.string());
+            strings = table.toArray(String[]::new);
+
+            BinaryIn med = section(MEDICINES);
+            for (int i = med.count(); i > 0; i--) ch.rawInternMedicine(ref(med));
+
+            BinaryIn st = section(STAFF);
+            for (int i = st.count(); i > 0; i--) {
+                String id = ref(st), name = ref(st);
+                Role role = enumOf(Role.values(), st.u8());
+                String user = ref(st), password = ref(st);
+                ch.rawPutStaff(new Staff(id, name, role));
+                ch.rawSetCredentials(id, user, password);
+            }
+
+            BinaryIn bd = section(BEDS);
+            int n = bd.count();
+            List<BedKey> keys = new ArrayList<>(n);
+            Map<BedKey, Resident> occupants = new HashMap<>();
+            long[] versions = new long[n];
+            int packed = 0;
+            for (int i = 0; i < n; i++) {
+                packed += bd.count();
+                BedKey key = BedKey.fromPacked(packed);
+                keys.add(key);
+                versions[i] = bd.varint();
+                int g = bd.u8();
+                if (g == 0) continue;
+                String id = ref(bd), name = ref(bd);
+                occupants.put(key, new Resident(id, name, enumOf(Gender.values(), g), bd.count()));
+            }
+            ch.rawAddBeds(keys);
+            for (var e : occupants.entrySet()) ch.rawSetResidentInBed(e.getKey(), e.getValue());
+            for (int i = 0; i < n; i++) ch.rawSetBedVersion(keys.get(i), versions[i]);
+
+            BinaryIn m = section(META);
+            ch.rawSetPrescriptionSeq(m.varint());
+            ch.rawSetRosterVersion(m.varint());
+
+            BinaryIn wd = section(WARDS);
+            for (int i = wd.count(); i > 0; i--) ch.rawSetWardLabel(wd.count(), ref(wd));
+
+            BinaryIn sh = section(SHIFTS);
+            for (int i = sh.count(); i > 0; i--) ch.rawAddShift(new Shift(ref(sh), sh.time(), sh.time()));
+
+            BinaryIn pr = section(PRESCRIPTIONS);
+            for (int i = pr.count(); i > 0; i--) {
+                Prescription p = prescription(pr);
+                ch.rawAddPrescription(p.residentId, p);
+                ch.rawSetPrescriptionVersion(p.id, pr.varint());
+            }
+
+            BinaryIn ad = section(ADMINISTRATIONS);
+            for (int i = ad.count(); i > 0; i--) ch.rawAddAdministration(administration(ad));
+
+            BinaryIn ar = section(ARCHIVES);
+            for (int i = ar.count(); i > 0; i--) {
+                String rid = ref(ar), name = ref(ar);
+                Gender g = enumOf(Gender.values(), ar.u8());
+                int age = ar.count();
+                String bed = ref(ar);
+                var at = ar.time();
+                List<Prescription> ps = new ArrayList<>();
+                for (int j = ar.count(); j > 0; j--) ps.add(prescription(ar));
+                List<Administration> as = new ArrayList<>();
+                for (int j = ar.count(); j > 0; j--) as.add(administration(ar));
+                ch.rawAddArchive(new ArchivedStay(rid, name, g, age, bed, at, ps, as));
+            }
+
+            BinaryIn lg = section(LOGS);
+            for (int i = lg.count(); i > 0; i--) {
+                var time = lg.time();
+                String staff = ref(lg);
+                ch.rawAddLog(new ActionLog(staff, lg.string(), time));
+            }
+            return ch;
+        }
+
+        private Prescription prescription(BinaryIn in) throws IOException {
+            String id = ref(in), doctor = ref(in), resident = ref(in);
+            var at = in.time();
+            int n = in.count();
+            List<MedicationDose> meds = new ArrayList<>(n);
+            for (int i = 0; i < n; i++) meds.add(new MedicationDose(ref(in), ref(in), ref(in)));
+            return new Prescription(id, doctor, resident, at, meds);
+        }
+
+        private Administration administration(BinaryIn in) throws IOException {
+            String nurse = ref(in), presc = ref(in), medicine = ref(in);
+            return new Administration(nurse, presc, medicine, in.time(), in.string());
+        }
+
+        // a missing section reads as empty, so files without e.g. archives still load
+        private BinaryIn section(int tag) {
+            ByteBuffer b = sections.get(tag);
+            return new BinaryIn(b == null ? ByteBuffer.wrap(new byte[]{0}) : b.duplicate());
+        }
+
+        private String ref(BinaryIn in) throws IOException {
+            int id = in.count();
+            if (id >= strings.length) throw new IOException("String reference " + id + " out of range");
+            return strings[id];
+        }
+
+        private static <E> E enumOf(E[] values, int code) throws IOException {
+            if (code == 0) return null;
+            if (code > values.length) throw new IOException("Unknown enum code " + code);
+            return values[code - 1];
+        }
+    }
+}
@@ -0,0 +1,292 @@
+package carehome.persistence;
+
+
+// streams archives and audit logs out of SQLite as CSV or NDJSON without loading them into a CareHome.
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.sql.*;
+import java.util.*;
+import java.util.concurrent.CancellationException;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Archives are read with one forward cursor per table, all ordered by stay, and merged as they
+ * go. Only the stay being written is held in memory, so memory use stays flat however long the
+ * history gets. Output goes to {@code <file>.part} and is renamed on success. A cancelled or
+ * failed export leaves nothing behind.
+ */
+public class StreamingExporter {
+
+    public enum Format {
+        CSV, NDJSON;
+
+        /** NDJSON for {@code .ndjson}/{@code .jsonl} files (optionally {@code .gz}), CSV otherwise. */
+        public static Format forFile(Path file) {
+            String n = stripGz(file.getFileName().toString().toLowerCase(Locale.ROOT));
+            return n.endsWith(".ndjson") || n.endsWith(".jsonl") ? NDJSON : CSV;
+        }
+    }
+
+    /** Progress callback; polled between records so the caller can cancel. */
+    public interface Listener {
+        void progress(long done, long total);
+        default boolean isCancelled() { return false; }
+    }
+
+    private static final int REPORT_EVERY = 256;
+
+    private static final String ARCHIVE_CSV_HEADER =
+            "record,stay,discharged,resident_id,resident_name,gender,age,last_bed,"
+                    + "prescription_id,doctor_id,prescribed,medicine,dose,frequency,time,nurse_id,notes";
+
+    private final JdbcStore store;
+
+    StreamingExporter(JdbcStore store) {
+        this.store = store;
+    }
+
+    public static boolean isGzip(Path file) {
+        return file.getFileName().toString().toLowerCase(Locale.ROOT).endsWith(".gz");
+    }
+
+    /**
+     * Every archived stay with its prescriptions, doses and administrations; returns the number of
+     * stays. A stay kept in the cold archive file has only its header and prescription ids here.
+     */
+    public long exportArchives(Path out, Format format, boolean gzip, Listener listener) throws IOException {
+        return export(out, gzip, w -> {
+            try (Connection c = store.connect()) {
+                c.setAutoCommit(false); // one read transaction, so the cursors see the same data
+                Map<Integer, String> medNames = new HashMap<>();
+                try (Statement st = c.createStatement(); ResultSet rs = st.executeQuery("SELECT id,name FROM medicines")) {
+                    while (rs.next()) medNames.put(rs.getInt(1), rs.getString(2));
+                }
+                long total = count(c, "archives");
+                if (format == Format.CSV) w.write(ARCHIVE_CSV_HEADER + "\n");
+
+                try (Cursor stays = new Cursor(c,
+                        "SELECT rowid,discharged_ts,resident_id,resident_name,gender,age,bed_id FROM archives ORDER BY rowid");
+                     Cursor presc = new Cursor(c,
+                             "SELECT stay_rowid,id,doctor_id,created_ts FROM archive_prescriptions ORDER BY stay_rowid,rowid");
+                     Cursor doses = new Cursor(c,
+                             "SELECT p.stay_rowid,d.presc_id,d.medicine,d.dose,d.freq,d.medicine_id "
+                                     + "FROM archive_medication_doses d JOIN archive_prescriptions p ON p.id=d.presc_id "
+                                     + "ORDER BY p.stay_rowid,d.rowid");
+                     Cursor admins = new Cursor(c,
+                             "SELECT stay_rowid,nurse_id,presc_id,medicine,time_ts,notes,medicine_id "
+                                     + "FROM archive_administrations ORDER BY stay_rowid,rowid")) {
+                    long done = 0;
+                    for (; stays.more; stays.next()) {
+                        checkCancelled(listener);
+                        ResultSet s = stays.rs;
+                        long stay = s.getLong(1);
+                        String[] head = {s.getString(2), s.getString(3), s.getString(4), s.getString(5),
+                                String.valueOf(s.getInt(6)), s.getString(7)};
+
+                        // this stay's prescriptions and doses (small); administrations are streamed
+                        List<String[]> ps = new ArrayList<>();
+                        for (; presc.at(stay); presc.next())
+                            ps.add(new String[]{presc.rs.getString(2), presc.rs.getString(3), presc.rs.getString(4)});
+                        Map<String, List<String[]>> meds = new HashMap<>();
+                        for (; doses.at(stay); doses.next()) {
+                            ResultSet d = doses.rs;
+                            meds.computeIfAbsent(d.getString(2), k -> new ArrayList<>())
+                                    .add(new String[]{JdbcStore.getMedicine(d, 3, 6, medNames), d.getString(4), d.getString(5)});
+                        }
+
+                        if (format == Format.CSV) writeStayCsv(w, stay, head, ps, meds, admins, medNames);
+                        else writeStayJson(w, stay, head, ps, meds, admins, medNames);
+
+                        if (++done % REPORT_EVERY == 0) report(listener, done, total);
+                    }
+                    report(listener, done, total);
+                    return done;
+                }
+            }
+        });
+    }
+
+    /** The audit log in insertion order; returns the number of entries. */
+    public long exportLogs(Path out, Format format, boolean gzip, Listener listener) throws IOException {
+        return export(out, gzip, w -> {
+            try (Connection c = store.connect()) {
+                c.setAutoCommit(false);
+                long total = count(c, "logs");
+                if (format == Format.CSV) w.write("time,staff_id,action\n");
+                try (Cursor logs = new Cursor(c, "SELECT time_ts,staff_id,action FROM logs ORDER BY rowid")) {
+                    long done = 0;
+                    for (; logs.more; logs.next()) {
+                        checkCancelled(listener);
+                        ResultSet r = logs.rs;
+                        if (format == Format.CSV) {
+                            csvRow(w, r.getString(1), r.getString(2), r.getString(3));
+                        } else {
+                            w.write("{\"time\":" + json(r.getString(1)) + ",\"staffId\":" + json(r.getString(2))
+                                    + ",\"action\":" + json(r.getString(3)) + "}\n");
+                        }
+                        if (++done % REPORT_EVERY == 0) report(listener, done, total);
+                    }
+                    report(listener, done, total);
+                    return done;
+                }
+            }
+        });
+    }
+
+    //  writers
+
+    private static void writeStayCsv(Writer w, long stay, String[] h, List<String[]> ps, Map<String, List<String[]>> meds,
+                                     Cursor admins, Map<Integer, String> medNames) throws IOException, SQLException {
+        String sid = String.valueOf(stay);
+        csvRow(w, "stay", sid, h[0], h[1], h[2], h[3], h[4], h[5], "", "", "", "", "", "", "", "", "");
+        for (String[] p : ps) {
+            List<String[]> ms = meds.getOrDefault(p[0], List.of());
+            if (ms.isEmpty()) csvRow(w, "prescription", sid, "", h[1], "", "", "", "", p[0], p[1], p[2], "", "", "", "", "", "");
+            for (String[] m : ms)
+                csvRow(w, "dose", sid, "", h[1], "", "", "", "", p[0], p[1], p[2], m[0], m[1], m[2], "", "", "");
+        }
+        for (; admins.at(stay); admins.next()) {
+            ResultSet a = admins.rs;
+            csvRow(w, "administration", sid, "", h[1], "", "", "", "", a.getString(3), "", "",
+                    JdbcStore.getMedicine(a, 4, 7, medNames), "", "", a.getString(5), a.getString(2), a.getString(6));
+        }
+    }
+
+    private static void writeStayJson(Writer w, long stay, String[] h, List<String[]> ps, Map<String, List<String[]>> meds,
+                                      Cursor admins, Map<Integer, String> medNames) throws IOException, SQLException {
+        w.write("{\"stay\":" + stay + ",\"dischargedAt\":" + json(h[0]) + ",\"residentId\":" + json(h[1])
+                + ",\"residentName\":" + json(h[2]) + ",\"gender\":" + json(h[3]) + ",\"age\":" + h[4]
+                + ",\"lastBed\":" + json(h[5]) + ",\"prescriptions\":[");
+        for (int i = 0; i < ps.size(); i++) {
+            String[] p = ps.get(i);
+            if (i > 0) w.write(',');
+            w.write("{\"id\":" + json(p[0]) + ",\"doctorId\":" + json(p[1]) + ",\"prescribedAt\":" + json(p[2]) + ",\"meds\":[");
+            List<String[]> ms = meds.getOrDefault(p[0], List.of());
+            for (int j = 0; j < ms.size(); j++) {
+                String[] m = ms.get(j);
+                if (j > 0) w.write(',');
+                w.write("{\"medicine\":" + json(m[0]) + ",\"dose\":" + json(m[1]) + ",\"frequency\":" + json(m[2]) + "}");
+            }
+            w.write("]}");
+        }
+        w.write("],\"administrations\":[");
+        boolean first = true;
+        for (; admins.at(stay); admins.next()) {
+            ResultSet a = admins.rs;
+            if (!first) w.write(',');
+            first = false;
+            w.write("{\"time\":" + json(a.getString(5)) + ",\"nurseId\":" + json(a.getString(2))
+                    + ",\"prescriptionId\":" + json(a.getString(3))
+                    + ",\"medicine\":" + json(JdbcStore.getMedicine(a, 4, 7, medNames))
+                    + ",\"notes\":" + json(a.getString(6)) + "}");
+        }
+        w.write("]}\n");
+    }
+
+    private static void csvRow(Writer w, String... cells) throws IOException {
+        for (int i = 0; i < cells.length; i++) {
+            if (i > 0) w.write(',');
+            String v = cells[i] == null ? "" : cells[i];
+            if (v.indexOf(',') >= 0 || v.indexOf('"') >= 0 || v.indexOf('\n') >= 0 || v.indexOf('\r') >= 0)
+                v = '"' + v.replace("\"", "\"\"") + '"';
+            w.write(v);
+        }
+        w.write('\n');
+    }
+
+    static String json(String s) {
+        if (s == null) return "null";
+        StringBuilder sb = new StringBuilder(s.length() + 2).append('"');
+        for (int i = 0; i < s.length(); i++) {
+            char ch = s.charAt(i);
+            switch (ch) {
+                case '"' -> sb.append("\\\"");
+                case '\\' -> sb.append("\\\\");
+                case '\n' -> sb.append("\\n");
+                case '\r' -> sb.append("\\r");
+                case '\t' -> sb.append("\\t");
+                default -> {
+                    if (ch < 0x20) sb.append(String.format("\\u%04x", (int) ch));
+                    else sb.append(ch);
+                }
+            }
+        }
+        return sb.append('"').toString();
+    }
+
+    //  plumbing
+
+    private interface Body {
+        long write(Writer w) throws IOException, SQLException;
+    }
+
+    private static long export(Path out, boolean gzip, Body body) throws IOException {
+        Path part = out.resolveSibling(out.getFileName() + ".part");
+        boolean ok = false;
+        try {
+            long n;
+            OutputStream os = Files.newOutputStream(part);
+            try (Writer w = new BufferedWriter(new OutputStreamWriter(
+                    gzip ? new GZIPOutputStream(os, 1 << 16) : os, StandardCharsets.UTF_8), 1 << 16)) {
+                n = body.write(w);
+            }
+            Files.move(part, out, StandardCopyOption.REPLACE_EXISTING);
+            ok = true;
+            return n;
+        } catch (SQLException e) {
+            throw new IOException("Export failed: " + e.getMessage(), e);
+        } finally {
+            if (!ok) Files.deleteIfExists(part);
+        }
+    }
+
+    private static void checkCancelled(Listener l) {
+        if (l != null && l.isCancelled()) throw new CancellationException("Export cancelled");
+    }
+
+    private static void report(Listener l, long done, long total) {
+        if (l != null) l.progress(done, Math.max(done, total));
+    }
+
+    private static long count(Connection c, String table) throws SQLException {
+        try (Statement st = c.createStatement(); ResultSet rs = st.executeQuery("SELECT COUNT(*) FROM " + table)) {
+            return rs.next() ? rs.getLong(1) : 0;
+        }
+    }
+
+    private static String stripGz(String name) {
+        return name.endsWith(".gz") ? name.substring(0, name.length() - 3) : name;
+    }
+
+    // forward-only cursor whose first column is the stay rowid
+    private static final class Cursor implements AutoCloseable {
+        final Statement st;
+        final ResultSet rs;
+        boolean more;
+
+        Cursor(Connection c, String sql) throws SQLException {
+            st = c.createStatement();
+            st.setFetchSize(REPORT_EVERY);
+            rs = st.executeQuery(sql);
+            more = rs.next();
+        }
+
+        // true while the current row belongs to {@code stay}; orphan rows of earlier stays are skipped
+        boolean at(long stay) throws SQLException {
+            while (more && rs.getLong(1) < stay) more = rs.next();
+            return more && rs.getLong(1) == stay;
+        }
+
+        void next() throws SQLException {
+            more = rs.next();
+        }
+
+        @Override
+        public void close() throws SQLException {
+            try { rs.close(); } finally { st.close(); }
+        }
+    }
+}
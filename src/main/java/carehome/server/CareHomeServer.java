@@ -0,0 +1,500 @@
+package carehome.server;
+
+
+// headless server: one CareHome + JdbcStore shared by every station over a local HTTP/JSON API.
+import carehome.exception.*;
+import carehome.model.*;
+import carehome.persistence.ArchiveFile;
+import carehome.persistence.JdbcStore;
+import carehome.service.CareHome;
+import carehome.service.CareHomeSnapshot;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.security.SecureRandom;
+import java.time.LocalDate;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * Endpoints (all JSON):
+ * <pre>
+ *   POST /api/login             {id, password} -> {staff, token}
+ *   POST /api/logout            ends the session
+ *   GET  /api/health            entity counts
+ *   GET  /api/snapshot          whole state plus the feed sequence it reflects, for a client to build its replica
+ *   GET  /api/beds[?ward=N]     bed id + occupant per bed
+ *   POST /api/save              write the model to the database now
+ *   POST /api/{op}              a {@link Commands} operation -> {seq, command, result}
+ *   GET  /api/changes?since=N[&wait=S]   long-poll: {seq, changes: [{seq, command}]} after N
+ *   GET  /api/events[?since=N]  the same changes as server-sent events (id = seq); resumes from Last-Event-ID
+ * </pre>
+ * Every endpoint but login needs {@code Authorization: Bearer <token>} with the token login
+ * returned (401 {@code NotAuthenticatedException} otherwise). A command acts as the staff member
+ * the token belongs to; any {@code actor} in the body is replaced.
+ * <p>
+ * CareHome is not thread-safe and even its queries rebuild lazy indexes, so every call holds one
+ * lock; handlers run on virtual threads where the JDK has them (a {@code ReentrantLock} rather
+ * than {@code synchronized}, so waiting handlers do not pin their carrier thread). Business rule
+ * failures (any carehome.exception type) come back as {@code {error, message}} with a 4xx status.
+ * Whole-state readers (snapshot, save) hold the lock only for the O(1) {@link CareHome#snapshot()}
+ * and do the serialising outside it, so a save does not hold up commands.
+ * <p>
+ * Every accepted command is numbered and kept in a {@link ChangeFeed}, so stations can follow
+ * each other's changes and pick up where they left off after a disconnect. A station further
+ * behind than the feed keeps gets 410 {@code ResyncRequiredException} and reloads the snapshot.
+ */
+public class CareHomeServer implements AutoCloseable {
+    private final CareHome careHome;
+    private final JdbcStore store;
+    private final HttpServer http;
+    private final ExecutorService executor;
+    // long-lived requests (event streams, long polls); unbounded so followers never starve commands
+    private final ExecutorService streams;
+    private final ScheduledExecutorService autosave;
+    private final ReentrantLock lock = new ReentrantLock();
+    // one save at a time, so an older snapshot never overwrites a newer one
+    private final ReentrantLock saveLock = new ReentrantLock();
+    private final ChangeFeed feed;
+    private boolean dirty;
+    // login token -> staff id
+    private final Map<String, String> sessions = new ConcurrentHashMap<>();
+    private final SecureRandom random = new SecureRandom();
+
+    public static final int DEFAULT_FEED_CAPACITY = 10_000;
+    static final int MAX_BATCH = 1_000;
+    private static final long MAX_WAIT_MILLIS = 60_000, KEEPALIVE_MILLIS = 15_000;
+
+    /** {@code store} may be null for an in-memory server; {@code autosaveSeconds <= 0} saves only on close. */
+    public CareHomeServer(CareHome careHome, JdbcStore store, InetSocketAddress address, int autosaveSeconds) throws IOException {
+        this(careHome, store, address, autosaveSeconds, DEFAULT_FEED_CAPACITY);
+    }
+
+    /** {@code feedCapacity} is how many recent changes are kept for stations that reconnect. */
+    public CareHomeServer(CareHome careHome, JdbcStore store, InetSocketAddress address, int autosaveSeconds,
+                          int feedCapacity) throws IOException {
+        this.feed = new ChangeFeed(feedCapacity);
+        this.careHome = careHome;
+        this.store = store;
+        this.executor = newExecutor();
+        this.streams = newStreamExecutor();
+        this.http = HttpServer.create(address, 0);
+        http.setExecutor(executor);
+        http.createContext("/api/", ex -> {
+            if (isLongPoll(ex)) streams.execute(() -> handleQuietly(ex));
+            else handle(ex);
+        });
+        http.createContext("/api/events", ex -> streams.execute(() -> events(ex)));
+        if (store != null && autosaveSeconds > 0) {
+            autosave = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "carehome-autosave");
+                t.setDaemon(true);
+                return t;
+            });
+            autosave.scheduleWithFixedDelay(this::saveIfDirty, autosaveSeconds, autosaveSeconds, TimeUnit.SECONDS);
+        } else {
+            autosave = null;
+        }
+    }
+
+    public CareHomeServer start() {
+        http.start();
+        return this;
+    }
+
+    public int port() {
+        return http.getAddress().getPort();
+    }
+
+    public URI uri() {
+        return URI.create("http://localhost:" + port() + "/");
+    }
+
+    @Override
+    public void close() {
+        feed.close();
+        http.stop(0);
+        if (autosave != null) autosave.shutdownNow();
+        executor.shutdown();
+        streams.shutdownNow();
+        saveIfDirty();
+    }
+
+    // virtual thread per request on Java 21+, looked up reflectively so the build stays on 17
+    static ExecutorService newExecutor() {
+        ExecutorService virtual = virtualThreads();
+        return virtual != null ? virtual : Executors.newFixedThreadPool(Math.max(4, Runtime.getRuntime().availableProcessors() * 2));
+    }
+
+    // a waiting subscriber holds its thread for as long as it listens, so this pool must not have a cap
+    static ExecutorService newStreamExecutor() {
+        ExecutorService virtual = virtualThreads();
+        if (virtual != null) return virtual;
+        return Executors.newCachedThreadPool(r -> {
+            Thread t = new Thread(r, "carehome-stream");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    private static ExecutorService virtualThreads() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+
+    /** Runs {@code work} against the shared model under the lock. */
+    public <T> T locked(Supplier<T> work) {
+        lock.lock();
+        try {
+            return work.get();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void saveIfDirty() {
+        if (store != null) save(false);
+    }
+
+    // snapshot under the model lock, write it outside; a failed write leaves the model dirty
+    private void save(boolean force) {
+        saveLock.lock();
+        try {
+            CareHomeSnapshot snap = locked(() -> {
+                if (!dirty && !force) return null;
+                dirty = false;
+                careHome.compactArchives(); // stays that have aged past the cold threshold since the last save
+                return careHome.snapshot();
+            });
+            if (snap == null) return;
+            try {
+                store.saveAll(snap);
+            } catch (RuntimeException e) {
+                locked(() -> dirty = true);
+                throw e;
+            }
+        } finally {
+            saveLock.unlock();
+        }
+    }
+
+    //  routing
+
+    // GET /api/changes with a wait may block for up to a minute
+    private static boolean isLongPoll(HttpExchange ex) {
+        if (!ex.getRequestMethod().equals("GET") || !ex.getRequestURI().getPath().equals("/api/changes")) return false;
+        String wait = query(ex).get("wait");
+        return wait != null && !wait.isBlank() && !wait.trim().equals("0");
+    }
+
+    private void handleQuietly(HttpExchange ex) {
+        try {
+            handle(ex);
+        } catch (IOException e) {
+            // the station went away while waiting
+        }
+    }
+
+    private void handle(HttpExchange ex) throws IOException {
+        try {
+            String path = ex.getRequestURI().getPath().substring("/api/".length());
+            String method = ex.getRequestMethod();
+            Object body;
+            try {
+                String actor = path.equals("login") ? null : actor(ex);
+                body = switch (method + " " + path) {
+                    case "GET health" -> locked(careHome::getEntityCounts);
+                    case "GET snapshot" -> {
+                        // the feed head is read with the snapshot, so the client resumes exactly after it
+                        var at = locked(() -> Map.entry(careHome.snapshot(), feed.head()));
+                        Map<String, Object> snap = Codec.snapshot(at.getKey());
+                        snap.put("seq", at.getValue());
+                        yield snap;
+                    }
+                    case "GET beds" -> beds(query(ex).get("ward"));
+                    case "GET changes" -> changes(query(ex));
+                    case "POST login" -> login(Json.parseObject(read(ex)));
+                    case "POST logout" -> {
+                        sessions.remove(token(ex));
+                        yield Map.of("loggedOut", actor);
+                    }
+                    case "POST save" -> {
+                        if (store == null) throw new ValidationException("Server has no database");
+                        save(true);
+                        yield Map.of("saved", true);
+                    }
+                    default -> {
+                        if (!method.equals("POST") || !Commands.OPS.contains(path))
+                            throw new NotFoundException("No such endpoint: " + method + " /api/" + path);
+                        Map<String, Object> cmd = Json.parseObject(read(ex));
+                        cmd.put("op", path);
+                        cmd.put("actor", actor);
+                        yield execute(cmd);
+                    }
+                };
+            } catch (IllegalArgumentException | java.time.DateTimeException e) {
+                send(ex, 400, Map.of("error", "BadRequest", "message", String.valueOf(e.getMessage())));
+                return;
+            } catch (RuntimeException e) {
+                send(ex, status(e), Map.of("error", e.getClass().getSimpleName(), "message", String.valueOf(e.getMessage())));
+                return;
+            }
+            send(ex, 200, body);
+        } finally {
+            ex.close();
+        }
+    }
+
+    /**
+     * Applies one command to the shared model and appends it to the feed; the reply carries its
+     * sequence number, the resolved command and the result. Numbering under the model lock keeps
+     * feed order the same as apply order.
+     */
+    protected Map<String, Object> execute(Map<String, Object> cmd) {
+        return locked(() -> {
+            Commands.Applied applied = Commands.apply(careHome, cmd);
+            dirty = true;
+            long seq = feed.append(applied.command());
+            return Codec.map("seq", seq, "command", applied.command(), "result", Codec.toJson(applied.result()));
+        });
+    }
+
+    public ChangeFeed getFeed() {
+        return feed;
+    }
+
+    //  change feed
+
+    // assembled from each change's cached JSON rather than re-serialising the commands per reader
+    private Raw changes(Map<String, String> q) {
+        if (q.get("since") == null) throw new IllegalArgumentException("since is required");
+        long since = Long.parseLong(q.get("since"));
+        long waitSeconds = Long.parseLong(q.getOrDefault("wait", "0"));
+        List<ChangeFeed.Change> batch;
+        try {
+            batch = feed.await(since, Math.min(MAX_WAIT_MILLIS, Math.max(0, waitSeconds) * 1000), MAX_BATCH);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            batch = List.of();
+        }
+        long seq = batch.isEmpty() ? since : batch.get(batch.size() - 1).seq();
+        StringBuilder sb = new StringBuilder("{\"seq\":").append(seq).append(",\"head\":").append(feed.head()).append(",\"changes\":[");
+        for (int i = 0; i < batch.size(); i++) sb.append(i == 0 ? "" : ",").append(batch.get(i).json());
+        return new Raw(sb.append("]}").toString());
+    }
+
+    /**
+     * Server-sent events: one {@code change} event per command, with the sequence as the event id
+     * so EventSource-style clients resume through {@code Last-Event-ID}. Without a starting point
+     * the stream begins at the current head. Comment lines keep idle connections alive; a client
+     * that has fallen out of the feed gets a {@code resync} event and the stream ends.
+     */
+    private void events(HttpExchange ex) {
+        try {
+            long since;
+            try {
+                actor(ex);
+                if (!ex.getRequestMethod().equals("GET"))
+                    throw new NotFoundException("No such endpoint: " + ex.getRequestMethod() + " /api/events");
+                String resume = ex.getRequestHeaders().getFirst("Last-Event-ID");
+                if (resume == null) resume = query(ex).get("since");
+                since = resume == null ? feed.head() : Long.parseLong(resume.trim());
+                feed.since(since, 0); // fails fast if the feed no longer reaches back that far
+            } catch (NumberFormatException e) {
+                send(ex, 400, Map.of("error", "BadRequest", "message", String.valueOf(e.getMessage())));
+                return;
+            } catch (RuntimeException e) {
+                send(ex, status(e), Map.of("error", e.getClass().getSimpleName(), "message", String.valueOf(e.getMessage())));
+                return;
+            }
+            ex.getResponseHeaders().set("Content-Type", "text/event-stream; charset=utf-8");
+            ex.getResponseHeaders().set("Cache-Control", "no-cache");
+            ex.sendResponseHeaders(200, 0);
+            OutputStream out = ex.getResponseBody();
+            out.write(": connected\n\n".getBytes(StandardCharsets.UTF_8));
+            out.flush();
+            while (!feed.isClosed()) {
+                StringBuilder sb = new StringBuilder();
+                try {
+                    List<ChangeFeed.Change> batch = feed.await(since, KEEPALIVE_MILLIS, MAX_BATCH);
+                    if (batch.isEmpty()) sb.append(": keep-alive\n\n");
+                    for (ChangeFeed.Change c : batch) {
+                        sb.append("id: ").append(c.seq()).append("\nevent: change\ndata: ").append(c.json()).append("\n\n");
+                        since = c.seq();
+                    }
+                } catch (ResyncRequiredException e) {
+                    sb.append("event: resync\ndata: ").append(Json.write(Map.of("message", e.getMessage()))).append("\n\n");
+                    out.write(sb.toString().getBytes(StandardCharsets.UTF_8));
+                    out.flush();
+                    return;
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                out.write(sb.toString().getBytes(StandardCharsets.UTF_8));
+                out.flush();
+            }
+        } catch (IOException e) {
+            // the station went away; it resumes from its last event id when it reconnects
+        } finally {
+            ex.close();
+        }
+    }
+
+    //  sessions
+
+    private Map<String, Object> login(Map<String, Object> req) {
+        Staff s = locked(() -> careHome.authenticate(Codec.str(req, "id"), Codec.str(req, "password")));
+        byte[] b = new byte[24];
+        random.nextBytes(b);
+        String token = Base64.getUrlEncoder().withoutPadding().encodeToString(b);
+        sessions.put(token, s.getId());
+        return Codec.map("staff", Codec.staff(s), "token", token);
+    }
+
+    // staff id of the request's session; the staff member must still exist
+    private String actor(HttpExchange ex) {
+        String token = token(ex);
+        String id = token == null ? null : sessions.get(token);
+        if (id == null) throw new NotAuthenticatedException("Login required");
+        if (locked(() -> careHome.getStaffById().get(id)) == null) {
+            sessions.remove(token);
+            throw new NotAuthenticatedException("Staff " + id + " no longer exists");
+        }
+        return id;
+    }
+
+    private static String token(HttpExchange ex) {
+        String auth = ex.getRequestHeaders().getFirst("Authorization");
+        if (auth == null || !auth.regionMatches(true, 0, "Bearer ", 0, 7)) return null;
+        return auth.substring(7).trim();
+    }
+
+    private List<Object> beds(String ward) {
+        return locked(() -> {
+            var range = ward == null ? careHome.getBedsByKey() : careHome.getBedsInWard(Integer.parseInt(ward));
+            List<Object> out = new ArrayList<>(range.size());
+            for (Bed b : range.values())
+                out.add(Codec.map("id", b.id, "occupant", b.isVacant() ? null : Codec.resident(b.occupant)));
+            return out;
+        });
+    }
+
+    // rule violations (anything from carehome.exception) are the client's problem, the rest are ours
+    private static int status(RuntimeException e) {
+        if (e instanceof NotAuthenticatedException) return 401;
+        if (e instanceof UnauthorizedException) return 403;
+        if (e instanceof NotFoundException) return 404;
+        if (e instanceof ResyncRequiredException) return 410;
+        return isRuleViolation(e.getClass()) ? 409 : 500;
+    }
+
+    static boolean isRuleViolation(Class<?> c) {
+        return RuntimeException.class.isAssignableFrom(c) && c.getPackageName().equals(CareHomeException.class.getPackageName());
+    }
+
+    //  plumbing
+
+    private static String read(HttpExchange ex) throws IOException {
+        try (InputStream in = ex.getRequestBody()) {
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+
+    private static Map<String, String> query(HttpExchange ex) {
+        Map<String, String> out = new HashMap<>();
+        String q = ex.getRequestURI().getRawQuery();
+        if (q == null) return out;
+        for (String kv : q.split("&")) {
+            int eq = kv.indexOf('=');
+            if (eq > 0) out.put(URLDecoder.decode(kv.substring(0, eq), StandardCharsets.UTF_8),
+                    URLDecoder.decode(kv.substring(eq + 1), StandardCharsets.UTF_8));
+        }
+        return out;
+    }
+
+    /** A reply body that is already JSON. */
+    private record Raw(String json) {}
+
+    private static void send(HttpExchange ex, int status, Object body) throws IOException {
+        String json = body instanceof Raw raw ? raw.json() : Json.write(body);
+        byte[] bytes = json.getBytes(StandardCharsets.UTF_8);
+        ex.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        ex.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = ex.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    //  entry point
+
+    /**
+     * Turns on TCP_NODELAY for every JDK HTTP server in this JVM, unless
+     * {@code -Dsun.net.httpserver.nodelay} says otherwise. Headers and body go out as separate
+     * writes, so without it each small reply waits ~40ms for a delayed ACK. The JDK reads the
+     * property once, so this only takes effect before the first server starts.
+     */
+    public static void preferNoDelay() {
+        if (System.getProperty("sun.net.httpserver.nodelay") == null) System.setProperty("sun.net.httpserver.nodelay", "true");
+    }
+
+    /** {@code port=8080 db=data/carehome.db autosave=30 bind=127.0.0.1 feed=10000 archive=data/archive.cha coldDays=365} */
+    public static void main(String[] args) throws Exception {
+        preferNoDelay();
+        Map<String, String> opts = new HashMap<>();
+        for (String a : args) {
+            int eq = a.indexOf('=');
+            if (eq <= 0) throw new IllegalArgumentException("Expected key=value, got " + a);
+            opts.put(a.substring(0, eq), a.substring(eq + 1));
+        }
+        int port = Integer.parseInt(opts.getOrDefault("port", "8080"));
+        String db = opts.getOrDefault("db", "data/carehome.db");
+        java.nio.file.Path dir = java.nio.file.Path.of(db).toAbsolutePath().getParent();
+        if (dir != null) java.nio.file.Files.createDirectories(dir);
+
+        JdbcStore store = new JdbcStore("jdbc:sqlite:" + db);
+        store.init();
+        CareHome ch = store.loadAll();
+        ch.setEchoLogs(false);
+        if (ch.getStaffById().isEmpty()) seed(ch);
+        // stays discharged more than coldDays ago leave the heap for the archive file
+        String archive = opts.get("archive");
+        if (archive != null) {
+            ch.setColdArchive(new ArchiveFile(java.nio.file.Path.of(archive)),
+                    java.time.Duration.ofDays(Long.parseLong(opts.getOrDefault("coldDays", "365"))));
+            ch.compactArchives();
+        } else if (ch.getEntityCounts().get("coldArchivedStays") > 0) {
+            // the database only points into the archive file for these
+            throw new IllegalStateException(db + " keeps archived stays in a cold archive file; start with archive=<file>");
+        }
+
+        CareHomeServer server = new CareHomeServer(ch, store,
+                new InetSocketAddress(opts.getOrDefault("bind", "127.0.0.1"), port),
+                Integer.parseInt(opts.getOrDefault("autosave", "30")),
+                Integer.parseInt(opts.getOrDefault("feed", String.valueOf(DEFAULT_FEED_CAPACITY)))).start();
+        Runtime.getRuntime().addShutdownHook(new Thread(server::close, "carehome-shutdown"));
+        System.out.println("CareHome server on " + server.uri() + " (" + db + ")");
+    }
+
+    // same starting point as a fresh MainApp: default layout, the three demo accounts, N1 on today's early shift
+    private static void seed(CareHome ch) {
+        if (!ch.hasAnyBeds()) ch.loadLayout(FacilityLayout.defaultLayout());
+        ch.addOrUpdateStaff("M1", new Staff("M1", "Manager", Role.MANAGER), "manager", "pass");
+        ch.addOrUpdateStaff("M1", new Staff("D1", "Dr Alice", Role.DOCTOR), "alice", "pass");
+        ch.addOrUpdateStaff("M1", new Staff("N1", "Nurse Bob", Role.NURSE), "bob", "pass");
+        LocalDate today = LocalDate.now();
+        ch.allocateShift("M1", new Shift("N1", today.atTime(8, 0), today.atTime(16, 0)));
+    }
+}
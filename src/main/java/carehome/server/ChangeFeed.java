@@ -0,0 +1,108 @@
+package carehome.server;
+
+
+// numbered log of applied commands, kept in a bounded ring so stations can resume after a disconnect.
+import carehome.exception.ResyncRequiredException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Sequence numbers start at 1 and have no gaps. The last {@code capacity} changes are kept; a
+ * reader asking for changes after a sequence that has already been dropped gets
+ * {@link ResyncRequiredException} and has to reload the snapshot. Each change is serialised once
+ * and the same JSON is handed to every subscriber.
+ */
+public final class ChangeFeed {
+
+    public record Change(long seq, Map<String, Object> command, String json) {}
+
+    private final Change[] ring;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition appended = lock.newCondition();
+    private long head;      // last sequence number issued
+    private boolean closed;
+
+    public ChangeFeed(int capacity) {
+        if (capacity < 1) throw new IllegalArgumentException("capacity must be positive");
+        this.ring = new Change[capacity];
+    }
+
+    public long append(Map<String, Object> command) {
+        lock.lock();
+        try {
+            long seq = head + 1;
+            ring[(int) (seq % ring.length)] = new Change(seq, command, Json.write(Codec.map("seq", seq, "command", command)));
+            head = seq;
+            appended.signalAll();
+            return seq;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long head() {
+        lock.lock();
+        try {
+            return head;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Changes after {@code after}, oldest first, at most {@code max}; empty when up to date. */
+    public List<Change> since(long after, int max) {
+        lock.lock();
+        try {
+            return collect(after, max);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Like {@link #since}, but waits up to {@code timeoutMillis} for something to arrive. */
+    public List<Change> await(long after, long timeoutMillis, int max) throws InterruptedException {
+        long nanos = TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        lock.lock();
+        try {
+            while (head <= after && !closed && nanos > 0) nanos = appended.awaitNanos(nanos);
+            return collect(after, max);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private List<Change> collect(long after, int max) {
+        if (after > head) throw new ResyncRequiredException("Sequence " + after + " is ahead of the server (" + head + ")");
+        long oldest = Math.max(1, head - ring.length + 1);
+        if (after + 1 < oldest)
+            throw new ResyncRequiredException("Changes after " + after + " are no longer kept (oldest is " + oldest + ")");
+        List<Change> out = new ArrayList<>((int) Math.min(max, head - after));
+        for (long s = after + 1; s <= head && out.size() < max; s++) out.add(ring[(int) (s % ring.length)]);
+        return out;
+    }
+
+    public boolean isClosed() {
+        lock.lock();
+        try {
+            return closed;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Wakes every waiting reader; used when the server stops. */
+    public void close() {
+        lock.lock();
+        try {
+            closed = true;
+            appended.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+}
@@ -0,0 +1,230 @@
+package carehome.server;
+
+
+// model <-> JSON-shaped maps for the HTTP API, plus the full-state snapshot a client starts from.
+import carehome.model.*;
+import carehome.service.CareHome;
+import carehome.service.CareHomeSnapshot;
+
+import java.time.LocalDateTime;
+import java.util.*;
+
+/** Field names follow the model classes; times are ISO-8601 local date-times. */
+public final class Codec {
+    private Codec() {}
+
+    //  writing
+
+    /** Model objects, and maps/lists of them, as JSON-shaped values. Anything else passes through. */
+    public static Object toJson(Object v) {
+        if (v instanceof Resident r) return resident(r);
+        if (v instanceof Staff s) return staff(s);
+        if (v instanceof Shift s) return shift(s);
+        if (v instanceof Prescription p) return prescription(p);
+        if (v instanceof Administration a) return administration(a);
+        if (v instanceof ArchivedStay s) return archivedStay(s);
+        if (v instanceof ActionLog l) return log(l);
+        if (v instanceof BedKey k) return k.toString();
+        if (v instanceof Map<?, ?> m) {
+            Map<String, Object> out = new LinkedHashMap<>();
+            for (var e : m.entrySet()) out.put(String.valueOf(e.getKey()), toJson(e.getValue()));
+            return out;
+        }
+        if (v instanceof Collection<?> c) {
+            List<Object> out = new ArrayList<>(c.size());
+            for (Object o : c) out.add(toJson(o));
+            return out;
+        }
+        return v;
+    }
+
+    static Map<String, Object> map(Object... kv) {
+        Map<String, Object> m = new LinkedHashMap<>();
+        for (int k = 0; k < kv.length; k += 2) m.put((String) kv[k], kv[k + 1]);
+        return m;
+    }
+
+    static Map<String, Object> resident(Resident r) {
+        return map("id", r.id, "name", r.name, "gender", r.gender, "age", r.age);
+    }
+
+    /** Id, name and role only; credentials never leave the server. */
+    static Map<String, Object> staff(Staff s) {
+        return map("id", s.getId(), "name", s.getName(), "role", s.getRole());
+    }
+
+    static Map<String, Object> shift(Shift s) {
+        return map("staffId", s.getStaffId(), "start", s.getStart(), "end", s.getEnd());
+    }
+
+    static Map<String, Object> prescription(Prescription p) {
+        List<Object> meds = new ArrayList<>();
+        if (p.meds != null) for (MedicationDose md : p.meds)
+            meds.add(map("medicine", md.medicine, "dosage", md.dosage, "frequency", md.frequency));
+        return map("id", p.id, "doctorId", p.doctorId, "residentId", p.residentId, "dateTime", p.dateTime, "meds", meds);
+    }
+
+    static Map<String, Object> administration(Administration a) {
+        return map("nurseId", a.nurseId, "prescriptionId", a.prescriptionId, "medicine", a.medicine,
+                "administeredAt", a.administeredAt, "notes", a.notes);
+    }
+
+    static Map<String, Object> archivedStay(ArchivedStay s) {
+        return map("residentId", s.residentId, "residentName", s.residentName, "gender", s.gender, "age", s.age,
+                "lastBedId", s.lastBedId, "dischargedAt", s.dischargedAt,
+                "prescriptions", toJson(s.prescriptions == null ? List.of() : s.prescriptions),
+                "administrations", toJson(s.administrations == null ? List.of() : s.administrations));
+    }
+
+    static Map<String, Object> log(ActionLog l) {
+        return map("staffId", l.staffId, "action", l.action, "time", l.time);
+    }
+
+    //  reading
+
+    static String str(Map<String, Object> m, String k) {
+        Object v = m.get(k);
+        return v == null ? null : v.toString();
+    }
+
+    static int integer(Map<String, Object> m, String k) {
+        Object v = m.get(k);
+        if (!(v instanceof Number n)) throw new IllegalArgumentException("Number expected for " + k);
+        return n.intValue();
+    }
+
+    static Integer optInteger(Map<String, Object> m, String k) {
+        return m.get(k) == null ? null : integer(m, k);
+    }
+
+    static long optLong(Map<String, Object> m, String k, long absent) {
+        Object v = m.get(k);
+        if (v == null) return absent;
+        if (!(v instanceof Number n)) throw new IllegalArgumentException("Number expected for " + k);
+        return n.longValue();
+    }
+
+    static boolean bool(Map<String, Object> m, String k) {
+        return Boolean.TRUE.equals(m.get(k));
+    }
+
+    static LocalDateTime time(Map<String, Object> m, String k) {
+        String v = str(m, k);
+        return v == null ? null : LocalDateTime.parse(v);
+    }
+
+    @SuppressWarnings("unchecked")
+    static Map<String, Object> obj(Map<String, Object> m, String k) {
+        Object v = m.get(k);
+        if (v == null) return null;
+        if (!(v instanceof Map)) throw new IllegalArgumentException("Object expected for " + k);
+        return (Map<String, Object>) v;
+    }
+
+    @SuppressWarnings("unchecked")
+    static List<Map<String, Object>> list(Map<String, Object> m, String k) {
+        Object v = m.get(k);
+        if (v == null) return List.of();
+        if (!(v instanceof List)) throw new IllegalArgumentException("Array expected for " + k);
+        return (List<Map<String, Object>>) v;
+    }
+
+    static Resident resident(Map<String, Object> m) {
+        if (m == null) return null;
+        String g = str(m, "gender");
+        return new Resident(str(m, "id"), str(m, "name"), g == null ? null : Gender.valueOf(g), integer(m, "age"));
+    }
+
+    static Staff staff(Map<String, Object> m) {
+        return new Staff(str(m, "id"), str(m, "name"), Role.valueOf(str(m, "role")));
+    }
+
+    static Shift shift(Map<String, Object> m) {
+        return new Shift(str(m, "staffId"), time(m, "start"), time(m, "end"));
+    }
+
+    static Prescription prescription(Map<String, Object> m) {
+        if (m == null) return null;
+        List<MedicationDose> meds = new ArrayList<>();
+        for (var d : list(m, "meds")) meds.add(new MedicationDose(str(d, "medicine"), str(d, "dosage"), str(d, "frequency")));
+        return new Prescription(str(m, "id"), str(m, "doctorId"), str(m, "residentId"), time(m, "dateTime"), meds);
+    }
+
+    static Administration administration(Map<String, Object> m) {
+        if (m == null) return null;
+        return new Administration(str(m, "nurseId"), str(m, "prescriptionId"), str(m, "medicine"),
+                time(m, "administeredAt"), str(m, "notes"));
+    }
+
+    static ArchivedStay archivedStay(Map<String, Object> m) {
+        List<Prescription> ps = new ArrayList<>();
+        for (var p : list(m, "prescriptions")) ps.add(prescription(p));
+        List<Administration> as = new ArrayList<>();
+        for (var a : list(m, "administrations")) as.add(administration(a));
+        String g = str(m, "gender");
+        return new ArchivedStay(str(m, "residentId"), str(m, "residentName"), g == null ? null : Gender.valueOf(g),
+                integer(m, "age"), str(m, "lastBedId"), time(m, "dischargedAt"), ps, as);
+    }
+
+    //  snapshot
+
+    /** Whole care home state, without credentials. The snapshot is frozen, so no lock is needed. */
+    public static Map<String, Object> snapshot(CareHomeSnapshot ch) {
+        List<Object> beds = new ArrayList<>();
+        for (CareHomeSnapshot.BedState b : ch.getBeds().values())
+            beds.add(map("id", b.key().toString(), "occupant", b.isVacant() ? null : resident(b.occupant()), "version", b.version()));
+        List<Object> prescriptions = new ArrayList<>();
+        for (List<Prescription> ps : ch.getActivePrescriptionsByResident().values())
+            for (Prescription p : ps) {
+                Map<String, Object> m = prescription(p);
+                m.put("version", ch.getPrescriptionVersion(p.id));
+                prescriptions.add(m);
+            }
+        return map(
+                "staff", toJson(ch.getStaffById().values()),
+                "wardLabels", toJson(ch.getWardLabels()),
+                "prescriptionSeq", ch.getPrescriptionSeq(),
+                "rosterVersion", ch.getRosterVersion(),
+                "beds", beds,
+                "shifts", toJson(ch.getShifts()),
+                "prescriptions", prescriptions,
+                "administrations", toJson(ch.getAdministrations()),
+                "archives", toJson(ch.getArchives()),
+                "logs", toJson(ch.getLogs()));
+    }
+
+    /** Loads a {@link #snapshot} into an empty care home, in the same order as JdbcStore.loadAll. */
+    public static void load(CareHome ch, Map<String, Object> snap) {
+        for (var s : list(snap, "staff")) ch.rawPutStaff(staff(s));
+
+        List<BedKey> keys = new ArrayList<>();
+        Map<BedKey, Resident> occupants = new HashMap<>();
+        Map<BedKey, Long> versions = new HashMap<>();
+        for (var b : list(snap, "beds")) {
+            BedKey key = BedKey.parse(str(b, "id"));
+            keys.add(key);
+            Resident r = resident(obj(b, "occupant"));
+            if (r != null) occupants.put(key, r);
+            versions.put(key, optLong(b, "version", 0));
+        }
+        keys.sort(null);
+        ch.rawAddBeds(keys);
+        for (var e : occupants.entrySet()) ch.rawSetResidentInBed(e.getKey(), e.getValue());
+        for (var e : versions.entrySet()) ch.rawSetBedVersion(e.getKey(), e.getValue());
+        ch.rawSetRosterVersion(optLong(snap, "rosterVersion", 0));
+        Map<String, Object> labels = obj(snap, "wardLabels");
+        if (labels != null) for (var e : labels.entrySet()) ch.rawSetWardLabel(Integer.parseInt(e.getKey()), String.valueOf(e.getValue()));
+        Object seq = snap.get("prescriptionSeq");
+        if (seq instanceof Number n) ch.rawSetPrescriptionSeq(n.longValue());
+
+        for (var s : list(snap, "shifts")) ch.rawAddShift(shift(s));
+        for (var p : list(snap, "prescriptions")) {
+            Prescription pr = prescription(p);
+            ch.rawAddPrescription(pr.residentId, pr);
+            ch.rawSetPrescriptionVersion(pr.id, optLong(p, "version", 0));
+        }
+        for (var a : list(snap, "administrations")) ch.rawAddAdministration(administration(a));
+        for (var s : list(snap, "archives")) ch.rawAddArchive(archivedStay(s));
+        for (var l : list(snap, "logs")) ch.rawAddLog(new ActionLog(str(l, "staffId"), str(l, "action"), time(l, "time")));
+    }
+}
@@ -0,0 +1,96 @@
+package carehome.server;
+
+
+// CareHome mutations as JSON commands: the server applies them, clients replay them on their replica.
+import carehome.exception.UnauthorizedException;
+import carehome.model.*;
+import carehome.service.CareHome;
+
+import java.util.*;
+
+import static carehome.server.Codec.*;
+
+/**
+ * A command is a JSON object with an {@code op} (the CareHome method name), the acting staff id
+ * in {@code actor} (set by the server from the caller's session), and the method's arguments. {@link #apply} runs it and returns the resolved
+ * command: generated resident ids are filled in and passwords removed, so replaying it on
+ * another copy of the same state gives the same result. Conditional forms carry the expected
+ * {@code version} (or {@code fromVersion}/{@code toVersion} for a move); without one the
+ * operation is unconditional.
+ */
+public final class Commands {
+    private Commands() {}
+
+    public static final Set<String> OPS = Set.of(
+            "addOrUpdateStaff", "addResidentToBed", "admitResidents", "moveResident", "transferWard",
+            "addPrescription", "administerMedication", "administerRound", "allocateShift", "loadLayout",
+            "dischargeResident");
+
+    /** A command after it ran: the resolved form to replay elsewhere, and the method's return value. */
+    public record Applied(Map<String, Object> command, Object result) {}
+
+    public static Map<String, Object> command(String op, Object... kv) {
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("op", op);
+        for (int k = 0; k < kv.length; k += 2) m.put((String) kv[k], toJson(kv[k + 1]));
+        return m;
+    }
+
+    public static Applied apply(CareHome ch, Map<String, Object> cmd) {
+        String op = str(cmd, "op");
+        if (op == null || !OPS.contains(op)) throw new IllegalArgumentException("Unknown operation: " + op);
+        String actor = str(cmd, "actor");
+        Map<String, Object> resolved = new LinkedHashMap<>(cmd);
+        Object result = null;
+
+        switch (op) {
+            case "addOrUpdateStaff" -> {
+                // replicas only need the account to exist; logins are checked by the server
+                String password = str(cmd, "password");
+                ch.addOrUpdateStaff(actor, staff(obj(cmd, "staff")), str(cmd, "username"), password == null ? "" : password);
+                resolved.remove("password");
+            }
+            case "addResidentToBed" -> {
+                Resident r = resident(obj(cmd, "resident"));
+                ch.addResidentToBed(actor, str(cmd, "bed"), r, version(cmd, "version"));
+                resolved.put("resident", resident(r));
+                result = r.id;
+            }
+            case "admitResidents" -> {
+                List<Resident> rs = new ArrayList<>();
+                for (var r : list(cmd, "residents")) rs.add(resident(r));
+                result = ch.admitResidents(actor, rs, optInteger(cmd, "ward"));
+                resolved.put("residents", toJson(rs));
+            }
+            case "moveResident" -> ch.moveResident(actor, str(cmd, "from"), str(cmd, "to"), time(cmd, "when"),
+                    version(cmd, "fromVersion"), version(cmd, "toVersion"));
+            case "transferWard" -> result = ch.transferWard(actor, integer(cmd, "fromWard"), integer(cmd, "toWard"), time(cmd, "when"));
+            case "addPrescription" -> ch.addPrescription(actor, str(cmd, "bed"), prescription(obj(cmd, "prescription")),
+                    time(cmd, "when"), version(cmd, "version"));
+            case "administerMedication" -> ch.administerMedication(actor, str(cmd, "bed"),
+                    administration(obj(cmd, "administration")), time(cmd, "when"), bool(cmd, "override"), version(cmd, "version"));
+            case "administerRound" -> {
+                Map<String, List<Administration>> doses = new LinkedHashMap<>();
+                Map<String, Object> byBed = obj(cmd, "doses");
+                if (byBed != null) for (String bed : byBed.keySet()) {
+                    List<Administration> as = new ArrayList<>();
+                    for (var a : list(byBed, bed)) as.add(administration(a));
+                    doses.put(bed, as);
+                }
+                result = ch.administerRound(actor, doses, time(cmd, "when"), bool(cmd, "override"));
+            }
+            case "allocateShift" -> ch.allocateShift(actor, shift(obj(cmd, "shift")), version(cmd, "version"));
+            case "loadLayout" -> {
+                if (!ch.isManager(actor)) throw new UnauthorizedException("Only manager allowed for this action");
+                ch.loadLayout(FacilityLayout.parse(str(cmd, "layout")));
+            }
+            case "dischargeResident" -> result = ch.dischargeResident(actor, str(cmd, "bed"), time(cmd, "when"), version(cmd, "version"));
+            default -> throw new IllegalStateException(op);
+        }
+        return new Applied(resolved, result);
+    }
+
+    private static long version(Map<String, Object> cmd, String k) {
+        return optLong(cmd, k, CareHome.ANY_VERSION);
+    }
+}
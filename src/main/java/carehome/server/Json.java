@@ -0,0 +1,213 @@
+package carehome.server;
+
+
+// minimal JSON reader/writer for the HTTP API: objects, arrays, strings, numbers, booleans, null.
+import java.time.temporal.TemporalAccessor;
+import java.util.*;
+
+/**
+ * Objects parse to {@code LinkedHashMap<String,Object>}, arrays to {@code ArrayList<Object>},
+ * integers to {@code Long} and other numbers to {@code Double}. Writing accepts the same shapes
+ * plus enums and java.time values (as their ISO strings).
+ */
+public final class Json {
+    private final String s;
+    private int i;
+
+    private Json(String s) {
+        this.s = s;
+    }
+
+    public static Object parse(String text) {
+        Json p = new Json(text);
+        p.ws();
+        Object v = p.value();
+        p.ws();
+        if (p.i != p.s.length()) throw p.error("trailing characters");
+        return v;
+    }
+
+    @SuppressWarnings("unchecked")
+    public static Map<String, Object> parseObject(String text) {
+        Object v = parse(text);
+        if (!(v instanceof Map)) throw new IllegalArgumentException("JSON object expected");
+        return (Map<String, Object>) v;
+    }
+
+    public static String write(Object v) {
+        StringBuilder sb = new StringBuilder();
+        write(sb, v);
+        return sb.toString();
+    }
+
+    public static void write(StringBuilder sb, Object v) {
+        if (v == null) sb.append("null");
+        else if (v instanceof String str) quote(sb, str);
+        else if (v instanceof Boolean || v instanceof Integer || v instanceof Long) sb.append(v);
+        else if (v instanceof Number n) {
+            double d = n.doubleValue();
+            if (Double.isFinite(d)) sb.append(v); else sb.append("null");
+        } else if (v instanceof Map<?, ?> m) {
+            sb.append('{');
+            boolean first = true;
+            for (var e : m.entrySet()) {
+                if (!first) sb.append(',');
+                first = false;
+                quote(sb, String.valueOf(e.getKey()));
+                sb.append(':');
+                write(sb, e.getValue());
+            }
+            sb.append('}');
+        } else if (v instanceof Iterable<?> it) {
+            sb.append('[');
+            boolean first = true;
+            for (Object o : it) {
+                if (!first) sb.append(',');
+                first = false;
+                write(sb, o);
+            }
+            sb.append(']');
+        } else if (v instanceof Enum<?> e) quote(sb, e.name());
+        else if (v instanceof TemporalAccessor) quote(sb, v.toString());
+        else throw new IllegalArgumentException("Not JSON-serialisable: " + v.getClass().getName());
+    }
+
+    private static void quote(StringBuilder sb, String str) {
+        sb.append('"');
+        for (int k = 0; k < str.length(); k++) {
+            char ch = str.charAt(k);
+            switch (ch) {
+                case '"' -> sb.append("\\\"");
+                case '\\' -> sb.append("\\\\");
+                case '\n' -> sb.append("\\n");
+                case '\r' -> sb.append("\\r");
+                case '\t' -> sb.append("\\t");
+                default -> {
+                    if (ch < 0x20) sb.append(String.format("\\u%04x", (int) ch));
+                    else sb.append(ch);
+                }
+            }
+        }
+        sb.append('"');
+    }
+
+    //  parsing
+
+    private Object value() {
+        if (i >= s.length()) throw error("unexpected end");
+        char c = s.charAt(i);
+        return switch (c) {
+            case '{' -> object();
+            case '[' -> array();
+            case '"' -> string();
+            case 't' -> literal("true", Boolean.TRUE);
+            case 'f' -> literal("false", Boolean.FALSE);
+            case 'n' -> literal("null", null);
+            default -> number();
+        };
+    }
+
+    private Map<String, Object> object() {
+        Map<String, Object> m = new LinkedHashMap<>();
+        i++;
+        ws();
+        if (peek() == '}') { i++; return m; }
+        while (true) {
+            ws();
+            if (peek() != '"') throw error("object key expected");
+            String k = string();
+            ws();
+            expect(':');
+            ws();
+            m.put(k, value());
+            ws();
+            if (peek() == ',') { i++; continue; }
+            expect('}');
+            return m;
+        }
+    }
+
+    private List<Object> array() {
+        List<Object> l = new ArrayList<>();
+        i++;
+        ws();
+        if (peek() == ']') { i++; return l; }
+        while (true) {
+            ws();
+            l.add(value());
+            ws();
+            if (peek() == ',') { i++; continue; }
+            expect(']');
+            return l;
+        }
+    }
+
+    private String string() {
+        i++;
+        StringBuilder sb = new StringBuilder();
+        while (true) {
+            if (i >= s.length()) throw error("unterminated string");
+            char c = s.charAt(i++);
+            if (c == '"') return sb.toString();
+            if (c != '\\') { sb.append(c); continue; }
+            if (i >= s.length()) throw error("unterminated escape");
+            char e = s.charAt(i++);
+            switch (e) {
+                case '"', '\\', '/' -> sb.append(e);
+                case 'b' -> sb.append('\b');
+                case 'f' -> sb.append('\f');
+                case 'n' -> sb.append('\n');
+                case 'r' -> sb.append('\r');
+                case 't' -> sb.append('\t');
+                case 'u' -> {
+                    if (i + 4 > s.length()) throw error("bad unicode escape");
+                    sb.append((char) Integer.parseInt(s.substring(i, i + 4), 16));
+                    i += 4;
+                }
+                default -> throw error("bad escape \\" + e);
+            }
+        }
+    }
+
+    private Object number() {
+        int start = i;
+        if (peek() == '-') i++;
+        boolean fraction = false;
+        while (i < s.length()) {
+            char c = s.charAt(i);
+            if (c >= '0' && c <= '9') i++;
+            else if (c == '.' || c == 'e' || c == 'E' || c == '+' || c == '-') { fraction = true; i++; }
+            else break;
+        }
+        String n = s.substring(start, i);
+        if (n.isEmpty() || n.equals("-")) throw error("value expected");
+        try {
+            return fraction ? (Object) Double.parseDouble(n) : (Object) Long.parseLong(n);
+        } catch (NumberFormatException e) {
+            throw error("bad number " + n);
+        }
+    }
+
+    private Object literal(String word, Object v) {
+        if (!s.startsWith(word, i)) throw error("unexpected token");
+        i += word.length();
+        return v;
+    }
+
+    private char peek() {
+        return i < s.length() ? s.charAt(i) : '\0';
+    }
+
+    private void expect(char c) {
+        if (peek() != c) throw error("'" + c + "' expected");
+        i++;
+    }
+
+    private void ws() {
+        while (i < s.length() && Character.isWhitespace(s.charAt(i))) i++;
+    }
+
+    private IllegalArgumentException error(String what) {
+        return new IllegalArgumentException("Bad JSON at " + i + ": " + what);
+    }
+}
@@ -0,0 +1,435 @@
+package carehome.server;
+
+
+// client adapter: a CareHome whose mutations go through a CareHomeServer, for the JavaFX controllers.
+import carehome.exception.CareHomeException;
+import carehome.exception.ResyncRequiredException;
+import carehome.model.*;
+import carehome.service.CareHome;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+
+/**
+ * Reads are answered from a local replica loaded from the server's snapshot. Each mutation is
+ * sent to the server first; only when the server accepts it is the resolved command replayed on
+ * the replica, so both apply the same rules to the same state and rule failures surface as the
+ * same exception types as in-process. Logins are checked by the server; the replica holds no
+ * passwords. The replica is loaded on the first successful {@link #authenticate}, whose session
+ * token then goes with every request; the server acts as that staff member whatever actor id a
+ * method is given. Use from one thread (the FX thread).
+ * <p>
+ * The replica also tracks the server's change feed: {@link #getSeq()} is the last change it has
+ * applied. Before replaying its own command it first applies anything other stations did in
+ * between, so the replica sees the same order as the server. {@link #pull()} fetches pending
+ * changes on demand; {@link #subscribe} follows them as they happen and resumes after a dropped
+ * connection. Listeners hear about changes made by other stations.
+ */
+public class RemoteCareHome extends CareHome {
+    private static final long serialVersionUID = 1L;
+
+    private final URI base;
+    private final transient HttpClient http;
+    private transient boolean replaying;
+    private transient volatile String token;
+    private boolean loaded;
+    private long seq;
+    private final transient List<ChangeListener> listeners = new CopyOnWriteArrayList<>();
+
+    /** Told about each change from another station once the replica has applied it. */
+    public interface ChangeListener {
+        void changed(long seq, Map<String, Object> command);
+
+        /** The replica can no longer follow the feed; reconnect for a fresh snapshot. */
+        default void resyncRequired(ResyncRequiredException e) {}
+    }
+
+    protected RemoteCareHome(URI base) {
+        this.base = base;
+        this.http = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(5)).build();
+        setEchoLogs(false);
+    }
+
+    /** A client for a server (e.g. {@code http://localhost:8080/}); empty until someone logs in. */
+    public static RemoteCareHome connect(URI base) {
+        return new RemoteCareHome(base);
+    }
+
+    /** Connects, logs in and loads the server's current state. */
+    public static RemoteCareHome connect(URI base, String staffId, String password) {
+        RemoteCareHome ch = connect(base);
+        ch.authenticate(staffId, password);
+        return ch;
+    }
+
+    /** A fresh replica in the same session, e.g. after falling too far behind the feed. */
+    public RemoteCareHome reconnect() {
+        RemoteCareHome ch = new RemoteCareHome(base);
+        ch.token = token;
+        ch.load();
+        return ch;
+    }
+
+    private void load() {
+        Map<String, Object> snapshot = call("GET", "snapshot", null);
+        Codec.load(this, snapshot);
+        seq = seqOf(snapshot);
+        loaded = true;
+    }
+
+    public URI getServer() {
+        return base;
+    }
+
+    /** Applies a command the server has already accepted to the local replica. */
+    public Commands.Applied replay(Map<String, Object> command) {
+        replaying = true;
+        try {
+            return Commands.apply(this, command);
+        } finally {
+            replaying = false;
+        }
+    }
+
+    private Commands.Applied submit(Map<String, Object> command) {
+        Map<String, Object> reply = call("POST", (String) command.get("op"), command);
+        long at = seqOf(reply);
+        if (at > seq + 1) catchUp(at - 1);
+        Commands.Applied applied = replay(Codec.obj(reply, "command"));
+        seq = at;
+        return applied;
+    }
+
+    //  change feed
+
+    /** Sequence number of the last server change applied to this replica. */
+    public long getSeq() {
+        return seq;
+    }
+
+    public void addChangeListener(ChangeListener l) {
+        listeners.add(l);
+    }
+
+    public void removeChangeListener(ChangeListener l) {
+        listeners.remove(l);
+    }
+
+    /** Applies every change the server has that this replica has not; returns how many. */
+    public int pull() {
+        return catchUp(Long.MAX_VALUE);
+    }
+
+    // applies feed changes up to and including upTo (or until the feed runs out)
+    private int catchUp(long upTo) {
+        int applied = 0;
+        while (seq < upTo) {
+            Map<String, Object> page = call("GET", "changes?since=" + seq, null);
+            List<Map<String, Object>> changes = Codec.list(page, "changes");
+            if (changes.isEmpty()) break;
+            for (Map<String, Object> c : changes) {
+                if (seqOf(c) > upTo) return applied;
+                apply(seqOf(c), Codec.obj(c, "command"));
+                applied++;
+            }
+        }
+        return applied;
+    }
+
+    private void apply(long at, Map<String, Object> command) {
+        if (at != seq + 1) throw new ResyncRequiredException("Expected change " + (seq + 1) + " but got " + at);
+        try {
+            replay(command);
+        } catch (RuntimeException e) {
+            // the server accepted it, so the replica must have drifted
+            throw new ResyncRequiredException("Change " + at + " (" + command.get("op") + ") does not apply here: " + e.getMessage());
+        }
+        seq = at;
+        for (ChangeListener l : listeners) l.changed(at, command);
+    }
+
+    // a change from the event stream, run on the replica's thread
+    private void deliver(long at, Map<String, Object> command) {
+        if (at <= seq) return; // ours, or already fetched by a catch-up
+        try {
+            if (at > seq + 1) catchUp(at - 1);
+            apply(at, command);
+        } catch (ResyncRequiredException e) {
+            fireResync(e);
+        } catch (UncheckedIOException e) {
+            // server unreachable mid catch-up; the next event or pull() tries again
+        }
+    }
+
+    private void fireResync(ResyncRequiredException e) {
+        for (ChangeListener l : listeners) l.resyncRequired(e);
+    }
+
+    /**
+     * Follows the server's event stream on a background thread. Each change is handed to
+     * {@code applyOn} (e.g. {@code Platform::runLater}), which must be the thread that uses this
+     * replica; dropped connections are retried, resuming from the last event received.
+     */
+    public Subscription subscribe(Executor applyOn) {
+        Subscription sub = new Subscription(applyOn, seq);
+        sub.thread.start();
+        return sub;
+    }
+
+    public final class Subscription implements AutoCloseable {
+        private final Executor applyOn;
+        private final Thread thread;
+        private volatile boolean closed;
+        private volatile InputStream stream;
+        private long cursor;
+
+        private Subscription(Executor applyOn, long from) {
+            this.applyOn = applyOn;
+            this.cursor = from;
+            this.thread = new Thread(this::run, "carehome-changes");
+            thread.setDaemon(true);
+        }
+
+        private void run() {
+            long backoff = 500;
+            while (!closed) {
+                try {
+                    HttpRequest req = HttpRequest.newBuilder(base.resolve("api/events"))
+                            .header("Accept", "text/event-stream")
+                            .header("Authorization", "Bearer " + token)
+                            .header("Last-Event-ID", Long.toString(cursor)).GET().build();
+                    HttpResponse<InputStream> resp = http.send(req, HttpResponse.BodyHandlers.ofInputStream());
+                    stream = resp.body();
+                    if (resp.statusCode() == 410) {
+                        String msg = new String(stream.readAllBytes(), StandardCharsets.UTF_8);
+                        resync(Codec.str(Json.parseObject(msg), "message"));
+                        return;
+                    }
+                    if (resp.statusCode() != 200) throw new IOException("HTTP " + resp.statusCode());
+                    backoff = 500;
+                    if (read(stream)) return;
+                } catch (IOException e) {
+                    // dropped or refused; retry below
+                } catch (InterruptedException e) {
+                    return;
+                } finally {
+                    closeStream();
+                }
+                try {
+                    Thread.sleep(backoff);
+                } catch (InterruptedException e) {
+                    return;
+                }
+                backoff = Math.min(backoff * 2, 10_000);
+            }
+        }
+
+        // returns true once the stream says to resync; false when it just ends
+        private boolean read(InputStream in) throws IOException {
+            BufferedReader lines = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+            String event = null; // the id line repeats the seq that is also in the data
+            StringBuilder data = new StringBuilder();
+            for (String line; !closed && (line = lines.readLine()) != null; ) {
+                if (line.isEmpty()) {
+                    if ("change".equals(event)) {
+                        Map<String, Object> change = Json.parseObject(data.toString());
+                        long at = seqOf(change);
+                        cursor = at;
+                        Map<String, Object> command = Codec.obj(change, "command");
+                        applyOn.execute(() -> { if (!closed) deliver(at, command); });
+                    } else if ("resync".equals(event)) {
+                        resync(Codec.str(Json.parseObject(data.toString()), "message"));
+                        return true;
+                    }
+                    event = null;
+                    data.setLength(0);
+                } else if (line.startsWith("event:")) {
+                    event = line.substring(6).trim();
+                } else if (line.startsWith("data:")) {
+                    if (data.length() > 0) data.append('\n');
+                    data.append(line.substring(5).stripLeading());
+                }
+            }
+            return closed;
+        }
+
+        private void resync(String message) {
+            ResyncRequiredException e = new ResyncRequiredException(message);
+            applyOn.execute(() -> { if (!closed) fireResync(e); });
+        }
+
+        private void closeStream() {
+            InputStream in = stream;
+            stream = null;
+            if (in != null) {
+                try {
+                    in.close();
+                } catch (IOException ignored) {
+                    // already gone
+                }
+            }
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+            thread.interrupt();
+            closeStream();
+        }
+    }
+
+    private static long seqOf(Map<String, Object> m) {
+        Object v = m.get("seq");
+        if (!(v instanceof Number n)) throw new IllegalStateException("Server reply has no change sequence");
+        return n.longValue();
+    }
+
+    //  operations
+
+    @Override
+    public Staff authenticate(String id, String password) {
+        Map<String, Object> reply = call("POST", "login", Codec.map("id", id, "password", password));
+        token = Codec.str(reply, "token");
+        if (!loaded) load();
+        Staff local = getStaffById().get(id);
+        return local != null ? local : Codec.staff(Codec.obj(reply, "staff"));
+    }
+
+    @Override
+    public void addOrUpdateStaff(String actorId, Staff staff, String username, String password) {
+        if (replaying) { super.addOrUpdateStaff(actorId, staff, username, password); return; }
+        submit(Commands.command("addOrUpdateStaff", "actor", actorId, "staff", staff, "username", username, "password", password));
+    }
+
+    // the shorter CareHome overloads delegate to these, so every form goes through the server
+
+    @Override
+    public void addResidentToBed(String managerId, String bedId, Resident r, long bedVersion) {
+        if (replaying) { super.addResidentToBed(managerId, bedId, r, bedVersion); return; }
+        Commands.Applied applied = submit(Commands.command("addResidentToBed", "actor", managerId, "bed", bedId, "resident", r,
+                "version", bedVersion));
+        if (r != null) r.id = (String) applied.result();
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public Map<String, String> admitResidents(String managerId, List<Resident> residents, Integer preferredWard) {
+        if (replaying) return super.admitResidents(managerId, residents, preferredWard);
+        Commands.Applied applied = submit(Commands.command("admitResidents", "actor", managerId, "residents", residents, "ward", preferredWard));
+        // hand the generated ids back to the caller's objects, as the in-process call does
+        List<Map<String, Object>> resolved = Codec.list(applied.command(), "residents");
+        for (int i = 0; i < residents.size() && i < resolved.size(); i++) residents.get(i).id = Codec.str(resolved.get(i), "id");
+        return (Map<String, String>) applied.result();
+    }
+
+    @Override
+    public void moveResident(String nurseId, String fromBedId, String toBedId, LocalDateTime when,
+                             long fromVersion, long toVersion) {
+        if (replaying) { super.moveResident(nurseId, fromBedId, toBedId, when, fromVersion, toVersion); return; }
+        submit(Commands.command("moveResident", "actor", nurseId, "from", fromBedId, "to", toBedId, "when", when,
+                "fromVersion", fromVersion, "toVersion", toVersion));
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public Map<String, String> transferWard(String nurseId, int fromWard, int toWard, LocalDateTime when) {
+        if (replaying) return super.transferWard(nurseId, fromWard, toWard, when);
+        return (Map<String, String>) submit(Commands.command("transferWard", "actor", nurseId,
+                "fromWard", fromWard, "toWard", toWard, "when", when)).result();
+    }
+
+    @Override
+    public void addPrescription(String doctorId, String bedId, Prescription p, LocalDateTime when, long bedVersion) {
+        if (replaying) { super.addPrescription(doctorId, bedId, p, when, bedVersion); return; }
+        submit(Commands.command("addPrescription", "actor", doctorId, "bed", bedId, "prescription", p, "when", when,
+                "version", bedVersion));
+    }
+
+    @Override
+    public void administerMedication(String nurseId, String bedId, Administration admin, LocalDateTime when,
+                                     boolean overrideDoseWindow, long prescriptionVersion) {
+        if (replaying) { super.administerMedication(nurseId, bedId, admin, when, overrideDoseWindow, prescriptionVersion); return; }
+        submit(Commands.command("administerMedication", "actor", nurseId, "bed", bedId, "administration", admin,
+                "when", when, "override", overrideDoseWindow, "version", prescriptionVersion));
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public List<Administration> administerRound(String nurseId, Map<String, List<Administration>> dosesByBed, LocalDateTime when,
+                                                boolean overrideDoseWindow) {
+        if (replaying) return super.administerRound(nurseId, dosesByBed, when, overrideDoseWindow);
+        return (List<Administration>) submit(Commands.command("administerRound", "actor", nurseId, "doses", dosesByBed,
+                "when", when, "override", overrideDoseWindow)).result();
+    }
+
+    @Override
+    public void allocateShift(String actorId, Shift shift, long rosterVersion) {
+        if (replaying) { super.allocateShift(actorId, shift, rosterVersion); return; }
+        submit(Commands.command("allocateShift", "actor", actorId, "shift", shift, "version", rosterVersion));
+    }
+
+    @Override
+    public void loadLayout(FacilityLayout layout) {
+        if (replaying) { super.loadLayout(layout); return; }
+        submit(Commands.command("loadLayout", "layout", layout.toText()));
+    }
+
+    @Override
+    public ArchivedStay dischargeResident(String actorId, String bedId, LocalDateTime when, long bedVersion) {
+        if (replaying) return super.dischargeResident(actorId, bedId, when, bedVersion);
+        return (ArchivedStay) submit(Commands.command("dischargeResident", "actor", actorId, "bed", bedId, "when", when,
+                "version", bedVersion)).result();
+    }
+
+    //  transport
+
+    @SuppressWarnings("unchecked")
+    private <T> T call(String method, String endpoint, Map<String, Object> body) {
+        HttpRequest.Builder req = HttpRequest.newBuilder(base.resolve("api/" + endpoint)).timeout(Duration.ofSeconds(30));
+        if (token != null) req.header("Authorization", "Bearer " + token);
+        if (body == null) req.GET();
+        else req.header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(Json.write(body), StandardCharsets.UTF_8));
+        HttpResponse<String> resp;
+        try {
+            resp = http.send(req.build(), HttpResponse.BodyHandlers.ofString(StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            throw new UncheckedIOException("CareHome server " + base + " unreachable: " + e.getMessage(), e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted talking to " + base, e);
+        }
+        Object json = Json.parse(resp.body());
+        if (resp.statusCode() == 200) return (T) json;
+        Map<String, Object> err = json instanceof Map ? (Map<String, Object>) json : Map.of();
+        throw error(Codec.str(err, "error"), Codec.str(err, "message"), resp.statusCode());
+    }
+
+    // the server's exception type by simple name, so callers can keep catching e.g. DuplicateDoseException
+    private static RuntimeException error(String type, String message, int status) {
+        if ("BadRequest".equals(type)) return new IllegalArgumentException(message);
+        if (type != null && type.matches("[A-Za-z]+")) {
+            try {
+                Class<?> c = Class.forName(CareHomeException.class.getPackageName() + "." + type);
+                if (CareHomeServer.isRuleViolation(c))
+                    return (RuntimeException) c.getConstructor(String.class).newInstance(message);
+            } catch (ReflectiveOperationException ignored) {
+                // not one of ours; fall through
+            }
+        }
+        return new IllegalStateException("Server error " + status + (type == null ? "" : " " + type) + ": " + message);
+    }
+}
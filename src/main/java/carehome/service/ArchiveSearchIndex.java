@@ -0,0 +1,168 @@
+package carehome.service;
+
+
+// inverted index over archived stays: resident details, prescriptions, doses and administration notes.
+import carehome.model.*;
+
+import java.util.*;
+import java.util.function.Function;
+
+/**
+ * Query syntax: whitespace separated words, all of which must match (AND). A word may be
+ * restricted to one field with {@code field:word} and may end in {@code *} for a prefix match.
+ * Fields: {@code resident} (name, id, last bed), {@code med}, {@code dose}, {@code doctor},
+ * {@code nurse}, {@code note}. Results are ranked by a BM25-style score, newest discharge first on ties.
+ * <p>
+ * Documents are numbered in the order they are added, which is the care home's archive order; the
+ * index keeps no stays itself, so only the page of hits a search returns is opened.
+ */
+final class ArchiveSearchIndex {
+
+    static final List<String> FIELDS = List.of("resident", "med", "dose", "doctor", "nurse", "note");
+
+    private final List<Integer> lengths = new ArrayList<>();
+    private long totalLength;
+    // field + '\0' + token -> (doc -> term frequency); sorted so prefix queries are a range scan
+    private final TreeMap<String, Map<Integer, Integer>> postings = new TreeMap<>();
+
+    int size() {
+        return lengths.size();
+    }
+
+    void add(ArchivedStay s) {
+        int doc = lengths.size();
+        int[] len = {0};
+        Map<String, Integer> tf = new HashMap<>();
+        index(tf, len, "resident", s.residentName, s.residentId, s.lastBedId);
+        if (s.prescriptions != null) for (Prescription p : s.prescriptions) {
+            index(tf, len, "doctor", p.doctorId);
+            if (p.meds != null) for (MedicationDose md : p.meds) {
+                index(tf, len, "med", md.medicine);
+                index(tf, len, "dose", md.dosage, md.frequency);
+            }
+        }
+        if (s.administrations != null) for (Administration a : s.administrations) {
+            index(tf, len, "med", a.medicine);
+            index(tf, len, "nurse", a.nurseId);
+            index(tf, len, "note", a.notes);
+        }
+        for (var e : tf.entrySet()) postings.computeIfAbsent(e.getKey(), k -> new HashMap<>()).put(doc, e.getValue());
+        lengths.add(len[0]);
+        totalLength += len[0];
+    }
+
+    /** {@code docs.get(i)} is document i; {@code open} decodes the stays on the returned page. */
+    ArchiveSearchResult search(String query, int offset, int limit, List<ArchiveEntry> docs,
+                               Function<ArchiveEntry, ArchivedStay> open) {
+        List<Clause> clauses = parse(query);
+        if (clauses.isEmpty() || lengths.isEmpty()) return new ArchiveSearchResult(0, Math.max(0, offset), List.of());
+
+        // AND of all clauses: start from the rarest one, score as we intersect
+        List<Map<Integer, Integer>> matches = new ArrayList<>(clauses.size());
+        for (Clause c : clauses) {
+            Map<Integer, Integer> m = lookup(c);
+            if (m.isEmpty()) return new ArchiveSearchResult(0, Math.max(0, offset), List.of());
+            matches.add(m);
+        }
+        int rarest = 0;
+        for (int i = 1; i < matches.size(); i++) if (matches.get(i).size() < matches.get(rarest).size()) rarest = i;
+
+        double avgLen = Math.max(1.0, (double) totalLength / lengths.size());
+        List<Ranked> hits = new ArrayList<>();
+        candidates:
+        for (int doc : matches.get(rarest).keySet()) {
+            double score = 0;
+            for (Map<Integer, Integer> m : matches) {
+                Integer tf = m.get(doc);
+                if (tf == null) continue candidates;
+                score += bm25(tf, m.size(), lengths.get(doc), avgLen);
+            }
+            List<String> terms = new ArrayList<>(clauses.size());
+            for (Clause c : clauses) terms.add(c.token);
+            hits.add(new Ranked(docs.get(doc), score, terms));
+        }
+
+        hits.sort(Comparator.<Ranked>comparingDouble(h -> -h.score)
+                .thenComparing(h -> h.entry.dischargedAt, Comparator.nullsLast(Comparator.reverseOrder())));
+        int from = Math.min(Math.max(0, offset), hits.size());
+        int to = Math.min(hits.size(), from + Math.max(0, limit));
+        List<ArchiveSearchResult.Hit> page = new ArrayList<>(to - from);
+        for (Ranked h : hits.subList(from, to)) page.add(new ArchiveSearchResult.Hit(open.apply(h.entry), h.score, h.terms));
+        return new ArchiveSearchResult(hits.size(), from, List.copyOf(page));
+    }
+
+    private record Ranked(ArchiveEntry entry, double score, List<String> terms) {}
+
+    private double bm25(int tf, int df, int len, double avgLen) {
+        final double k1 = 1.2, b = 0.75;
+        double idf = Math.log(1 + (lengths.size() - df + 0.5) / (df + 0.5));
+        return idf * tf * (k1 + 1) / (tf + k1 * (1 - b + b * len / avgLen));
+    }
+
+    // doc -> summed term frequency over every key the clause covers
+    private Map<Integer, Integer> lookup(Clause c) {
+        Map<Integer, Integer> out = new HashMap<>();
+        for (String f : c.field == null ? FIELDS : List.of(c.field)) {
+            String key = f + '\u0000' + c.token;
+            if (c.prefix) {
+                for (var e : postings.subMap(key, true, key + Character.MAX_VALUE, false).entrySet())
+                    e.getValue().forEach((d, tf) -> out.merge(d, tf, Integer::sum));
+            } else {
+                Map<Integer, Integer> m = postings.get(key);
+                if (m != null) m.forEach((d, tf) -> out.merge(d, tf, Integer::sum));
+            }
+        }
+        return out;
+    }
+
+    private record Clause(String field, String token, boolean prefix) {}
+
+    private static List<Clause> parse(String query) {
+        List<Clause> out = new ArrayList<>();
+        if (query == null) return out;
+        for (String word : query.trim().split("\\s+")) {
+            if (word.isEmpty()) continue;
+            String field = null;
+            int colon = word.indexOf(':');
+            if (colon > 0) {
+                String f = word.substring(0, colon).toLowerCase(Locale.ROOT);
+                if (f.equals("notes")) f = "note";
+                if (f.equals("medicine")) f = "med";
+                if (FIELDS.contains(f)) {
+                    field = f;
+                    word = word.substring(colon + 1);
+                }
+            }
+            boolean prefix = word.endsWith("*");
+            // "W1-R2-B1" or "o'brien" become several words, each of which must match
+            List<String> tokens = tokens(prefix ? word.substring(0, word.length() - 1) : word);
+            for (int i = 0; i < tokens.size(); i++)
+                out.add(new Clause(field, tokens.get(i), prefix && i == tokens.size() - 1));
+        }
+        return out;
+    }
+
+    private static void index(Map<String, Integer> tf, int[] len, String field, String... values) {
+        for (String v : values) {
+            for (String t : tokens(v)) {
+                tf.merge(field + '\u0000' + t, 1, Integer::sum);
+                len[0]++;
+            }
+        }
+    }
+
+    static List<String> tokens(String text) {
+        if (text == null || text.isEmpty()) return List.of();
+        List<String> out = new ArrayList<>();
+        int start = -1;
+        for (int i = 0; i <= text.length(); i++) {
+            boolean word = i < text.length() && Character.isLetterOrDigit(text.charAt(i));
+            if (word && start < 0) start = i;
+            else if (!word && start >= 0) {
+                out.add(text.substring(start, i).toLowerCase(Locale.ROOT));
+                start = -1;
+            }
+        }
+        return out;
+    }
+}
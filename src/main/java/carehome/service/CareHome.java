@@ -3,33 +3,93 @@ package carehome.service;
 
 //  central rules + storage for the care home.
 import carehome.exception.*;
+import carehome.metrics.Metrics;
+import carehome.metrics.MutationEvent;
+import carehome.metrics.RuleCheckEvent;
 import carehome.model.*;
 
 import java.io.*;
 import java.nio.file.*;
+import java.time.Clock;
+import java.time.Duration;
 import java.time.LocalDateTime;
 import java.util.*;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
 public class CareHome implements Serializable {
 
     private static final long serialVersionUID = 1L;
 
+    /**
+     * Expected version for the conditional operations meaning "whatever it is now". Beds,
+     * prescriptions and the roster carry a version that every change bumps; a station passes the
+     * version it last saw and gets VersionConflictException if something changed in between,
+     * rather than acting on a bed or dose list it has not seen.
+     */
+    public static final long ANY_VERSION = -1;
+
     //  Data Registries
-    private final Map<String, Staff> staffById = new HashMap<>();
-    private final List<String> doctorIds = new ArrayList<>();
-    private final List<String> nurseIds = new ArrayList<>();
+    // state a snapshot needs lives in persistent (structurally shared) collections: a mutation
+    // swaps in a new version, so snapshot() only copies references. See CareHomeSnapshot.
+    private PersistentMap<String, Staff> staffById = PersistentMap.empty();
+    private PersistentVector<String> doctorIds = PersistentVector.empty();
+    private PersistentVector<String> nurseIds = PersistentVector.empty();
     private String managerId; // one manager in system
 
-    private final Map<String, Bed> beds = new HashMap<>();
-    private final Map<String, List<Prescription>> prescriptionsByResident = new HashMap<>();
-    private final List<Administration> administrations = new ArrayList<>();
-
-    private final List<Shift> shifts = new ArrayList<>();
-    private final List<ActionLog> logs = new ArrayList<>();
-
-    //  archived stays
-    private final List<ArchivedStay> archives = new ArrayList<>();
+    // keyed by structured bed identity; sorted so a room or ward is a contiguous key range
+    private final NavigableMap<BedKey, Bed> beds = new TreeMap<>();
+    private final Map<String, Bed> bedIdView = new BedIdView(beds);
+    // room occupant counts + per-ward vacancy bitsets, so the gender rule and bed search never walk beds
+    private final OccupancyIndex occupancy = new OccupancyIndex();
+    // frozen occupant + version per bed, the snapshot's view of beds; kept by occupy/vacate
+    private PersistentMap<BedKey, CareHomeSnapshot.BedState> bedStates = PersistentMap.empty();
+    private PersistentMap<Integer, String> wardLabels = PersistentMap.empty();
+    private PersistentMap<String, PersistentVector<Prescription>> prescriptionsByResident = PersistentMap.empty();
+    // version of every active prescription, bumped each time a dose is recorded against it
+    private PersistentMap<String, Long> prescriptionVersions = PersistentMap.empty();
+    // worklist indexes: active prescription -> resident it is filed under, per doctor and per ward
+    private final Map<String, Map<Prescription, String>> activeByDoctor = new HashMap<>();
+    private final Map<Integer, Map<Prescription, String>> activeByWard = new HashMap<>();
+    // bed of every current resident (keyed by residentKey), kept by occupy/vacate
+    private final Map<String, BedKey> bedByResident = new HashMap<>();
+    private int residentSeq; // highest R<n> seen on an active or archived resident
+    // prescription id registry, keyed by prescriptionKey; ids stay reserved after discharge so they are never reissued
+    private final Map<String, Prescription> activePrescriptionsById = new HashMap<>();
+    // archived ones map to the stay they left with, so they cost no heap once that stay is cold
+    private final Map<String, ArchiveEntry> archivedPrescriptionsById = new HashMap<>();
+    // every id ever registered, by prescriptionKey, so "p7" and " P7" are the same id
+    private final Set<String> prescriptionKeys = new HashSet<>();
+    private long prescriptionSeq; // highest P<n> seen or issued
+    // medicine dictionary: prescribed names are swapped for one canonical instance per drug
+    private final MedicineCatalog medicines = MedicineCatalog.defaultCatalog();
+    private PersistentVector<Administration> administrations = PersistentVector.empty();
+    // next-due dose per medicine line, per ward; rebuilt lazily after raw loads
+    private final DoseScheduler doseSchedule = new DoseScheduler();
+    private boolean doseScheduleStale;
+    // most recent administration per (prescription, medicine), for the duplicate-dose guard
+    private final Map<String, Administration> lastDose = new HashMap<>();
+
+    private PersistentVector<Shift> shifts = PersistentVector.empty();
+    private long rosterVersion; // bumped by every allocated shift
+    private PersistentVector<ActionLog> logs = PersistentVector.empty();
+
+    //  archived stays, hot (on heap) or cold (header only; the history is in coldArchive)
+    private PersistentVector<ArchiveEntry> archives = PersistentVector.empty();
+    // archived stays per resident (residentKey), in discharge order
+    private final Map<String, List<ArchiveEntry>> archivesByResident = new HashMap<>();
+    // full-text index over archives; built on the first search, then kept up to date
+    private transient ArchiveSearchIndex archiveSearch;
+    // cold tier: compactArchives moves stays discharged more than coldAfter ago into it
+    private transient ColdArchive coldArchive;
+    private Duration coldAfter;
+    private int coldCount;
+
+    // audit log timestamps come from this clock (system clock when null); simulations supply their own
+    private transient Clock clock;
+    private boolean echoLogs = true;
+    // operation counters + latency histograms; the process-wide registry unless a test supplies one
+    private transient Metrics metrics;
     private CareHome careHome;
 
     //  Manager-only helpers
@@ -38,6 +98,15 @@ public class CareHome implements Serializable {
         return s != null && s.getRole() == Role.MANAGER;
     }
 
+    private void putStaff(Staff s) {
+        staffById = staffById.plus(s.getId(), s);
+        switch (s.getRole()) {
+            case DOCTOR -> { if (!doctorIds.contains(s.getId())) doctorIds = doctorIds.plus(s.getId()); }
+            case NURSE  -> { if (!nurseIds.contains(s.getId()))  nurseIds = nurseIds.plus(s.getId()); }
+            case MANAGER -> managerId = s.getId();
+        }
+    }
+
     private void requireManager(String actorId) {
         if (!isManager(actorId))
             throw new UnauthorizedException("Only manager allowed for this action");
@@ -45,198 +114,498 @@ public class CareHome implements Serializable {
 
     //  Staff Operations
     public void addOrUpdateStaff(String actorId, Staff staff, String username, String password) {
-        boolean bootstrap = staffById.isEmpty() && staff.getRole() == Role.MANAGER;
-        if (!bootstrap) requireManager(actorId);
+        instrumented("addOrUpdateStaff", actorId, null, null, () -> staff == null ? null : staff.getId(), () -> {
+            boolean bootstrap = staffById.isEmpty() && staff.getRole() == Role.MANAGER;
+            if (!bootstrap) requireManager(actorId);
 
-        staff.setCredentials(username, password);
-        staffById.put(staff.getId(), staff);
+            staff.setCredentials(username, password);
+            putStaff(staff);
 
-        switch (staff.getRole()) {
-            case DOCTOR -> {
-                if (!doctorIds.contains(staff.getId())) doctorIds.add(staff.getId());
-            }
-            case NURSE -> {
-                if (!nurseIds.contains(staff.getId())) nurseIds.add(staff.getId());
-            }
-            case MANAGER -> managerId = staff.getId();
-        }
-
-        log(bootstrap ? "SYSTEM" : actorId, "ADD/UPDATE STAFF " + staff);
+            log(bootstrap ? "SYSTEM" : actorId, "ADD/UPDATE STAFF " + staff);
+            return null;
+        });
     }
 
     // Manager adds a new resident to a vacant bed.
     public void addResidentToBed(String managerId, String bedId, Resident r) {
-        requireManager(managerId);
-        if (r == null) throw new ValidationException("Resident details required");
+        addResidentToBed(managerId, bedId, r, ANY_VERSION);
+    }
 
-        //  Age validation
-        if (r.age < 0 || r.age > 100) {
-            throw new ValidationException("Resident age must be between 0 and 100.");
-        }
+    /** As above, but only if the bed is still at {@code bedVersion}. */
+    public void addResidentToBed(String managerId, String bedId, Resident r, long bedVersion) {
+        instrumented("addResidentToBed", managerId, bedId, null, () -> r == null ? null : r.id, () -> {
+            requireManager(managerId);
+            if (r == null) throw new ValidationException("Resident details required");
 
-        if (r.id == null || r.id.trim().isEmpty()) {
-            r.id = nextResidentId();
-        } else {
-            if (isResidentIdActive(r.id)) {
-                throw new ValidationException("Resident ID already in use: " + r.id);
+            //  Age validation
+            if (r.age < 0 || r.age > 100) {
+                throw new ValidationException("Resident age must be between 0 and 100.");
             }
-        }
 
-        // gender rule - if room already has any occupants, new resident must match
-        enforceRoomGender(bedId, r.gender);
-
-        Bed b = beds.computeIfAbsent(bedId, Bed::new);
-        if (!b.isVacant())
-            throw new BedOccupiedException("Bed " + bedId + " is already occupied by " + b.occupant.name);
+            if (r.id == null || r.id.trim().isEmpty()) {
+                r.id = nextResidentId();
+            } else {
+                if (isResidentIdActive(r.id)) {
+                    throw new ValidationException("Resident ID already in use: " + r.id);
+                }
+            }
 
-        b.occupant = r;
-        log(managerId, "ADD RESIDENT " + r + " to bed " + bedId);
+            BedKey key = keyOf(bedId);
+            Bed seen = beds.get(key);
+            expectVersion("Bed " + bedId, bedVersion, seen == null ? 0 : seen.version);
+
+            // gender rule - if room already has any occupants, new resident must match
+            enforceRoomGender(key, r.gender);
+
+            Bed b = ensureBed(key);
+            if (!b.isVacant())
+                throw new BedOccupiedException("Bed " + bedId + " is already occupied by " + b.occupant.name);
+
+            occupy(b, r);
+            // headers are enough here, so cold stays are not decoded
+            List<ArchiveEntry> prior = r.id == null || r.id.isBlank() ? List.of()
+                    : archivesByResident.getOrDefault(residentKey(r.id), List.of());
+            if (prior.isEmpty()) {
+                log(managerId, "ADD RESIDENT " + r + " to bed " + bedId);
+            } else {
+                ArchiveEntry last = prior.get(prior.size() - 1);
+                log(managerId, "ADD RESIDENT " + r + " to bed " + bedId + " (readmission: " + prior.size()
+                        + " prior stay(s), last discharged " + last.dischargedAt + " from " + last.lastBedId + ")");
+            }
+            return null;
+        });
     }
 
 
 
+    /**
+     * Admits a whole group at once (e.g. when a sister facility closes). Every resident is
+     * validated and given a bed before anything changes; if any of them cannot be placed nothing
+     * is admitted. Beds come from the vacancy index, so same-gender rooms fill before empty ones.
+     * Returns resident id -> bed id in input order.
+     */
+    public Map<String, String> admitResidents(String managerId, List<Resident> residents, Integer preferredWard) {
+        return instrumented("admitResidents", managerId, null, preferredWard, null, () -> {
+            requireManager(managerId);
+            if (residents == null || residents.isEmpty()) throw new ValidationException("No residents to admit");
+
+            // validate everything up front; explicit ids must be free and unique within the batch
+            Set<String> taken = new HashSet<>();
+            for (Resident r : residents) {
+                if (r == null) throw new ValidationException("Resident details required");
+                if (r.age < 0 || r.age > 100)
+                    throw new ValidationException("Resident age must be between 0 and 100 (" + r.name + ")");
+                if (r.gender == null) throw new ValidationException("Resident gender required (" + r.name + ")");
+                if (r.id != null && !r.id.trim().isEmpty() && (isResidentIdActive(r.id) || !taken.add(residentKey(r.id))))
+                    throw new ValidationException("Resident ID already in use: " + r.id);
+            }
+
+            // plan: reserve each bed in the index as we go so later picks see earlier ones, then undo
+            List<BedKey> plan = new ArrayList<>(residents.size());
+            try {
+                for (Resident r : residents) {
+                    List<BedKey> pick = occupancy.findVacant(r.gender, preferredWard, 1);
+                    if (pick.isEmpty())
+                        throw new BedOccupiedException("Not enough compatible vacant beds: placed " + plan.size()
+                                + " of " + residents.size() + " residents");
+                    occupancy.occupy(pick.get(0), r.gender);
+                    plan.add(pick.get(0));
+                }
+            } finally {
+                for (int i = 0; i < plan.size(); i++) occupancy.vacate(plan.get(i), residents.get(i).gender);
+            }
+
+            // apply: ids allocated past the highest known and explicit ids, then beds filled
+            int next = maxResidentNumericId();
+            for (Resident r : residents) {
+                java.util.regex.Matcher m = r.id == null ? null : RID.matcher(r.id.trim());
+                if (m != null && m.matches()) next = Math.max(next, Integer.parseInt(m.group(1)));
+            }
+            Map<String, String> placed = new LinkedHashMap<>();
+            StringBuilder audit = new StringBuilder();
+            for (int i = 0; i < residents.size(); i++) {
+                Resident r = residents.get(i);
+                if (r.id == null || r.id.trim().isEmpty()) r.id = "R" + (++next);
+                Bed b = beds.get(plan.get(i));
+                occupy(b, r);
+                placed.put(r.id, b.id);
+                audit.append(i == 0 ? "" : ", ").append(r.id).append("->").append(b.id);
+            }
+            log(managerId, "ADMIT BATCH " + residents.size() + " residents: " + audit);
+            return placed;
+        });
+    }
+
     /** Returns the resident occupying a bed  */
     public Resident getResidentInBed(String actorId, String bedId) {
-        Bed b = beds.get(bedId);
-        if (b == null)
-            throw new NotFoundException("Bed " + bedId + " does not exist");
-        if (b.isVacant())
-            throw new NotFoundException("Bed " + bedId + " is vacant");
-
-        requireAuthorizedStaff(actorId);
-        log(actorId, "CHECK RESIDENT in bed " + bedId);
-        return b.occupant;
+        return timed("getResidentInBed", () -> {
+            Bed b = findBed(bedId);
+            if (b == null)
+                throw new NotFoundException("Bed " + bedId + " does not exist");
+            if (b.isVacant())
+                throw new NotFoundException("Bed " + bedId + " is vacant");
+
+            requireAuthorizedStaff(actorId);
+            log(actorId, "CHECK RESIDENT in bed " + bedId);
+            return b.occupant;
+        });
     }
 
 //    Nurse can moves a resident from one bed to another.
     public void moveResident(String nurseId, String fromBedId, String toBedId, LocalDateTime when) {
-        requireRole(nurseId, Role.NURSE);
-        requireRostered(nurseId, when);
-
-        Bed from = beds.get(fromBedId);
-        Bed to = beds.computeIfAbsent(toBedId, Bed::new);
-        if (from == null || from.isVacant())
-            throw new NotFoundException("No resident in bed " + fromBedId);
-        if (!to.isVacant())
-            throw new BedOccupiedException("Bed " + toBedId + " already occupied by " + to.occupant.name);
+        moveResident(nurseId, fromBedId, toBedId, when, ANY_VERSION, ANY_VERSION);
+    }
 
-        Resident moving = from.occupant;
+    /** As above, but only if both beds are still at the versions the caller saw. */
+    public void moveResident(String nurseId, String fromBedId, String toBedId, LocalDateTime when,
+                             long fromVersion, long toVersion) {
+        instrumented("moveResident", nurseId, fromBedId, toBedId, null, () -> {
+            requireRole(nurseId, Role.NURSE);
+            requireRostered(nurseId, when);
+
+            Bed from = findBed(fromBedId);
+            BedKey toKey = keyOf(toBedId);
+            Bed to = ensureBed(toKey);
+            if (from != null) expectVersion("Bed " + fromBedId, fromVersion, from.version);
+            expectVersion("Bed " + toBedId, toVersion, to.version);
+            if (from == null || from.isVacant())
+                throw new NotFoundException("No resident in bed " + fromBedId);
+            if (!to.isVacant())
+                throw new BedOccupiedException("Bed " + toBedId + " already occupied by " + to.occupant.name);
+
+            Resident moving = from.occupant;
+
+            // destination room must be either empty or same gender as moving
+            enforceRoomGender(toKey, moving.gender);
+            vacate(from);
+            occupy(to, moving);
+
+            log(nurseId, "MOVE RESIDENT " + moving.name + " from " + fromBedId + " to " + toBedId);
+            return null;
+        });
+    }
 
-        // destination room must be either empty or same gender as moving
-        enforceRoomGender(toBedId, moving.gender);
-        from.occupant = null;
-        to.occupant = moving;
+    /**
+     * Moves every resident of one ward into another (maintenance / evacuation). The roster is
+     * checked once, all destination beds are planned against the room gender rule first, and
+     * the moves are applied only if every resident fits. Returns source bed -> destination bed.
+     */
+    public Map<String, String> transferWard(String nurseId, int fromWard, int toWard, LocalDateTime when) {
+        return instrumented("transferWard", nurseId, fromWard, toWard, null, () -> {
+            requireRole(nurseId, Role.NURSE);
+            requireRostered(nurseId, when);
+            if (fromWard == toWard) throw new ValidationException("Source and destination ward are the same");
+            NavigableMap<BedKey, Bed> source = wardBeds(fromWard);
+            if (source.isEmpty()) throw new NotFoundException("Ward W" + fromWard + " does not exist");
+            if (wardBeds(toWard).isEmpty()) throw new NotFoundException("Ward W" + toWard + " does not exist");
+
+            // residents in key order, so roommates are planned together and stay together
+            List<Bed> moving = new ArrayList<>();
+            for (Bed b : source.values()) if (!b.isVacant()) moving.add(b);
+            if (moving.isEmpty()) return Map.of();
+
+            List<BedKey> plan = new ArrayList<>(moving.size());
+            try {
+                for (Bed from : moving) {
+                    List<BedKey> pick = occupancy.findVacantInWard(from.occupant.gender, toWard, 1);
+                    if (pick.isEmpty())
+                        throw new BedOccupiedException("Ward W" + toWard + " cannot take all residents of W" + fromWard
+                                + ": planned " + plan.size() + " of " + moving.size());
+                    occupancy.occupy(pick.get(0), from.occupant.gender);
+                    plan.add(pick.get(0));
+                }
+            } finally {
+                for (int i = 0; i < plan.size(); i++) occupancy.vacate(plan.get(i), moving.get(i).occupant.gender);
+            }
 
-        log(nurseId, "MOVE RESIDENT " + moving.name + " from " + fromBedId + " to " + toBedId);
+            Map<String, String> moves = new LinkedHashMap<>();
+            for (int i = 0; i < moving.size(); i++) {
+                Bed from = moving.get(i);
+                Bed to = beds.get(plan.get(i));
+                Resident r = from.occupant;
+                vacate(from);
+                occupy(to, r);
+                moves.put(from.id, to.id);
+            }
+            log(nurseId, "TRANSFER WARD W" + fromWard + " -> W" + toWard + " (" + moves.size() + " residents): "
+                    + moves.entrySet().stream().map(e -> e.getKey() + "->" + e.getValue()).collect(Collectors.joining(", ")));
+            return moves;
+        });
     }
 
     //  Prescription Operations
     public void addPrescription(String doctorId, String bedId, Prescription p, LocalDateTime when) {
-        requireRole(doctorId, Role.DOCTOR);
-        requireRostered(doctorId, when);
-
-        Bed b = beds.get(bedId);
-        if (b == null || b.isVacant())
-            throw new NotFoundException("Cannot prescribe: bed " + bedId + " is vacant or missing");
+        addPrescription(doctorId, bedId, p, when, ANY_VERSION);
+    }
 
-        prescriptionsByResident.computeIfAbsent(b.occupant.id, k -> new ArrayList<>()).add(p);
-        log(doctorId, "ADD PRESCRIPTION " + p.id + " for " + b.occupant.name + " in " + bedId);
+    /** As above, but only if the bed (and so its occupant) is still at {@code bedVersion}. */
+    public void addPrescription(String doctorId, String bedId, Prescription p, LocalDateTime when, long bedVersion) {
+        instrumented("addPrescription", doctorId, bedId, null, () -> p == null ? null : p.id, () -> {
+            requireRole(doctorId, Role.DOCTOR);
+            requireRostered(doctorId, when);
+
+            Bed b = findBed(bedId);
+            if (b != null) expectVersion("Bed " + bedId, bedVersion, b.version);
+            if (b == null || b.isVacant())
+                throw new NotFoundException("Cannot prescribe: bed " + bedId + " is vacant or missing");
+            if (p == null || p.id == null || p.id.isBlank()) throw new ValidationException("Prescription id required");
+            if (isPrescriptionIdUsed(p.id))
+                throw new ValidationException("Prescription id " + p.id + " is already in use; next free id is " + nextPrescriptionId());
+            // new ids are stored trimmed and upper-cased, names interned; the caller's prescription is left as it was
+            Prescription q = stored(p);
+
+            // everything that can fail (frequency parsing included) happens before the first change
+            List<DoseScheduler.Entry> doses = doseScheduleStale ? List.of()
+                    : doseSchedule.plan(b.occupant.id, q, b.key, q.dateTime != null ? q.dateTime : when);
+
+            fileActive(b.occupant.id, q);
+            registerPrescription(q, null);
+            indexActive(q, b.occupant.id);
+            doseSchedule.add(doses);
+            log(doctorId, "ADD PRESCRIPTION " + q.id + " for " + b.occupant.name + " in " + bedId);
+            return null;
+        });
     }
 
     public void administerMedication(String nurseId, String bedId, Administration admin, LocalDateTime when) {
-        requireRole(nurseId, Role.NURSE);
-        requireRostered(nurseId, when);
+        administerMedication(nurseId, bedId, admin, when, false);
+    }
+
+    /**
+     * Records a dose. Unless {@code overrideDoseWindow} is set, a dose of the same medicine on the
+     * same prescription inside its frequency window throws DuplicateDoseException.
+     */
+    public void administerMedication(String nurseId, String bedId, Administration admin, LocalDateTime when,
+                                     boolean overrideDoseWindow) {
+        administerMedication(nurseId, bedId, admin, when, overrideDoseWindow, ANY_VERSION);
+    }
+
+    /**
+     * As above, but only if the prescription is still at {@code prescriptionVersion}, i.e. no
+     * other dose has been recorded against it since the caller looked.
+     */
+    public void administerMedication(String nurseId, String bedId, Administration admin, LocalDateTime when,
+                                     boolean overrideDoseWindow, long prescriptionVersion) {
+        instrumented("administerMedication", nurseId, bedId, null, () -> admin == null ? null : admin.prescriptionId, () -> {
+            requireRole(nurseId, Role.NURSE);
+            requireRostered(nurseId, when);
+            if (admin == null) throw new ValidationException("Administration required");
+
+            Bed b = findBed(bedId);
+            if (b == null || b.isVacant())
+                throw new NotFoundException("Cannot administer: bed " + bedId + " vacant or missing");
+            Prescription p = prescriptionOf(b, admin.prescriptionId);
+            expectVersion("Prescription " + p.id, prescriptionVersion, prescriptionVersions.getOrDefault(p.id, 0L));
+            MedicationDose md = doseLine(p, admin.medicine);
+            Administration a = recorded(admin, p, md);
+            if (!overrideDoseWindow) checkDoseWindow(b.occupant, a, md, null);
+
+            administrations = administrations.plus(a);
+            bumpPrescriptionVersion(p.id);
+            recordLastDose(a);
+            if (!doseScheduleStale) doseSchedule.given(a);
+            log(nurseId, "ADMINISTER " + a.medicine + " to " + b.occupant.name + " (" + bedId + ")"
+                    + (overrideDoseWindow ? " [dose window overridden]" : ""));
+            return null;
+        });
+    }
 
-        Bed b = beds.get(bedId);
-        if (b == null || b.isVacant())
-            throw new NotFoundException("Cannot administer: bed " + bedId + " vacant or missing");
+    /** Administrations of current residents, oldest first. */
+    public List<Administration> getAdministrations() {
+        return administrations;
+    }
+
+    public Optional<Administration> getLastAdministration(String prescriptionId, String medicine) {
+        return Optional.ofNullable(lastDose.get(DoseScheduler.doseKey(prescriptionId, medicine)));
+    }
+
+    /**
+     * Records a whole medication round (bed id -> doses given there). Role and roster are checked
+     * once; every bed must be occupied and every dose must reference one of that resident's
+     * prescriptions. All doses are recorded, or none are.
+     */
+    public List<Administration> administerRound(String nurseId, Map<String, List<Administration>> dosesByBed, LocalDateTime when) {
+        return administerRound(nurseId, dosesByBed, when, false);
+    }
+
+    public List<Administration> administerRound(String nurseId, Map<String, List<Administration>> dosesByBed, LocalDateTime when,
+                                                boolean overrideDoseWindow) {
+        return instrumented("administerRound", nurseId, null, null, null, () -> {
+            requireRole(nurseId, Role.NURSE);
+            requireRostered(nurseId, when);
+            if (dosesByBed == null || dosesByBed.isEmpty()) throw new ValidationException("Round has no doses");
+
+            List<Administration> round = new ArrayList<>();
+            // doses already planned in this round count towards the window too
+            Map<String, Administration> planned = new HashMap<>();
+            for (var e : dosesByBed.entrySet()) {
+                Bed b = findBed(e.getKey());
+                if (b == null || b.isVacant())
+                    throw new NotFoundException("Cannot administer: bed " + e.getKey() + " vacant or missing");
+                for (Administration given : e.getValue()) {
+                    if (given == null) throw new ValidationException("Empty dose in round for bed " + e.getKey());
+                    Prescription p = prescriptionOf(b, given.prescriptionId);
+                    MedicationDose md = doseLine(p, given.medicine);
+                    Administration a = recorded(given, p, md);
+                    if (!overrideDoseWindow) checkDoseWindow(b.occupant, a, md, planned);
+                    planned.merge(DoseScheduler.doseKey(a.prescriptionId, a.medicine), a, CareHome::later);
+                    round.add(a);
+                }
+            }
 
-        administrations.add(admin);
-        log(nurseId, "ADMINISTER " + admin.medicine + " to " + b.occupant.name + " (" + bedId + ")");
+            for (Administration a : round) {
+                administrations = administrations.plus(a);
+                recordLastDose(a);
+                bumpPrescriptionVersion(a.prescriptionId);
+            }
+            if (!doseScheduleStale) for (Administration a : round) doseSchedule.given(a);
+            log(nurseId, "ADMINISTER ROUND " + round.size() + " doses across " + dosesByBed.size() + " beds: "
+                    + String.join(", ", dosesByBed.keySet()) + (overrideDoseWindow ? " [dose window overridden]" : ""));
+            return Collections.unmodifiableList(round);
+        });
     }
 
     // Shift Operations
     public void allocateShift(String actorId, Shift shift) {
-        requireManager(actorId);
+        allocateShift(actorId, shift, ANY_VERSION);
+    }
 
-        Staff assignee = staffById.get(shift.getStaffId());
-        if (assignee == null) throw new NotFoundException("Unknown staff: " + shift.getStaffId());
+    /** As above, but only if no shift has been allocated since the caller read the roster. */
+    public void allocateShift(String actorId, Shift shift, long rosterVersion) {
+        instrumented("allocateShift", actorId, null, null, () -> shift == null ? null : shift.getStaffId(), () -> {
+            requireManager(actorId);
+            expectVersion("Roster", rosterVersion, this.rosterVersion);
+
+            Staff assignee = staffById.get(shift.getStaffId());
+            if (assignee == null) throw new NotFoundException("Unknown staff: " + shift.getStaffId());
+
+            // Must be same-day
+            if (!shift.getStart().toLocalDate().equals(shift.getEnd().toLocalDate()))
+                throw new ShiftRuleException("Shift must start and end on the same day.");
+
+            long hours = shift.hours();
+
+            if (assignee.getRole() == Role.NURSE) {
+                // fixed 8h slots only
+                var startT = shift.getStart().toLocalTime();
+                var endT   = shift.getEnd().toLocalTime();
+                boolean morning = startT.equals(java.time.LocalTime.of(8, 0))  && endT.equals(java.time.LocalTime.of(16, 0));
+                boolean evening = startT.equals(java.time.LocalTime.of(14, 0)) && endT.equals(java.time.LocalTime.of(22, 0));
+                if (!(morning || evening)) throw new ShiftRuleException("Nurse shifts must be 08:00–16:00 or 14:00–22:00.");
+                if (hours != 8)            throw new ShiftRuleException("Nurse shift must be exactly 8 hours.");
+
+                var day = shift.getStart().toLocalDate();
+
+                // at most one shift per nurse per day
+                boolean nurseAlreadyHasThatDay = shifts.stream().anyMatch(s ->
+                        s.getStaffId().equals(assignee.getId()) &&
+                                s.getStart().toLocalDate().equals(day)
+                );
+                if (nurseAlreadyHasThatDay)
+                    throw new ShiftRuleException("Nurse " + assignee.getId() + " already has a shift on " + day + ".");
+
+                // only one nurse can occupy a given slot that day (same start/end)
+                boolean slotTaken = shifts.stream().anyMatch(s -> {
+                    Staff st = staffById.get(s.getStaffId());
+                    return st != null && st.getRole() == Role.NURSE
+                            && s.getStart().toLocalDate().equals(day)
+                            && s.getStart().toLocalTime().equals(startT)
+                            && s.getEnd().toLocalTime().equals(endT);
+                });
+                if (slotTaken)
+                    throw new ShiftRuleException("Nurse slot already assigned: " + day + " " + startT + "–" + endT + ".");
+            } else if (assignee.getRole() == Role.DOCTOR) {
+                if (hours != 1) throw new ShiftRuleException("Doctor shift must be exactly 1 hour.");
+            }
 
-        // Must be same-day
-        if (!shift.getStart().toLocalDate().equals(shift.getEnd().toLocalDate()))
-            throw new ShiftRuleException("Shift must start and end on the same day.");
+            // self-overlap guard -uses your Shift.overlaps means same staff only)
+            boolean overlapsSelf = shifts.stream().anyMatch(s -> s.overlaps(shift));
+            if (overlapsSelf)
+                throw new ShiftRuleException("Overlapping shift for " + shift.getStaffId());
 
-        long hours = shift.hours();
+            shifts = shifts.plus(shift);
+            this.rosterVersion++;
+            log(actorId, "ALLOCATE SHIFT " + shift.getStaffId() + " " + shift.getStart() + " -> " + shift.getEnd());
+            return null;
+        });
+    }
 
-        if (assignee.getRole() == Role.NURSE) {
-            // fixed 8h slots only
-            var startT = shift.getStart().toLocalTime();
-            var endT   = shift.getEnd().toLocalTime();
-            boolean morning = startT.equals(java.time.LocalTime.of(8, 0))  && endT.equals(java.time.LocalTime.of(16, 0));
-            boolean evening = startT.equals(java.time.LocalTime.of(14, 0)) && endT.equals(java.time.LocalTime.of(22, 0));
-            if (!(morning || evening)) throw new ShiftRuleException("Nurse shifts must be 08:00–16:00 or 14:00–22:00.");
-            if (hours != 8)            throw new ShiftRuleException("Nurse shift must be exactly 8 hours.");
 
-            var day = shift.getStart().toLocalDate();
+    public List<Shift> getShifts() {
+        return shifts;
+    }
 
-            // at most one shift per nurse per day
-            boolean nurseAlreadyHasThatDay = shifts.stream().anyMatch(s ->
-                    s.getStaffId().equals(assignee.getId()) &&
-                            s.getStart().toLocalDate().equals(day)
-            );
-            if (nurseAlreadyHasThatDay)
-                throw new ShiftRuleException("Nurse " + assignee.getId() + " already has a shift on " + day + ".");
-
-            // only one nurse can occupy a given slot that day (same start/end)
-            boolean slotTaken = shifts.stream().anyMatch(s -> {
-                Staff st = staffById.get(s.getStaffId());
-                return st != null && st.getRole() == Role.NURSE
-                        && s.getStart().toLocalDate().equals(day)
-                        && s.getStart().toLocalTime().equals(startT)
-                        && s.getEnd().toLocalTime().equals(endT);
-            });
-            if (slotTaken)
-                throw new ShiftRuleException("Nurse slot already assigned: " + day + " " + startT + "–" + endT + ".");
-        } else if (assignee.getRole() == Role.DOCTOR) {
-            if (hours != 1) throw new ShiftRuleException("Doctor shift must be exactly 1 hour.");
-        }
+    //  Versions
 
-        // self-overlap guard -uses your Shift.overlaps means same staff only)
-        boolean overlapsSelf = shifts.stream().anyMatch(s -> s.overlaps(shift));
-        if (overlapsSelf)
-            throw new ShiftRuleException("Overlapping shift for " + shift.getStaffId());
+    public long getRosterVersion() {
+        return rosterVersion;
+    }
 
-        shifts.add(shift);
-        log(actorId, "ALLOCATE SHIFT " + shift.getStaffId() + " " + shift.getStart() + " -> " + shift.getEnd());
+    /** Current version of a bed; 0 for a bed that has never been occupied. */
+    public long getBedVersion(String bedId) {
+        Bed b = findBed(bedId);
+        if (b == null) throw new NotFoundException("Bed " + bedId + " does not exist");
+        return b.version;
     }
 
+    public long getPrescriptionVersion(String prescriptionId) {
+        Prescription p = prescriptionId == null ? null : activePrescriptionsById.get(prescriptionKey(prescriptionId));
+        Long v = p == null ? null : prescriptionVersions.get(p.id);
+        if (v == null) throw new NotFoundException("Prescription " + prescriptionId + " is not active");
+        return v;
+    }
 
-    public List<Shift> getShifts() {
-        return Collections.unmodifiableList(shifts);
+    private void bumpPrescriptionVersion(String prescriptionId) {
+        prescriptionVersions = prescriptionVersions.plus(prescriptionId, prescriptionVersions.getOrDefault(prescriptionId, 0L) + 1);
+    }
+
+    private static void expectVersion(String what, long expected, long actual) {
+        if (expected != ANY_VERSION && expected != actual)
+            throw new VersionConflictException(what + " was changed by someone else (expected version " + expected
+                    + ", now " + actual + "); reload and try again");
     }
 
     public Staff authenticate(String id, String password) {
-        Staff s = staffById.get(id);
-        if (s == null) throw new UnauthorizedException("Unknown staff ID");
-        if (!s.checkPassword(password)) throw new UnauthorizedException("Invalid password");
-        return s;
+        return timed("authenticate", () -> {
+            Staff s = staffById.get(id);
+            if (s == null) throw new UnauthorizedException("Unknown staff ID");
+            if (!s.checkPassword(password)) throw new UnauthorizedException("Invalid password");
+            return s;
+        });
     }
 
     // List active administrations for a resident
     public java.util.List<Administration> getAdministrationsForResident(String residentId) {
-        java.util.Set<String> presIds = getPrescriptionsForResident(residentId)
-                .stream().map(p -> p.id).collect(java.util.stream.Collectors.toSet());
-        java.util.List<Administration> out = new java.util.ArrayList<>();
-        for (Administration a : administrations) {
-            if (presIds.contains(a.prescriptionId)) out.add(a);
-        }
-        return java.util.Collections.unmodifiableList(out);
+        return timed("getAdministrationsForResident", () -> {
+            java.util.Set<String> presIds = getPrescriptionsForResident(residentId)
+                    .stream().map(p -> p.id).collect(java.util.stream.Collectors.toSet());
+            java.util.List<Administration> out = new java.util.ArrayList<>();
+            for (Administration a : administrations) {
+                if (presIds.contains(a.prescriptionId)) out.add(a);
+            }
+            return java.util.Collections.unmodifiableList(out);
+        });
     }
 
 
     //  Compliance
 
     public void checkCompliance() {
+        timed("checkCompliance", () -> {
+            RuleCheckEvent check = RuleCheckEvent.start();
+            try {
+                checkRoster(shifts, nurseIds, doctorIds);
+                check.end("checkCompliance", shifts.size(), true);
+            } catch (RuntimeException e) {
+                check.end("checkCompliance", e.getMessage(), false);
+                throw e;
+            }
+            return null;
+        });
+    }
+
+    // the compliance rules proper, shared with CareHomeSnapshot.checkCompliance
+    static void checkRoster(List<Shift> shifts, List<String> nurseIds, List<String> doctorIds) {
         // Group shifts by staffId then by LocalDate
         var byStaff = new HashMap<String, Map<java.time.LocalDate, List<Shift>>>();
         for (var s : shifts) {
@@ -303,28 +672,123 @@ public class CareHome implements Serializable {
     }
 
     private void requireRostered(String actorId, LocalDateTime at) {
+        RuleCheckEvent check = RuleCheckEvent.start();
         boolean ok = shifts.stream().anyMatch(sh ->
                 sh.getStaffId().equals(actorId) &&
                         !at.isBefore(sh.getStart()) &&
                         at.isBefore(sh.getEnd()));
+        check.end("requireRostered", actorId, ok);
         if (!ok) throw new NotRosteredException("Actor " + actorId + " not rostered at " + at);
     }
 
     public void seedDefaultLayout() {
-        createWard("W1", new int[]{1, 2, 4, 3, 4, 3});
-        createWard("W2", new int[]{1, 2, 4, 3, 4, 3});
-    }
-
-    private void createWard(String wardId, int[] bedsPerRoom) {
-        for (int room = 1; room <= bedsPerRoom.length; room++) {
-            int count = bedsPerRoom[room - 1];
-            if (count < 1 || count > 4)
-                throw new IllegalArgumentException("Room bed count must be 1..4");
-            for (int bed = 1; bed <= count; bed++) {
-                String bedId = wardId + "-R" + room + "-B" + bed;
-                beds.putIfAbsent(bedId, new Bed(bedId));
+        loadLayout(FacilityLayout.defaultLayout());
+    }
+
+    /**
+     * Replaces the bed layout. Beds that exist in both keep their occupant; an occupied bed
+     * missing from the new layout is rejected. Beds and the room index are built in one pass.
+     */
+    public void loadLayout(FacilityLayout layout) {
+        instrumented("loadLayout", null, null, null, null, () -> {
+            List<BedKey> keys = layout.bedKeys();
+            Set<BedKey> wanted = new HashSet<>(keys);
+            for (Bed b : beds.values()) {
+                if (!b.isVacant() && !wanted.contains(b.key))
+                    throw new ValidationException("Layout drops occupied bed " + b.id + " (" + b.occupant.name + ")");
+            }
+
+            Map<BedKey, Bed> old = new HashMap<>(beds);
+            beds.clear();
+            bedStates = PersistentMap.empty();
+            occupancy.clear();
+            wardLabels = PersistentMap.empty();
+            bulkAddBeds(keys, old);
+            for (FacilityLayout.Ward w : layout.getWards()) wardLabels = wardLabels.plus(w.number(), w.label());
+            return null;
+        });
+    }
+
+    // keys must be ascending; TreeMap.putAll from a sorted map into an empty map is linear
+    private void bulkAddBeds(List<BedKey> sortedKeys, Map<BedKey, Bed> reuse) {
+        TreeMap<BedKey, Bed> built = new TreeMap<>();
+        for (BedKey key : sortedKeys) {
+            Bed b = reuse.getOrDefault(key, beds.get(key));
+            if (b == null) b = new Bed(key);
+            if (built.put(key, b) != null) continue;
+            if (beds.containsKey(key)) continue;
+            occupancy.addBed(key, b.isVacant() ? null : b.occupant.gender);
+            bedStates = bedStates.plus(key, CareHomeSnapshot.BedState.of(b));
+        }
+        if (beds.isEmpty()) beds.putAll(built);
+        else for (var e : built.entrySet()) beds.putIfAbsent(e.getKey(), e.getValue());
+    }
+
+    //  Vacancy search
+
+    /**
+     * Vacant beds a resident of this gender can be admitted to, best first: preferred ward first
+     * (null for none), then rooms already holding that gender before empty rooms.
+     */
+    public List<String> findVacantBeds(Gender gender, Integer preferredWard, int limit) {
+        return timed("findVacantBeds", () -> {
+            if (gender == null) throw new ValidationException("Gender required to search for a bed");
+            List<String> out = new ArrayList<>();
+            for (BedKey k : occupancy.findVacant(gender, preferredWard, limit)) out.add(k.toString());
+            return out;
+        });
+    }
+
+    public Optional<String> findBestBed(Gender gender, Integer preferredWard) {
+        List<String> one = findVacantBeds(gender, preferredWard, 1);
+        return one.isEmpty() ? Optional.empty() : Optional.of(one.get(0));
+    }
+
+    public int getVacantBedCount() {
+        return occupancy.vacantCount();
+    }
+
+    public String getWardLabel(int ward) {
+        return wardLabels.getOrDefault(ward, "Ward " + ward);
+    }
+
+    public Map<Integer, String> getWardLabels() {
+        return Collections.unmodifiableMap(new TreeMap<>(wardLabels.asMap()));
+    }
+
+    //  Due doses
+
+    /**
+     * Scheduled doses due at or before {@code until} on a ward (null for every ward), overdue
+     * ones included, earliest first. PRN and unrecognised frequencies are never listed.
+     */
+    public List<DueDose> getDueDoses(Integer ward, LocalDateTime until) {
+        return timed("getDueDoses", () -> {
+            if (until == null) throw new ValidationException("Time required to list due doses");
+            ensureDoseSchedule();
+            List<DoseScheduler.Entry> due = ward == null ? doseSchedule.due(until) : doseSchedule.dueOnWard(ward, until);
+            List<DueDose> out = new ArrayList<>(due.size());
+            for (DoseScheduler.Entry e : due) {
+                Bed b = beds.get(e.bed);
+                String name = b == null || b.isVacant() ? "" : b.occupant.name;
+                out.add(new DueDose(e.bed.toString(), e.residentId, name, e.prescription.id,
+                        e.dose.medicine, e.dose.dosage, e.dose.frequency, e.dueAt));
             }
+            return out;
+        });
+    }
+
+    // one pass over occupied beds, their prescriptions and the active administrations
+    private void ensureDoseSchedule() {
+        if (!doseScheduleStale) return;
+        doseSchedule.clear();
+        for (Bed b : beds.values()) {
+            if (b.isVacant()) continue;
+            for (Prescription p : prescriptionsByResident.getOrDefault(b.occupant.id, PersistentVector.empty()))
+                doseSchedule.add(b.occupant.id, p, b.key, p.dateTime);
         }
+        for (Administration a : administrations) doseSchedule.given(a);
+        doseScheduleStale = false;
     }
 
     public boolean hasAnyBeds() {
@@ -332,78 +796,466 @@ public class CareHome implements Serializable {
     }
 
     public ArchivedStay dischargeResident(String actorId, String bedId, LocalDateTime when) {
-        Staff actor = staffById.get(actorId);
-        if (actor == null) throw new UnauthorizedException("Unrecognized staff: " + actorId);
-        if (actor.getRole() != Role.DOCTOR && actor.getRole() != Role.NURSE)
-            throw new UnauthorizedException("Only doctor or nurse can discharge");
-        requireRostered(actorId, when);
+        return dischargeResident(actorId, bedId, when, ANY_VERSION);
+    }
+
+    /** As above, but only if the bed is still at {@code bedVersion}, so the right resident leaves. */
+    public ArchivedStay dischargeResident(String actorId, String bedId, LocalDateTime when, long bedVersion) {
+        return instrumented("dischargeResident", actorId, bedId, null, null, () -> {
+            Staff actor = staffById.get(actorId);
+            if (actor == null) throw new UnauthorizedException("Unrecognized staff: " + actorId);
+            if (actor.getRole() != Role.DOCTOR && actor.getRole() != Role.NURSE)
+                throw new UnauthorizedException("Only doctor or nurse can discharge");
+            requireRostered(actorId, when);
+
+            Bed bed = findBed(bedId);
+            if (bed == null) throw new NotFoundException("Bed " + bedId + " does not exist");
+            expectVersion("Bed " + bedId, bedVersion, bed.version);
+            if (bed.isVacant()) throw new NotFoundException("Bed " + bedId + " is vacant");
+
+            Resident r = bed.occupant;
+
+            // gather history
+            List<Prescription> pres = new ArrayList<>(getPrescriptionsForResident(r.id));
+            Set<String> presIds = pres.stream().map(p -> p.id).collect(Collectors.toSet());
+            List<Administration> admin = administrations.stream()
+                    .filter(a -> presIds.contains(a.prescriptionId))
+                    .collect(Collectors.toList());
+
+            // archive snapshot
+            ArchivedStay stay = new ArchivedStay(
+                    r.id, r.name, r.gender, r.age,
+                    bedId, when, pres, admin
+            );
+            ArchiveEntry entry = ArchiveEntry.hot(stay);
+            archives = archives.plus(entry);
+            indexArchive(entry, stay);
+
+            // clean active state
+            prescriptionsByResident = prescriptionsByResident.minus(r.id);
+            for (Prescription p : pres) {
+                unindexActive(p, bed.key.ward());
+                activePrescriptionsById.remove(prescriptionKey(p.id));
+                archivedPrescriptionsById.put(prescriptionKey(p.id), entry);
+                prescriptionVersions = prescriptionVersions.minus(p.id);
+            }
+            administrations = administrations.without(a -> presIds.contains(a.prescriptionId));
+            for (Administration a : admin) lastDose.remove(DoseScheduler.doseKey(a.prescriptionId, a.medicine));
+            doseSchedule.remove(r.id);
+            vacate(bed);
+
+            log(actorId, "DISCHARGE " + r.name + " from " + bedId + " (archived)");
+            return stay;
+        });
+    }
+
+    //  Prescription registry
+
+    /** Active or archived prescription by id, compared trimmed and case-insensitively. */
+    public Optional<Prescription> getPrescription(String prescriptionId) {
+        if (prescriptionId == null) return Optional.empty();
+        String key = prescriptionKey(prescriptionId);
+        Prescription p = activePrescriptionsById.get(key);
+        if (p != null) return Optional.of(p);
+        ArchiveEntry e = archivedPrescriptionsById.get(key);
+        if (e == null) return Optional.empty();
+        return openArchivedStay(e).prescriptions.stream().filter(x -> key.equals(prescriptionKey(x.id))).findFirst();
+    }
+
+    public boolean isPrescriptionActive(String prescriptionId) {
+        return prescriptionId != null && activePrescriptionsById.containsKey(prescriptionKey(prescriptionId));
+    }
+
+    /** Whether the id is taken, compared trimmed and case-insensitively. */
+    public boolean isPrescriptionIdUsed(String prescriptionId) {
+        return prescriptionId != null && prescriptionKeys.contains(prescriptionKey(prescriptionId));
+    }
+
+    // prescription ids are compared, and new ones stored, trimmed and upper-cased
+    static String prescriptionKey(String prescriptionId) {
+        return prescriptionId.trim().toUpperCase(Locale.ROOT);
+    }
+
+    // p itself when its id and medicine names are already in stored form, otherwise a copy in that form
+    private Prescription stored(Prescription p) {
+        String id = prescriptionKey(p.id);
+        List<MedicationDose> meds = p.meds;
+        if (meds != null && meds.stream().anyMatch(md -> md != null && medicines.intern(md.medicine) != md.medicine)) {
+            meds = new ArrayList<>(p.meds.size());
+            for (MedicationDose md : p.meds)
+                meds.add(md == null ? null : new MedicationDose(medicines.intern(md.medicine), md.dosage, md.frequency));
+        }
+        if (id.equals(p.id) && meds == p.meds) return p;
+        Prescription q = new Prescription(id, p.doctorId, p.residentId, p.dateTime, meds);
+        q.timeCreated = p.timeCreated;
+        return q;
+    }
+
+    // the bed's resident's active prescription with this id; any other id is refused
+    private Prescription prescriptionOf(Bed b, String prescriptionId) {
+        Prescription p = prescriptionId == null ? null : activePrescriptionsById.get(prescriptionKey(prescriptionId));
+        if (p == null) throw new NotFoundException("Prescription " + prescriptionId + " is not active");
+        if (!prescriptionsByResident.getOrDefault(b.occupant.id, PersistentVector.empty()).contains(p))
+            throw new ValidationException("Prescription " + prescriptionId + " does not belong to "
+                    + b.occupant.name + " (" + b.id + ")");
+        return p;
+    }
+
+    // the dose as it is kept: under the prescription's stored id and the line's medicine name,
+    // whatever spelling the caller used
+    private static Administration recorded(Administration a, Prescription p, MedicationDose md) {
+        if (p.id.equals(a.prescriptionId) && md.medicine.equals(a.medicine)) return a;
+        Administration copy = new Administration(a.nurseId, p.id, md.medicine, a.administeredAt, a.notes);
+        copy.time = a.time;
+        return copy;
+    }
+
+    /** Next free id of the form P<n>; it is reserved once a prescription with it is added. */
+    public String nextPrescriptionId() {
+        long n = prescriptionSeq;
+        String id;
+        do { id = "P" + (++n); } while (isPrescriptionIdUsed(id));
+        return id;
+    }
+
+    public long getPrescriptionSeq() {
+        return prescriptionSeq;
+    }
+
+    private static final java.util.regex.Pattern PID = java.util.regex.Pattern.compile("^P(\\d{1,18})$", java.util.regex.Pattern.CASE_INSENSITIVE);
+
+    // archivedWith is the stay an archived prescription belongs to; null for an active one
+    private void registerPrescription(Prescription p, ArchiveEntry archivedWith) {
+        if (p == null || p.id == null) return;
+        if (archivedWith == null) {
+            activePrescriptionsById.put(prescriptionKey(p.id), p);
+            prescriptionVersions = prescriptionVersions.plus(p.id, 0L);
+        }
+        reservePrescriptionId(p.id, archivedWith);
+    }
+
+    // takes the id for good; an archived one also maps to its stay
+    private void reservePrescriptionId(String prescriptionId, ArchiveEntry archivedWith) {
+        prescriptionKeys.add(prescriptionKey(prescriptionId));
+        if (archivedWith != null) archivedPrescriptionsById.put(prescriptionKey(prescriptionId), archivedWith);
+        var m = PID.matcher(prescriptionId.trim());
+        if (m.matches()) prescriptionSeq = Math.max(prescriptionSeq, Long.parseLong(m.group(1)));
+    }
+
+    //  Worklists
+
+    public List<Prescription> getActivePrescriptionsForDoctor(String doctorId) {
+        return List.copyOf(activeByDoctor.getOrDefault(doctorId, Map.of()).keySet());
+    }
+
+    public List<Prescription> getActivePrescriptionsInWard(int ward) {
+        return List.copyOf(activeByWard.getOrDefault(ward, Map.of()).keySet());
+    }
+
+    /** Active prescriptions written by this doctor, in bed order. */
+    public List<WorklistItem> getDoctorWorklist(String doctorId) {
+        return timed("getDoctorWorklist", () -> {
+            return worklist(activeByDoctor.getOrDefault(doctorId, Map.of()));
+        });
+    }
+
+    /** Active prescriptions of residents currently on this ward, in bed order. */
+    public List<WorklistItem> getWardWorklist(int ward) {
+        return timed("getWardWorklist", () -> {
+            return worklist(activeByWard.getOrDefault(ward, Map.of()));
+        });
+    }
+
+    private List<WorklistItem> worklist(Map<Prescription, String> entries) {
+        List<Map.Entry<BedKey, WorklistItem>> rows = new ArrayList<>(entries.size());
+        for (var e : entries.entrySet()) {
+            BedKey key = bedByResident.get(residentKey(e.getValue()));
+            Bed b = key == null ? null : beds.get(key);
+            if (b == null || b.isVacant()) continue;
+            rows.add(Map.entry(key, new WorklistItem(b.id, b.occupant.id, b.occupant.name, e.getKey())));
+        }
+        rows.sort(Map.Entry.<BedKey, WorklistItem>comparingByKey()
+                .thenComparing(e -> e.getValue().prescription.id, Comparator.nullsFirst(Comparator.naturalOrder())));
+        List<WorklistItem> out = new ArrayList<>(rows.size());
+        for (var r : rows) out.add(r.getValue());
+        return out;
+    }
+
+    private void indexActive(Prescription p, String residentId) {
+        if (p.doctorId != null) activeByDoctor.computeIfAbsent(p.doctorId, d -> new LinkedHashMap<>()).put(p, residentId);
+        BedKey key = bedByResident.get(residentKey(residentId));
+        if (key != null) activeByWard.computeIfAbsent(key.ward(), w -> new LinkedHashMap<>()).put(p, residentId);
+    }
+
+    private void unindexActive(Prescription p, int ward) {
+        Map<Prescription, String> mine = activeByDoctor.get(p.doctorId);
+        if (mine != null && mine.remove(p) != null && mine.isEmpty()) activeByDoctor.remove(p.doctorId);
+        Map<Prescription, String> onWard = activeByWard.get(ward);
+        if (onWard != null) onWard.remove(p);
+    }
 
-        Bed bed = beds.get(bedId);
-        if (bed == null) throw new NotFoundException("Bed " + bedId + " does not exist");
-        if (bed.isVacant()) throw new NotFoundException("Bed " + bedId + " is vacant");
+    //  Medicine catalog
 
-        Resident r = bed.occupant;
+    /** Adds a site catalog (e.g. a medicines file) to the built-in one; existing names keep their ids. */
+    public void loadMedicineCatalog(MedicineCatalog catalog) {
+        medicines.addAll(catalog);
+    }
 
-        // gather history
-        List<Prescription> pres = new ArrayList<>(getPrescriptionsForResident(r.id));
-        Set<String> presIds = pres.stream().map(p -> p.id).collect(Collectors.toSet());
-        List<Administration> admin = administrations.stream()
-                .filter(a -> presIds.contains(a.prescriptionId))
-                .collect(Collectors.toList());
+    public MedicineCatalog getMedicineCatalog() {
+        return medicines;
+    }
 
-        // archive snapshot
-        ArchivedStay stay = new ArchivedStay(
-                r.id, r.name, r.gender, r.age,
-                bedId, when, pres, admin
-        );
-        archives.add(stay);
+    public List<String> completeMedicine(String prefix, int limit) {
+        return medicines.complete(prefix, limit);
+    }
 
-        // clean active state
-        prescriptionsByResident.remove(r.id);
-        administrations.removeIf(a -> presIds.contains(a.prescriptionId));
-        bed.occupant = null;
+    private void internMedicines(Prescription p) {
+        if (p == null || p.meds == null) return;
+        for (MedicationDose md : p.meds) if (md != null) md.medicine = medicines.intern(md.medicine);
+    }
 
-        log(actorId, "DISCHARGE " + r.name + " from " + bedId + " (archived)");
-        return stay;
+    // active prescriptions of a resident are an immutable list, replaced on every change
+    private void fileActive(String residentId, Prescription p) {
+        prescriptionsByResident = prescriptionsByResident.plus(residentId,
+                prescriptionsByResident.getOrDefault(residentId, PersistentVector.empty()).plus(p));
     }
 
     // Helpers for archive/GUI access
     public List<Prescription> getPrescriptionsForResident(String residentId) {
-        return Collections.unmodifiableList(prescriptionsByResident.getOrDefault(residentId, List.of()));
+        return prescriptionsByResident.getOrDefault(residentId, PersistentVector.empty());
     }
 
+    /** Every archived stay in discharge order; cold ones are decoded as they are read, and not kept. */
     public List<ArchivedStay> getArchives() {
-        return Collections.unmodifiableList(archives);
+        return openAll(archives, coldArchive);
+    }
+
+    /** Headers of every archived stay in discharge order, without decoding cold ones. */
+    public List<ArchiveEntry> getArchiveEntries() {
+        return archives;
+    }
+
+    /** The whole stay behind an entry, read from the cold archive when it is no longer on heap. */
+    public ArchivedStay openArchivedStay(ArchiveEntry entry) {
+        return open(entry, coldArchive);
+    }
+
+    /** Previous stays of a resident id (trimmed, case-insensitive), oldest first; empty for a new resident. */
+    public List<ArchivedStay> getArchivedStays(String residentId) {
+        if (residentId == null || residentId.isBlank()) return List.of();
+        return openAll(archivesByResident.getOrDefault(residentKey(residentId), List.of()), coldArchive);
+    }
+
+    static ArchivedStay open(ArchiveEntry e, ColdArchive cold) {
+        if (!e.isCold()) return e.stay;
+        if (cold == null) throw new IllegalStateException("Archived stay " + e + " is cold but no cold archive is attached");
+        return cold.read(e.coldPosition);
+    }
+
+    // read-only view that opens each entry on access
+    static List<ArchivedStay> openAll(List<ArchiveEntry> entries, ColdArchive cold) {
+        final class Opened extends AbstractList<ArchivedStay> implements RandomAccess {
+            @Override public ArchivedStay get(int i) { return open(entries.get(i), cold); }
+            @Override public int size() { return entries.size(); }
+        }
+        return new Opened();
+    }
+
+    /**
+     * Attaches the cold tier: {@link #compactArchives()} then moves stays discharged more than
+     * {@code coldAfter} ago into {@code archive}, keeping only their {@link ArchiveEntry} headers
+     * on heap. Searching, readmission lookups and exports still see every stay. The archive is not
+     * serialized with the care home; a deserialized one needs it attached again.
+     */
+    public void setColdArchive(ColdArchive archive, Duration coldAfter) {
+        if (coldAfter == null || coldAfter.isNegative()) throw new ValidationException("Cold archive age must be zero or more");
+        if (archive == null && coldCount > 0) throw new IllegalStateException(coldCount + " archived stays are already cold");
+        // stays loaded as references must point into this very archive
+        if (archive != null && coldCount > 0) for (ArchiveEntry e : archives)
+            if (e.isCold() && archive.find(e.residentId, e.dischargedAt) != e.coldPosition)
+                throw new IllegalStateException("Archived stay " + e + " is not in this cold archive");
+        this.coldArchive = archive;
+        this.coldAfter = coldAfter;
+    }
+
+    /** The attached cold tier, or null. */
+    public ColdArchive getColdArchive() {
+        return coldArchive;
+    }
+
+    public Duration getColdAfter() {
+        return coldAfter;
+    }
+
+    /**
+     * Moves hot stays older than the configured age into the cold archive and returns how many
+     * moved (0 when none is attached). A stay the archive already holds, identified by resident
+     * and discharge time (e.g. after a restart from the database), is not written again.
+     */
+    public int compactArchives() {
+        if (coldArchive == null) return 0;
+        return timed("compactArchives", () -> {
+            LocalDateTime cutoff = (clock == null ? LocalDateTime.now() : LocalDateTime.now(clock)).minus(coldAfter);
+            PersistentVector<ArchiveEntry> next = archives;
+            int moved = 0;
+            for (int i = 0; i < next.size(); i++) {
+                ArchiveEntry e = next.get(i);
+                if (e.isCold() || e.dischargedAt == null || !e.dischargedAt.isBefore(cutoff)) continue;
+                long pos = coldArchive.find(e.residentId, e.dischargedAt);
+                if (pos < 0) pos = coldArchive.append(e.stay);
+                ArchiveEntry cold = ArchiveEntry.cold(e.stay, pos);
+                next = next.with(i, cold);
+                if (e.residentId != null && !e.residentId.isBlank())
+                    archivesByResident.get(residentKey(e.residentId)).replaceAll(x -> x == e ? cold : x);
+                if (e.stay.prescriptions != null) for (Prescription p : e.stay.prescriptions)
+                    archivedPrescriptionsById.replace(prescriptionKey(p.id), e, cold);
+                moved++;
+            }
+            archives = next;
+            coldCount += moved;
+            return moved;
+        });
+    }
+
+    /**
+     * Ranked full-text search over archived stays (resident details, prescriptions, doses,
+     * administration notes). See {@link ArchiveSearchIndex} for the query syntax.
+     */
+    public ArchiveSearchResult searchArchives(String query, int offset, int limit) {
+        return timed("searchArchives", () -> {
+            if (archiveSearch == null) {
+                ArchiveSearchIndex idx = new ArchiveSearchIndex();
+                for (ArchiveEntry e : archives) idx.add(openArchivedStay(e));
+                archiveSearch = idx;
+            }
+            return archiveSearch.search(query, offset, limit, archives, this::openArchivedStay);
+        });
+    }
+
+    // search documents are numbered like archives, so the index refers to stays by position
+    private void indexArchive(ArchiveEntry e, ArchivedStay s) {
+        if (archiveSearch != null) archiveSearch.add(s);
+        if (e.residentId == null || e.residentId.isBlank()) return;
+        archivesByResident.computeIfAbsent(residentKey(e.residentId), k -> new ArrayList<>()).add(e);
+    }
+
+
+    //  Dose window helpers
+
+    // rejects a dose closer than one frequency interval to the last (or a planned) dose of the same line
+    private void checkDoseWindow(Resident r, Administration a, MedicationDose md, Map<String, Administration> planned) {
+        if (a.administeredAt == null) return;
+        DoseSchedule s = DoseSchedule.parse(md.frequency);
+        if (s == null || s.isAsNeeded()) return;
+
+        String k = DoseScheduler.doseKey(a.prescriptionId, a.medicine);
+        Administration prev = later(lastDose.get(k), planned == null ? null : planned.get(k));
+        if (prev == null || prev.administeredAt == null) return;
+        if (Duration.between(prev.administeredAt, a.administeredAt).abs().compareTo(s.getInterval()) < 0)
+            throw new DuplicateDoseException(md.medicine + " (" + a.prescriptionId + ") for " + r.name
+                    + " was already given at " + prev.administeredAt + "; frequency is " + md.frequency
+                    + ", next dose due " + s.nextAfter(prev.administeredAt));
+    }
+
+    // the prescription's line for this medicine, names compared by MedicineCatalog.key; any other medicine is refused
+    private static MedicationDose doseLine(Prescription p, String medicine) {
+        String key = MedicineCatalog.key(medicine);
+        if (p.meds != null) for (MedicationDose md : p.meds)
+            if (md.medicine != null && MedicineCatalog.key(md.medicine).equals(key)) return md;
+        throw new ValidationException((medicine == null || medicine.isBlank() ? "No medicine" : medicine.trim())
+                + " is not on prescription " + p.id);
+    }
+
+    private void recordLastDose(Administration a) {
+        if (a == null || a.administeredAt == null) return;
+        lastDose.merge(DoseScheduler.doseKey(a.prescriptionId, a.medicine), a, CareHome::later);
+    }
+
+    private static Administration later(Administration x, Administration y) {
+        if (x == null || x.administeredAt == null) return y;
+        if (y == null || y.administeredAt == null) return x;
+        return y.administeredAt.isAfter(x.administeredAt) ? y : x;
     }
 
 
     //Room/Gender helpers
 
-    private String roomKeyOf(String bedId) {
-        int i = bedId.lastIndexOf("-B");
-        if (i > 0) return bedId.substring(0, i);
-        // fallback: keep first two segments (ward + room)
-        String[] parts = bedId.split("-");
-        if (parts.length >= 2) return parts[0] + "-" + parts[1];
-        return bedId; // unknown format; treat whole as room
+    // bed ids coming from the UI/DB are strings; anything outside W<n>-R<n>-B<n> is rejected here
+    private BedKey keyOf(String bedId) {
+        BedKey key = BedKey.tryParse(bedId);
+        if (key == null) throw new ValidationException("Invalid bed id: " + bedId + " (expected W<n>-R<n>-B<n>)");
+        return key;
     }
 
-//     Ensure all occupied beds in the room are same gender as newGender
-    private void enforceRoomGender(String bedId, Gender newGender) {
-        String roomKey = roomKeyOf(bedId);
-
-        Gender found = null;
-        for (Map.Entry<String, Bed> e : beds.entrySet()) {
-            String id = e.getKey();
-            if (!id.startsWith(roomKey + "-")) continue;
-            Bed b = e.getValue();
-            if (!b.isVacant()) {
-                Gender g = b.occupant.gender;
-                if (found == null) found = g;
-                else if (found != g)
-                    throw new ComplianceException("Data integrity: room " + roomKey + " contains mixed genders.");
+    // a caller's ward number; one outside the bed key range is a bad request, not a crash
+    private NavigableMap<BedKey, Bed> wardBeds(int ward) {
+        try {
+            return getBedsInWard(ward);
+        } catch (IllegalArgumentException e) {
+            throw new ValidationException("Invalid ward W" + ward + ": " + e.getMessage());
+        }
+    }
+
+    private Bed findBed(String bedId) {
+        BedKey key = BedKey.tryParse(bedId);
+        return key == null ? null : beds.get(key);
+    }
+
+    private Bed ensureBed(BedKey key) {
+        Bed b = beds.get(key);
+        if (b == null) {
+            b = new Bed(key);
+            beds.put(key, b);
+            bedStates = bedStates.plus(key, CareHomeSnapshot.BedState.of(b));
+            occupancy.addBed(key, null);
+        }
+        return b;
+    }
+
+    // every occupancy change goes through occupy/vacate so the room index stays exact
+    private void occupy(Bed b, Resident r) {
+        if (!b.isVacant()) vacate(b);
+        b.occupant = r;
+        b.version++;
+        bedStates = bedStates.plus(b.key, CareHomeSnapshot.BedState.of(b));
+        if (r != null) {
+            occupancy.occupy(b.key, r.gender);
+            doseSchedule.relocate(r.id, b.key);
+            if (r.id != null) {
+                bedByResident.put(residentKey(r.id), b.key);
+                noteResidentId(r.id);
+            }
+            Map<Prescription, String> ward = null;
+            for (Prescription p : prescriptionsByResident.getOrDefault(r.id, PersistentVector.empty())) {
+                if (ward == null) ward = activeByWard.computeIfAbsent(b.key.ward(), w -> new LinkedHashMap<>());
+                ward.put(p, r.id);
             }
         }
+    }
+
+    private void vacate(Bed b) {
+        if (b.isVacant()) return;
+        String rid = b.occupant.id;
+        occupancy.vacate(b.key, b.occupant.gender);
+        if (rid != null) bedByResident.remove(residentKey(rid), b.key);
+        Map<Prescription, String> ward = activeByWard.get(b.key.ward());
+        if (ward != null) for (Prescription p : prescriptionsByResident.getOrDefault(rid, PersistentVector.empty())) ward.remove(p);
+        b.occupant = null;
+        b.version++;
+        bedStates = bedStates.plus(b.key, CareHomeSnapshot.BedState.of(b));
+    }
+
+//     Ensure all occupied beds in the room are same gender as newGender
+    private void enforceRoomGender(BedKey bedKey, Gender newGender) {
+        RuleCheckEvent check = RuleCheckEvent.start();
+        String roomKey = bedKey.roomLabel();
+
+        if (occupancy.isMixed(bedKey)) {
+            check.end("enforceRoomGender", roomKey, false);
+            throw new ComplianceException("Data integrity: room " + roomKey + " contains mixed genders.");
+        }
+        Gender found = occupancy.roomGender(bedKey);
+        check.end("enforceRoomGender", roomKey, found == null || found == newGender);
         if (found != null && found != newGender) {
             throw new RoomGenderConflictException(
                     "Room " + roomKey + " already has residents of gender " + found +
@@ -413,71 +1265,182 @@ public class CareHome implements Serializable {
 
 //    JDBC Integration
 public void rawPutStaff(Staff s) {
-        staffById.put(s.getId(), s);
-        switch (s.getRole()) {
-            case DOCTOR -> { if (!doctorIds.contains(s.getId())) doctorIds.add(s.getId()); }
-            case NURSE  -> { if (!nurseIds.contains(s.getId()))  nurseIds.add(s.getId()); }
-            case MANAGER -> managerId = s.getId();
-        }
+        putStaff(s);
     }
     public void rawSetCredentials(String staffId, String username, String password) {
         Staff s = staffById.get(staffId);
         if (s != null) s.setCredentials(username, password);
     }
     public void rawSetResidentInBed(String bedId, Resident r) {
-        Bed b = beds.computeIfAbsent(bedId, Bed::new);
-        b.occupant = r;
+        rawSetResidentInBed(keyOf(bedId), r);
+    }
+    public void rawSetResidentInBed(BedKey key, Resident r) {
+        Bed b = ensureBed(key);
+        if (r == null) vacate(b); else occupy(b, r);
+    }
+    public void rawAddBeds(List<BedKey> sortedKeys) {
+        bulkAddBeds(sortedKeys, Map.of());
+    }
+    public void rawSetWardLabel(int ward, String label) {
+        wardLabels = wardLabels.plus(ward, label);
     }
     public void rawAddPrescription(String residentId, Prescription p) {
-        prescriptionsByResident.computeIfAbsent(residentId, k -> new ArrayList<>()).add(p);
+        internMedicines(p);
+        fileActive(residentId, p);
+        registerPrescription(p, null);
+        indexActive(p, residentId);
+        doseScheduleStale = true;
+    }
+    public void rawAddAdministration(Administration a) {
+        administrations = administrations.plus(a);
+        recordLastDose(a);
+        doseScheduleStale = true;
+    }
+    public void rawAddShift(Shift s) { shifts = shifts.plus(s); }
+    /** Versions as stored; call after the occupant is set, which bumps the version itself. */
+    public void rawSetBedVersion(BedKey key, long version) {
+        Bed b = beds.get(key);
+        if (b == null) return;
+        b.version = version;
+        bedStates = bedStates.plus(key, CareHomeSnapshot.BedState.of(b));
     }
-    public void rawAddAdministration(Administration a) { administrations.add(a); }
-    public void rawAddShift(Shift s) { shifts.add(s); }
-    public void rawAddArchive(ArchivedStay a) { archives.add(a); }
-    public void rawAddLog(ActionLog l) { logs.add(l); }
+    /** Call after the prescription is added, which starts it at 0. */
+    public void rawSetPrescriptionVersion(String prescriptionId, long version) {
+        if (prescriptionVersions.containsKey(prescriptionId)) prescriptionVersions = prescriptionVersions.plus(prescriptionId, version);
+    }
+    public void rawSetRosterVersion(long version) { rosterVersion = version; }
+    public void rawAddArchive(ArchivedStay a) {
+        ArchiveEntry entry = ArchiveEntry.hot(a);
+        archives = archives.plus(entry);
+        indexArchive(entry, a);
+        if (a.residentId != null) noteResidentId(a.residentId);
+        if (a.prescriptions != null) for (Prescription p : a.prescriptions) {
+            internMedicines(p);
+            registerPrescription(p, entry);
+        }
+    }
+    /**
+     * A stay the database keeps only as a reference into the cold archive. Until that archive is
+     * attached with {@link #setColdArchive}, only the header and prescription ids are known.
+     */
+    public void rawAddColdArchive(ArchiveEntry entry) {
+        if (!entry.isCold()) { rawAddArchive(entry.stay); return; }
+        archives = archives.plus(entry);
+        coldCount++;
+        archiveSearch = null; // rebuilt from the archive on the next search
+        indexArchive(entry, null);
+        if (entry.residentId != null) noteResidentId(entry.residentId);
+        for (String id : entry.prescriptionIds) if (id != null) reservePrescriptionId(id, entry);
+    }
+    /** Canonical medicine name for loaders building Administrations; unknown names are not added. */
+    public String rawInternMedicine(String name) {
+        return medicines.intern(name);
+    }
+    public void rawSetPrescriptionSeq(long seq) {
+        prescriptionSeq = Math.max(prescriptionSeq, seq);
+    }
+    public void rawAddLog(ActionLog l) { logs = logs.plus(l); }
 
 
     // Logging
-    private void log(String staffId, String action) {
-        logs.add(new ActionLog(staffId, action));
-        System.out.println("[LOG] " + staffId + ": " + action);
+
+    /** Clock used to timestamp audit log entries; null restores the system clock. */
+    public void setClock(Clock clock) {
+        this.clock = clock;
     }
 
-    public List<ActionLog> getLogs() {
-        return Collections.unmodifiableList(logs);
+    /** Whether each audit entry is also printed to stdout (on by default). */
+    public void setEchoLogs(boolean echoLogs) {
+        this.echoLogs = echoLogs;
     }
 
-    private static final java.util.regex.Pattern RID = java.util.regex.Pattern.compile("^R(\\d+)$", java.util.regex.Pattern.CASE_INSENSITIVE);
+    private void log(String staffId, String action) {
+        logs = logs.plus(clock == null ? new ActionLog(staffId, action) : new ActionLog(staffId, action, LocalDateTime.now(clock)));
+        if (echoLogs) System.out.println("[LOG] " + staffId + ": " + action);
+    }
 
-    private int maxResidentNumericId() {
-        int max = 0;
+    private Metrics metrics() {
+        Metrics m = metrics;
+        if (m == null) metrics = m = Metrics.shared();
+        return m;
+    }
 
-        // Active occupants
-        for (Bed b : beds.values()) {
-            if (b != null && !b.isVacant() && b.occupant != null && b.occupant.id != null) {
-                java.util.regex.Matcher m = RID.matcher(b.occupant.id.trim());
-                if (m.matches()) {
-                    max = Math.max(max, Integer.parseInt(m.group(1)));
-                }
-            }
+    // a state-changing operation: latency and failures into metrics(), plus a MutationEvent; the
+    // subject is read afterwards, as the operation may have generated it (e.g. a resident id)
+    private <T> T instrumented(String op, String actor, Object bed, Object target, Supplier<String> subject, Supplier<T> body) {
+        long t0 = System.nanoTime();
+        MutationEvent ev = MutationEvent.start(op);
+        try {
+            return body.get();
+        } catch (RuntimeException e) {
+            metrics().error(op);
+            ev.failed(e);
+            throw e;
+        } finally {
+            metrics().record(op, t0);
+            ev.end(actor, bed, target, subject == null ? null : subject.get());
         }
+    }
 
-        // Archived stays
-        for (ArchivedStay s : archives) {
-            // adapt to your archived model fields
-            String rid = null;
-            if (s.residentName != null && s.residentId != null) rid = s.residentId;
-            else if (s.residentId != null) rid = s.residentId;
-
-            if (rid != null) {
-                java.util.regex.Matcher m = RID.matcher(rid.trim());
-                if (m.matches()) {
-                    max = Math.max(max, Integer.parseInt(m.group(1)));
-                }
-            }
+    // a query: latency and failures into metrics()
+    private <T> T timed(String op, Supplier<T> body) {
+        long t0 = System.nanoTime();
+        try {
+            return body.get();
+        } catch (RuntimeException e) {
+            metrics().error(op);
+            throw e;
+        } finally {
+            metrics().record(op, t0);
         }
+    }
+
+    public void setMetrics(Metrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /** Sizes of the main collections, for the diagnostics view and JMX. */
+    public Map<String, Integer> getEntityCounts() {
+        Map<String, Integer> out = new LinkedHashMap<>();
+        out.put("beds", beds.size());
+        out.put("residents", bedByResident.size());
+        out.put("staff", staffById.size());
+        out.put("shifts", shifts.size());
+        out.put("activePrescriptions", activePrescriptionsById.size());
+        out.put("archivedPrescriptions", archivedPrescriptionsById.size());
+        out.put("administrations", administrations.size());
+        out.put("archivedStays", archives.size());
+        out.put("coldArchivedStays", coldCount);
+        out.put("logs", logs.size());
+        out.put("medicines", medicines.size());
+        return out;
+    }
+
+    public List<ActionLog> getLogs() {
+        return logs;
+    }
+
+    /**
+     * Frozen copy of the state in O(1): the persistent collections are shared, not copied, and
+     * later mutations build new versions beside them. Take it on the thread that mutates this
+     * care home (or under the lock guarding it); the snapshot itself can then be read from any
+     * thread without locking, e.g. by JdbcStore.saveAll while writers carry on.
+     */
+    public CareHomeSnapshot snapshot() {
+        return new CareHomeSnapshot(staffById, managerId, doctorIds, nurseIds, wardLabels, bedStates,
+                prescriptionsByResident, prescriptionVersions, prescriptionSeq, archivedPrescriptionsById.size(),
+                bedByResident.size(), List.copyOf(medicines.names()), shifts, rosterVersion, administrations, archives, coldArchive, coldCount, logs);
+    }
+
+    private static final java.util.regex.Pattern RID = java.util.regex.Pattern.compile("^R(\\d+)$", java.util.regex.Pattern.CASE_INSENSITIVE);
+
+    private int maxResidentNumericId() {
+        return residentSeq;
+    }
 
-        return max;
+    private void noteResidentId(String residentId) {
+        java.util.regex.Matcher m = RID.matcher(residentId.trim());
+        if (m.matches() && m.group(1).length() <= 9) residentSeq = Math.max(residentSeq, Integer.parseInt(m.group(1)));
     }
 
     private String nextResidentId() {
@@ -485,37 +1448,105 @@ public void rawPutStaff(Staff s) {
     }
 
     private boolean isResidentIdActive(String residentId) {
-        if (residentId == null) return false;
-        String probe = residentId.trim();
-        for (Bed b : beds.values()) {
-            if (b != null && !b.isVacant()
-                    && b.occupant != null
-                    && b.occupant.id != null
-                    && b.occupant.id.trim().equalsIgnoreCase(probe)) {
-                return true;
-            }
-        }
-        return false;
+        return residentId != null && bedByResident.containsKey(residentKey(residentId));
+    }
+
+    // resident ids are compared trimmed and case-insensitively
+    private static String residentKey(String residentId) {
+        return residentId.trim().toLowerCase(Locale.ROOT);
+    }
+
+    //  Resident lookup
+
+    public boolean isResidentActive(String residentId) {
+        return isResidentIdActive(residentId);
+    }
+
+    public Optional<BedKey> findResidentBedKey(String residentId) {
+        return residentId == null ? Optional.empty() : Optional.ofNullable(bedByResident.get(residentKey(residentId)));
+    }
+
+    /** Bed id where the resident currently is, if they are admitted. */
+    public Optional<String> findResidentBed(String residentId) {
+        return findResidentBedKey(residentId).map(BedKey::toString);
+    }
+
+    public Optional<Resident> findResident(String residentId) {
+        return findResidentBedKey(residentId).map(k -> beds.get(k).occupant);
+    }
+
+    public int getActiveResidentCount() {
+        return bedByResident.size();
+    }
+
+    /** Active prescriptions per resident, for bulk readers such as the store. */
+    public Map<String, List<Prescription>> getActivePrescriptionsByResident() {
+        return Collections.unmodifiableMap(prescriptionsByResident.asMap());
     }
 
     //  Getters
     public Map<String, Staff> getStaffById() {
-        return Collections.unmodifiableMap(staffById);
+        return staffById.asMap();
     }
 
     public List<String> getDoctorIds() {
-        return Collections.unmodifiableList(doctorIds);
+        return doctorIds;
     }
 
     public List<String> getNurseIds() {
-        return Collections.unmodifiableList(nurseIds);
+        return nurseIds;
     }
 
     public String getManagerId() {
         return managerId;
     }
 
+    // String-keyed, read-only view in bed order (W1-R1-B1, W1-R1-B2, ...); lookups parse the id once
     public Map<String, Bed> getBeds() {
-        return Collections.unmodifiableMap(beds);
+        return bedIdView;
+    }
+
+    public NavigableMap<BedKey, Bed> getBedsByKey() {
+        return Collections.unmodifiableNavigableMap(beds);
+    }
+
+    public NavigableMap<BedKey, Bed> getBedsInRoom(BedKey anyBedInRoom) {
+        return Collections.unmodifiableNavigableMap(beds.subMap(anyBedInRoom.roomStart(), true, anyBedInRoom.roomEnd(), false));
+    }
+
+    public NavigableMap<BedKey, Bed> getBedsInWard(int ward) {
+        return Collections.unmodifiableNavigableMap(beds.subMap(BedKey.wardStart(ward), true, BedKey.wardEnd(ward), false));
+    }
+
+    private static final class BedIdView extends AbstractMap<String, Bed> implements Serializable {
+        private static final long serialVersionUID = 1L;
+        private final NavigableMap<BedKey, Bed> beds;
+
+        BedIdView(NavigableMap<BedKey, Bed> beds) { this.beds = beds; }
+
+        @Override public int size() { return beds.size(); }
+
+        @Override public Bed get(Object id) {
+            BedKey key = id instanceof String s ? BedKey.tryParse(s) : null;
+            return key == null ? null : beds.get(key);
+        }
+
+        @Override public boolean containsKey(Object id) { return get(id) != null; }
+
+        @Override public Set<Entry<String, Bed>> entrySet() {
+            return new AbstractSet<>() {
+                @Override public int size() { return beds.size(); }
+                @Override public Iterator<Entry<String, Bed>> iterator() {
+                    Iterator<Map.Entry<BedKey, Bed>> it = beds.entrySet().iterator();
+                    return new Iterator<>() {
+                        @Override public boolean hasNext() { return it.hasNext(); }
+                        @Override public Entry<String, Bed> next() {
+                            Map.Entry<BedKey, Bed> e = it.next();
+                            return new SimpleImmutableEntry<>(e.getKey().toString(), e.getValue());
+                        }
+                    };
+                }
+            };
+        }
     }
 }
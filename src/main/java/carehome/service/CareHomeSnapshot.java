@@ -0,0 +1,216 @@
+package carehome.service;
+
+
+// frozen, lock-free view of a CareHome at one instant, taken in O(1) by CareHome.snapshot().
+import carehome.exception.NotFoundException;
+import carehome.model.*;
+
+import java.io.Serializable;
+import java.util.*;
+
+/**
+ * Holds the same persistent collections the care home had when the snapshot was taken; the care
+ * home replaces rather than changes them, so nothing here moves afterwards and any thread may
+ * read it without the model's lock. Meant for whole-state readers that must not stall the
+ * writers: saving, compliance checks, archive export and occupancy figures. Derived views (sorted
+ * beds, the medicine catalog) are built on first use, on the reader's thread.
+ */
+public final class CareHomeSnapshot implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    /** A bed as it was: occupant (null when vacant) and version. */
+    public record BedState(BedKey key, Resident occupant, long version) implements Serializable {
+        static BedState of(Bed b) {
+            return new BedState(b.key, b.occupant, b.version);
+        }
+
+        public boolean isVacant() {
+            return occupant == null;
+        }
+    }
+
+    /** Beds and occupied beds on one ward. */
+    public record WardOccupancy(int ward, String label, int beds, int occupied) {}
+
+    private final PersistentMap<String, Staff> staffById;
+    private final String managerId;
+    private final PersistentVector<String> doctorIds;
+    private final PersistentVector<String> nurseIds;
+    private final PersistentMap<Integer, String> wardLabels;
+    private final PersistentMap<BedKey, BedState> beds;
+    private final PersistentMap<String, PersistentVector<Prescription>> prescriptionsByResident;
+    private final PersistentMap<String, Long> prescriptionVersions;
+    private final long prescriptionSeq;
+    private final int archivedPrescriptionCount;
+    private final int residentCount;
+    private final List<String> medicineNames;
+    private final PersistentVector<Shift> shifts;
+    private final long rosterVersion;
+    private final PersistentVector<Administration> administrations;
+    private final PersistentVector<ArchiveEntry> archives;
+    private final transient ColdArchive coldArchive;
+    private final int coldCount;
+    private final PersistentVector<ActionLog> logs;
+
+    private transient NavigableMap<BedKey, BedState> sortedBeds;
+    private transient MedicineCatalog catalog;
+
+    CareHomeSnapshot(PersistentMap<String, Staff> staffById, String managerId, PersistentVector<String> doctorIds,
+                     PersistentVector<String> nurseIds, PersistentMap<Integer, String> wardLabels,
+                     PersistentMap<BedKey, BedState> beds,
+                     PersistentMap<String, PersistentVector<Prescription>> prescriptionsByResident,
+                     PersistentMap<String, Long> prescriptionVersions, long prescriptionSeq,
+                     int archivedPrescriptionCount, int residentCount, List<String> medicineNames,
+                     PersistentVector<Shift> shifts, long rosterVersion,
+                     PersistentVector<Administration> administrations, PersistentVector<ArchiveEntry> archives,
+                     ColdArchive coldArchive, int coldCount,
+                     PersistentVector<ActionLog> logs) {
+        this.staffById = staffById;
+        this.managerId = managerId;
+        this.doctorIds = doctorIds;
+        this.nurseIds = nurseIds;
+        this.wardLabels = wardLabels;
+        this.beds = beds;
+        this.prescriptionsByResident = prescriptionsByResident;
+        this.prescriptionVersions = prescriptionVersions;
+        this.prescriptionSeq = prescriptionSeq;
+        this.archivedPrescriptionCount = archivedPrescriptionCount;
+        this.residentCount = residentCount;
+        this.medicineNames = medicineNames;
+        this.shifts = shifts;
+        this.rosterVersion = rosterVersion;
+        this.administrations = administrations;
+        this.archives = archives;
+        this.coldArchive = coldArchive;
+        this.coldCount = coldCount;
+        this.logs = logs;
+    }
+
+    //  Staff + roster
+
+    public Map<String, Staff> getStaffById() {
+        return staffById.asMap();
+    }
+
+    public String getManagerId() {
+        return managerId;
+    }
+
+    public List<String> getDoctorIds() {
+        return doctorIds;
+    }
+
+    public List<String> getNurseIds() {
+        return nurseIds;
+    }
+
+    public List<Shift> getShifts() {
+        return shifts;
+    }
+
+    public long getRosterVersion() {
+        return rosterVersion;
+    }
+
+    /** Same rules as {@link CareHome#checkCompliance()}, against the roster as it was. */
+    public void checkCompliance() {
+        CareHome.checkRoster(shifts, nurseIds, doctorIds);
+    }
+
+    //  Beds
+
+    /** Every bed in bed order; sorted once, on first use. */
+    public NavigableMap<BedKey, BedState> getBeds() {
+        NavigableMap<BedKey, BedState> sorted = sortedBeds;
+        if (sorted == null) sortedBeds = sorted = Collections.unmodifiableNavigableMap(new TreeMap<>(beds.asMap()));
+        return sorted;
+    }
+
+    public BedState getBed(BedKey key) {
+        BedState b = beds.get(key);
+        if (b == null) throw new NotFoundException("Bed " + key + " does not exist");
+        return b;
+    }
+
+    public Map<Integer, String> getWardLabels() {
+        return Collections.unmodifiableMap(new TreeMap<>(wardLabels.asMap()));
+    }
+
+    /** Bed and occupant counts per ward, in ward order. */
+    public List<WardOccupancy> getWardOccupancy() {
+        Map<Integer, int[]> counts = new TreeMap<>();
+        for (BedState b : beds.asMap().values()) {
+            int[] c = counts.computeIfAbsent(b.key().ward(), w -> new int[2]);
+            c[0]++;
+            if (!b.isVacant()) c[1]++;
+        }
+        List<WardOccupancy> out = new ArrayList<>(counts.size());
+        for (var e : counts.entrySet())
+            out.add(new WardOccupancy(e.getKey(), wardLabels.getOrDefault(e.getKey(), "Ward " + e.getKey()),
+                    e.getValue()[0], e.getValue()[1]));
+        return out;
+    }
+
+    //  Prescriptions + doses
+
+    public Map<String, List<Prescription>> getActivePrescriptionsByResident() {
+        return Collections.unmodifiableMap(prescriptionsByResident.asMap());
+    }
+
+    public long getPrescriptionVersion(String prescriptionId) {
+        Long v = prescriptionId == null ? null : prescriptionVersions.get(prescriptionId);
+        if (v == null) throw new NotFoundException("Prescription " + prescriptionId + " is not active");
+        return v;
+    }
+
+    public long getPrescriptionSeq() {
+        return prescriptionSeq;
+    }
+
+    public List<Administration> getAdministrations() {
+        return administrations;
+    }
+
+    /** The medicine dictionary as it was; ids match the live catalog's, which only grows. */
+    public MedicineCatalog getMedicineCatalog() {
+        MedicineCatalog c = catalog;
+        if (c == null) {
+            c = new MedicineCatalog();
+            for (String name : medicineNames) c.add(name);
+            catalog = c;
+        }
+        return c;
+    }
+
+    //  History
+
+    /** Cold stays are decoded as they are read; the archive file is append-only, so they are still there. */
+    public List<ArchivedStay> getArchives() {
+        return CareHome.openAll(archives, coldArchive);
+    }
+
+    public List<ArchiveEntry> getArchiveEntries() {
+        return archives;
+    }
+
+    public List<ActionLog> getLogs() {
+        return logs;
+    }
+
+    /** Same keys as {@link CareHome#getEntityCounts()}. */
+    public Map<String, Integer> getEntityCounts() {
+        Map<String, Integer> out = new LinkedHashMap<>();
+        out.put("beds", beds.size());
+        out.put("residents", residentCount);
+        out.put("staff", staffById.size());
+        out.put("shifts", shifts.size());
+        out.put("activePrescriptions", prescriptionVersions.size());
+        out.put("archivedPrescriptions", archivedPrescriptionCount);
+        out.put("administrations", administrations.size());
+        out.put("archivedStays", archives.size());
+        out.put("coldArchivedStays", coldCount);
+        out.put("logs", logs.size());
+        out.put("medicines", medicineNames.size());
+        return out;
+    }
+}
@@ -0,0 +1,24 @@
+package carehome.service;
+
+
+// cold storage tier for archived stays; see CareHome.setColdArchive and persistence.ArchiveFile.
+import carehome.model.ArchivedStay;
+
+import java.time.LocalDateTime;
+
+/**
+ * Append-only store that hands a stay back by the position {@link #append} returned. Positions
+ * must stay valid for the life of the store, since snapshots keep using them after the care home
+ * has moved on. I/O failures surface as {@link java.io.UncheckedIOException}.
+ */
+public interface ColdArchive {
+
+    /** Position of an already stored stay of this resident discharged at that time, or -1. */
+    long find(String residentId, LocalDateTime dischargedAt);
+
+    /** Stores the stay and returns its position. */
+    long append(ArchivedStay stay);
+
+    /** Decodes the stay stored at {@code position}. */
+    ArchivedStay read(long position);
+}
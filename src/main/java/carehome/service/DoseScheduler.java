@@ -0,0 +1,167 @@
+package carehome.service;
+
+
+// next-due time of every scheduled dose, ordered per ward so "due in the next hour" is a range read.
+import carehome.model.*;
+
+import java.io.Serializable;
+import java.time.LocalDateTime;
+import java.util.*;
+
+final class DoseScheduler implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    /** One medicine line of an active prescription with a fixed interval. */
+    static final class Entry implements Comparable<Entry>, Serializable {
+        private static final long serialVersionUID = 1L;
+        final long seq;
+        final String residentId;
+        final Prescription prescription;
+        final MedicationDose dose;
+        final DoseSchedule schedule;
+        BedKey bed;
+        LocalDateTime dueAt;
+        LocalDateTime lastGiven;
+
+        Entry(long seq, String residentId, Prescription p, MedicationDose dose, DoseSchedule schedule) {
+            this.seq = seq;
+            this.residentId = residentId;
+            this.prescription = p;
+            this.dose = dose;
+            this.schedule = schedule;
+        }
+
+        @Override
+        public int compareTo(Entry o) {
+            int c = dueAt.compareTo(o.dueAt);
+            return c != 0 ? c : Long.compare(seq, o.seq);
+        }
+    }
+
+    private long nextSeq;
+    private final Map<String, Entry> byDose = new HashMap<>();
+    private final Map<String, List<Entry>> byResident = new HashMap<>();
+    private final Map<Integer, TreeSet<Entry>> byWard = new HashMap<>();
+
+    void clear() {
+        byDose.clear();
+        byResident.clear();
+        byWard.clear();
+    }
+
+    int size() {
+        return byDose.size();
+    }
+
+    /** Schedules every interval dose of {@code p}; the first one is due at {@code start}. PRN and unparsed lines are skipped. */
+    void add(String residentId, Prescription p, BedKey bed, LocalDateTime start) {
+        add(plan(residentId, p, bed, start));
+    }
+
+    /**
+     * The entries {@link #add(String, Prescription, BedKey, LocalDateTime)} would schedule, without
+     * scheduling them; lets a caller do the parsing before it changes anything else.
+     */
+    List<Entry> plan(String residentId, Prescription p, BedKey bed, LocalDateTime start) {
+        if (p.meds == null || bed == null || start == null) return List.of();
+        List<Entry> out = new ArrayList<>();
+        for (MedicationDose md : p.meds) {
+            DoseSchedule s = md == null ? null : DoseSchedule.parse(md.frequency);
+            if (s == null || s.isAsNeeded()) continue;
+            Entry e = new Entry(nextSeq++, residentId, p, md, s);
+            e.bed = bed;
+            e.dueAt = start;
+            out.add(e);
+        }
+        return out;
+    }
+
+    void add(List<Entry> planned) {
+        for (Entry e : planned) {
+            String k = doseKey(e.prescription.id, e.dose.medicine);
+            Entry old = byDose.get(k);
+            if (old != null) drop(old);
+
+            byDose.put(k, e);
+            byResident.computeIfAbsent(e.residentId, r -> new ArrayList<>()).add(e);
+            ward(e.bed).add(e);
+        }
+    }
+
+    /**
+     * Pushes the next due time of the matching dose to one interval after {@code a}; older records
+     * are ignored. Does not throw, so callers may run it after the dose has been recorded.
+     */
+    void given(Administration a) {
+        if (a == null || a.administeredAt == null) return;
+        Entry e = byDose.get(doseKey(a.prescriptionId, a.medicine));
+        if (e == null || (e.lastGiven != null && !a.administeredAt.isAfter(e.lastGiven))) return;
+
+        TreeSet<Entry> set = ward(e.bed);
+        set.remove(e);
+        e.lastGiven = a.administeredAt;
+        e.dueAt = e.schedule.nextAfter(a.administeredAt);
+        set.add(e);
+    }
+
+    /** Re-homes a resident's doses after a move; a no-op for residents without scheduled doses. */
+    void relocate(String residentId, BedKey bed) {
+        List<Entry> list = byResident.get(residentId);
+        if (list == null) return;
+        for (Entry e : list) {
+            if (e.bed.ward() != bed.ward()) {
+                ward(e.bed).remove(e);
+                e.bed = bed;
+                ward(bed).add(e);
+            } else {
+                e.bed = bed;
+            }
+        }
+    }
+
+    void remove(String residentId) {
+        List<Entry> list = byResident.remove(residentId);
+        if (list == null) return;
+        for (Entry e : list) {
+            ward(e.bed).remove(e);
+            byDose.remove(doseKey(e.prescription.id, e.dose.medicine));
+        }
+    }
+
+    /** Doses due at or before {@code until} (overdue ones included), earliest first. */
+    List<Entry> dueOnWard(int ward, LocalDateTime until) {
+        TreeSet<Entry> set = byWard.get(ward);
+        if (set == null || set.isEmpty()) return List.of();
+        List<Entry> out = new ArrayList<>();
+        for (Entry e : set) {
+            if (e.dueAt.isAfter(until)) break;
+            out.add(e);
+        }
+        return out;
+    }
+
+    List<Entry> due(LocalDateTime until) {
+        List<Entry> out = new ArrayList<>();
+        for (int w : byWard.keySet()) out.addAll(dueOnWard(w, until));
+        out.sort(null);
+        return out;
+    }
+
+    private void drop(Entry e) {
+        ward(e.bed).remove(e);
+        List<Entry> list = byResident.get(e.residentId);
+        if (list != null) {
+            list.remove(e);
+            if (list.isEmpty()) byResident.remove(e.residentId);
+        }
+    }
+
+    private TreeSet<Entry> ward(BedKey bed) {
+        return byWard.computeIfAbsent(bed.ward(), w -> new TreeSet<>());
+    }
+
+    // (prescription, medicine) identity, compared as CareHome compares ids and the catalog compares names
+    static String doseKey(String prescriptionId, String medicine) {
+        return (prescriptionId == null ? "" : CareHome.prescriptionKey(prescriptionId)) + '\u0000' + MedicineCatalog.key(medicine);
+    }
+}
@@ -0,0 +1,133 @@
+package carehome.service;
+
+
+// per-room occupant counts and per-ward vacancy bitsets, kept in step with every bed change.
+import carehome.model.BedKey;
+import carehome.model.Gender;
+
+import java.io.Serializable;
+import java.util.*;
+
+final class OccupancyIndex implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private static final int WARD_LOCAL_MASK = (1 << (BedKey.ROOM_BITS + BedKey.BED_BITS)) - 1;
+
+    private static final class Room implements Serializable {
+        private static final long serialVersionUID = 1L;
+        int beds, male, female;
+    }
+
+    // bit index in vacantBeds is (room << BED_BITS | bed); room bitsets are indexed by room number
+    private static final class Ward implements Serializable {
+        private static final long serialVersionUID = 1L;
+        final BitSet vacantBeds = new BitSet();
+        final BitSet emptyRooms = new BitSet();
+        final BitSet maleRoomsWithSpace = new BitSet();
+        final BitSet femaleRoomsWithSpace = new BitSet();
+    }
+
+    private final Map<Integer, Room> rooms = new HashMap<>();
+    private final TreeMap<Integer, Ward> wards = new TreeMap<>();
+
+    void clear() {
+        rooms.clear();
+        wards.clear();
+    }
+
+    void addBed(BedKey key, Gender occupant) {
+        Room r = rooms.computeIfAbsent(key.roomCode(), k -> new Room());
+        r.beds++;
+        Ward w = wards.computeIfAbsent(key.ward(), k -> new Ward());
+        if (occupant == null) w.vacantBeds.set(key.packed() & WARD_LOCAL_MASK);
+        else count(r, occupant, 1);
+        refresh(w, key.room(), r);
+    }
+
+    void occupy(BedKey key, Gender g) {
+        Room r = rooms.get(key.roomCode());
+        Ward w = wards.get(key.ward());
+        if (r == null || w == null) return;
+        count(r, g, 1);
+        w.vacantBeds.clear(key.packed() & WARD_LOCAL_MASK);
+        refresh(w, key.room(), r);
+    }
+
+    void vacate(BedKey key, Gender g) {
+        Room r = rooms.get(key.roomCode());
+        Ward w = wards.get(key.ward());
+        if (r == null || w == null) return;
+        count(r, g, -1);
+        w.vacantBeds.set(key.packed() & WARD_LOCAL_MASK);
+        refresh(w, key.room(), r);
+    }
+
+    boolean isMixed(BedKey anyBedInRoom) {
+        Room r = rooms.get(anyBedInRoom.roomCode());
+        return r != null && r.male > 0 && r.female > 0;
+    }
+
+    /** Gender already present in the room, or null when the room is empty (or mixed). */
+    Gender roomGender(BedKey anyBedInRoom) {
+        Room r = rooms.get(anyBedInRoom.roomCode());
+        if (r == null || (r.male > 0) == (r.female > 0)) return null;
+        return r.male > 0 ? Gender.MALE : Gender.FEMALE;
+    }
+
+    int vacantCount() {
+        int n = 0;
+        for (Ward w : wards.values()) n += w.vacantBeds.cardinality();
+        return n;
+    }
+
+    /**
+     * Vacant beds a resident of the given gender may take, best first: the preferred ward before
+     * the others, and within a ward rooms already holding that gender (packing) before empty rooms.
+     */
+    List<BedKey> findVacant(Gender g, Integer preferredWard, int limit) {
+        List<BedKey> out = new ArrayList<>(Math.min(limit, 64));
+        if (limit <= 0 || g == null) return out;
+        Ward pref = preferredWard == null ? null : wards.get(preferredWard);
+        if (pref != null) collect(preferredWard, pref, g, limit, out);
+        for (var e : wards.entrySet()) {
+            if (out.size() >= limit) break;
+            if (e.getValue() != pref) collect(e.getKey(), e.getValue(), g, limit, out);
+        }
+        return out;
+    }
+
+    /** Same ordering as {@link #findVacant} but never leaves the given ward. */
+    List<BedKey> findVacantInWard(Gender g, int ward, int limit) {
+        List<BedKey> out = new ArrayList<>(Math.min(limit, 64));
+        Ward w = wards.get(ward);
+        if (w != null && limit > 0 && g != null) collect(ward, w, g, limit, out);
+        return out;
+    }
+
+    private static void collect(int ward, Ward w, Gender g, int limit, List<BedKey> out) {
+        BitSet same = g == Gender.MALE ? w.maleRoomsWithSpace : w.femaleRoomsWithSpace;
+        collectRooms(ward, w, same, limit, out);
+        collectRooms(ward, w, w.emptyRooms, limit, out);
+    }
+
+    private static void collectRooms(int ward, Ward w, BitSet roomBits, int limit, List<BedKey> out) {
+        for (int room = roomBits.nextSetBit(0); room >= 0 && out.size() < limit; room = roomBits.nextSetBit(room + 1)) {
+            int from = room << BedKey.BED_BITS, to = (room + 1) << BedKey.BED_BITS;
+            for (int i = w.vacantBeds.nextSetBit(from); i >= 0 && i < to && out.size() < limit; i = w.vacantBeds.nextSetBit(i + 1)) {
+                out.add(BedKey.of(ward, room, i & BedKey.MAX_BED));
+            }
+        }
+    }
+
+    private static void count(Room r, Gender g, int delta) {
+        if (g == Gender.MALE) r.male += delta;
+        else if (g == Gender.FEMALE) r.female += delta;
+    }
+
+    private static void refresh(Ward w, int room, Room r) {
+        boolean space = r.beds - r.male - r.female > 0;
+        w.emptyRooms.set(room, r.male == 0 && r.female == 0 && r.beds > 0);
+        w.maleRoomsWithSpace.set(room, space && r.male > 0 && r.female == 0);
+        w.femaleRoomsWithSpace.set(room, space && r.female > 0 && r.male == 0);
+    }
+}
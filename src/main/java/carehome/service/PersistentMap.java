@@ -0,0 +1,313 @@
+package carehome.service;
+
+
+// immutable hash map with cheap put/remove: a hash array mapped trie sharing structure between versions.
+import java.io.Serializable;
+import java.util.*;
+
+/**
+ * Keys are spread over a 32-way trie by 5-bit slices of their hash; each node stores only the
+ * slots in use (a bitmap plus a packed array), and keys whose full hashes collide share a
+ * collision node. {@link #plus} and {@link #minus} copy the path to one slot and return a new map,
+ * so an old version stays valid and costs nothing until it diverges. Null keys are not allowed.
+ */
+final class PersistentMap<K, V> implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private static final int BITS = 5, MASK = (1 << BITS) - 1;
+    private static final Object ABSENT = new Object();
+    private static final PersistentMap<?, ?> EMPTY = new PersistentMap<>(null, 0);
+
+    private final Node root;
+    private final int size;
+
+    private PersistentMap(Node root, int size) {
+        this.root = root;
+        this.size = size;
+    }
+
+    @SuppressWarnings("unchecked")
+    static <K, V> PersistentMap<K, V> empty() {
+        return (PersistentMap<K, V>) EMPTY;
+    }
+
+    int size() {
+        return size;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    @SuppressWarnings("unchecked")
+    V get(Object key) {
+        if (root == null || key == null) return null;
+        Object v = root.find(0, hash(key), key);
+        return v == ABSENT ? null : (V) v;
+    }
+
+    @SuppressWarnings("unchecked")
+    V getOrDefault(Object key, V fallback) {
+        if (root == null || key == null) return fallback;
+        Object v = root.find(0, hash(key), key);
+        return v == ABSENT ? fallback : (V) v;
+    }
+
+    boolean containsKey(Object key) {
+        return root != null && key != null && root.find(0, hash(key), key) != ABSENT;
+    }
+
+    PersistentMap<K, V> plus(K key, V value) {
+        Objects.requireNonNull(key);
+        boolean[] added = new boolean[1];
+        Node r = (root == null ? BitmapNode.EMPTY : root).assoc(0, hash(key), key, value, added);
+        return r == root ? this : new PersistentMap<>(r, added[0] ? size + 1 : size);
+    }
+
+    PersistentMap<K, V> minus(Object key) {
+        if (root == null || key == null) return this;
+        Node r = root.without(0, hash(key), key);
+        if (r == root) return this;
+        return r == null ? empty() : new PersistentMap<>(r, size - 1);
+    }
+
+    /** Read-only {@link Map} view of this version; iteration order is unspecified. */
+    Map<K, V> asMap() {
+        return new AbstractMap<>() {
+            @Override public int size() { return size; }
+            @Override public V get(Object key) { return PersistentMap.this.get(key); }
+            @Override public boolean containsKey(Object key) { return PersistentMap.this.containsKey(key); }
+            @Override public Set<Entry<K, V>> entrySet() {
+                return new AbstractSet<>() {
+                    @Override public int size() { return size; }
+                    @Override public Iterator<Entry<K, V>> iterator() { return new Entries<>(root); }
+                };
+            }
+        };
+    }
+
+    private static int hash(Object key) {
+        int h = key.hashCode();
+        return h ^ (h >>> 16);
+    }
+
+    //  nodes
+
+    private abstract static class Node implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        /** The value, or ABSENT. */
+        abstract Object find(int shift, int hash, Object key);
+
+        abstract Node assoc(int shift, int hash, Object key, Object value, boolean[] added);
+
+        /** This node without the key; null when it ends up empty. */
+        abstract Node without(int shift, int hash, Object key);
+
+        // pairs of (key, value), where a null key means the value is a child node
+        abstract Object[] slots();
+    }
+
+    private static final class BitmapNode extends Node {
+        private static final long serialVersionUID = 1L;
+        static final BitmapNode EMPTY = new BitmapNode(0, new Object[0]);
+
+        final int bitmap;
+        final Object[] array;
+
+        BitmapNode(int bitmap, Object[] array) {
+            this.bitmap = bitmap;
+            this.array = array;
+        }
+
+        private int index(int bit) {
+            return Integer.bitCount(bitmap & (bit - 1));
+        }
+
+        @Override
+        Object find(int shift, int hash, Object key) {
+            int bit = 1 << ((hash >>> shift) & MASK);
+            if ((bitmap & bit) == 0) return ABSENT;
+            int i = 2 * index(bit);
+            Object k = array[i];
+            if (k == null) return ((Node) array[i + 1]).find(shift + BITS, hash, key);
+            return key.equals(k) ? array[i + 1] : ABSENT;
+        }
+
+        @Override
+        Node assoc(int shift, int hash, Object key, Object value, boolean[] added) {
+            int bit = 1 << ((hash >>> shift) & MASK);
+            int i = 2 * index(bit);
+            if ((bitmap & bit) == 0) {
+                Object[] a = new Object[array.length + 2];
+                System.arraycopy(array, 0, a, 0, i);
+                a[i] = key;
+                a[i + 1] = value;
+                System.arraycopy(array, i, a, i + 2, array.length - i);
+                added[0] = true;
+                return new BitmapNode(bitmap | bit, a);
+            }
+            Object k = array[i], v = array[i + 1];
+            if (k == null) {
+                Node child = ((Node) v).assoc(shift + BITS, hash, key, value, added);
+                return child == v ? this : replace(i + 1, child);
+            }
+            if (key.equals(k)) return v == value ? this : replace(i + 1, value);
+            // two keys in one slot: push both down a level
+            added[0] = true;
+            Node child = pair(shift + BITS, k, v, key, value, hash);
+            Object[] a = array.clone();
+            a[i] = null;
+            a[i + 1] = child;
+            return new BitmapNode(bitmap, a);
+        }
+
+        @Override
+        Node without(int shift, int hash, Object key) {
+            int bit = 1 << ((hash >>> shift) & MASK);
+            if ((bitmap & bit) == 0) return this;
+            int i = 2 * index(bit);
+            Object k = array[i];
+            if (k == null) {
+                Node child = ((Node) array[i + 1]).without(shift + BITS, hash, key);
+                if (child == array[i + 1]) return this;
+                if (child != null) return replace(i + 1, child);
+            } else if (!key.equals(k)) {
+                return this;
+            }
+            if (bitmap == bit) return null;
+            Object[] a = new Object[array.length - 2];
+            System.arraycopy(array, 0, a, 0, i);
+            System.arraycopy(array, i + 2, a, i, array.length - i - 2);
+            return new BitmapNode(bitmap & ~bit, a);
+        }
+
+        private BitmapNode replace(int i, Object x) {
+            Object[] a = array.clone();
+            a[i] = x;
+            return new BitmapNode(bitmap, a);
+        }
+
+        @Override
+        Object[] slots() {
+            return array;
+        }
+    }
+
+    private static Node pair(int shift, Object k1, Object v1, Object k2, Object v2, int h2) {
+        int h1 = hash(k1);
+        if (h1 == h2) return new CollisionNode(h1, new Object[]{k1, v1, k2, v2});
+        boolean[] ignored = new boolean[1];
+        return BitmapNode.EMPTY.assoc(shift, h1, k1, v1, ignored).assoc(shift, h2, k2, v2, ignored);
+    }
+
+    // keys with identical 32-bit hashes, in a flat list
+    private static final class CollisionNode extends Node {
+        private static final long serialVersionUID = 1L;
+
+        final int hash;
+        final Object[] array;
+
+        CollisionNode(int hash, Object[] array) {
+            this.hash = hash;
+            this.array = array;
+        }
+
+        private int indexOf(Object key) {
+            for (int i = 0; i < array.length; i += 2) if (key.equals(array[i])) return i;
+            return -1;
+        }
+
+        @Override
+        Object find(int shift, int hash, Object key) {
+            int i = hash == this.hash ? indexOf(key) : -1;
+            return i < 0 ? ABSENT : array[i + 1];
+        }
+
+        @Override
+        Node assoc(int shift, int hash, Object key, Object value, boolean[] added) {
+            if (hash != this.hash) {
+                // different hash: nest this node one level down, next to the new key
+                Node nested = new BitmapNode(1 << ((this.hash >>> shift) & MASK), new Object[]{null, this});
+                return nested.assoc(shift, hash, key, value, added);
+            }
+            int i = indexOf(key);
+            if (i >= 0) {
+                if (array[i + 1] == value) return this;
+                Object[] a = array.clone();
+                a[i + 1] = value;
+                return new CollisionNode(hash, a);
+            }
+            Object[] a = Arrays.copyOf(array, array.length + 2);
+            a[array.length] = key;
+            a[array.length + 1] = value;
+            added[0] = true;
+            return new CollisionNode(hash, a);
+        }
+
+        @Override
+        Node without(int shift, int hash, Object key) {
+            int i = hash == this.hash ? indexOf(key) : -1;
+            if (i < 0) return this;
+            if (array.length == 2) return null;
+            Object[] a = new Object[array.length - 2];
+            System.arraycopy(array, 0, a, 0, i);
+            System.arraycopy(array, i + 2, a, i, array.length - i - 2);
+            return new CollisionNode(hash, a);
+        }
+
+        @Override
+        Object[] slots() {
+            return array;
+        }
+    }
+
+    // depth-first over the trie with an explicit stack of (slots, position)
+    private static final class Entries<K, V> implements Iterator<Map.Entry<K, V>> {
+        private final Deque<Object[]> nodes = new ArrayDeque<>();
+        private final Deque<Integer> positions = new ArrayDeque<>();
+        private Map.Entry<K, V> next;
+
+        Entries(Node root) {
+            if (root != null) {
+                nodes.push(root.slots());
+                positions.push(0);
+            }
+            advance();
+        }
+
+        @SuppressWarnings("unchecked")
+        private void advance() {
+            next = null;
+            while (!nodes.isEmpty()) {
+                Object[] slots = nodes.peek();
+                int i = positions.pop();
+                if (i >= slots.length) {
+                    nodes.pop();
+                    continue;
+                }
+                positions.push(i + 2);
+                if (slots[i] == null) {
+                    nodes.push(((Node) slots[i + 1]).slots());
+                    positions.push(0);
+                } else {
+                    next = new AbstractMap.SimpleImmutableEntry<>((K) slots[i], (V) slots[i + 1]);
+                    return;
+                }
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next != null;
+        }
+
+        @Override
+        public Map.Entry<K, V> next() {
+            if (next == null) throw new NoSuchElementException();
+            Map.Entry<K, V> e = next;
+            advance();
+            return e;
+        }
+    }
+}
@@ -0,0 +1,163 @@
+package carehome.service;
+
+
+// immutable list with cheap append and update: a 32-way trie plus a tail, sharing structure between versions.
+import java.io.Serializable;
+import java.util.*;
+import java.util.function.Predicate;
+
+/**
+ * Every "change" returns a new vector and leaves this one untouched, copying only the path from
+ * the root to the changed slot (at most log32(n) arrays of 32), so keeping an old version costs
+ * nothing until it diverges. {@link #plus} and {@link #with} are effectively constant time; the
+ * last 32 elements live in a separate tail array, so appends rarely touch the trie at all.
+ * The vector is a read-only {@link List}; the mutators inherited from it throw.
+ */
+final class PersistentVector<E> extends AbstractList<E> implements RandomAccess, Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private static final int BITS = 5, WIDTH = 1 << BITS, MASK = WIDTH - 1;
+    private static final PersistentVector<?> EMPTY = new PersistentVector<>(0, BITS, new Object[WIDTH], new Object[0]);
+
+    private final int size;
+    private final int shift;       // BITS * depth of the trie above the leaves
+    private final Object[] root;   // interior nodes are Object[WIDTH] of children, leaves Object[WIDTH] of elements
+    private final Object[] tail;   // the last 1..32 elements
+
+    private PersistentVector(int size, int shift, Object[] root, Object[] tail) {
+        this.size = size;
+        this.shift = shift;
+        this.root = root;
+        this.tail = tail;
+    }
+
+    @SuppressWarnings("unchecked")
+    static <E> PersistentVector<E> empty() {
+        return (PersistentVector<E>) EMPTY;
+    }
+
+    static <E> PersistentVector<E> of(Iterable<? extends E> items) {
+        PersistentVector<E> v = empty();
+        for (E e : items) v = v.plus(e);
+        return v;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public E get(int index) {
+        Objects.checkIndex(index, size);
+        return (E) leafFor(index)[index & MASK];
+    }
+
+    /** This vector with {@code e} appended. */
+    PersistentVector<E> plus(E e) {
+        int inTail = size - tailOffset();
+        if (inTail < WIDTH) {
+            Object[] newTail = Arrays.copyOf(tail, inTail + 1);
+            newTail[inTail] = e;
+            return new PersistentVector<>(size + 1, shift, root, newTail);
+        }
+        // tail is full: it becomes a leaf of the trie, and e starts a new tail
+        Object[] newRoot;
+        int newShift = shift;
+        if ((size >>> BITS) > (1 << shift)) {
+            newRoot = new Object[WIDTH];
+            newRoot[0] = root;
+            newRoot[1] = newPath(shift, tail);
+            newShift += BITS;
+        } else {
+            newRoot = pushTail(shift, root, tail);
+        }
+        return new PersistentVector<>(size + 1, newShift, newRoot, new Object[]{e});
+    }
+
+    /** This vector with element {@code index} replaced. */
+    PersistentVector<E> with(int index, E e) {
+        Objects.checkIndex(index, size);
+        if (index >= tailOffset()) {
+            Object[] newTail = tail.clone();
+            newTail[index & MASK] = e;
+            return new PersistentVector<>(size, shift, root, newTail);
+        }
+        return new PersistentVector<>(size, shift, assoc(shift, root, index, e), tail);
+    }
+
+    /** This vector without the elements matching {@code drop}; the same instance when none match. */
+    PersistentVector<E> without(Predicate<? super E> drop) {
+        int keep = 0;
+        for (E e : this) if (!drop.test(e)) keep++;
+        if (keep == size) return this;
+        PersistentVector<E> out = empty();
+        for (E e : this) if (!drop.test(e)) out = out.plus(e);
+        return out;
+    }
+
+    // walks leaf by leaf rather than through get(i)
+    @Override
+    public Iterator<E> iterator() {
+        return new Iterator<>() {
+            private int i;
+            private Object[] leaf = size == 0 ? null : leafFor(0);
+
+            @Override
+            public boolean hasNext() {
+                return i < size;
+            }
+
+            @Override
+            @SuppressWarnings("unchecked")
+            public E next() {
+                if (i >= size) throw new NoSuchElementException();
+                if ((i & MASK) == 0 && i > 0) leaf = leafFor(i);
+                return (E) leaf[i++ & MASK];
+            }
+        };
+    }
+
+    //  trie plumbing
+
+    private int tailOffset() {
+        return size < WIDTH ? 0 : ((size - 1) >>> BITS) << BITS;
+    }
+
+    private Object[] leafFor(int index) {
+        if (index >= tailOffset()) return tail;
+        Object[] node = root;
+        for (int level = shift; level > 0; level -= BITS) node = (Object[]) node[(index >>> level) & MASK];
+        return node;
+    }
+
+    private Object[] pushTail(int level, Object[] parent, Object[] leaf) {
+        int sub = ((size - 1) >>> level) & MASK;
+        Object[] copy = parent.clone();
+        if (level == BITS) {
+            copy[sub] = leaf;
+        } else {
+            Object[] child = (Object[]) parent[sub];
+            copy[sub] = child != null ? pushTail(level - BITS, child, leaf) : newPath(level - BITS, leaf);
+        }
+        return copy;
+    }
+
+    private static Object[] newPath(int level, Object[] leaf) {
+        if (level == 0) return leaf;
+        Object[] node = new Object[WIDTH];
+        node[0] = newPath(level - BITS, leaf);
+        return node;
+    }
+
+    private static Object[] assoc(int level, Object[] node, int index, Object e) {
+        Object[] copy = node.clone();
+        if (level == 0) copy[index & MASK] = e;
+        else {
+            int sub = (index >>> level) & MASK;
+            copy[sub] = assoc(level - BITS, (Object[]) node[sub], index, e);
+        }
+        return copy;
+    }
+}
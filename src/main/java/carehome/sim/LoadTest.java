@@ -0,0 +1,236 @@
+package carehome.sim;
+
+
+// HTTP load driver for CareHomeServer: requests/second and latency at increasing numbers of concurrent clients.
+import carehome.metrics.Metrics;
+import carehome.metrics.OperationStats;
+import carehome.model.*;
+import carehome.server.CareHomeServer;
+import carehome.server.Json;
+import carehome.service.CareHome;
+
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Each client is a thread with its own HttpClient that loops until the time is up: mostly
+ * {@code GET /api/beds?ward=N} (a station refreshing its ward), and a share of
+ * {@code POST /api/administerMedication} writes. Without {@code url=} it starts an in-process
+ * server over a generated facility with one nurse rostered for the writes. Every client uses
+ * the session of one login ({@code nurse=}, or {@code user=} for reads only; password
+ * {@code password=}, default "pass" as in generated facilities).
+ *
+ * <pre>
+ *   java -cp ... carehome.sim.LoadTest clients=1,4,16,64 seconds=10 writes=0.1 beds=200 days=30
+ *   java -cp ... carehome.sim.LoadTest url=http://localhost:8080/ nurse=N1 password=pass when=2030-01-31T10:00
+ * </pre>
+ */
+public final class LoadTest {
+
+    /** One run at a fixed number of clients. */
+    public record Result(int clients, double seconds, OperationStats reads, OperationStats writes) {
+        public long requests() { return reads.count + writes.count; }
+        public long errors() { return reads.errors + writes.errors; }
+        public double requestsPerSecond() { return requests() / seconds; }
+    }
+
+    /** Where writes go: a nurse rostered at {@code when} and one of the resident's prescription lines. */
+    public record WriteTarget(String nurseId, String bedId, String prescriptionId, String medicine, LocalDateTime when) {}
+
+    private LoadTest() {}
+
+    /** Logs in and returns the session token to pass to {@link #run}. */
+    public static String login(URI server, String staffId, String password) {
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("id", staffId);
+        body.put("password", password);
+        Object reply = post(HttpClient.newHttpClient(), server.resolve("api/login"), null, body);
+        return (String) ((Map<?, ?>) reply).get("token");
+    }
+
+    /** Writes go to {@code target}, which must name the staff member {@code token} belongs to. */
+    public static Result run(URI server, String token, int clients, Duration duration, double writeRatio, WriteTarget target) throws InterruptedException {
+        List<Integer> wards = new ArrayList<>();
+        for (Object b : (List<?>) get(HttpClient.newHttpClient(), server.resolve("api/beds"), token)) {
+            int w = BedKey.parse((String) ((Map<?, ?>) b).get("id")).ward();
+            if (!wards.contains(w)) wards.add(w);
+        }
+        Metrics m = new Metrics();
+        long deadline = System.nanoTime() + duration.toNanos();
+        ExecutorService pool = Executors.newFixedThreadPool(clients);
+        long start = System.nanoTime();
+        for (int c = 0; c < clients; c++) {
+            pool.execute(() -> {
+                HttpClient http = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(5)).build();
+                ThreadLocalRandom rnd = ThreadLocalRandom.current();
+                while (System.nanoTime() < deadline) {
+                    boolean write = target != null && rnd.nextDouble() < writeRatio;
+                    String op = write ? "write" : "read";
+                    long t0 = System.nanoTime();
+                    try {
+                        if (write) post(http, server.resolve("api/administerMedication"), token, writeBody(target));
+                        else get(http, server.resolve("api/beds?ward=" + wards.get(rnd.nextInt(wards.size()))), token);
+                    } catch (RuntimeException e) {
+                        m.error(op);
+                    }
+                    m.record(op, t0);
+                }
+            });
+        }
+        pool.shutdown();
+        if (!pool.awaitTermination(duration.toMillis() + 60_000, TimeUnit.MILLISECONDS))
+            throw new IllegalStateException("Load test clients did not finish");
+        double seconds = (System.nanoTime() - start) / 1e9;
+        OperationStats none = new OperationStats("", 0, 0, 0, 0, 0, 0, 0, 0);
+        return new Result(clients, seconds, m.get("read").orElse(none), m.get("write").orElse(none));
+    }
+
+    private static Map<String, Object> writeBody(WriteTarget t) {
+        Map<String, Object> adm = new LinkedHashMap<>();
+        adm.put("nurseId", t.nurseId());
+        adm.put("prescriptionId", t.prescriptionId());
+        adm.put("medicine", t.medicine());
+        adm.put("administeredAt", t.when());
+        adm.put("notes", "load test");
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("bed", t.bedId());
+        body.put("administration", adm);
+        body.put("when", t.when());
+        body.put("override", true);   // the same dose over and over; skip the window check
+        return body;
+    }
+
+    private static Object get(HttpClient http, URI uri, String token) {
+        return send(http, HttpRequest.newBuilder(uri).GET(), token);
+    }
+
+    private static Object post(HttpClient http, URI uri, String token, Map<String, Object> body) {
+        return send(http, HttpRequest.newBuilder(uri).header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(Json.write(body), StandardCharsets.UTF_8)), token);
+    }
+
+    private static Object send(HttpClient http, HttpRequest.Builder req, String token) {
+        if (token != null) req.header("Authorization", "Bearer " + token);
+        try {
+            HttpResponse<String> resp = http.send(req.build(), HttpResponse.BodyHandlers.ofString(StandardCharsets.UTF_8));
+            if (resp.statusCode() != 200) throw new IllegalStateException(resp.statusCode() + " " + resp.body());
+            return Json.parse(resp.body());
+        } catch (java.io.IOException e) {
+            throw new java.io.UncheckedIOException(e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /** Generated facility for an in-process run, with N1 rostered on the day after its history. */
+    public static CareHome facility(int beds, int days, long seed) {
+        WorkloadGenerator.Config cfg = new WorkloadGenerator.Config();
+        cfg.seed = seed;
+        cfg.beds = beds;
+        cfg.days = days;
+        cfg.start = LocalDate.of(2030, 1, 1);
+        CareHome ch = new WorkloadGenerator(cfg).generate();
+        ch.setEchoLogs(false);
+        LocalDate day = cfg.start.plusDays(days);
+        ch.allocateShift("M1", new Shift("N1", day.atTime(8, 0), day.atTime(16, 0)));
+        return ch;
+    }
+
+    /** N1 at 10:00 on the day after the history, giving the first line of some active prescription. */
+    public static WriteTarget writeTarget(CareHome ch) {
+        LocalDateTime when = ch.getShifts().get(ch.getShifts().size() - 1).getStart().plusHours(2);
+        for (var e : ch.getActivePrescriptionsByResident().entrySet()) {
+            for (Prescription p : e.getValue()) {
+                if (p.meds == null || p.meds.isEmpty()) continue;
+                String bed = ch.findResidentBed(e.getKey()).orElse(null);
+                if (bed != null) return new WriteTarget("N1", bed, p.id, p.meds.get(0).medicine, when);
+            }
+        }
+        return null;
+    }
+
+    public static void main(String[] args) throws Exception {
+        CareHomeServer.preferNoDelay();
+        String url = null, nurse = null, user = null, password = "pass", when = null;
+        int[] levels = {1, 4, 16, 64};
+        int seconds = 10, beds = 200, days = 30;
+        double writes = 0.1;
+        for (String a : args) {
+            String[] kv = a.replaceFirst("^--", "").split("=", 2);
+            if (kv.length != 2) throw new IllegalArgumentException("Expected key=value, got " + a);
+            switch (kv[0]) {
+                case "url" -> url = kv[1].endsWith("/") ? kv[1] : kv[1] + "/";
+                case "clients" -> levels = Arrays.stream(kv[1].split(",")).mapToInt(Integer::parseInt).toArray();
+                case "seconds" -> seconds = Integer.parseInt(kv[1]);
+                case "writes" -> writes = Double.parseDouble(kv[1]);
+                case "beds" -> beds = Integer.parseInt(kv[1]);
+                case "days" -> days = Integer.parseInt(kv[1]);
+                case "nurse" -> nurse = kv[1];
+                case "user" -> user = kv[1];
+                case "password" -> password = kv[1];
+                case "when" -> when = kv[1];
+                default -> throw new IllegalArgumentException("Unknown option " + kv[0]);
+            }
+        }
+
+        CareHomeServer local = null;
+        URI server;
+        WriteTarget target;
+        String token;
+        if (url == null) {
+            CareHome ch = facility(beds, days, 1);
+            target = writeTarget(ch);
+            local = new CareHomeServer(ch, null, new InetSocketAddress("127.0.0.1", 0), 0).start();
+            server = local.uri();
+            token = login(server, target != null ? target.nurseId() : "M1", password);
+        } else {
+            server = URI.create(url);
+            String who = nurse != null ? nurse : user;
+            if (who == null) throw new IllegalArgumentException("Give nurse= or user= to log in as");
+            token = login(server, who, password);
+            target = nurse == null || when == null ? null : remoteTarget(server, token, nurse, LocalDateTime.parse(when));
+            if (target == null && writes > 0) System.out.println("No nurse=/when= given: reads only");
+        }
+
+        try {
+            System.out.printf("%-8s %10s %10s %10s %10s %10s %8s%n", "clients", "requests", "req/s", "p50 ms", "p99 ms", "write p99", "errors");
+            for (int n : levels) {
+                Result r = run(server, token, n, Duration.ofSeconds(seconds), writes, target);
+                System.out.printf("%-8d %10d %10.0f %10.2f %10.2f %10.2f %8d%n", n, r.requests(), r.requestsPerSecond(),
+                        r.reads().p50Nanos / 1e6, r.reads().p99Nanos / 1e6, r.writes().p99Nanos / 1e6, r.errors());
+            }
+        } finally {
+            if (local != null) local.close();
+        }
+    }
+
+    // first occupied bed with an active prescription, from the server's snapshot
+    @SuppressWarnings("unchecked")
+    private static WriteTarget remoteTarget(URI server, String token, String nurse, LocalDateTime when) {
+        Map<String, Object> snap = (Map<String, Object>) get(HttpClient.newHttpClient(), server.resolve("api/snapshot"), token);
+        Map<String, String> bedOf = new HashMap<>();
+        for (Object o : (List<?>) snap.get("beds")) {
+            Map<String, Object> b = (Map<String, Object>) o;
+            Map<String, Object> occ = (Map<String, Object>) b.get("occupant");
+            if (occ != null) bedOf.put((String) occ.get("id"), (String) b.get("id"));
+        }
+        for (Object o : (List<?>) snap.get("prescriptions")) {
+            Map<String, Object> p = (Map<String, Object>) o;
+            List<?> meds = (List<?>) p.get("meds");
+            String bed = bedOf.get((String) p.get("residentId"));
+            if (bed != null && meds != null && !meds.isEmpty())
+                return new WriteTarget(nurse, bed, (String) p.get("id"), (String) ((Map<?, ?>) meds.get(0)).get("medicine"), when);
+        }
+        return null;
+    }
+}
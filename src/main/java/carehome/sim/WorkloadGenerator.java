@@ -0,0 +1,279 @@
+package carehome.sim;
+
+
+// deterministic synthetic history (roster, admissions, prescriptions, rounds, moves, discharges) built through CareHome.
+import carehome.exception.CareHomeException;
+import carehome.model.*;
+import carehome.persistence.JdbcStore;
+import carehome.service.CareHome;
+
+import java.time.*;
+import java.util.*;
+
+/**
+ * Every record is produced by the public {@link CareHome} API, so roster rules, room gender
+ * rules and the dose window are enforced exactly as in the app. The same {@link Config}
+ * (including the seed) always produces the same facility.
+ *
+ * <p>Each simulated day: two nurse shifts (08–16, 14–22) and a one-hour doctor shift at 08:00;
+ * the doctor writes prescriptions for yesterday's admissions; medication rounds at 08:30, 12:30,
+ * 16:30 and 21:00 give every dose that is due (PRN lines now and then); a few residents move or
+ * are discharged; empty beds are refilled, some of them by readmitting former residents.
+ */
+public final class WorkloadGenerator {
+
+    /** Generation settings; fields are public and default to a mid-sized home with a year of history. */
+    public static final class Config {
+        public long seed = 42;
+        public int beds = 200;
+        public int days = 365;
+        public LocalDate start = LocalDate.of(2028, 1, 3);
+        public String layout;                 // FacilityLayout text; null builds wards of 200 beds
+        public int nurses;                    // 0 -> one per 20 beds, at least 4
+        public int doctors;                   // 0 -> one per 100 beds, at least 2
+        public double occupancy = 0.85;       // target share of occupied beds
+        public double meanStayDays = 120;
+        public double readmissionRate = 0.1;  // share of admissions that are former residents
+        public double prnRate = 0.1;          // chance a PRN line is given on a given day
+        public double moveRate = 0.002;       // chance a resident is moved on a given day
+    }
+
+    private static final String[] FIRST = {"Ann", "Bea", "Cora", "Dot", "Edna", "Faye", "Gwen", "Hazel", "Iris", "June",
+            "Alf", "Bert", "Cyril", "Des", "Ernie", "Fred", "Gus", "Harold", "Ivan", "Jack"};
+    private static final String[] LAST = {"Smith", "Jones", "Brown", "Wilson", "Taylor", "Nguyen", "Martin", "White",
+            "Walker", "Kelly", "Ryan", "Harris", "Lewis", "Young", "King", "Green"};
+    private static final String[][] REGIMENS = {
+            {"Paracetamol", "1g", "tds"}, {"Paracetamol", "1g", "PRN"}, {"Metformin", "500mg", "bd"},
+            {"Atorvastatin", "20mg", "daily"}, {"Amlodipine", "5mg", "daily"}, {"Warfarin", "2mg", "daily"},
+            {"Frusemide", "40mg", "daily"}, {"Pantoprazole", "40mg", "daily"}, {"Amoxicillin", "500mg", "8h"},
+            {"Donepezil", "10mg", "daily"}, {"Oxycodone", "5mg", "PRN"}, {"Lactulose", "15ml", "bd"},
+            {"Vitamin D", "1000IU", "weekly"}, {"Insulin glargine", "20u", "daily"}, {"Senna", "7.5mg", "PRN"}};
+    private static final String[] NOTES = {"", "", "", "", "", "", "taken with food", "taken with water",
+            "refused", "refused, offered again later", "resident asleep, given on waking", "crushed in yoghurt"};
+
+    private final Config cfg;
+    private final Random rnd;
+    private final SimClock clock = new SimClock();
+
+    private CareHome ch;
+    private List<String> nurseIds, doctorIds;
+    private final List<String> awaitingPrescription = new ArrayList<>();
+    private final Map<String, Resident> formerResidents = new LinkedHashMap<>();
+
+    public WorkloadGenerator(Config cfg) {
+        this.cfg = cfg;
+        this.rnd = new Random(cfg.seed);
+    }
+
+    /** The layout used when {@link Config#layout} is null: wards of 10 single, 15 double and 40 four-bed rooms. */
+    public static String defaultLayout(int beds) {
+        StringBuilder sb = new StringBuilder();
+        for (int w = 1; w <= Math.max(1, (beds + 199) / 200); w++) sb.append('W').append(w).append(": 1x10 2x15 4x40\n");
+        return sb.toString();
+    }
+
+    public CareHome generate() {
+        ch = new CareHome();
+        ch.setEchoLogs(false);
+        ch.setClock(clock);
+        clock.at(cfg.start.atTime(7, 0));
+        ch.loadLayout(FacilityLayout.parse(cfg.layout != null ? cfg.layout : defaultLayout(cfg.beds)));
+        hireStaff();
+        for (int d = 0; d < cfg.days; d++) simulateDay(d, cfg.start.plusDays(d));
+        ch.setClock(null);
+        ch.setEchoLogs(true);
+        return ch;
+    }
+
+    /** Generates and saves the result to {@code store} (replacing its contents). */
+    public CareHome generateInto(JdbcStore store) {
+        CareHome result = generate();
+        store.init();
+        store.saveAll(result);
+        return result;
+    }
+
+    private void hireStaff() {
+        int totalBeds = ch.getBedsByKey().size();
+        int n = cfg.nurses > 0 ? Math.max(2, cfg.nurses) : Math.max(4, totalBeds / 20);
+        int m = cfg.doctors > 0 ? cfg.doctors : Math.max(2, totalBeds / 100);
+        ch.addOrUpdateStaff("SYSTEM", new Staff("M1", "Manager", Role.MANAGER), "manager", "pass");
+        nurseIds = new ArrayList<>();
+        doctorIds = new ArrayList<>();
+        for (int i = 1; i <= n; i++) {
+            ch.addOrUpdateStaff("M1", new Staff("N" + i, "Nurse " + personName(), Role.NURSE), "nurse" + i, "pass");
+            nurseIds.add("N" + i);
+        }
+        for (int i = 1; i <= m; i++) {
+            ch.addOrUpdateStaff("M1", new Staff("D" + i, "Dr " + LAST[rnd.nextInt(LAST.length)], Role.DOCTOR), "doctor" + i, "pass");
+            doctorIds.add("D" + i);
+        }
+    }
+
+    private void simulateDay(int d, LocalDate day) {
+        String morning = nurseIds.get((2 * d) % nurseIds.size());
+        String evening = nurseIds.get((2 * d + 1) % nurseIds.size());
+        String doctor = doctorIds.get(d % doctorIds.size());
+        clock.at(day.atTime(7, 0));
+        ch.allocateShift("M1", new Shift(morning, day.atTime(8, 0), day.atTime(16, 0)));
+        ch.allocateShift("M1", new Shift(evening, day.atTime(14, 0), day.atTime(22, 0)));
+        ch.allocateShift("M1", new Shift(doctor, day.atTime(8, 0), day.atTime(9, 0)));
+
+        if (d == 0) admit();
+        clock.at(day.atTime(8, 5));
+        prescribe(doctor, day.atTime(8, 5));
+        round(morning, day.atTime(8, 30), false);
+        discharge(morning, day.atTime(11, 0));
+        round(morning, day.atTime(12, 30), true);
+        move(morning, day.atTime(13, 0));
+        round(evening, day.atTime(16, 30), false);
+        round(evening, day.atTime(21, 0), false);
+        clock.at(day.atTime(18, 0));
+        admit();
+    }
+
+    private void prescribe(String doctor, LocalDateTime when) {
+        for (String rid : awaitingPrescription) {
+            Optional<String> bed = ch.findResidentBed(rid);
+            if (bed.isEmpty()) continue;
+            int lines = 1 + rnd.nextInt(4);
+            List<MedicationDose> meds = new ArrayList<>(lines);
+            Set<String> seen = new HashSet<>();
+            for (int i = 0; i < lines; i++) {
+                String[] r = REGIMENS[rnd.nextInt(REGIMENS.length)];
+                if (seen.add(r[0])) meds.add(new MedicationDose(r[0], r[1], r[2]));
+            }
+            ch.addPrescription(doctor, bed.get(), new Prescription(ch.nextPrescriptionId(), doctor, rid, when, meds), when);
+        }
+        awaitingPrescription.clear();
+    }
+
+    private void round(String nurse, LocalDateTime when, boolean withPrn) {
+        clock.at(when);
+        Map<String, List<Administration>> byBed = new LinkedHashMap<>();
+        for (DueDose due : ch.getDueDoses(null, when))
+            byBed.computeIfAbsent(due.bedId, k -> new ArrayList<>())
+                    .add(new Administration(nurse, due.prescriptionId, due.medicine, when, note()));
+        if (withPrn) {
+            for (Bed b : ch.getBedsByKey().values()) {
+                if (b.isVacant()) continue;
+                for (Prescription p : ch.getPrescriptionsForResident(b.occupant.id)) {
+                    for (MedicationDose md : p.meds) {
+                        if ("PRN".equals(md.frequency) && rnd.nextDouble() < cfg.prnRate)
+                            byBed.computeIfAbsent(b.id, k -> new ArrayList<>())
+                                    .add(new Administration(nurse, p.id, md.medicine, when, "as needed"));
+                    }
+                }
+            }
+        }
+        if (!byBed.isEmpty()) ch.administerRound(nurse, byBed, when);
+    }
+
+    private void discharge(String nurse, LocalDateTime when) {
+        clock.at(when);
+        double p = 1.0 / Math.max(1.0, cfg.meanStayDays);
+        List<String> leaving = new ArrayList<>();
+        for (Bed b : ch.getBedsByKey().values()) if (!b.isVacant() && rnd.nextDouble() < p) leaving.add(b.id);
+        for (String bed : leaving) {
+            ArchivedStay s = ch.dischargeResident(nurse, bed, when);
+            formerResidents.put(s.residentId, new Resident(s.residentId, s.residentName, s.gender, s.age));
+            awaitingPrescription.remove(s.residentId);
+        }
+    }
+
+    private void move(String nurse, LocalDateTime when) {
+        clock.at(when);
+        List<Bed> occupied = new ArrayList<>();
+        for (Bed b : ch.getBedsByKey().values()) if (!b.isVacant()) occupied.add(b);
+        for (Bed from : occupied) {
+            if (rnd.nextDouble() >= cfg.moveRate) continue;
+            Optional<String> to = ch.findBestBed(from.occupant.gender, from.key.ward());
+            if (to.isEmpty()) continue;
+            try {
+                ch.moveResident(nurse, from.id, to.get(), when);
+            } catch (CareHomeException ignored) {
+                // the best bed can be in a room the rules still reject; skip this move
+            }
+        }
+    }
+
+    private void admit() {
+        int total = ch.getBedsByKey().size();
+        int target = (int) Math.round(total * cfg.occupancy);
+        int deficit = target - ch.getActiveResidentCount();
+        if (deficit <= 0) return;
+
+        List<Resident> arrivals = new ArrayList<>(deficit);
+        for (int i = 0; i < deficit; i++) {
+            if (!formerResidents.isEmpty() && rnd.nextDouble() < cfg.readmissionRate) {
+                List<String> ids = new ArrayList<>(formerResidents.keySet());
+                Resident back = formerResidents.remove(ids.get(rnd.nextInt(ids.size())));
+                arrivals.add(new Resident(back.id, back.name, back.gender, Math.min(100, back.age + 1)));
+            } else {
+                Gender g = rnd.nextBoolean() ? Gender.FEMALE : Gender.MALE;
+                arrivals.add(new Resident(null, personName(), g, 65 + rnd.nextInt(36)));
+            }
+        }
+        try {
+            awaitingPrescription.addAll(ch.admitResidents("M1", arrivals, null).keySet());
+        } catch (CareHomeException notAllFit) {
+            // room gender rules leave some beds unusable; admit whoever still fits
+            for (Resident r : arrivals) {
+                Optional<String> bed = ch.findBestBed(r.gender, null);
+                if (bed.isEmpty()) {
+                    if (r.id != null) formerResidents.put(r.id, r);
+                    continue;
+                }
+                ch.addResidentToBed("M1", bed.get(), r);
+                awaitingPrescription.add(r.id);
+            }
+        }
+    }
+
+    private String personName() {
+        return FIRST[rnd.nextInt(FIRST.length)] + " " + LAST[rnd.nextInt(LAST.length)];
+    }
+
+    private String note() {
+        return NOTES[rnd.nextInt(NOTES.length)];
+    }
+
+    // audit log timestamps follow the simulated time instead of the wall clock
+    private static final class SimClock extends Clock {
+        private Instant now = Instant.EPOCH;
+
+        void at(LocalDateTime t) {
+            now = t.toInstant(ZoneOffset.UTC);
+        }
+
+        @Override public ZoneId getZone() { return ZoneOffset.UTC; }
+        @Override public Clock withZone(ZoneId zone) { throw new UnsupportedOperationException(); }
+        @Override public Instant instant() { return now; }
+    }
+
+    /**
+     * Command line: {@code seed=42 beds=200 days=365 db=data/demo.db} (all optional). Writes the
+     * generated facility to the SQLite file.
+     */
+    public static void main(String[] args) {
+        Config cfg = new Config();
+        String db = "data/demo.db";
+        for (String a : args) {
+            String[] kv = a.replaceFirst("^--", "").split("=", 2);
+            if (kv.length != 2) throw new IllegalArgumentException("Expected key=value, got " + a);
+            switch (kv[0]) {
+                case "seed" -> cfg.seed = Long.parseLong(kv[1]);
+                case "beds" -> cfg.beds = Integer.parseInt(kv[1]);
+                case "days" -> cfg.days = Integer.parseInt(kv[1]);
+                case "start" -> cfg.start = LocalDate.parse(kv[1]);
+                case "db" -> db = kv[1];
+                default -> throw new IllegalArgumentException("Unknown option " + kv[0]);
+            }
+        }
+        long t0 = System.nanoTime();
+        CareHome ch = new WorkloadGenerator(cfg).generateInto(new JdbcStore("jdbc:sqlite:" + db));
+        System.out.printf("Generated %d beds, %d residents, %d archived stays, %d shifts, %d log entries into %s in %d ms%n",
+                ch.getBedsByKey().size(), ch.getActiveResidentCount(), ch.getArchives().size(), ch.getShifts().size(),
+                ch.getLogs().size(), db, (System.nanoTime() - t0) / 1_000_000);
+    }
+}
@@ -2,15 +2,25 @@ package carehome.ui;
 
 
 // small helper class.
+import carehome.metrics.Metrics;
+import carehome.model.FacilityLayout;
+import carehome.model.MedicineCatalog;
 import carehome.model.Role;
 import carehome.model.Staff;
+import carehome.persistence.ArchiveFile;
+import carehome.server.RemoteCareHome;
 import carehome.service.CareHome;
+import carehome.sim.WorkloadGenerator;
 import carehome.ui.controller.LoginController;
 import javafx.application.Application;
 import javafx.fxml.FXMLLoader;
 import javafx.scene.Scene;
 import javafx.stage.Stage;
 
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
 import java.time.LocalDate;
 
 public class MainApp extends Application {
@@ -19,17 +29,13 @@ public class MainApp extends Application {
 
     @Override
     public void start(Stage primaryStage) throws Exception {
-        careHome = new CareHome();
-        if (!careHome.hasAnyBeds()) careHome.seedDefaultLayout();
+        // -Dcarehome.server=http://host:port/ shares one server-side model between stations
+        String server = System.getProperty("carehome.server");
+        careHome = server != null ? RemoteCareHome.connect(URI.create(server.endsWith("/") ? server : server + "/")) : localCareHome();
 
-        // seed minimal accounts so we can log in
-        careHome.addOrUpdateStaff("M1", new Staff("M1","Manager", Role.MANAGER), "manager","pass");
-        careHome.addOrUpdateStaff("M1", new Staff("D1","Dr Alice", Role.DOCTOR), "alice","pass");
-        careHome.addOrUpdateStaff("M1", new Staff("N1","Nurse Bob", Role.NURSE), "bob","pass");
-
-        // optional shifts for today (so doctor/nurse are rostered)
-        var today = LocalDate.now();
-        careHome.allocateShift("M1", new carehome.model.Shift("N1", today.atTime(8,0),  today.atTime(16,0)));
+        // operation latencies + collection sizes, also visible in JConsole / VisualVM
+        Metrics.shared().watch(careHome::getEntityCounts);
+        Metrics.shared().registerMBean();
 
         FXMLLoader loader = new FXMLLoader(getClass().getResource("LoginView.fxml"));
         Scene scene = new Scene(loader.load());
@@ -43,6 +49,48 @@ public class MainApp extends Application {
         primaryStage.show();
     }
 
+    private static CareHome localCareHome() throws java.io.IOException {
+        CareHome careHome = Boolean.getBoolean("carehome.demo") ? demoCareHome() : new CareHome();
+        if (!careHome.hasAnyBeds()) careHome.loadLayout(startupLayout());
+        Path medicines = Path.of(System.getProperty("carehome.medicines", "medicines.txt"));
+        if (Files.isRegularFile(medicines)) careHome.loadMedicineCatalog(MedicineCatalog.load(medicines));
+
+        // seed minimal accounts so we can log in
+        careHome.addOrUpdateStaff("M1", new Staff("M1","Manager", Role.MANAGER), "manager","pass");
+        careHome.addOrUpdateStaff("M1", new Staff("D1","Dr Alice", Role.DOCTOR), "alice","pass");
+        careHome.addOrUpdateStaff("M1", new Staff("N1","Nurse Bob", Role.NURSE), "bob","pass");
+
+        // optional shifts for today (so doctor/nurse are rostered)
+        var today = LocalDate.now();
+        careHome.allocateShift("M1", new carehome.model.Shift("N1", today.atTime(8,0),  today.atTime(16,0)));
+
+        // -Dcarehome.archive=<file>: stays discharged over carehome.archive.coldDays (365) ago move off heap
+        String archive = System.getProperty("carehome.archive");
+        if (archive != null) {
+            careHome.setColdArchive(new ArchiveFile(Path.of(archive)), Duration.ofDays(Long.getLong("carehome.archive.coldDays", 365)));
+            careHome.compactArchives();
+        }
+        return careHome;
+    }
+
+    // -Dcarehome.layout=<file>, else ./layout.txt when present, else the built-in two-ward layout
+    private static FacilityLayout startupLayout() throws java.io.IOException {
+        String configured = System.getProperty("carehome.layout");
+        Path file = configured != null ? Path.of(configured) : Path.of("layout.txt");
+        if (configured != null || Files.isRegularFile(file)) return FacilityLayout.load(file);
+        return FacilityLayout.defaultLayout();
+    }
+
+    // -Dcarehome.demo=true: generated history up to yesterday (-Dcarehome.demo.seed/.beds/.days to vary it)
+    private static CareHome demoCareHome() {
+        WorkloadGenerator.Config cfg = new WorkloadGenerator.Config();
+        cfg.seed = Long.getLong("carehome.demo.seed", cfg.seed);
+        cfg.beds = Integer.getInteger("carehome.demo.beds", cfg.beds);
+        cfg.days = Integer.getInteger("carehome.demo.days", 90);
+        cfg.start = LocalDate.now().minusDays(cfg.days);
+        return new WorkloadGenerator(cfg).generate();
+    }
+
     public static void main(String[] args) {
         launch(args);
     }
@@ -3,8 +3,8 @@ package carehome.ui.controller;
 
 // controller for the Archives screen.
 import carehome.model.*;
+import carehome.persistence.JdbcStore;
 import carehome.service.CareHome;
-import javafx.beans.binding.Bindings;
 import javafx.beans.property.SimpleStringProperty;
 import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
@@ -20,10 +20,13 @@ import java.util.stream.Collectors;
 public class ArchivesController {
 
     @FXML private TextField txtSearch;
+    @FXML private CheckBox chkFullText;
+    @FXML private Button btnPrev, btnNext;
     @FXML private Label lblInfo;
 
-    @FXML private TableView<ArchivedStay> tblStays;
-    @FXML private TableColumn<ArchivedStay, String> colWhen, colName, colGender, colAge, colBed;
+    // rows are headers only; a cold stay's history is decoded when it is selected
+    @FXML private TableView<ArchiveEntry> tblStays;
+    @FXML private TableColumn<ArchiveEntry, String> colWhen, colName, colGender, colAge, colBed;
 
     @FXML private Label lblName, lblId, lblGender, lblAge, lblWhen, lblBed;
 
@@ -33,13 +36,20 @@ public class ArchivesController {
     @FXML private TableView<Administration> tblAdmins;
     @FXML private TableColumn<Administration, String> colATime, colANurse, colAPresc, colAMed, colANotes;
 
-    @FXML private Button btnExport;
+    @FXML private Button btnExport, btnCancelExport;
+    @FXML private ProgressBar pbExport;
 
     private CareHome careHome;
     private MainController main;
 
-    private final ObservableList<ArchivedStay> backing = FXCollections.observableArrayList();
-    private final FilteredList<ArchivedStay> stays = new FilteredList<>(backing);
+    private final ObservableList<ArchiveEntry> backing = FXCollections.observableArrayList();
+    private final FilteredList<ArchiveEntry> stays = new FilteredList<>(backing);
+
+    // full-text mode: current page and the words the stays matched (used to narrow the detail tables)
+    private static final int PAGE = 50;
+    private int pageOffset;
+    private ArchiveSearchResult lastResult;
+    private List<String> matchedTerms = List.of();
 
     private static final DateTimeFormatter TS = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm");
 
@@ -101,22 +111,25 @@ public class ArchivesController {
 
         // Search filter
         txtSearch.textProperty().addListener((obs, o, q) -> {
-            String qq = q == null ? "" : q.trim().toLowerCase();
-            stays.setPredicate(st -> qq.isEmpty()
-                    || safe(st.residentName).toLowerCase().contains(qq)
-                    || safe(st.residentId).toLowerCase().contains(qq)
-                    || safe(st.lastBedId).toLowerCase().contains(qq));
-            lblInfo.setText(stays.size() + " record(s)");
+            pageOffset = 0;
+            applySearch();
+        });
+        chkFullText.selectedProperty().addListener((obs, o, on) -> {
+            txtSearch.setPromptText(on ? "e.g. med:warfarin note:refus*" : "Search by resident/bed id…");
+            pageOffset = 0;
+            applySearch();
         });
+        btnPrev.setOnAction(e -> { pageOffset = Math.max(0, pageOffset - PAGE); applySearch(); });
+        btnNext.setOnAction(e -> { pageOffset += PAGE; applySearch(); });
+        updatePager();
 
-        // Export CSV of current filtered rows
-        btnExport.disableProperty().bind(Bindings.isEmpty(stays));
-        btnExport.setOnAction(e -> exportCsv());
+        // Export: full history (prescriptions, doses, administrations) streamed from the database
+        btnExport.setOnAction(e -> export());
     }
 
     private void refresh() {
         if (careHome == null) return;
-        List<ArchivedStay> list = careHome.getArchives();
+        List<ArchiveEntry> list = careHome.getArchiveEntries();
         backing.setAll(list);
         stays.setPredicate(st -> true);
         lblInfo.setText(list.size() + " record(s)");
@@ -125,13 +138,63 @@ public class ArchivesController {
         }
     }
 
-    private void showStay(ArchivedStay s) {
-        if (s == null) {
+    private void applySearch() {
+        if (careHome == null) return;
+        String q = txtSearch.getText() == null ? "" : txtSearch.getText().trim();
+        if (!chkFullText.isSelected() || q.isEmpty()) {
+            lastResult = null;
+            matchedTerms = List.of();
+            if (!backing.equals(careHome.getArchiveEntries())) backing.setAll(careHome.getArchiveEntries());
+            String qq = q.toLowerCase();
+            stays.setPredicate(st -> qq.isEmpty()
+                    || safe(st.residentName).toLowerCase().contains(qq)
+                    || safe(st.residentId).toLowerCase().contains(qq)
+                    || safe(st.lastBedId).toLowerCase().contains(qq));
+            lblInfo.setText(stays.size() + " record(s)");
+        } else {
+            lastResult = careHome.searchArchives(q, pageOffset, PAGE);
+            pageOffset = lastResult.offset;
+            matchedTerms = lastResult.hits.isEmpty() ? List.of() : lastResult.hits.get(0).matchedTerms;
+            stays.setPredicate(st -> true);
+            backing.setAll(lastResult.hits.stream().map(h -> ArchiveEntry.hot(h.stay)).toList());
+            lblInfo.setText(lastResult.total == 0 ? "No matches" :
+                    (lastResult.offset + 1) + "–" + (lastResult.offset + lastResult.hits.size())
+                            + " of " + lastResult.total + " match(es)");
+            if (!backing.isEmpty()) tblStays.getSelectionModel().select(0);
+        }
+        updatePager();
+    }
+
+    private void updatePager() {
+        boolean paged = lastResult != null;
+        btnPrev.setDisable(!paged || lastResult.offset == 0);
+        btnNext.setDisable(!paged || !lastResult.hasMore());
+    }
+
+    // in full-text mode only rows mentioning one of the matched words are listed
+    private boolean mentionsMatch(String... values) {
+        if (matchedTerms.isEmpty()) return true;
+        for (String v : values) {
+            String lv = safe(v).toLowerCase();
+            for (String t : matchedTerms) if (lv.contains(t)) return true;
+        }
+        return false;
+    }
+
+    private void showStay(ArchiveEntry e) {
+        if (e == null) {
             lblName.setText(""); lblId.setText(""); lblGender.setText("");
             lblAge.setText(""); lblWhen.setText(""); lblBed.setText("");
             tblPresc.getItems().clear(); tblAdmins.getItems().clear();
             return;
         }
+        ArchivedStay s;
+        try {
+            s = careHome.openArchivedStay(e);
+        } catch (RuntimeException ex) {
+            error("Could not open the stay of " + safe(e.residentName) + ": " + ex.getMessage());
+            return;
+        }
         lblName.setText(safe(s.residentName));
         lblId.setText(safe(s.residentId));
         lblGender.setText(s.gender == null ? "" : s.gender.name());
@@ -139,35 +202,20 @@ public class ArchivesController {
         lblWhen.setText(fmt(s.dischargedAt));
         lblBed.setText(safe(s.lastBedId));
 
-        tblPresc.getItems().setAll(s.prescriptions == null ? List.of() : s.prescriptions);
-        tblAdmins.getItems().setAll(s.administrations == null ? List.of() : s.administrations);
-    }
-
-    private void exportCsv() {
-        try {
-            var path = java.nio.file.Paths.get("archives_export.csv");
-            try (var w = java.nio.file.Files.newBufferedWriter(path)) {
-                w.write("discharged,residentId,name,gender,age,lastBed\n");
-                for (var s : stays) {
-                    w.write(String.join(",",
-                            fmt(s.dischargedAt),
-                            safe(s.residentId),
-                            escape(safe(s.residentName)),
-                            s.gender == null ? "" : s.gender.name(),
-                            Integer.toString(s.age),
-                            safe(s.lastBedId)));
-                    w.write("\n");
-                }
-            }
-            info("Exported to " + path.toAbsolutePath());
-        } catch (Exception ex) {
-            error("Export failed: " + ex.getMessage());
-        }
+        List<Prescription> ps = s.prescriptions == null ? List.of() : s.prescriptions;
+        List<Administration> as = s.administrations == null ? List.of() : s.administrations;
+        tblPresc.getItems().setAll(ps.stream().filter(p -> mentionsMatch(p.id, p.doctorId, p.meds == null ? "" :
+                p.meds.stream().map(m -> safe(m.medicine) + " " + safe(m.dosage) + " " + safe(m.frequency))
+                        .collect(Collectors.joining(" ")))).toList());
+        tblAdmins.getItems().setAll(as.stream().filter(a -> mentionsMatch(a.medicine, a.notes, a.nurseId, a.prescriptionId)).toList());
     }
 
-    private static String escape(String s) {
-        if (s.contains(",") || s.contains("\"")) return '"' + s.replace("\"", "\"\"") + '"';
-        return s;
+    private void export() {
+        JdbcStore store = new JdbcStore("jdbc:sqlite:carehome.db");
+        store.init();
+        ExportTask.start(tblStays.getScene().getWindow(), "archives_export.csv",
+                (file, format, gzip, l) -> store.exporter().exportArchives(file, format, gzip, l),
+                pbExport, btnCancelExport, this::info, this::error);
     }
 
     private void info(String m) { lblInfo.setText(m); }
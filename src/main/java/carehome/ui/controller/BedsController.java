@@ -4,12 +4,15 @@ package carehome.ui.controller;
 // Controller for the Beds screen : shows all beds, selection details,
 // and allows role-based actions (add/move/discharge).
 import carehome.exception.NotFoundException;
+import carehome.exception.VersionConflictException;
 import carehome.model.*;
 import carehome.service.CareHome;
 import javafx.fxml.FXML;
+import javafx.scene.Node;
 import javafx.scene.control.*;
 import javafx.scene.layout.FlowPane;
 import javafx.scene.layout.Region;
+import javafx.scene.layout.VBox;
 
 import java.time.LocalDateTime;
 import java.util.*;
@@ -17,12 +20,11 @@ import java.util.stream.Collectors;
 
 public class BedsController {
 
-    @FXML private FlowPane ward1Pane;
-    @FXML private FlowPane ward2Pane;
+    @FXML private VBox wardsBox;
     // Bed detail panel
     @FXML private Label lblBedId, lblStatus, lblResident, lblGender, lblAge;
 
-    @FXML private Button btnAddResident, btnMoveResident, btnDischarge;
+    @FXML private Button btnAddResident, btnMoveResident, btnDischarge, btnFindBed, btnTransferWard;
     @FXML private TextField txtTargetBed;
     @FXML private Label lblInfo;
 
@@ -31,6 +33,8 @@ public class BedsController {
     private MainController main;
 
     private String selectedBedId;
+    // version of the selected bed when it was shown; actions fail if another station changed it since
+    private long selectedBedVersion = CareHome.ANY_VERSION;
 
 //     Injects application context and applies role-based UI permissions.
 
@@ -44,37 +48,47 @@ public class BedsController {
         boolean isDoctor  = user.getRole() == Role.DOCTOR;
 
         btnAddResident.setDisable(!isManager);
+        btnFindBed.setDisable(!isManager);
         btnMoveResident.setDisable(!isNurse);
         btnDischarge.setDisable(!(isNurse || isDoctor));
+        btnTransferWard.setDisable(!isNurse);
 
         lblInfo.setText("Signed in as: " + user.getName() + " (" + user.getRole() + ")");
         reloadBeds();
     }
 
-//    * Rebuilds the bed lists and repaints both ward panes.
+//    * Rebuilds one pane per ward (keys are already in ward/room/bed order).
     private void reloadBeds() {
-        Map<String,Bed> beds = careHome.getBeds();
-        List<String> allIds = new ArrayList<>(beds.keySet());
-        allIds.sort(Comparator.comparingInt(this::extractBedNumberSafely));
-
-        int split = (int)Math.ceil(allIds.size()/2.0);
-        List<String> w1 = allIds.subList(0, split);
-        List<String> w2 = allIds.subList(split, allIds.size());
-
-        ward1Pane.getChildren().setAll(w1.stream().map(this::createBedNode).collect(Collectors.toList()));
-        ward2Pane.getChildren().setAll(w2.stream().map(this::createBedNode).collect(Collectors.toList()));
+        NavigableMap<BedKey,Bed> beds = careHome.getBedsByKey();
+        List<Node> panes = new ArrayList<>();
+        FlowPane current = null;
+        int currentWard = -1;
+        for (Bed bed : beds.values()) {
+            if (bed.key.ward() != currentWard) {
+                currentWard = bed.key.ward();
+                current = new FlowPane(8, 8);
+                current.setPrefWrapLength(600);
+                TitledPane tp = new TitledPane(careHome.getWardLabel(currentWard) + " (W" + currentWard + ")", current);
+                tp.setExpanded(true);
+                panes.add(tp);
+            }
+            current.getChildren().add(createBedNode(bed));
+        }
+        wardsBox.getChildren().setAll(panes);
 
-        if (!allIds.isEmpty()) selectBed(allIds.get(0)); else clearDetails();
+        if (!beds.isEmpty()) selectBed(beds.firstKey().toString()); else clearDetails();
     }
 
 //    * Creates a clickable Button for a bed. Button color indicates occupancy/gender.
-    private Button createBedNode(String bedId) {
+    // paints straight from the bed map; getResidentInBed is kept for explicit selection because it audits
+    private Button createBedNode(Bed bed) {
+        String bedId = bed.id;
         Button b = new Button(bedId);
         b.setMinSize(64, 40);
         b.setPrefSize(80, 48);
         b.setMaxSize(Region.USE_PREF_SIZE, Region.USE_PREF_SIZE);
 
-        Resident occ = safeResident(bedId);
+        Resident occ = bed.occupant;
         b.setStyle(colorStyleFor(occ));
         b.setTooltip(new Tooltip(occ == null ? "Vacant" :
                 occ.name + " (" + occ.gender + ", " + occ.age + ")"));
@@ -84,6 +98,8 @@ public class BedsController {
    //      Selects a bed and updates the detail panel (status + occupant info)
     private void selectBed(String bedId) {
         this.selectedBedId = bedId;
+        Bed bed = careHome.getBeds().get(bedId);
+        selectedBedVersion = bed == null ? CareHome.ANY_VERSION : bed.version;
         Resident occ = safeResident(bedId);
         lblBedId.setText(bedId);
         if (occ == null) {
@@ -101,6 +117,7 @@ public class BedsController {
     /** Clears the detail panel when nothing is selected. */
     private void clearDetails() {
         selectedBedId = null;
+        selectedBedVersion = CareHome.ANY_VERSION;
         lblBedId.setText("-");
         lblStatus.setText("-");
         lblResident.setText("-");
@@ -115,15 +132,35 @@ public class BedsController {
         if (selectedBedId == null) { err("Select a bed first."); return; }
         if (safeResident(selectedBedId) != null) { err("Bed is occupied."); return; }
 
-        Optional<String> name = prompt("Resident Name");
+        // readmission: a known resident id brings back the details of their last stay
+        TextInputDialog idDlg = new TextInputDialog();
+        idDlg.setHeaderText("Returning resident ID (leave blank for a new resident)");
+        Optional<String> idIn = idDlg.showAndWait().map(String::trim);
+        if (idIn.isEmpty()) { info("Cancelled."); return; }
+        String residentId = idIn.get().isEmpty() ? null : idIn.get();
+        ArchivedStay last = null;
+        if (residentId != null) {
+            if (careHome.isResidentActive(residentId)) { err("Resident " + residentId + " is already in a bed."); return; }
+            List<ArchivedStay> prior = careHome.getArchivedStays(residentId);
+            if (prior.isEmpty()) { err("No previous stays for resident " + residentId + "."); return; }
+            last = prior.get(prior.size() - 1);
+            residentId = last.residentId;
+            String header = "Previous stays of " + last.residentName + " (" + residentId + ")";
+            new Alert(Alert.AlertType.INFORMATION, describeStays(prior), ButtonType.OK) {{
+                setHeaderText(header);
+            }}.showAndWait();
+        }
+
+        Optional<String> name = prompt("Resident Name", last == null ? "" : last.residentName);
         if (name.isEmpty() || name.get().trim().isEmpty()) { info("Cancelled."); return; }
 
-        ChoiceDialog<String> chGender = new ChoiceDialog<>("MALE", List.of("MALE","FEMALE"));
+        String defaultGender = last != null && last.gender != null ? last.gender.name() : "MALE";
+        ChoiceDialog<String> chGender = new ChoiceDialog<>(defaultGender, List.of("MALE","FEMALE"));
         chGender.setHeaderText("Gender");
         Optional<String> g = chGender.showAndWait();
         if (g.isEmpty()) { info("Cancelled."); return; }
 
-        Optional<String> ageS = prompt("Age (0–100)");
+        Optional<String> ageS = prompt("Age (0–100)", last == null ? "" : String.valueOf(last.age));
         if (ageS.isEmpty()) { info("Cancelled."); return; }
 
         try {
@@ -135,11 +172,11 @@ public class BedsController {
 
             Gender gender = Gender.valueOf(g.get().trim().toUpperCase());
 
-            // Pass null ID so CareHome auto-generates R{N+1}
-            Resident r = new Resident(null, name.get().trim(), gender, age);
+            // null ID (new resident) lets CareHome auto-generate R{N+1}
+            Resident r = new Resident(residentId, name.get().trim(), gender, age);
 
             // persist
-            careHome.addResidentToBed(currentUser.getId(), selectedBedId, r);
+            careHome.addResidentToBed(currentUser.getId(), selectedBedId, r, selectedBedVersion);
 
             // refresh UI
             reloadBeds();
@@ -161,12 +198,44 @@ public class BedsController {
 
         } catch (NumberFormatException nfe) {
             err("Please enter a valid numeric age.");
+        } catch (VersionConflictException vc) {
+            showConflict(vc);
         } catch (Exception ex) {
             err(ex.getMessage());
         }
     }
 
 
+    // jumps to the bed a resident is in, by resident id
+    @FXML
+    private void handleFindResident() {
+        Optional<String> rid = prompt("Resident ID to locate (e.g. R12)");
+        if (rid.isEmpty()) { info("Cancelled."); return; }
+        Optional<String> bed = careHome.findResidentBed(rid.get());
+        if (bed.isEmpty()) { err("Resident " + rid.get() + " is not currently admitted."); return; }
+        selectBed(bed.get());
+        info("Resident " + rid.get() + " is in " + bed.get() + ".");
+    }
+
+    // suggests the best vacant bed for a gender, preferring the ward of the selected bed
+    @FXML
+    private void handleFindBed() {
+        ChoiceDialog<String> chGender = new ChoiceDialog<>("MALE", List.of("MALE","FEMALE"));
+        chGender.setHeaderText("Find a bed for gender");
+        Optional<String> g = chGender.showAndWait();
+        if (g.isEmpty()) { info("Cancelled."); return; }
+
+        Integer preferredWard = null;
+        BedKey sel = BedKey.tryParse(selectedBedId);
+        if (sel != null) preferredWard = sel.ward();
+
+        List<String> found = careHome.findVacantBeds(Gender.valueOf(g.get()), preferredWard, 5);
+        if (found.isEmpty()) { err("No vacant bed is compatible with a " + g.get() + " resident."); return; }
+
+        selectBed(found.get(0));
+        info("Suggested " + found.get(0) + (found.size() > 1 ? " (also: " + String.join(", ", found.subList(1, found.size())) + ")" : ""));
+    }
+
     @FXML
     private void handleMoveResident() {
         if (currentUser.getRole() != Role.NURSE) { showUnauthorized("Only NURSE can move residents."); return; }
@@ -178,13 +247,16 @@ public class BedsController {
         if (!careHome.getBeds().containsKey(target)) { err("Unknown target bed: " + target); return; }
         if (target.equals(selectedBedId)) { err("Target must be different from source."); return; }
         if (safeResident(target) != null) { err("Target bed is occupied."); return; }
+        long targetVersion = careHome.getBeds().get(target).version;
 
         try {
-            careHome.moveResident(currentUser.getId(), selectedBedId, target, LocalDateTime.now());
+            careHome.moveResident(currentUser.getId(), selectedBedId, target, LocalDateTime.now(), selectedBedVersion, targetVersion);
             info("Moved from " + selectedBedId + " to " + target);
             reloadBeds();
             selectBed(target);
             txtTargetBed.clear();
+        } catch (VersionConflictException vc) {
+            showConflict(vc);
         } catch (Exception ex) { err(ex.getMessage()); }
     }
 
@@ -198,14 +270,45 @@ public class BedsController {
         if (safeResident(selectedBedId) == null) { err("Bed is already vacant."); return; }
 
         try {
-            careHome.dischargeResident(currentUser.getId(), selectedBedId, LocalDateTime.now());
+            careHome.dischargeResident(currentUser.getId(), selectedBedId, LocalDateTime.now(), selectedBedVersion);
             info("Discharged resident from " + selectedBedId);
             reloadBeds();
             selectBed(selectedBedId);
+        } catch (VersionConflictException vc) {
+            showConflict(vc);
+        } catch (Exception ex) { err(ex.getMessage()); }
+    }
+
+    // moves every resident of one ward into another in a single all-or-nothing step
+    @FXML
+    private void handleTransferWard() {
+        if (currentUser.getRole() != Role.NURSE) { showUnauthorized("Only NURSE can transfer a ward."); return; }
+        Optional<String> from = prompt("Source ward number (e.g. 1)");
+        if (from.isEmpty()) { info("Cancelled."); return; }
+        Optional<String> to = prompt("Destination ward number");
+        if (to.isEmpty()) { info("Cancelled."); return; }
+
+        try {
+            int fromWard = Integer.parseInt(from.get().replaceFirst("^[Ww]", ""));
+            int toWard = Integer.parseInt(to.get().replaceFirst("^[Ww]", ""));
+            Map<String, String> moves = careHome.transferWard(currentUser.getId(), fromWard, toWard, LocalDateTime.now());
+            reloadBeds();
+            info("Transferred " + moves.size() + " resident(s) from W" + fromWard + " to W" + toWard);
+        } catch (NumberFormatException nfe) {
+            err("Ward must be a number.");
         } catch (Exception ex) { err(ex.getMessage()); }
     }
 
     //  helpers
+
+    // another station changed the bed first: show the message and what the bed looks like now
+    private void showConflict(VersionConflictException vc) {
+        String keep = selectedBedId;
+        reloadBeds();
+        if (keep != null && careHome.getBeds().containsKey(keep)) selectBed(keep);
+        err(vc.getMessage());
+    }
+
     private Resident safeResident(String bedId) {
         try { return careHome.getResidentInBed(currentUser.getId(), bedId); }
         catch (NotFoundException nf) { return null; }
@@ -219,15 +322,22 @@ public class BedsController {
         return "-fx-background-color: #bdc3c7;";
     }
 
-    private int extractBedNumberSafely(String id) {
-        try {
-            String d = id.replaceAll("\\D+", "");
-            return d.isEmpty() ? Integer.MAX_VALUE : Integer.parseInt(d);
-        } catch (Exception e) { return Integer.MAX_VALUE; }
+    private static String describeStays(List<ArchivedStay> stays) {
+        StringBuilder sb = new StringBuilder();
+        for (ArchivedStay s : stays) {
+            int rx = s.prescriptions == null ? 0 : s.prescriptions.size();
+            sb.append("Discharged ").append(s.dischargedAt).append(" from ").append(s.lastBedId)
+              .append(" — ").append(rx).append(" prescription(s)\n");
+        }
+        return sb.toString();
     }
 
     private Optional<String> prompt(String header) {
-        TextInputDialog d = new TextInputDialog();
+        return prompt(header, "");
+    }
+
+    private Optional<String> prompt(String header, String initial) {
+        TextInputDialog d = new TextInputDialog(initial);
         d.setHeaderText(header);
         return d.showAndWait().map(String::trim).filter(s -> !s.isEmpty());
     }
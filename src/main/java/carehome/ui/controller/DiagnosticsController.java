@@ -0,0 +1,82 @@
+package carehome.ui.controller;
+
+
+// controller for the Diagnostics screen: per-operation latency percentiles and collection sizes.
+import carehome.metrics.Metrics;
+import carehome.metrics.OperationStats;
+import carehome.model.Staff;
+import carehome.service.CareHome;
+import javafx.beans.property.SimpleStringProperty;
+import javafx.collections.FXCollections;
+import javafx.collections.ObservableList;
+import javafx.fxml.FXML;
+import javafx.scene.control.Label;
+import javafx.scene.control.TableColumn;
+import javafx.scene.control.TableView;
+
+import java.util.Map;
+import java.util.function.ToLongFunction;
+
+public class DiagnosticsController {
+
+    @FXML private Label lblInfo;
+
+    @FXML private TableView<OperationStats> tblOps;
+    @FXML private TableColumn<OperationStats, String> colOp, colCount, colErrors, colMean, colP50, colP90, colP99, colP999, colMax;
+
+    @FXML private TableView<Map.Entry<String, Integer>> tblCounts;
+    @FXML private TableColumn<Map.Entry<String, Integer>, String> colCollection, colSize;
+
+    private CareHome careHome;
+    private MainController main;
+
+    private final ObservableList<OperationStats> ops = FXCollections.observableArrayList();
+    private final ObservableList<Map.Entry<String, Integer>> counts = FXCollections.observableArrayList();
+
+    public void setContext(CareHome ch, Staff user, MainController main) {
+        this.careHome = ch;
+        this.main = main;
+        handleRefresh();
+    }
+
+    @FXML
+    public void initialize() {
+        colOp.setCellValueFactory(d -> new SimpleStringProperty(d.getValue().name));
+        colCount.setCellValueFactory(d -> new SimpleStringProperty(String.valueOf(d.getValue().count)));
+        colErrors.setCellValueFactory(d -> new SimpleStringProperty(String.valueOf(d.getValue().errors)));
+        micros(colMean, s -> s.meanNanos);
+        micros(colP50, s -> s.p50Nanos);
+        micros(colP90, s -> s.p90Nanos);
+        micros(colP99, s -> s.p99Nanos);
+        micros(colP999, s -> s.p999Nanos);
+        micros(colMax, s -> s.maxNanos);
+        tblOps.setItems(ops);
+
+        colCollection.setCellValueFactory(d -> new SimpleStringProperty(d.getValue().getKey()));
+        colSize.setCellValueFactory(d -> new SimpleStringProperty(String.valueOf(d.getValue().getValue())));
+        tblCounts.setItems(counts);
+    }
+
+    private static void micros(TableColumn<OperationStats, String> col, ToLongFunction<OperationStats> nanos) {
+        col.setCellValueFactory(d -> new SimpleStringProperty(String.format("%.1f", nanos.applyAsLong(d.getValue()) / 1e3)));
+    }
+
+    // Actions
+
+    @FXML
+    private void handleRefresh() {
+        ops.setAll(Metrics.shared().getOperations());
+        if (careHome != null) counts.setAll(careHome.getEntityCounts().entrySet());
+        long calls = ops.stream().mapToLong(s -> s.count).sum();
+        long errors = ops.stream().mapToLong(s -> s.errors).sum();
+        lblInfo.setText(ops.size() + " operation(s), " + calls + " call(s), " + errors + " error(s). Also available over JMX as "
+                + Metrics.OBJECT_NAME + ".");
+    }
+
+    @FXML
+    private void handleReset() {
+        if (main != null && !main.requireManager()) return;
+        Metrics.shared().reset();
+        handleRefresh();
+    }
+}
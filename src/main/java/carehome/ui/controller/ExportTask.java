@@ -0,0 +1,76 @@
+package carehome.ui.controller;
+
+
+// runs a StreamingExporter job off the FX thread with progress and cancel wired to the given controls.
+import carehome.persistence.StreamingExporter;
+import javafx.concurrent.Task;
+import javafx.scene.control.Button;
+import javafx.scene.control.ProgressBar;
+import javafx.stage.FileChooser;
+import javafx.stage.Window;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.util.function.Consumer;
+
+final class ExportTask extends Task<Long> {
+
+    interface Job {
+        long run(Path file, StreamingExporter.Format format, boolean gzip, StreamingExporter.Listener listener) throws Exception;
+    }
+
+    private final Path file;
+    private final Job job;
+
+    private ExportTask(Path file, Job job) {
+        this.file = file;
+        this.job = job;
+    }
+
+    @Override
+    protected Long call() throws Exception {
+        return job.run(file, StreamingExporter.Format.forFile(file), StreamingExporter.isGzip(file),
+                new StreamingExporter.Listener() {
+                    @Override public void progress(long done, long total) {
+                        updateProgress(done, total);
+                    }
+                    @Override public boolean isCancelled() {
+                        return ExportTask.this.isCancelled();
+                    }
+                });
+    }
+
+    /**
+     * Asks for a target file (the extension picks CSV or NDJSON, {@code .gz} compresses) and starts
+     * the export on a daemon thread. {@code done} gets a status line either way.
+     */
+    static void start(Window owner, String defaultName, Job job, ProgressBar bar, Button cancel,
+                      Consumer<String> done, Consumer<String> failed) {
+        FileChooser fc = new FileChooser();
+        fc.setTitle("Export");
+        fc.setInitialFileName(defaultName);
+        fc.getExtensionFilters().addAll(
+                new FileChooser.ExtensionFilter("CSV", "*.csv", "*.csv.gz"),
+                new FileChooser.ExtensionFilter("NDJSON", "*.ndjson", "*.ndjson.gz", "*.jsonl", "*.jsonl.gz"));
+        File f = fc.showSaveDialog(owner);
+        if (f == null) return;
+
+        ExportTask t = new ExportTask(f.toPath(), job);
+        bar.progressProperty().bind(t.progressProperty());
+        bar.setVisible(true);
+        cancel.setVisible(true);
+        cancel.setOnAction(e -> t.cancel());
+        Runnable reset = () -> {
+            bar.progressProperty().unbind();
+            bar.setVisible(false);
+            cancel.setVisible(false);
+        };
+        t.setOnSucceeded(e -> { reset.run(); done.accept("Exported " + t.getValue() + " record(s) to " + f.getAbsolutePath()); });
+        t.setOnCancelled(e -> { reset.run(); done.accept("Export cancelled."); });
+        t.setOnFailed(e -> { reset.run(); failed.accept("Export failed: " + t.getException().getMessage()); });
+
+        Thread th = new Thread(t, "carehome-export");
+        th.setDaemon(true);
+        th.start();
+    }
+}
@@ -26,7 +26,8 @@ public class LogsController {
     @FXML private Label lblUser, lblInfo;
     @FXML private TextField txtSearch;
     @FXML private DatePicker dpFrom, dpTo;
-    @FXML private Button btnCompliance, btnSaveDb, btnLoadDb;
+    @FXML private Button btnCompliance, btnSaveDb, btnLoadDb, btnExport, btnCancelExport;
+    @FXML private ProgressBar pbExport;
 
     @FXML private TableView<ActionLog> tblLogs;
     @FXML private TableColumn<ActionLog,String> colTime, colStaff, colRole, colAction;
@@ -101,6 +102,8 @@ public class LogsController {
     private void handleLoadDb() {
         try {
             CareHome loaded = store.loadAll();
+            // stays the database keeps in the cold archive are read from the one already attached
+            if (careHome.getColdArchive() != null) loaded.setColdArchive(careHome.getColdArchive(), careHome.getColdAfter());
             // update this controller + MainController’s shared model
             this.careHome = loaded;
             if (main != null) main.replaceCareHome(loaded);
@@ -111,6 +114,13 @@ public class LogsController {
         }
     }
 
+    @FXML
+    private void handleExport() {
+        ExportTask.start(tblLogs.getScene().getWindow(), "logs_export.csv",
+                (file, format, gzip, l) -> store.exporter().exportLogs(file, format, gzip, l),
+                pbExport, btnCancelExport, this::info, this::error);
+    }
+
     private void refresh() {
         data.setAll(careHome.getLogs()); // base list
 
@@ -2,9 +2,13 @@ package carehome.ui.controller;
 
 
 // controller for the Main screen.
+import carehome.exception.ResyncRequiredException;
+import carehome.metrics.Metrics;
 import carehome.model.Role;
 import carehome.model.Staff;
+import carehome.server.RemoteCareHome;
 import carehome.service.CareHome;
+import javafx.application.Platform;
 import javafx.fxml.FXML;
 import javafx.fxml.FXMLLoader;
 import javafx.scene.Node;
@@ -17,6 +21,9 @@ import javafx.stage.Stage;
 import javafx.scene.control.ButtonType;
 import javafx.stage.Window;
 
+import java.util.Map;
+import java.util.Set;
+
 
 public class MainController {
 
@@ -28,11 +35,22 @@ public class MainController {
 
     @FXML private Button btnLogout;
     @FXML private Button btnMeds;
+    @FXML private Button btnRound;
+    @FXML private Button btnWorklist;
+    @FXML private Button btnDiagnostics;
     @FXML private Label lblUser;
+    @FXML private Label lblSync;
     @FXML private StackPane contentArea;
 
     private CareHome careHome;
     private Staff current;
+    private String currentView;
+
+    // read-only screens that are reloaded when another station changes something; forms keep their input
+    private static final Set<String> LIVE_VIEWS = Set.of("residents", "worklist", "logs", "archive");
+    private RemoteCareHome.Subscription subscription;
+    private RemoteCareHome.ChangeListener changeListener;
+    private boolean reloadPending;
 
     /** Called by LoginController right after login */
     public void setContext(CareHome careHome, Staff current) {
@@ -50,9 +68,13 @@ public class MainController {
         if (btnLogs != null)      btnLogs.setOnAction(e -> switchView("logs"));
         if (btnArchive != null)   btnArchive.setOnAction(e -> switchView("archive"));
         if (btnMeds != null) btnMeds.setOnAction(e -> switchView("meds"));
+        if (btnRound != null) btnRound.setOnAction(e -> switchView("round"));
+        if (btnWorklist != null) btnWorklist.setOnAction(e -> switchView("worklist"));
+        if (btnDiagnostics != null) btnDiagnostics.setOnAction(e -> switchView("diagnostics"));
 
 
         applyRoleMenu();
+        follow(careHome);
     }
 
     private void applyRoleMenu() {
@@ -114,10 +136,70 @@ public class MainController {
 
     public void replaceCareHome(CareHome newModel) {
         this.careHome = newModel;
+        Metrics.shared().watch(newModel::getEntityCounts);
+        follow(newModel);
+    }
+
+    //  live updates when connected to a server
+
+    private void follow(CareHome ch) {
+        stopFollowing();
+        if (!(ch instanceof RemoteCareHome remote)) return;
+        changeListener = new RemoteCareHome.ChangeListener() {
+            @Override
+            public void changed(long seq, Map<String, Object> command) {
+                onRemoteChange(seq, command);
+            }
+
+            @Override
+            public void resyncRequired(ResyncRequiredException e) {
+                resync(remote);
+            }
+        };
+        remote.addChangeListener(changeListener);
+        subscription = remote.subscribe(Platform::runLater);
+        if (lblSync != null) {
+            lblSync.setVisible(true);
+            lblSync.setText("Live #" + remote.getSeq());
+        }
+    }
+
+    private void stopFollowing() {
+        if (subscription != null) subscription.close();
+        if (changeListener != null && careHome instanceof RemoteCareHome remote) remote.removeChangeListener(changeListener);
+        subscription = null;
+        changeListener = null;
+    }
+
+    private void onRemoteChange(long seq, Map<String, Object> command) {
+        if (lblSync != null) {
+            Object actor = command.get("actor");
+            lblSync.setText("Live #" + seq + " · " + command.get("op") + (actor == null ? "" : " by " + actor));
+        }
+        // a burst of changes arrives as a burst of runLater calls; reload once after them
+        if (reloadPending || !LIVE_VIEWS.contains(currentView)) return;
+        reloadPending = true;
+        Platform.runLater(() -> {
+            reloadPending = false;
+            if (LIVE_VIEWS.contains(currentView)) switchView(currentView);
+        });
+    }
+
+    // fell out of the server's change feed: take a fresh snapshot
+    private void resync(RemoteCareHome stale) {
+        stopFollowing();
+        try {
+            replaceCareHome(stale.reconnect());
+            if (currentView != null) switchView(currentView);
+        } catch (RuntimeException ex) {
+            if (lblSync != null) lblSync.setText("Offline");
+            showError("Connection lost", ex.getMessage());
+        }
     }
 
     @FXML
     private void handleLogout() {
+        stopFollowing();
         try {
             FXMLLoader loader = new FXMLLoader(getClass().getResource("/carehome/ui/LoginView.fxml"));
             Scene scene = new Scene(loader.load());
@@ -177,6 +259,24 @@ public class MainController {
                     }
                     contentArea.getChildren().setAll(root);
                 }
+                case "round" -> {
+                    FXMLLoader loader = new FXMLLoader(getClass().getResource("/carehome/ui/RoundView.fxml"));
+                    Node root = loader.load();
+                    var c = loader.getController();
+                    if (c instanceof carehome.ui.controller.RoundController rc) {
+                        rc.setContext(careHome, current, this);
+                    }
+                    contentArea.getChildren().setAll(root);
+                }
+                case "worklist" -> {
+                    FXMLLoader loader = new FXMLLoader(getClass().getResource("/carehome/ui/WorklistView.fxml"));
+                    Node root = loader.load();
+                    var c = loader.getController();
+                    if (c instanceof carehome.ui.controller.WorklistController wc) {
+                        wc.setContext(careHome, current, this);
+                    }
+                    contentArea.getChildren().setAll(root);
+                }
                 case "logs" -> {
                     FXMLLoader loader = new FXMLLoader(getClass().getResource("/carehome/ui/LogsView.fxml"));
                     Node root = loader.load();
@@ -195,12 +295,22 @@ public class MainController {
                     }
                     contentArea.getChildren().setAll(root);
                 }
+                case "diagnostics" -> {
+                    FXMLLoader loader = new FXMLLoader(getClass().getResource("/carehome/ui/DiagnosticsView.fxml"));
+                    Node root = loader.load();
+                    var c = loader.getController();
+                    if (c instanceof carehome.ui.controller.DiagnosticsController dc) {
+                        dc.setContext(careHome, current, this);
+                    }
+                    contentArea.getChildren().setAll(root);
+                }
                 default -> {
                     Label l = new Label(target + " — (TODO)");
                     l.setStyle("-fx-font-size:20; -fx-font-weight:bold;");
                     contentArea.getChildren().setAll(l);
                 }
             }
+            currentView = target;
         } catch (Exception ex) {
             ex.printStackTrace();
             showError("Load Error", ex.getMessage());
@@ -0,0 +1,46 @@
+package carehome.ui.controller;
+
+
+// drop-down of catalog matches under a medicine text field.
+import javafx.geometry.Side;
+import javafx.scene.control.ContextMenu;
+import javafx.scene.control.CustomMenuItem;
+import javafx.scene.control.Label;
+import javafx.scene.control.TextField;
+
+import java.util.List;
+import java.util.function.BiFunction;
+
+final class MedicineAutocomplete {
+
+    private static final int MAX_SUGGESTIONS = 8;
+
+    private MedicineAutocomplete() { }
+
+    /** {@code complete} is (prefix, limit) -> names, e.g. CareHome::completeMedicine. */
+    static void attach(TextField field, BiFunction<String, Integer, List<String>> complete) {
+        ContextMenu popup = new ContextMenu();
+        popup.setAutoHide(true);
+
+        field.textProperty().addListener((obs, old, text) -> {
+            if (!field.isFocused() || text == null || text.isBlank()) { popup.hide(); return; }
+            List<String> matches = complete.apply(text, MAX_SUGGESTIONS);
+            if (matches.isEmpty() || (matches.size() == 1 && matches.get(0).equalsIgnoreCase(text.trim()))) {
+                popup.hide();
+                return;
+            }
+            popup.getItems().clear();
+            for (String m : matches) {
+                CustomMenuItem item = new CustomMenuItem(new Label(m), true);
+                item.setOnAction(e -> {
+                    field.setText(m);
+                    field.positionCaret(m.length());
+                    popup.hide();
+                });
+                popup.getItems().add(item);
+            }
+            if (!popup.isShowing()) popup.show(field, Side.BOTTOM, 0, 0);
+        });
+        field.focusedProperty().addListener((obs, was, now) -> { if (!now) popup.hide(); });
+    }
+}
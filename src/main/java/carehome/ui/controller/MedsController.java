@@ -2,7 +2,9 @@ package carehome.ui.controller;
 
 
 // controller for the Meds screen.
+import carehome.exception.DuplicateDoseException;
 import carehome.exception.NotFoundException;
+import carehome.exception.VersionConflictException;
 import carehome.model.*;
 import carehome.service.CareHome;
 import javafx.beans.property.SimpleStringProperty;
@@ -51,6 +53,9 @@ public class MedsController {
 
     private Resident currentResident; // resolved from bed
     private String currentBedId;
+    // versions as loaded, so a prescription or dose goes in only if nobody changed them meanwhile
+    private long currentBedVersion = CareHome.ANY_VERSION;
+    private final java.util.Map<String, Long> prescVersions = new java.util.HashMap<>();
 
     private final ObservableList<Prescription> prescData = FXCollections.observableArrayList();
     private final ObservableList<Administration> adminData = FXCollections.observableArrayList();
@@ -69,6 +74,10 @@ public class MedsController {
 
         // Populate bed dropdown
         refreshBedDropdown();
+
+        // catalog autocomplete for doctor and nurse medicine fields
+        MedicineAutocomplete.attach(txtMedName, careHome::completeMedicine);
+        MedicineAutocomplete.attach(txtAdminMed, careHome::completeMedicine);
     }
 
     @FXML
@@ -110,10 +119,17 @@ public class MedsController {
             tblMedsTemp.setItems(stagedMeds);
         }
 
+        // typing a prescription id fills in the medicine and dose when it has a single line
+        txtAdminPrescId.focusedProperty().addListener((obs, was, now) -> {
+            if (!now) prefillFromPrescription();
+        });
+        txtAdminPrescId.setOnAction(e -> prefillFromPrescription());
+
         // Clicking a prescription populates nurse form and filters admins
         tblPrescriptions.getSelectionModel().selectedItemProperty().addListener((obs, o, p) -> {
             if (p != null) {
                 txtAdminPrescId.setText(safeString(p, "id"));
+                prefillFromPrescription();
                 filterAdminsForPrescription(safeString(p, "id"));
             } else {
                 txtAdminPrescId.clear();
@@ -136,6 +152,7 @@ public class MedsController {
         try {
             currentResident = careHome.getResidentInBed(currentUser.getId(), bedId);
             currentBedId = bedId;
+            currentBedVersion = careHome.getBedVersion(bedId);
 
             lblResident.setText(currentResident.name + " (" + currentResident.id + ")");
             lblGender.setText(currentResident.gender.toString());
@@ -143,6 +160,7 @@ public class MedsController {
 
             refreshPrescriptions();
             refreshAdmins();
+            suggestPrescriptionId();
             info("Loaded bed " + bedId);
 
             // keep combo synced
@@ -169,8 +187,13 @@ public class MedsController {
         if (currentUser.getRole() != Role.DOCTOR) { unauthorized("Only DOCTOR can add prescriptions."); return; }
         if (!ensureResidentLoaded()) return;
 
-        String pid = val(txtPrescId, "Prescription ID");
-        if (pid == null) return;
+        // blank id -> next free id from the registry
+        String pid = txtPrescId.getText() == null ? "" : txtPrescId.getText().trim();
+        if (pid.isEmpty()) pid = careHome.nextPrescriptionId();
+        if (careHome.isPrescriptionIdUsed(pid)) {
+            error("Prescription ID " + pid + " is already in use. Next free ID: " + careHome.nextPrescriptionId());
+            return;
+        }
 
         final java.util.List<MedicationDose> meds = new java.util.ArrayList<>();
 
@@ -192,9 +215,9 @@ public class MedsController {
         try {
             LocalDateTime now = LocalDateTime.now();
             Prescription p = new Prescription(pid, currentUser.getId(), currentResident.id, now, java.util.List.copyOf(meds));
-            careHome.addPrescription(currentUser.getId(), currentBedId, p, now);
+            careHome.addPrescription(currentUser.getId(), currentBedId, p, now, currentBedVersion);
 
-            info("Prescription added for " + currentResident.name + " (" + meds.size() + " med"
+            info("Prescription " + pid + " added for " + currentResident.name + " (" + meds.size() + " med"
                     + (meds.size() == 1 ? "" : "s") + ").");
 
             // Reset inputs
@@ -208,6 +231,7 @@ public class MedsController {
             }
 
             refreshPrescriptions();
+            suggestPrescriptionId();
         } catch (Exception ex) {
             error(ex.getMessage());
         }
@@ -253,14 +277,39 @@ public class MedsController {
 
         String notes = txtAdminNotes.getText() == null ? "" : txtAdminNotes.getText().trim();
 
+        Prescription presc = careHome.getPrescription(prescId).orElse(null);
+        if (presc == null) { error("Unknown prescription " + prescId + "."); return; }
+        prescId = presc.id; // as stored, whatever case or spacing was typed
+        if (!careHome.isPrescriptionActive(prescId)) { error("Prescription " + prescId + " belongs to a discharged stay."); return; }
+        if (!currentResident.id.equals(presc.residentId)) {
+            error("Prescription " + prescId + " is for resident " + presc.residentId + ", not " + currentResident.name + ".");
+            return;
+        }
+        if (findMed(presc, med) == null) {
+            error(med + " is not on prescription " + prescId + " (" + medsSummary(presc.meds) + ").");
+            return;
+        }
+
         try {
             Administration a = new Administration(
                     currentUser.getId(), prescId, med, LocalDateTime.now(),
                     "dose=" + dose + (notes.isEmpty() ? "" : "; " + notes));
-            careHome.administerMedication(currentUser.getId(), currentBedId, a, LocalDateTime.now());
+            long seen = prescVersions.getOrDefault(prescId, CareHome.ANY_VERSION);
+            try {
+                careHome.administerMedication(currentUser.getId(), currentBedId, a, LocalDateTime.now(), false, seen);
+            } catch (DuplicateDoseException dup) {
+                if (!confirmOverride(dup.getMessage())) { info("Dose not recorded."); return; }
+                careHome.administerMedication(currentUser.getId(), currentBedId, a, LocalDateTime.now(), true, seen);
+            }
+            prescVersions.put(prescId, careHome.getPrescriptionVersion(prescId));
             info("Administered " + med + " to " + currentResident.name + ".");
             clearNurseForm();
             refreshAdmins();
+        } catch (VersionConflictException vc) {
+            // someone else recorded a dose first; show it before the nurse decides again
+            refreshPrescriptions();
+            refreshAdmins();
+            error(vc.getMessage());
         } catch (Exception ex) {
             error(ex.getMessage());
         }
@@ -271,6 +320,8 @@ public class MedsController {
     private void refreshPrescriptions() {
         if (currentResident == null) { prescData.clear(); return; }
         List<Prescription> list = careHome.getPrescriptionsForResident(currentResident.id);
+        prescVersions.clear();
+        for (Prescription p : list) prescVersions.put(p.id, careHome.getPrescriptionVersion(p.id));
         prescData.setAll(list);
     }
 
@@ -290,6 +341,29 @@ public class MedsController {
 
     // Helpers
 
+    private void suggestPrescriptionId() {
+        if (careHome != null) txtPrescId.setPromptText("blank = " + careHome.nextPrescriptionId());
+    }
+
+    private void prefillFromPrescription() {
+        if (careHome == null || currentResident == null) return;
+        String id = txtAdminPrescId.getText() == null ? "" : txtAdminPrescId.getText().trim();
+        Prescription p = careHome.getPrescription(id).orElse(null);
+        if (p == null || p.meds == null || !currentResident.id.equals(p.residentId)) return;
+        String typed = txtAdminMed.getText() == null ? "" : txtAdminMed.getText().trim();
+        MedicationDose md = typed.isEmpty() && p.meds.size() == 1 ? p.meds.get(0) : findMed(p, typed);
+        if (md == null) return;
+        txtAdminMed.setText(md.medicine);
+        if (txtAdminDose.getText() == null || txtAdminDose.getText().isBlank()) txtAdminDose.setText(md.dosage);
+    }
+
+    private static MedicationDose findMed(Prescription p, String medicine) {
+        if (p.meds == null || medicine == null) return null;
+        for (MedicationDose md : p.meds)
+            if (md.medicine != null && md.medicine.trim().equalsIgnoreCase(medicine.trim())) return md;
+        return null;
+    }
+
     private void refreshBedDropdown() {
         if (cmbBedId == null || careHome == null) return;
         var occupied = careHome.getBeds().entrySet().stream()
@@ -339,6 +413,11 @@ public class MedsController {
         a.setHeaderText("Medication Error");
         a.showAndWait();
     }
+    private boolean confirmOverride(String m) {
+        Alert a = new Alert(Alert.AlertType.CONFIRMATION, m + "\n\nRecord this dose anyway?", ButtonType.YES, ButtonType.NO);
+        a.setHeaderText("Possible Double Dose");
+        return a.showAndWait().orElse(ButtonType.NO) == ButtonType.YES;
+    }
     private void unauthorized(String m) {
         if (main != null) main.showError("Unauthorized", m);
         else error(m);
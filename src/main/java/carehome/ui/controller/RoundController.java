@@ -0,0 +1,217 @@
+package carehome.ui.controller;
+
+
+// controller for the Medication Round screen: one row per dose on a ward, submitted as one batch.
+import carehome.exception.DuplicateDoseException;
+import carehome.model.*;
+import carehome.persistence.JdbcStore;
+import carehome.server.RemoteCareHome;
+import carehome.service.CareHome;
+import javafx.beans.property.SimpleBooleanProperty;
+import javafx.beans.property.SimpleStringProperty;
+import javafx.collections.FXCollections;
+import javafx.collections.ObservableList;
+import javafx.fxml.FXML;
+import javafx.scene.control.*;
+import javafx.scene.control.cell.CheckBoxTableCell;
+import javafx.scene.control.cell.TextFieldTableCell;
+
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.*;
+
+public class RoundController {
+
+    @FXML private Label lblUser, lblInfo;
+    @FXML private ComboBox<String> cmbWard;
+    @FXML private CheckBox chkDueOnly;
+    @FXML private Button btnSubmit;
+
+    @FXML private TableView<RoundRow> tblRound;
+    @FXML private TableColumn<RoundRow, Boolean> colGive;
+    @FXML private TableColumn<RoundRow, String> colBed, colResident, colPresc, colMed, colDose, colFreq, colDue, colNotes;
+
+    private CareHome careHome;
+    private Staff currentUser;
+    private MainController main;
+    private JdbcStore store;
+
+    private static final DateTimeFormatter DUE_FMT = DateTimeFormatter.ofPattern("dd/MM HH:mm");
+
+    private final ObservableList<RoundRow> rows = FXCollections.observableArrayList();
+
+    /** One dose line of the round. */
+    public static class RoundRow {
+        final SimpleBooleanProperty give = new SimpleBooleanProperty(true);
+        final SimpleStringProperty notes = new SimpleStringProperty("");
+        final String bedId, residentName, prescriptionId, medicine, dose, frequency, due;
+
+        RoundRow(String bedId, Resident r, Prescription p, MedicationDose md) {
+            this.bedId = bedId;
+            this.residentName = r.name + " (" + r.id + ")";
+            this.prescriptionId = p.id;
+            this.medicine = md.medicine;
+            this.dose = md.dosage;
+            this.frequency = md.frequency;
+            this.due = "";
+        }
+
+        RoundRow(DueDose d, LocalDateTime now) {
+            this.bedId = d.bedId;
+            this.residentName = d.residentName + " (" + d.residentId + ")";
+            this.prescriptionId = d.prescriptionId;
+            this.medicine = d.medicine;
+            this.dose = d.dosage;
+            this.frequency = d.frequency;
+            this.due = d.dueAt.format(DUE_FMT) + (d.isOverdueAt(now) ? " (overdue)" : "");
+        }
+    }
+
+    public void setContext(CareHome ch, Staff user, MainController main) {
+        this.careHome = ch;
+        this.currentUser = user;
+        this.main = main;
+
+        // a replica's rounds are stored by the server; only a local care home has a database here
+        this.store = ch instanceof RemoteCareHome ? null : new JdbcStore("jdbc:sqlite:carehome.db");
+        if (store != null) store.init();
+
+        lblUser.setText(user.getName() + " (" + user.getRole() + ")");
+        btnSubmit.setDisable(user.getRole() != Role.NURSE);
+
+        List<String> wards = new ArrayList<>();
+        careHome.getBedsByKey().keySet().stream().map(BedKey::ward).distinct()
+                .forEach(w -> wards.add("W" + w + " - " + careHome.getWardLabel(w)));
+        cmbWard.getItems().setAll(wards);
+        if (!wards.isEmpty()) cmbWard.setValue(wards.get(0));
+    }
+
+    @FXML
+    public void initialize() {
+        colGive.setCellValueFactory(d -> d.getValue().give);
+        colGive.setCellFactory(CheckBoxTableCell.forTableColumn(colGive));
+        colGive.setEditable(true);
+        colBed.setCellValueFactory(d -> new SimpleStringProperty(d.getValue().bedId));
+        colResident.setCellValueFactory(d -> new SimpleStringProperty(d.getValue().residentName));
+        colPresc.setCellValueFactory(d -> new SimpleStringProperty(d.getValue().prescriptionId));
+        colMed.setCellValueFactory(d -> new SimpleStringProperty(d.getValue().medicine));
+        colDose.setCellValueFactory(d -> new SimpleStringProperty(d.getValue().dose));
+        colFreq.setCellValueFactory(d -> new SimpleStringProperty(d.getValue().frequency));
+        colDue.setCellValueFactory(d -> new SimpleStringProperty(d.getValue().due));
+        colNotes.setCellValueFactory(d -> d.getValue().notes);
+        colNotes.setCellFactory(TextFieldTableCell.forTableColumn());
+        colNotes.setOnEditCommit(e -> e.getRowValue().notes.set(e.getNewValue() == null ? "" : e.getNewValue()));
+        colNotes.setEditable(true);
+        tblRound.setItems(rows);
+    }
+
+    // Actions
+
+    @FXML
+    private void handleLoadRound() {
+        Integer ward = selectedWard();
+        if (ward == null) { error("Select a ward."); return; }
+
+        List<RoundRow> out = new ArrayList<>();
+        if (chkDueOnly.isSelected()) {
+            // only what the schedule says is due (or overdue) within the next hour
+            LocalDateTime now = LocalDateTime.now();
+            for (DueDose d : careHome.getDueDoses(ward, now.plusHours(1))) out.add(new RoundRow(d, now));
+            rows.setAll(out);
+            info(out.size() + " dose(s) due on W" + ward + " in the next hour.");
+            return;
+        }
+        for (Bed b : careHome.getBedsInWard(ward).values()) {
+            if (b.isVacant()) continue;
+            for (Prescription p : careHome.getPrescriptionsForResident(b.occupant.id)) {
+                if (p.meds == null) continue;
+                for (MedicationDose md : p.meds) out.add(new RoundRow(b.id, b.occupant, p, md));
+            }
+        }
+        rows.setAll(out);
+        info(out.size() + " dose(s) on W" + ward + ".");
+    }
+
+    @FXML
+    private void handleSelectAll() { rows.forEach(r -> r.give.set(true)); }
+
+    @FXML
+    private void handleClearAll() { rows.forEach(r -> r.give.set(false)); }
+
+    @FXML
+    private void handleSubmit() {
+        if (currentUser.getRole() != Role.NURSE) { unauthorized("Only NURSE can record a medication round."); return; }
+
+        LocalDateTime now = LocalDateTime.now();
+        Map<String, List<Administration>> byBed = new LinkedHashMap<>();
+        for (RoundRow r : rows) {
+            if (!r.give.get()) continue;
+            String notes = r.notes.get() == null ? "" : r.notes.get().trim();
+            byBed.computeIfAbsent(r.bedId, k -> new ArrayList<>()).add(new Administration(
+                    currentUser.getId(), r.prescriptionId, r.medicine, now,
+                    "dose=" + r.dose + (notes.isEmpty() ? "" : "; " + notes)));
+        }
+        if (byBed.isEmpty()) { error("Tick at least one dose to submit."); return; }
+
+        try {
+            int logsBefore = careHome.getLogs().size();
+            List<Administration> recorded;
+            try {
+                recorded = careHome.administerRound(currentUser.getId(), byBed, now);
+            } catch (DuplicateDoseException dup) {
+                if (!confirmOverride(dup.getMessage())) { info("Round not recorded."); return; }
+                recorded = careHome.administerRound(currentUser.getId(), byBed, now, true);
+            }
+            List<ActionLog> logged = careHome.getLogs().subList(logsBefore, careHome.getLogs().size());
+            String done = "Recorded " + recorded.size() + " dose(s) for " + byBed.size() + " resident(s).";
+            if (store == null || store.appendAdministrations(recorded, logged)) {
+                info(done);
+            } else if (confirmSaveAll()) {
+                // a prescription written since the last save: the round alone would point at nothing
+                store.saveAll(careHome);
+                info(done + " Everything was saved to the database.");
+            } else {
+                info(done + " Not saved to the database yet; use Save to DB on the Logs screen.");
+            }
+            handleClearAll();
+        } catch (Exception ex) {
+            error(ex.getMessage());
+        }
+    }
+
+    // Helpers
+
+    private Integer selectedWard() {
+        String v = cmbWard.getValue();
+        if (v == null || v.isBlank()) return null;
+        try {
+            return Integer.parseInt(v.trim().replaceFirst("^[Ww](\\d+).*$", "$1"));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private void info(String m) { lblInfo.setText(m); }
+    private void error(String m) {
+        Alert a = new Alert(Alert.AlertType.ERROR, m, ButtonType.OK);
+        a.setHeaderText("Medication Round");
+        a.showAndWait();
+    }
+    private boolean confirmOverride(String m) {
+        Alert a = new Alert(Alert.AlertType.CONFIRMATION, m + "\n\nRecord the whole round anyway?", ButtonType.YES, ButtonType.NO);
+        a.setHeaderText("Possible Double Dose");
+        return a.showAndWait().orElse(ButtonType.NO) == ButtonType.YES;
+    }
+    private boolean confirmSaveAll() {
+        Alert a = new Alert(Alert.AlertType.CONFIRMATION,
+                "This round uses a prescription that has not been saved yet, so it cannot be added to the "
+                        + "database on its own.\n\nSave everything now? This replaces the database with the "
+                        + "care home as it is on this screen.", ButtonType.YES, ButtonType.NO);
+        a.setHeaderText("Unsaved Prescription");
+        return a.showAndWait().orElse(ButtonType.NO) == ButtonType.YES;
+    }
+    private void unauthorized(String m) {
+        if (main != null) main.showError("Unauthorized", m);
+        else error(m);
+    }
+}
@@ -2,6 +2,7 @@ package carehome.ui.controller;
 
 
 // controller for the Shift screen.
+import carehome.exception.VersionConflictException;
 import carehome.model.Role;
 import carehome.model.Shift;
 import carehome.model.Staff;
@@ -39,6 +40,7 @@ public class ShiftController {
     private MainController main;
 
     private final ObservableList<Shift> shiftData = FXCollections.observableArrayList();
+    private long rosterVersion = CareHome.ANY_VERSION; // roster as shown in the table
 
     public void setContext(CareHome ch, Staff user, MainController main) {
         this.careHome = ch;
@@ -104,7 +106,7 @@ public class ShiftController {
 
             // call backend (validates nurse/doctor rules)
             Shift shift = new Shift(sid, start, end);
-            careHome.allocateShift(currentUser.getId(), shift);
+            careHome.allocateShift(currentUser.getId(), shift, rosterVersion);
 
             // refresh UI
             refreshTable();
@@ -128,6 +130,9 @@ public class ShiftController {
 
             info("Allocated shift for " + sid + ": " + start + " → " + end);
 
+        } catch (VersionConflictException vc) {
+            refreshTable();
+            error(vc.getMessage());
         } catch (Exception ex) {
             error(ex.getMessage());
         }
@@ -142,6 +147,7 @@ public class ShiftController {
     }
 
     private void refreshTable() {
+        rosterVersion = careHome.getRosterVersion();
         shiftData.setAll(careHome.getShifts());
         // sort by start time
         shiftData.sort(Comparator.comparing(Shift::getStart));
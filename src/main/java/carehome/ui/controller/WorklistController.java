@@ -0,0 +1,116 @@
+package carehome.ui.controller;
+
+
+// controller for the Worklist screen: active prescriptions by doctor or by ward, from CareHome's indexes.
+import carehome.model.*;
+import carehome.service.CareHome;
+import javafx.beans.property.SimpleStringProperty;
+import javafx.collections.FXCollections;
+import javafx.collections.ObservableList;
+import javafx.fxml.FXML;
+import javafx.scene.control.*;
+
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+public class WorklistController {
+
+    @FXML private Label lblUser, lblInfo;
+    @FXML private ComboBox<String> cmbDoctor, cmbWard;
+
+    @FXML private TableView<WorklistItem> tblWork;
+    @FXML private TableColumn<WorklistItem, String> colBed, colResident, colPresc, colDoctor, colCreated, colMeds;
+
+    private CareHome careHome;
+    private Staff currentUser;
+    private MainController main;
+
+    private final ObservableList<WorklistItem> rows = FXCollections.observableArrayList();
+
+    private static final DateTimeFormatter TS = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm");
+
+    public void setContext(CareHome ch, Staff user, MainController main) {
+        this.careHome = ch;
+        this.currentUser = user;
+        this.main = main;
+
+        lblUser.setText(user.getName() + " (" + user.getRole() + ")");
+
+        List<String> doctors = new ArrayList<>();
+        for (String id : careHome.getDoctorIds()) {
+            Staff s = careHome.getStaffById().get(id);
+            doctors.add(id + " - " + (s == null ? "" : s.getName()));
+        }
+        cmbDoctor.getItems().setAll(doctors);
+
+        List<String> wards = new ArrayList<>();
+        careHome.getBedsByKey().keySet().stream().map(BedKey::ward).distinct()
+                .forEach(w -> wards.add("W" + w + " - " + careHome.getWardLabel(w)));
+        cmbWard.getItems().setAll(wards);
+        if (!wards.isEmpty()) cmbWard.setValue(wards.get(0));
+
+        // doctors open on their own list, everyone else on the first ward
+        if (user.getRole() == Role.DOCTOR) {
+            doctors.stream().filter(d -> d.startsWith(user.getId() + " ")).findFirst().ifPresent(cmbDoctor::setValue);
+            handleLoadDoctor();
+        } else if (!wards.isEmpty()) {
+            handleLoadWard();
+        }
+    }
+
+    @FXML
+    public void initialize() {
+        colBed.setCellValueFactory(d -> new SimpleStringProperty(d.getValue().bedId));
+        colResident.setCellValueFactory(d -> new SimpleStringProperty(
+                d.getValue().residentName + " (" + d.getValue().residentId + ")"));
+        colPresc.setCellValueFactory(d -> new SimpleStringProperty(d.getValue().prescription.id));
+        colDoctor.setCellValueFactory(d -> new SimpleStringProperty(d.getValue().prescription.doctorId));
+        colCreated.setCellValueFactory(d -> new SimpleStringProperty(
+                d.getValue().prescription.dateTime == null ? "" : d.getValue().prescription.dateTime.format(TS)));
+        colMeds.setCellValueFactory(d -> new SimpleStringProperty(
+                d.getValue().prescription.meds == null ? "" : d.getValue().prescription.meds.stream()
+                        .map(MedicationDose::toString).collect(Collectors.joining("; "))));
+        tblWork.setItems(rows);
+    }
+
+    // Actions
+
+    @FXML
+    private void handleLoadDoctor() {
+        String doctorId = leading(cmbDoctor.getValue());
+        if (doctorId == null) { error("Select a doctor."); return; }
+        rows.setAll(careHome.getDoctorWorklist(doctorId));
+        info(rows.size() + " active prescription(s) by " + doctorId + ".");
+    }
+
+    @FXML
+    private void handleLoadWard() {
+        String w = leading(cmbWard.getValue());
+        if (w == null) { error("Select a ward."); return; }
+        int ward;
+        try {
+            ward = Integer.parseInt(w.replaceFirst("^[Ww]", ""));
+        } catch (NumberFormatException e) {
+            error("Select a ward.");
+            return;
+        }
+        rows.setAll(careHome.getWardWorklist(ward));
+        info(rows.size() + " active prescription(s) on W" + ward + ".");
+    }
+
+    // Helpers
+
+    private static String leading(String comboValue) {
+        if (comboValue == null || comboValue.isBlank()) return null;
+        return comboValue.trim().split("\\s+")[0];
+    }
+
+    private void info(String m) { lblInfo.setText(m); }
+    private void error(String m) {
+        Alert a = new Alert(Alert.AlertType.ERROR, m, ButtonType.OK);
+        a.setHeaderText("Worklist");
+        a.showAndWait();
+    }
+}
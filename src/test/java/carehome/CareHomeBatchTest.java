@@ -0,0 +1,179 @@
+package carehome;
+
+import carehome.exception.BedOccupiedException;
+import carehome.exception.ValidationException;
+import carehome.exception.NotFoundException;
+import carehome.model.*;
+import carehome.persistence.JdbcStore;
+import carehome.service.CareHome;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CareHomeBatchTest {
+
+    @Test
+    void batchAdmissionPacksRoomsByGenderAndAllocatesIds() {
+        CareHome ch = Fixtures.home("W1: 4x5");
+        ch.addResidentToBed("M1", "W1-R1-B1", new Resident("R7", "Ann", Gender.FEMALE, 80));
+        int logsBefore = ch.getLogs().size();
+
+        List<Resident> group = new ArrayList<>();
+        for (int i = 0; i < 6; i++) group.add(new Resident(null, "F" + i, Gender.FEMALE, 70));
+        for (int i = 0; i < 5; i++) group.add(new Resident(null, "M" + i, Gender.MALE, 70));
+
+        Map<String, String> placed = ch.admitResidents("M1", group, null);
+
+        assertEquals(11, placed.size());
+        assertEquals("R8", group.get(0).id);
+        assertEquals("R18", group.get(10).id);
+        // females fill Ann's room first, then one more room; males get rooms of their own
+        assertEquals(List.of("W1-R1-B2", "W1-R1-B3", "W1-R1-B4", "W1-R2-B1", "W1-R2-B2", "W1-R2-B3"),
+                group.subList(0, 6).stream().map(r -> placed.get(r.id)).toList());
+        assertTrue(group.subList(6, 11).stream().map(r -> placed.get(r.id))
+                .allMatch(b -> b.startsWith("W1-R3-") || b.startsWith("W1-R4-")));
+        assertEquals(logsBefore + 1, ch.getLogs().size());
+    }
+
+    @Test
+    void batchAdmissionIsAllOrNothing() {
+        CareHome ch = Fixtures.home("W1: 2 2");
+        ch.addResidentToBed("M1", "W1-R1-B1", new Resident("R1", "Ann", Gender.FEMALE, 80));
+
+        List<Resident> tooManyMen = List.of(
+                new Resident(null, "A", Gender.MALE, 70),
+                new Resident(null, "B", Gender.MALE, 70),
+                new Resident(null, "C", Gender.MALE, 70));
+        assertThrows(BedOccupiedException.class, () -> ch.admitResidents("M1", tooManyMen, null));
+        assertEquals(3, ch.getVacantBedCount());
+        assertNull(tooManyMen.get(0).id);
+
+        List<Resident> dupId = List.of(
+                new Resident("R1", "Dup", Gender.FEMALE, 70),
+                new Resident(null, "Ok", Gender.FEMALE, 70));
+        assertThrows(ValidationException.class, () -> ch.admitResidents("M1", dupId, null));
+        assertEquals(3, ch.getVacantBedCount());
+
+        // the men now fit once a female resident takes the spare bed in Ann's room
+        Map<String, String> placed = ch.admitResidents("M1", List.of(
+                new Resident("R9", "Eve", Gender.FEMALE, 70),
+                new Resident(null, "A", Gender.MALE, 70),
+                new Resident(null, "B", Gender.MALE, 70)), 1);
+        assertEquals(List.of("R9", "R10", "R11"), new ArrayList<>(placed.keySet()));
+        assertEquals("W1-R1-B2", placed.get("R9"));
+        assertEquals(0, ch.getVacantBedCount());
+    }
+
+    private LocalDateTime rosterNurse(CareHome ch) {
+        ch.addOrUpdateStaff("M1", new Staff("N1", "Nina", Role.NURSE), "n", "p");
+        LocalDate day = LocalDate.of(2030, 1, 7);
+        ch.allocateShift("M1", new Shift("N1", day.atTime(8, 0), day.atTime(16, 0)));
+        return day.atTime(9, 0);
+    }
+
+    @Test
+    void wardTransferMovesTwoHundredResidentsInOneStep() {
+        CareHome ch = Fixtures.home("W1: 4x50\nW2: 4x50");
+        LocalDateTime when = rosterNurse(ch);
+        List<Resident> group = new ArrayList<>();
+        for (int i = 0; i < 200; i++) group.add(new Resident(null, "P" + i, i < 100 ? Gender.FEMALE : Gender.MALE, 75));
+        ch.admitResidents("M1", group, 1);
+        assertEquals(200, ch.getVacantBedCount());
+        int logsBefore = ch.getLogs().size();
+
+        Map<String, String> moves = ch.transferWard("N1", 1, 2, when);
+
+        assertEquals(200, moves.size());
+        assertTrue(ch.getBedsInWard(1).values().stream().allMatch(Bed::isVacant));
+        assertTrue(ch.getBedsInWard(2).values().stream().noneMatch(Bed::isVacant));
+        assertEquals("W2-R1-B1", moves.get("W1-R1-B1"));
+        assertEquals(logsBefore + 1, ch.getLogs().size());
+    }
+
+    @Test
+    void wardTransferIsAllOrNothingUnderGenderRule() {
+        CareHome ch = Fixtures.home("W1: 1 1\nW2: 2 2");
+        LocalDateTime when = rosterNurse(ch);
+        ch.addResidentToBed("M1", "W1-R1-B1", new Resident("R1", "Ann", Gender.FEMALE, 80));
+        ch.addResidentToBed("M1", "W1-R2-B1", new Resident("R2", "Bea", Gender.FEMALE, 80));
+        ch.addResidentToBed("M1", "W2-R1-B1", new Resident("R3", "Cal", Gender.MALE, 80));
+        ch.addResidentToBed("M1", "W2-R2-B1", new Resident("R4", "Dot", Gender.FEMALE, 80));
+
+        assertThrows(BedOccupiedException.class, () -> ch.transferWard("N1", 1, 2, when));
+        assertEquals("R1", ch.getBeds().get("W1-R1-B1").occupant.id);
+        assertEquals("R2", ch.getBeds().get("W1-R2-B1").occupant.id);
+        assertEquals("W2-R1-B2", ch.findBestBed(Gender.MALE, 2).orElseThrow());
+
+        ch.dischargeResident("N1", "W2-R1-B1", when);
+        Map<String, String> moves = ch.transferWard("N1", 1, 2, when);
+        assertEquals(Map.of("W1-R1-B1", "W2-R2-B2", "W1-R2-B1", "W2-R1-B1"), moves);
+
+        // wards that do not exist, or cannot, are refused before anything moves
+        assertThrows(NotFoundException.class, () -> ch.transferWard("N1", 3, 2, when));
+        assertThrows(NotFoundException.class, () -> ch.transferWard("N1", 2, 3, when));
+        assertThrows(ValidationException.class, () -> ch.transferWard("N1", 0, 2, when));
+        assertThrows(ValidationException.class, () -> ch.transferWard("N1", 2, -1, when));
+        assertTrue(ch.transferWard("N1", 1, 2, when).isEmpty());
+    }
+
+    @Test
+    void medicationRoundRecordsAllDosesAtomicallyAndPersistsThem(@TempDir Path tmp) {
+        CareHome ch = Fixtures.home("W1: 2 2");
+        LocalDateTime when = rosterNurse(ch);
+        ch.addOrUpdateStaff("M1", new Staff("D1", "Dr Dee", Role.DOCTOR), "d", "p");
+        LocalDateTime rx = when.toLocalDate().atTime(11, 0);
+        ch.allocateShift("M1", new Shift("D1", rx, rx.plusHours(1)));
+
+        ch.addResidentToBed("M1", "W1-R1-B1", new Resident("R1", "Ann", Gender.FEMALE, 80));
+        ch.addResidentToBed("M1", "W1-R2-B1", new Resident("R2", "Bob", Gender.MALE, 81));
+        ch.addPrescription("D1", "W1-R1-B1", new Prescription("P1", "D1", "R1", rx,
+                List.of(new MedicationDose("Amox", "500mg", "8h"), new MedicationDose("VitC", "1tab", "24h"))), rx);
+        ch.addPrescription("D1", "W1-R2-B1", new Prescription("P2", "D1", "R2", rx,
+                List.of(new MedicationDose("Warfarin", "2mg", "24h"))), rx);
+
+        JdbcStore store = new JdbcStore("jdbc:sqlite:" + tmp.resolve("round.db"));
+        store.init();
+        store.saveAll(ch);
+
+        LocalDateTime round = when.toLocalDate().atTime(14, 0);
+        Map<String, List<Administration>> bad = new LinkedHashMap<>();
+        bad.put("W1-R1-B1", List.of(new Administration("N1", "P1", "Amox", round, "")));
+        bad.put("W1-R2-B1", List.of(new Administration("N1", "P1", "Amox", round, "wrong resident")));
+        assertThrows(ValidationException.class, () -> ch.administerRound("N1", bad, round));
+        bad.remove("W1-R2-B1");
+        bad.put("W1-R2-B2", List.of(new Administration("N1", "P2", "Warfarin", round, "")));
+        assertThrows(NotFoundException.class, () -> ch.administerRound("N1", bad, round));
+        assertTrue(ch.getAdministrationsForResident("R1").isEmpty());
+
+        int logsBefore = ch.getLogs().size();
+        Map<String, List<Administration>> good = new LinkedHashMap<>();
+        good.put("W1-R1-B1", List.of(
+                new Administration("N1", "P1", "Amox", round, "dose=500mg"),
+                new Administration("N1", "P1", "VitC", round, "dose=1tab")));
+        good.put("W1-R2-B1", List.of(new Administration("N1", "P2", "Warfarin", round, "dose=2mg; refused")));
+        List<Administration> recorded = ch.administerRound("N1", good, round);
+        assertEquals(3, recorded.size());
+        assertEquals(logsBefore + 1, ch.getLogs().size());
+
+        assertTrue(store.appendAdministrations(recorded, ch.getLogs().subList(logsBefore, ch.getLogs().size())));
+        CareHome loaded = store.loadAll();
+        assertEquals(2, loaded.getAdministrationsForResident("R1").size());
+        assertEquals(round, loaded.getAdministrationsForResident("R2").get(0).administeredAt);
+        assertEquals(ch.getLogs().size(), loaded.getLogs().size());
+
+        // a round on a prescription written since the last save leaves the database alone
+        ch.addPrescription("D1", "W1-R1-B1", new Prescription("P3", "D1", "R1", rx,
+                List.of(new MedicationDose("Iron", "1tab", "24h"))), rx);
+        logsBefore = ch.getLogs().size();
+        recorded = ch.administerRound("N1", Map.of("W1-R1-B1", List.of(new Administration("N1", "P3", "Iron", round, ""))), round);
+        assertFalse(store.appendAdministrations(recorded, ch.getLogs().subList(logsBefore, ch.getLogs().size())));
+        assertEquals(3, store.loadAll().getAdministrations().size());
+        assertEquals(loaded.getLogs().size(), store.loadAll().getLogs().size());
+    }
+}
@@ -0,0 +1,166 @@
+package carehome;
+
+import carehome.model.*;
+import carehome.persistence.ArchiveFile;
+import carehome.persistence.JdbcStore;
+import carehome.persistence.SnapshotFile;
+import carehome.service.CareHome;
+import carehome.service.ColdArchive;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.*;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CareHomeColdArchiveTest {
+
+    private static final LocalDate START = Fixtures.DAY;
+
+    private static CareHome generated() {
+        CareHome ch = Fixtures.generated(5, 90, 15);
+        // "now" is the end of the generated history
+        ch.setClock(Clock.fixed(START.plusDays(90).atStartOfDay().toInstant(ZoneOffset.UTC), ZoneOffset.UTC));
+        return ch;
+    }
+
+    private static List<String> describe(List<ArchivedStay> stays) {
+        return stays.stream().map(s -> s.residentId + " " + s.dischargedAt + " " + s.lastBedId
+                + " " + s.prescriptions.stream().map(p -> p.id + p.meds.size()).toList()
+                + " " + s.administrations.stream().map(a -> a.medicine + a.administeredAt + a.notes).toList()).toList();
+    }
+
+    private static List<String> hits(CareHome ch, String query) {
+        return ch.searchArchives(query, 0, 20).hits.stream().map(h -> h.stay.residentId + " " + h.stay.dischargedAt).toList();
+    }
+
+    @Test
+    void oldStaysMoveToTheColdFileAndStaySearchable(@TempDir Path tmp) throws IOException {
+        CareHome ch = generated();
+        List<String> before = describe(ch.getArchives());
+        List<String> search = hits(ch, "med:a*");
+        assertFalse(search.isEmpty());
+
+        try (ArchiveFile file = new ArchiveFile(tmp.resolve("archive.cha"))) {
+            ch.setColdArchive(file, Duration.ofDays(30));
+            int moved = ch.compactArchives();
+            LocalDateTime cutoff = START.plusDays(60).atStartOfDay();
+            long old = ch.getArchiveEntries().stream().filter(e -> e.dischargedAt.isBefore(cutoff)).count();
+            assertTrue(moved > 0 && moved == old && moved < ch.getArchiveEntries().size(), moved + " of " + old);
+            assertEquals(moved, file.size());
+            assertEquals(moved, ch.getEntityCounts().get("coldArchivedStays"));
+            for (ArchiveEntry e : ch.getArchiveEntries()) assertEquals(e.dischargedAt.isBefore(cutoff), e.isCold(), e.toString());
+            assertEquals(0, ch.compactArchives());
+
+            // everything still reads back the same, through the entries, per resident and in search
+            assertEquals(before, describe(ch.getArchives()));
+            assertEquals(search, hits(ch, "med:a*"));
+            ArchiveEntry cold = ch.getArchiveEntries().get(0);
+            assertTrue(cold.isCold());
+            assertEquals(cold.residentId, ch.openArchivedStay(cold).residentId);
+            assertTrue(ch.getArchivedStays(cold.residentId).stream().anyMatch(s -> s.dischargedAt.equals(cold.dischargedAt)));
+            String pid = ch.openArchivedStay(cold).prescriptions.get(0).id;
+            assertEquals(cold.residentId, ch.getPrescription(pid).orElseThrow().residentId);
+            assertTrue(ch.isPrescriptionIdUsed(pid));
+            // snapshots keep reading cold stays, e.g. into a binary snapshot
+            assertEquals(before, describe(ch.snapshot().getArchives()));
+            new SnapshotFile(tmp.resolve("home.chs")).save(ch);
+        }
+
+        // a restart loads every stay hot again; compacting finds them in the file instead of appending
+        CareHome back = new SnapshotFile(tmp.resolve("home.chs")).load();
+        back.setClock(Clock.fixed(START.plusDays(90).atStartOfDay().toInstant(ZoneOffset.UTC), ZoneOffset.UTC));
+        try (ArchiveFile file = new ArchiveFile(tmp.resolve("archive.cha"))) {
+            long length = file.length();
+            back.setColdArchive(file, Duration.ofDays(30));
+            assertEquals(file.size(), back.compactArchives());
+            assertEquals(length, file.length());
+            assertEquals(before, describe(back.getArchives()));
+        }
+    }
+
+    @Test
+    void databaseKeepsColdStaysAsReferencesIntoTheFile(@TempDir Path tmp) throws IOException {
+        CareHome ch = generated();
+        JdbcStore store = new JdbcStore("jdbc:sqlite:" + tmp.resolve("home.db"));
+        store.init();
+
+        try (ArchiveFile file = new ArchiveFile(tmp.resolve("archive.cha"))) {
+            AtomicInteger reads = new AtomicInteger();
+            ch.setColdArchive(new ColdArchive() {
+                @Override public long find(String residentId, LocalDateTime dischargedAt) { return file.find(residentId, dischargedAt); }
+                @Override public long append(ArchivedStay stay) { return file.append(stay); }
+                @Override public ArchivedStay read(long position) { reads.incrementAndGet(); return file.read(position); }
+            }, Duration.ofDays(30));
+            int moved = ch.compactArchives();
+            assertTrue(moved > 0);
+            store.saveAll(ch);
+            assertEquals(0, reads.get());
+            List<String> coldBefore = describe(ch.getArchiveEntries().stream().filter(ArchiveEntry::isCold).map(ch::openArchivedStay).toList());
+
+            CareHome loaded = store.loadAll();
+            assertEquals(moved, loaded.getEntityCounts().get("coldArchivedStays"));
+            ArchiveEntry cold = loaded.getArchiveEntries().get(0);
+            assertTrue(cold.isCold());
+            assertThrows(IllegalStateException.class, () -> loaded.openArchivedStay(cold));
+            // the ids of cold stays are still taken before the file is attached
+            assertFalse(cold.prescriptionIds.isEmpty());
+            assertTrue(loaded.isPrescriptionIdUsed(cold.prescriptionIds.get(0)));
+            assertTrue(store.loadArchivedStays(cold.residentId).stream()
+                    .anyMatch(s -> s.dischargedAt.equals(cold.dischargedAt) && s.prescriptions.isEmpty()));
+
+            loaded.setColdArchive(file, Duration.ofDays(30));
+            assertEquals(ch.getArchiveEntries().size(), loaded.getArchiveEntries().size());
+            assertEquals(coldBefore, describe(loaded.getArchiveEntries().stream().filter(ArchiveEntry::isCold).map(loaded::openArchivedStay).toList()));
+            assertEquals(cold.residentId, loaded.getPrescription(cold.prescriptionIds.get(0)).orElseThrow().residentId);
+            assertEquals(hits(ch, "med:a*"), hits(loaded, "med:a*"));
+
+            try (ArchiveFile other = new ArchiveFile(tmp.resolve("other.cha"))) {
+                CareHome again = store.loadAll();
+                assertThrows(IllegalStateException.class, () -> again.setColdArchive(other, Duration.ofDays(30)));
+            }
+        }
+    }
+
+    @Test
+    void tornTailIsCutOffAndForeignFilesAreRejected(@TempDir Path tmp) throws IOException {
+        Path f = tmp.resolve("archive.cha");
+        CareHome ch = generated();
+        long first, second;
+        try (ArchiveFile file = new ArchiveFile(f)) {
+            first = file.append(ch.getArchives().get(0));
+            second = file.append(ch.getArchives().get(1));
+        }
+        long whole = Files.size(f);
+        try (var out = Files.newByteChannel(f, StandardOpenOption.WRITE)) {
+            out.truncate(whole - 3); // crash in the middle of the second record
+        }
+        try (ArchiveFile file = new ArchiveFile(f)) {
+            assertEquals(1, file.size());
+            assertEquals(second, file.length());
+            ArchivedStay s = ch.getArchives().get(0);
+            assertEquals(first, file.find(s.residentId, s.dischargedAt));
+            assertEquals(describe(List.of(s)), describe(List.of(file.read(first))));
+            assertEquals(-1, file.find(ch.getArchives().get(1).residentId, ch.getArchives().get(1).dischargedAt));
+            assertThrows(RuntimeException.class, () -> file.read(second));
+        }
+
+        Path other = tmp.resolve("other.cha");
+        Files.writeString(other, "not an archive");
+        IOException e = assertThrows(IOException.class, () -> new ArchiveFile(other));
+        assertTrue(e.getMessage().contains("not a care home archive"), e.getMessage());
+
+        byte[] bytes = Files.readAllBytes(f);
+        ByteBuffer.wrap(bytes).putShort(4, (short) (ArchiveFile.FORMAT_VERSION + 1));
+        Files.write(other, bytes);
+        e = assertThrows(IOException.class, () -> new ArchiveFile(other));
+        assertTrue(e.getMessage().contains("format version"), e.getMessage());
+    }
+}
@@ -0,0 +1,178 @@
+package carehome;
+
+import carehome.exception.DuplicateDoseException;
+import carehome.exception.ValidationException;
+import carehome.model.*;
+import carehome.persistence.JdbcStore;
+import carehome.service.CareHome;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CareHomeDueDoseTest {
+
+    private static final LocalDate DAY = LocalDate.of(2030, 1, 7);
+
+    @Test
+    void frequenciesParseToIntervals() {
+        assertEquals(Duration.ofHours(8), DoseSchedule.parse("8h").getInterval());
+        assertEquals(Duration.ofHours(8), DoseSchedule.parse("q8h").getInterval());
+        assertEquals(Duration.ofHours(8), DoseSchedule.parse("TDS").getInterval());
+        assertEquals(Duration.ofHours(12), DoseSchedule.parse("twice daily").getInterval());
+        assertEquals(Duration.ofHours(6), DoseSchedule.parse("every 6 hours").getInterval());
+        assertEquals(Duration.ofMinutes(30), DoseSchedule.parse("30 min").getInterval());
+        assertEquals(Duration.ofHours(24), DoseSchedule.parse("Daily").getInterval());
+        assertTrue(DoseSchedule.parse("PRN").isAsNeeded());
+        assertNull(DoseSchedule.parse("with meals"));
+        assertNull(DoseSchedule.parse("0h"));
+        assertNull(DoseSchedule.parse("every 99999999999999999999 hours"));
+        assertNull(DoseSchedule.parse("every 999999999 days"));
+        assertEquals(LocalDateTime.MAX, DoseSchedule.parse("8h").nextAfter(LocalDateTime.MAX.minusHours(1)));
+    }
+
+    @Test
+    void outlandishFrequenciesNeitherFailNorHalfApply() {
+        CareHome ch = homeWithStaff();
+        LocalDateTime rx = DAY.atTime(8, 30);
+        ch.addPrescription("D1", "W1-R2-B1", new Prescription("P3", "D1", "R2", rx, List.of(
+                new MedicationDose("Senna", "1 tab", "every 99999999999999999999 hours"))), rx);
+        assertTrue(ch.isPrescriptionActive("P3"));
+        assertEquals(List.of("Warfarin"), ch.getDueDoses(1, DAY.atTime(9, 0)).stream()
+                .filter(d -> d.residentName.equals("Bob")).map(d -> d.medicine).toList());
+
+        // a dose stamped at the end of time is recorded and the schedule stays ordered
+        LocalDateTime late = LocalDateTime.MAX.minusHours(1);
+        ch.administerMedication("N1", "W1-R1-B1", new Administration("N1", "P1", "Amox", late, ""), DAY.atTime(9, 0));
+        assertEquals(late, ch.getLastAdministration("P1", "Amox").orElseThrow().administeredAt);
+        assertEquals(List.of("Warfarin"), ch.getDueDoses(1, DAY.atTime(9, 0)).stream().map(d -> d.medicine).toList());
+    }
+
+    private CareHome homeWithStaff() {
+        CareHome ch = new CareHome();
+        ch.loadLayout(FacilityLayout.parse("W1: 2 2\nW2: 2"));
+        ch.addOrUpdateStaff("SYSTEM", new Staff("M1", "Manager", Role.MANAGER), "m", "p");
+        ch.addOrUpdateStaff("M1", new Staff("N1", "Nina", Role.NURSE), "n", "p");
+        ch.addOrUpdateStaff("M1", new Staff("D1", "Dr Dee", Role.DOCTOR), "d", "p");
+        ch.allocateShift("M1", new Shift("N1", DAY.atTime(8, 0), DAY.atTime(16, 0)));
+        ch.allocateShift("M1", new Shift("D1", DAY.atTime(8, 0), DAY.atTime(9, 0)));
+        ch.addResidentToBed("M1", "W1-R1-B1", new Resident("R1", "Ann", Gender.FEMALE, 80));
+        ch.addResidentToBed("M1", "W1-R2-B1", new Resident("R2", "Bob", Gender.MALE, 81));
+        LocalDateTime rx = DAY.atTime(8, 30);
+        ch.addPrescription("D1", "W1-R1-B1", new Prescription("P1", "D1", "R1", rx, List.of(
+                new MedicationDose("Amox", "500mg", "8h"),
+                new MedicationDose("Paracetamol", "1g", "PRN"))), rx);
+        ch.addPrescription("D1", "W1-R2-B1", new Prescription("P2", "D1", "R2", rx, List.of(
+                new MedicationDose("Warfarin", "2mg", "daily"))), rx);
+        return ch;
+    }
+
+    @Test
+    void dueDosesFollowAdministrationMovesAndDischarge() {
+        CareHome ch = homeWithStaff();
+        LocalDateTime nine = DAY.atTime(9, 0);
+
+        List<DueDose> due = ch.getDueDoses(1, nine);
+        assertEquals(List.of("Amox", "Warfarin"), due.stream().map(d -> d.medicine).toList());
+        assertEquals("Ann", due.get(0).residentName);
+        assertTrue(ch.getDueDoses(2, nine).isEmpty());
+
+        // giving the dose pushes it one interval out; an out-of-order older record does not pull it back
+        ch.administerMedication("N1", "W1-R1-B1", new Administration("N1", "P1", "amox", nine, ""), nine);
+        ch.administerMedication("N1", "W1-R1-B1", new Administration("N1", "P1", "Amox", DAY.atTime(8, 45), "late entry"), nine, true);
+        assertEquals(List.of("Warfarin"), ch.getDueDoses(1, DAY.atTime(16, 59)).stream().map(d -> d.medicine).toList());
+        assertEquals(DAY.atTime(17, 0), ch.getDueDoses(null, DAY.atTime(17, 0)).get(1).dueAt);
+
+        ch.moveResident("N1", "W1-R1-B1", "W2-R1-B1", nine);
+        assertEquals(List.of("W2-R1-B1"), ch.getDueDoses(2, DAY.atTime(17, 0)).stream().map(d -> d.bedId).toList());
+        assertEquals(1, ch.getDueDoses(1, DAY.atTime(17, 0)).size());
+
+        ch.dischargeResident("N1", "W1-R2-B1", nine);
+        assertTrue(ch.getDueDoses(1, DAY.plusDays(2).atStartOfDay()).isEmpty());
+        assertEquals(1, ch.getDueDoses(null, DAY.plusDays(2).atStartOfDay()).size());
+    }
+
+    @Test
+    void scheduleIsRebuiltAfterLoading(@TempDir Path tmp) {
+        CareHome ch = homeWithStaff();
+        LocalDateTime nine = DAY.atTime(9, 0);
+        ch.administerMedication("N1", "W1-R1-B1", new Administration("N1", "P1", "Amox", nine, ""), nine);
+
+        JdbcStore store = new JdbcStore("jdbc:sqlite:" + tmp.resolve("due.db"));
+        store.init();
+        store.saveAll(ch);
+        CareHome loaded = store.loadAll();
+
+        List<DueDose> due = loaded.getDueDoses(null, DAY.atTime(17, 0));
+        assertEquals(2, due.size());
+        assertEquals(DAY.atTime(8, 30), due.get(0).dueAt);
+        assertEquals("W1-R1-B1", due.get(1).bedId);
+        assertEquals(DAY.atTime(17, 0), due.get(1).dueAt);
+    }
+
+    @Test
+    void doseInsideFrequencyWindowIsRejectedUnlessOverridden(@TempDir Path tmp) {
+        CareHome ch = homeWithStaff();
+        LocalDateTime nine = DAY.atTime(9, 0);
+        ch.administerMedication("N1", "W1-R1-B1", new Administration("N1", "P1", "Amox", nine, ""), nine);
+
+        Administration early = new Administration("N1", "P1", "AMOX", DAY.atTime(13, 0), "");
+        assertThrows(DuplicateDoseException.class,
+                () -> ch.administerMedication("N1", "W1-R1-B1", early, DAY.atTime(13, 0)));
+        assertEquals(1, ch.getAdministrationsForResident("R1").size());
+        assertEquals(nine, ch.getLastAdministration("P1", "amox").orElseThrow().administeredAt);
+
+        // PRN lines have no window; an on-time dose goes through
+        ch.administerMedication("N1", "W1-R1-B1", new Administration("N1", "P1", "Paracetamol", nine, ""), nine);
+        ch.administerMedication("N1", "W1-R1-B1", new Administration("N1", "P1", "Paracetamol", nine, ""), nine);
+        ch.administerMedication("N1", "W1-R1-B1", new Administration("N1", "P1", "Amox", DAY.atTime(17, 0), ""), DAY.atTime(9, 30));
+
+        // the same dose twice in one round is caught, and the round records nothing
+        Map<String, List<Administration>> round = new LinkedHashMap<>();
+        round.put("W1-R2-B1", List.of(
+                new Administration("N1", "P2", "Warfarin", DAY.atTime(10, 0), ""),
+                new Administration("N1", "P2", "Warfarin", DAY.atTime(10, 5), "")));
+        assertThrows(DuplicateDoseException.class, () -> ch.administerRound("N1", round, DAY.atTime(10, 0)));
+        assertTrue(ch.getAdministrationsForResident("R2").isEmpty());
+        assertEquals(2, ch.administerRound("N1", round, DAY.atTime(10, 0), true).size());
+
+        // the index is rebuilt from stored administrations
+        JdbcStore store = new JdbcStore("jdbc:sqlite:" + tmp.resolve("dup.db"));
+        store.init();
+        store.saveAll(ch);
+        CareHome loaded = store.loadAll();
+        assertEquals(DAY.atTime(17, 0), loaded.getLastAdministration("P1", "Amox").orElseThrow().administeredAt);
+        assertThrows(DuplicateDoseException.class, () -> loaded.administerMedication("N1", "W1-R1-B1",
+                new Administration("N1", "P1", "Amox", DAY.atTime(20, 0), ""), DAY.atTime(10, 0)));
+    }
+
+    @Test
+    void doseWindowMatchesLinesHoweverTheyAreTypedAndRefusesUnknownOnes() {
+        CareHome ch = homeWithStaff();
+        LocalDateTime rx = DAY.atTime(8, 30);
+        ch.addPrescription("D1", "W1-R1-B1", new Prescription("P3", "D1", "R1", rx, List.of(
+                new MedicationDose("Vitamin D", "1tab", "24h"))), rx);
+        LocalDateTime nine = DAY.atTime(9, 0);
+        ch.administerMedication("N1", "W1-R1-B1", new Administration("N1", " p3 ", "vitamin   d", nine, ""), nine);
+        Administration given = ch.getLastAdministration("p3", " VITAMIN  D").orElseThrow();
+        assertEquals("P3", given.prescriptionId);
+        assertEquals("Vitamin D", given.medicine);
+
+        assertThrows(DuplicateDoseException.class, () -> ch.administerMedication("N1", "W1-R1-B1",
+                new Administration("N1", "P3", "VITAMIN D ", DAY.atTime(12, 0), ""), DAY.atTime(12, 0)));
+        // a medicine that is not on the prescription is refused, override or not
+        assertThrows(ValidationException.class, () -> ch.administerMedication("N1", "W1-R1-B1",
+                new Administration("N1", "P3", "Vitamin C", nine, ""), nine, true));
+        assertThrows(ValidationException.class, () -> ch.administerRound("N1", Map.of("W1-R1-B1",
+                List.of(new Administration("N1", "P1", "Vitamin D", nine, ""))), nine, true));
+        assertEquals(1, ch.getAdministrationsForResident("R1").size());
+    }
+}
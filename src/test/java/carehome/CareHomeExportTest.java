@@ -0,0 +1,98 @@
+package carehome;
+
+import carehome.model.*;
+import carehome.persistence.JdbcStore;
+import carehome.persistence.StreamingExporter;
+import carehome.persistence.StreamingExporter.Format;
+import carehome.service.CareHome;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CareHomeExportTest {
+
+    private static JdbcStore savedStore(Path tmp, int stays) {
+        LocalDate day = LocalDate.of(2030, 1, 7);
+        CareHome ch = new CareHome();
+        ch.loadLayout(FacilityLayout.parse("W1: 2"));
+        ch.addOrUpdateStaff("SYSTEM", new Staff("M1", "Manager", Role.MANAGER), "m", "p");
+        ch.addOrUpdateStaff("M1", new Staff("N1", "Nina", Role.NURSE), "n", "p");
+        ch.addOrUpdateStaff("M1", new Staff("D1", "Dr Dee", Role.DOCTOR), "d", "p");
+        ch.allocateShift("M1", new Shift("N1", day.atTime(8, 0), day.atTime(16, 0)));
+        ch.allocateShift("M1", new Shift("D1", day.atTime(8, 0), day.atTime(9, 0)));
+        LocalDateTime rx = day.atTime(8, 15);
+        for (int i = 1; i <= stays; i++) {
+            ch.addResidentToBed("M1", "W1-R1-B1", new Resident("R" + i, "Ann " + i, Gender.FEMALE, 80));
+            ch.addPrescription("D1", "W1-R1-B1", new Prescription("P" + i, "D1", "R" + i, rx, List.of(
+                    new MedicationDose("Warfarin", "2mg", "daily"), new MedicationDose("Custom drug", "1", "PRN"))), rx);
+            ch.administerMedication("N1", "W1-R1-B1",
+                    new Administration("N1", "P" + i, "Warfarin", day.atTime(9, 0), "refused, then \"taken\""), day.atTime(9, 0));
+            ch.dischargeResident("N1", "W1-R1-B1", day.atTime(10, 0));
+        }
+        JdbcStore store = new JdbcStore("jdbc:sqlite:" + tmp.resolve("export.db"));
+        store.init();
+        store.saveAll(ch);
+        return store;
+    }
+
+    @Test
+    void archivesStreamAsCsvAndNdjsonWithTheirDetails(@TempDir Path tmp) throws Exception {
+        JdbcStore store = savedStore(tmp, 3);
+        StreamingExporter ex = store.exporter();
+        long[] last = new long[2];
+        StreamingExporter.Listener l = (done, total) -> { last[0] = done; last[1] = total; };
+
+        Path csv = tmp.resolve("archives.csv.gz");
+        assertEquals(Format.CSV, Format.forFile(csv));
+        assertEquals(3, ex.exportArchives(csv, Format.CSV, StreamingExporter.isGzip(csv), l));
+        assertArrayEquals(new long[]{3, 3}, last);
+        List<String> rows;
+        try (BufferedReader r = new BufferedReader(new InputStreamReader(
+                new GZIPInputStream(Files.newInputStream(csv)), StandardCharsets.UTF_8))) {
+            rows = r.lines().toList();
+        }
+        assertTrue(rows.get(0).startsWith("record,stay,"));
+        assertEquals(1 + 3 * 4, rows.size()); // per stay: stay, two doses, one administration
+        assertTrue(rows.get(1).startsWith("stay,1,"));
+        assertTrue(rows.get(3).contains(",Custom drug,1,PRN,"));
+        assertTrue(rows.get(4).endsWith(",N1,\"refused, then \"\"taken\"\"\""));
+
+        Path nd = tmp.resolve("archives.ndjson");
+        assertEquals(Format.NDJSON, Format.forFile(nd));
+        ex.exportArchives(nd, Format.NDJSON, false, null);
+        List<String> lines = Files.readAllLines(nd);
+        assertEquals(3, lines.size());
+        assertTrue(lines.get(2).startsWith("{\"stay\":3,"));
+        assertTrue(lines.get(0).contains("\"meds\":[{\"medicine\":\"Warfarin\",\"dose\":\"2mg\",\"frequency\":\"daily\"}"));
+        assertTrue(lines.get(0).contains("\"notes\":\"refused, then \\\"taken\\\"\""));
+
+        Path logs = tmp.resolve("logs.csv");
+        long n = ex.exportLogs(logs, Format.CSV, false, null);
+        assertEquals(n + 1, Files.readAllLines(logs).size());
+    }
+
+    @Test
+    void cancelledExportLeavesNoFile(@TempDir Path tmp) throws Exception {
+        JdbcStore store = savedStore(tmp, 2);
+        Path out = tmp.resolve("archives.ndjson");
+        assertThrows(CancellationException.class, () -> store.exporter().exportArchives(out, Format.NDJSON, false,
+                new StreamingExporter.Listener() {
+                    @Override public void progress(long done, long total) { }
+                    @Override public boolean isCancelled() { return true; }
+                }));
+        assertFalse(Files.exists(out));
+        assertFalse(Files.exists(tmp.resolve("archives.ndjson.part")));
+    }
+}
@@ -0,0 +1,97 @@
+package carehome;
+
+import carehome.exception.RoomGenderConflictException;
+import carehome.exception.ValidationException;
+import carehome.model.*;
+import carehome.persistence.JdbcStore;
+import carehome.service.CareHome;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.time.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CareHomeLayoutTest {
+
+    // 8 wards x 160 four-bed rooms = 5,120 beds
+    private static final String BIG_LAYOUT = """
+            # multi-building layout
+            W1 North A: 4x160
+            W2 North B: 4x160
+            W3 South A: 4x160
+            W4 South B: 4x160
+            W5: 4x160
+            W6: 4x160
+            W7: 4x160
+            W8 Annex: 4x150 2x20
+            """;
+
+    @Test
+    void parsesLayoutTextAndRoundTrips() {
+        FacilityLayout layout = FacilityLayout.parse(BIG_LAYOUT);
+        assertEquals(8, layout.getWards().size());
+        assertEquals(7 * 640 + 640, layout.bedCount());
+        assertEquals("North A", layout.getWards().get(0).label());
+
+        FacilityLayout again = FacilityLayout.parse(layout.toText());
+        assertEquals(layout.bedKeys(), again.bedKeys());
+
+        assertThrows(IllegalArgumentException.class, () -> FacilityLayout.parse("W1: 4\nW1: 2"));
+        assertThrows(IllegalArgumentException.class, () -> FacilityLayout.parse("W1: 0"));
+    }
+
+    @Test
+    void largeLayoutSupportsBedPathsAndPersistence(@TempDir Path tmp) {
+        CareHome ch = new CareHome();
+        ch.loadLayout(FacilityLayout.parse(BIG_LAYOUT));
+        assertTrue(ch.getBeds().size() >= 5000);
+        assertEquals("W8-R170-B2", ch.getBedsByKey().lastKey().toString());
+        assertEquals(4, ch.getBedsInRoom(BedKey.parse("W3-R10-B1")).size());
+        assertEquals(640, ch.getBedsInWard(5).size());
+
+        ch.addOrUpdateStaff("SYSTEM", new Staff("M1", "Manager", Role.MANAGER), "m", "p");
+        ch.addOrUpdateStaff("M1", new Staff("N1", "Nina", Role.NURSE), "n", "p");
+        LocalDate day = LocalDate.of(2030, 1, 7);
+        ch.allocateShift("M1", new Shift("N1", day.atTime(14, 0), day.atTime(22, 0)));
+
+        ch.addResidentToBed("M1", "W7-R100-B1", new Resident("R1", "Ann", Gender.FEMALE, 80));
+        assertThrows(RoomGenderConflictException.class, () ->
+                ch.addResidentToBed("M1", "W7-R100-B2", new Resident("R2", "Bob", Gender.MALE, 81)));
+        ch.addResidentToBed("M1", "W7-R101-B1", new Resident("R2", "Bob", Gender.MALE, 81));
+
+        ch.moveResident("N1", "W7-R100-B1", "W2-R5-B3", day.atTime(15, 0));
+        // the room Ann left is empty again, so a male resident may now use it
+        ch.addResidentToBed("M1", "W7-R100-B2", new Resident("R3", "Cal", Gender.MALE, 70));
+        assertThrows(RoomGenderConflictException.class, () ->
+                ch.moveResident("N1", "W7-R101-B1", "W2-R5-B1", day.atTime(15, 5)));
+
+        JdbcStore store = new JdbcStore("jdbc:sqlite:" + tmp.resolve("layout.db"));
+        store.init();
+        store.saveAll(ch);
+        CareHome loaded = store.loadAll();
+        assertEquals(ch.getBeds().size(), loaded.getBeds().size());
+        assertEquals("Annex", loaded.getWardLabel(8));
+        assertEquals("R1", loaded.getBeds().get("W2-R5-B3").occupant.id);
+        // room index is rebuilt on load
+        assertThrows(RoomGenderConflictException.class, () ->
+                loaded.addResidentToBed("M1", "W2-R5-B4", new Resident("R9", "Dan", Gender.MALE, 60)));
+    }
+
+    @Test
+    void relayoutKeepsOccupantsButRefusesToDropThem() {
+        CareHome ch = new CareHome();
+        ch.seedDefaultLayout();
+        ch.addOrUpdateStaff("SYSTEM", new Staff("M1", "Manager", Role.MANAGER), "m", "p");
+        ch.addResidentToBed("M1", "W2-R6-B3", new Resident("R1", "Ann", Gender.FEMALE, 80));
+
+        assertThrows(ValidationException.class, () -> ch.loadLayout(FacilityLayout.parse("W1: 4x6")));
+
+        ch.loadLayout(FacilityLayout.parse("W1: 4x6\nW2: 4x6"));
+        assertEquals(48, ch.getBeds().size());
+        assertEquals("R1", ch.getBeds().get("W2-R6-B3").occupant.id);
+        assertThrows(RoomGenderConflictException.class, () ->
+                ch.addResidentToBed("M1", "W2-R6-B4", new Resident("R2", "Bob", Gender.MALE, 81)));
+    }
+}
@@ -0,0 +1,126 @@
+package carehome;
+
+import carehome.exception.RoomGenderConflictException;
+import carehome.exception.UnauthorizedException;
+import carehome.metrics.Metrics;
+import carehome.metrics.OperationStats;
+import carehome.model.*;
+import carehome.persistence.JdbcStore;
+import carehome.service.CareHome;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CareHomeMetricsTest {
+
+    @Test
+    void operationsAndStorePhasesAreCountedAndTimed(@TempDir Path tmp) {
+        Metrics m = new Metrics();
+        CareHome ch = new CareHome();
+        ch.setMetrics(m);
+        ch.setEchoLogs(false);
+        ch.loadLayout(FacilityLayout.parse("W1: 2 2"));
+        ch.addOrUpdateStaff("SYSTEM", new Staff("M1", "Manager", Role.MANAGER), "m", "p");
+        ch.addResidentToBed("M1", "W1-R1-B1", new Resident(null, "Ann", Gender.FEMALE, 80));
+        assertThrows(UnauthorizedException.class,
+                () -> ch.addResidentToBed("X9", "W1-R1-B2", new Resident(null, "Bea", Gender.FEMALE, 80)));
+
+        OperationStats admit = m.get("addResidentToBed").orElseThrow();
+        assertEquals(2, admit.count);
+        assertEquals(1, admit.errors);
+        assertTrue(admit.p50Nanos <= admit.p99Nanos && admit.p99Nanos <= admit.maxNanos);
+        assertEquals(1, m.get("loadLayout").orElseThrow().count);
+        assertEquals(4, ch.getEntityCounts().get("beds"));
+        assertEquals(1, ch.getEntityCounts().get("residents"));
+
+        JdbcStore store = new JdbcStore("jdbc:sqlite:" + tmp.resolve("metrics.db"));
+        store.setMetrics(m);
+        store.init();
+        store.saveAll(ch);
+        store.loadAll();
+        for (String op : new String[]{"store.saveAll", "store.save.beds", "store.save.commit", "store.loadAll", "store.load.archives"})
+            assertEquals(1, m.get(op).orElseThrow().count, op);
+    }
+
+    @Test
+    void percentilesStayWithinBucketPrecision() {
+        Metrics m = new Metrics();
+        // 99 calls of ~1ms and one of ~50ms
+        for (int i = 0; i < 99; i++) m.record("op", System.nanoTime() - 1_000_000);
+        m.record("op", System.nanoTime() - 50_000_000);
+        OperationStats s = m.get("op").orElseThrow();
+        assertEquals(100, s.count);
+        assertTrue(s.p50Nanos >= 1_000_000 && s.p50Nanos < 1_000_000 * 17 / 16 + 200_000, "p50 " + s.p50Nanos);
+        assertTrue(s.p99Nanos < 2_000_000, "p99 " + s.p99Nanos);
+        assertTrue(s.maxNanos >= 50_000_000);
+        assertEquals(s.maxNanos, s.p999Nanos);
+
+        m.reset();
+        assertEquals(0, m.get("op").orElseThrow().count);
+    }
+
+    @Test
+    void sharedRegistryIsExposedOverJmx() throws Exception {
+        Metrics.shared().registerMBean();
+        Metrics.shared().registerMBean(); // idempotent
+        Metrics.shared().record("jmxProbe", System.nanoTime());
+        var server = ManagementFactory.getPlatformMBeanServer();
+        CompositeData[] ops = (CompositeData[]) server.getAttribute(new ObjectName(Metrics.OBJECT_NAME), "Operations");
+        assertTrue(Arrays.stream(ops).anyMatch(c -> "jmxProbe".equals(c.get("name")) && (long) c.get("count") >= 1));
+    }
+
+    @Test
+    void flightRecorderSeesMutationsRuleChecksAndStorePhases(@TempDir Path tmp) throws Exception {
+        LocalDate day = LocalDate.of(2030, 1, 7);
+        Path jfr = tmp.resolve("carehome.jfr");
+        try (Recording rec = new Recording()) {
+            for (String e : List.of("carehome.Mutation", "carehome.RuleCheck", "carehome.StorePhase"))
+                rec.enable(e).withThreshold(Duration.ZERO);
+            rec.start();
+
+            CareHome ch = new CareHome();
+            ch.setEchoLogs(false);
+            ch.loadLayout(FacilityLayout.parse("W1: 2"));
+            ch.addOrUpdateStaff("SYSTEM", new Staff("M1", "Manager", Role.MANAGER), "m", "p");
+            ch.addOrUpdateStaff("M1", new Staff("N1", "Nina", Role.NURSE), "n", "p");
+            ch.allocateShift("M1", new Shift("N1", day.atTime(8, 0), day.atTime(16, 0)));
+            ch.addResidentToBed("M1", "W1-R1-B1", new Resident("R1", "Ann", Gender.FEMALE, 80));
+            assertThrows(RoomGenderConflictException.class,
+                    () -> ch.addResidentToBed("M1", "W1-R1-B2", new Resident("R2", "Bob", Gender.MALE, 80)));
+            ch.dischargeResident("N1", "W1-R1-B1", day.atTime(10, 0));
+            JdbcStore store = new JdbcStore("jdbc:sqlite:" + tmp.resolve("jfr.db"));
+            store.init();
+            store.saveAll(ch);
+
+            rec.stop();
+            rec.dump(jfr);
+        }
+
+        List<RecordedEvent> events = RecordingFile.readAllEvents(jfr);
+        assertTrue(events.stream().anyMatch(e -> e.getEventType().getName().equals("carehome.Mutation")
+                && "addResidentToBed".equals(e.getString("operation")) && "W1-R1-B1".equals(e.getString("bed"))
+                && "R1".equals(e.getString("subject")) && e.getString("error") == null));
+        assertTrue(events.stream().anyMatch(e -> e.getEventType().getName().equals("carehome.Mutation")
+                && "R2".equals(e.getString("subject")) && e.getString("error").startsWith("RoomGenderConflictException")));
+        assertTrue(events.stream().anyMatch(e -> e.getEventType().getName().equals("carehome.RuleCheck")
+                && "enforceRoomGender".equals(e.getString("rule")) && "W1-R1".equals(e.getString("subject")) && !e.getBoolean("passed")));
+        assertTrue(events.stream().anyMatch(e -> e.getEventType().getName().equals("carehome.RuleCheck")
+                && "requireRostered".equals(e.getString("rule")) && e.getBoolean("passed")));
+        assertTrue(events.stream().anyMatch(e -> e.getEventType().getName().equals("carehome.StorePhase")
+                && "save.archives".equals(e.getString("phase")) && e.getInt("rows") == 1));
+    }
+}
@@ -0,0 +1,184 @@
+package carehome;
+
+import carehome.exception.DuplicateDoseException;
+import carehome.exception.NotFoundException;
+import carehome.exception.ValidationException;
+import carehome.model.*;
+import carehome.persistence.JdbcStore;
+import carehome.service.CareHome;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CareHomePrescriptionsTest {
+
+    @Test
+    void prescriptionIdsAreUniqueAcrossActiveAndArchivedAndSurviveReload(@TempDir Path tmp) {
+        LocalDate day = LocalDate.of(2030, 1, 7);
+        CareHome ch = new CareHome();
+        ch.loadLayout(FacilityLayout.parse("W1: 2"));
+        ch.addOrUpdateStaff("SYSTEM", new Staff("M1", "Manager", Role.MANAGER), "m", "p");
+        ch.addOrUpdateStaff("M1", new Staff("D1", "Dr Dee", Role.DOCTOR), "d", "p");
+        ch.addOrUpdateStaff("M1", new Staff("N1", "Nina", Role.NURSE), "n", "p");
+        ch.allocateShift("M1", new Shift("D1", day.atTime(8, 0), day.atTime(9, 0)));
+        ch.allocateShift("M1", new Shift("N1", day.atTime(8, 0), day.atTime(16, 0)));
+        LocalDateTime rx = day.atTime(8, 15);
+        ch.addResidentToBed("M1", "W1-R1-B1", new Resident("R1", "Ann", Gender.FEMALE, 80));
+        ch.addResidentToBed("M1", "W1-R1-B2", new Resident("R2", "Bea", Gender.FEMALE, 82));
+
+        assertEquals("P1", ch.nextPrescriptionId());
+        ch.addPrescription("D1", "W1-R1-B1", new Prescription("P1", "D1", "R1", rx,
+                List.of(new MedicationDose("Amox", "500mg", "8h"))), rx);
+        Prescription typed = new Prescription("p7", "D1", "R1", rx, List.of(new MedicationDose("VitC", "1tab", "24h")));
+        ch.addPrescription("D1", "W1-R1-B1", typed, rx);
+        assertEquals("p7", typed.id);
+        assertEquals("P8", ch.nextPrescriptionId());
+        assertTrue(ch.isPrescriptionActive("P7"));
+        assertTrue(ch.isPrescriptionActive(" p7"));
+        assertEquals("P7", ch.getPrescription("p7").orElseThrow().id);
+        assertEquals(0, ch.getPrescriptionVersion("p7"));
+        // ids differing only in case or surrounding spaces are the same id
+        for (String taken : List.of("P1", "p1", " P1 ", "P7"))
+            assertThrows(ValidationException.class, () -> ch.addPrescription("D1", "W1-R1-B2",
+                    new Prescription(taken, "D1", "R2", rx, List.of(new MedicationDose("X", "1", "8h"))), rx));
+        assertTrue(ch.isPrescriptionIdUsed(" p7"));
+        assertTrue(ch.getPrescriptionsForResident("R2").isEmpty());
+
+        // doses are recorded against the stored id, so the window and discharge both see them
+        ch.administerMedication("N1", "W1-R1-B1", new Administration("N1", " p7", "VitC", day.atTime(9, 0), ""), day.atTime(9, 0));
+        assertEquals("P7", ch.getAdministrations().get(0).prescriptionId);
+        assertThrows(DuplicateDoseException.class, () -> ch.administerMedication("N1", "W1-R1-B1",
+                new Administration("N1", "P7", "VitC", day.atTime(10, 0), ""), day.atTime(10, 0)));
+        assertThrows(NotFoundException.class, () -> ch.administerMedication("N1", "W1-R1-B1",
+                new Administration("N1", "P99", "VitC", day.atTime(10, 0), ""), day.atTime(10, 0)));
+        ch.addPrescription("D1", "W1-R1-B2", new Prescription("Bea-1", "D1", "R2", rx,
+                List.of(new MedicationDose("Iron", "1tab", "24h"))), rx);
+        assertThrows(ValidationException.class, () -> ch.administerMedication("N1", "W1-R1-B1",
+                new Administration("N1", "bea-1", "Iron", day.atTime(10, 0), ""), day.atTime(10, 0)));
+        assertEquals(1, ch.getAdministrations().size());
+
+        ch.dischargeResident("D1", "W1-R1-B1", day.atTime(8, 30));
+        assertFalse(ch.isPrescriptionActive("P1"));
+        assertTrue(ch.getAdministrations().isEmpty());
+        assertEquals("R1", ch.getPrescription(" p7 ").orElseThrow().residentId);
+        assertEquals("R1", ch.getPrescription("P1").orElseThrow().residentId);
+        // archived ids are still taken
+        assertThrows(ValidationException.class, () -> ch.addPrescription("D1", "W1-R1-B2",
+                new Prescription("P1", "D1", "R2", rx, List.of(new MedicationDose("X", "1", "8h"))), rx));
+        ch.addPrescription("D1", "W1-R1-B2", new Prescription(ch.nextPrescriptionId(), "D1", "R2", rx,
+                List.of(new MedicationDose("Warfarin", "2mg", "daily"))), rx);
+        assertTrue(ch.isPrescriptionActive("P8"));
+
+        JdbcStore store = new JdbcStore("jdbc:sqlite:" + tmp.resolve("presc.db"));
+        store.init();
+        store.saveAll(ch);
+        CareHome loaded = store.loadAll();
+        assertTrue(loaded.isPrescriptionActive("P8"));
+        assertEquals("Amox", loaded.getPrescription("P1").orElseThrow().meds.get(0).medicine);
+        assertEquals(8, loaded.getPrescriptionSeq());
+        assertEquals("P9", loaded.nextPrescriptionId());
+    }
+
+    @Test
+    void medicineNamesAreDictionaryEncodedWithPrefixCompletion(@TempDir Path tmp) {
+        MedicineCatalog cat = MedicineCatalog.parse("# site extras\nAmoxicillin\nAmiodarone\n  amlodipine  \nZinc   sulfate\n");
+        assertEquals(4, cat.size());
+        assertEquals(List.of("Amiodarone", "amlodipine", "Amoxicillin"), cat.complete("am", 10));
+        assertEquals(List.of("Zinc sulfate"), cat.complete("ZINC S", 10));
+        assertEquals(List.of("Amiodarone"), cat.complete("Am", 1));
+        assertTrue(cat.complete("x", 5).isEmpty());
+
+        LocalDate day = LocalDate.of(2030, 1, 7);
+        CareHome ch = new CareHome();
+        ch.loadLayout(FacilityLayout.parse("W1: 2"));
+        ch.loadMedicineCatalog(cat);
+        ch.addOrUpdateStaff("SYSTEM", new Staff("M1", "Manager", Role.MANAGER), "m", "p");
+        ch.addOrUpdateStaff("M1", new Staff("D1", "Dr Dee", Role.DOCTOR), "d", "p");
+        ch.addOrUpdateStaff("M1", new Staff("N1", "Nina", Role.NURSE), "n", "p");
+        ch.allocateShift("M1", new Shift("D1", day.atTime(8, 0), day.atTime(9, 0)));
+        ch.allocateShift("M1", new Shift("N1", day.atTime(8, 0), day.atTime(16, 0)));
+        ch.addResidentToBed("M1", "W1-R1-B1", new Resident("R1", "Ann", Gender.FEMALE, 80));
+        LocalDateTime rx = day.atTime(8, 15);
+        Prescription written = new Prescription("P1", "D1", "R1", rx, List.of(
+                new MedicationDose("amiodarone", "200mg", "daily"),
+                new MedicationDose("Newdrug", "1tab", "daily")));
+        ch.addPrescription("D1", "W1-R1-B1", written, rx);
+        assertEquals("amiodarone", written.meds.get(0).medicine);
+
+        // typed spellings are swapped for the catalog's instance; names outside it are kept but never suggested
+        MedicationDose md = ch.getPrescriptionsForResident("R1").get(0).meds.get(0);
+        assertSame(ch.getMedicineCatalog().intern("AMIODARONE"), md.medicine);
+        assertEquals("Newdrug", ch.getPrescriptionsForResident("R1").get(0).meds.get(1).medicine);
+        assertEquals("new DRUG", ch.getMedicineCatalog().intern(" new   DRUG "));
+        assertTrue(ch.completeMedicine("new", 5).isEmpty());
+        assertFalse(ch.getMedicineCatalog().contains("Newdrug"));
+        Administration typed = new Administration("N1", "P1", "AMIODARONE", day.atTime(9, 0), "");
+        ch.administerMedication("N1", "W1-R1-B1", typed, day.atTime(9, 0));
+        assertSame(md.medicine, ch.getAdministrations().get(0).medicine);
+        assertEquals("AMIODARONE", typed.medicine);
+
+        JdbcStore store = new JdbcStore("jdbc:sqlite:" + tmp.resolve("meds.db"));
+        store.init();
+        store.saveAll(ch);
+        assertTrue(store.appendAdministrations(List.of(new Administration("N1", "P1", "Brand new", day.atTime(10, 0), ""),
+                new Administration("N1", "P1", "  amiodarone ", day.atTime(11, 0), "")), List.of()));
+        CareHome loaded = store.loadAll();
+
+        List<Administration> given = loaded.getAdministrationsForResident("R1");
+        assertEquals(3, given.size());
+        assertSame(loaded.getPrescriptionsForResident("R1").get(0).meds.get(0).medicine, given.get(0).medicine);
+        assertEquals("Amiodarone", given.get(0).medicine);
+        assertEquals("Brand new", given.get(1).medicine);
+        assertSame(given.get(0).medicine, given.get(2).medicine);
+        assertEquals("Newdrug", loaded.getPrescriptionsForResident("R1").get(0).meds.get(1).medicine);
+    }
+
+    @Test
+    void archiveFullTextSearchIsRankedAndPaged() {
+        LocalDate day = LocalDate.of(2030, 1, 7);
+        CareHome ch = new CareHome();
+        ch.loadLayout(FacilityLayout.parse("W1: 2 2"));
+        ch.addOrUpdateStaff("SYSTEM", new Staff("M1", "Manager", Role.MANAGER), "m", "p");
+        ch.addOrUpdateStaff("M1", new Staff("N1", "Nina", Role.NURSE), "n", "p");
+        ch.addOrUpdateStaff("M1", new Staff("D1", "Dr Dee", Role.DOCTOR), "d", "p");
+        ch.allocateShift("M1", new Shift("N1", day.atTime(8, 0), day.atTime(16, 0)));
+        ch.allocateShift("M1", new Shift("D1", day.atTime(8, 0), day.atTime(9, 0)));
+        LocalDateTime rx = day.atTime(8, 15);
+        String[] names = {"Ann", "Bob", "Cal"};
+        String[] beds = {"W1-R1-B1", "W1-R2-B1", "W1-R2-B2"};
+        for (int i = 0; i < 3; i++) {
+            String rid = "R" + (i + 1);
+            ch.addResidentToBed("M1", beds[i], new Resident(rid, names[i], i == 0 ? Gender.FEMALE : Gender.MALE, 80));
+            ch.addPrescription("D1", beds[i], new Prescription("P" + (i + 1), "D1", rid, rx,
+                    List.of(new MedicationDose(i < 2 ? "Warfarin" : "Senna", "2mg", "PRN"))), rx);
+        }
+        ch.searchArchives("warfarin", 0, 10); // builds the index before any discharge
+        ch.administerMedication("N1", beds[0], new Administration("N1", "P1", "Warfarin", day.atTime(9, 0), "Resident refused, retried"), day.atTime(9, 0));
+        ch.administerMedication("N1", beds[0], new Administration("N1", "P1", "Warfarin", day.atTime(10, 0), "refused again"), day.atTime(10, 0));
+        ch.administerMedication("N1", beds[1], new Administration("N1", "P2", "Warfarin", day.atTime(9, 0), "taken with water"), day.atTime(9, 0));
+        ch.administerMedication("N1", beds[2], new Administration("N1", "P3", "Senna", day.atTime(9, 0), "refused"), day.atTime(9, 0));
+        for (int i = 0; i < 3; i++) ch.dischargeResident("N1", beds[i], day.atTime(11, i));
+
+        ArchiveSearchResult r = ch.searchArchives("med:warfarin note:refus*", 0, 10);
+        assertEquals(List.of("R1"), r.hits.stream().map(h -> h.stay.residentId).toList());
+        assertEquals(List.of("warfarin", "refus"), r.hits.get(0).matchedTerms);
+
+        // Ann mentions "refused" twice, so she outranks Cal
+        ArchiveSearchResult refused = ch.searchArchives("Refused", 0, 10);
+        assertEquals(List.of("R1", "R3"), refused.hits.stream().map(h -> h.stay.residentId).toList());
+        assertTrue(refused.hits.get(0).score > refused.hits.get(1).score);
+
+        ArchiveSearchResult page = ch.searchArchives("doctor:d1", 1, 1);
+        assertEquals(3, page.total);
+        assertEquals(1, page.hits.size());
+        assertTrue(page.hasMore());
+        assertEquals(1, ch.searchArchives("W1-R2-B2", 0, 10).total);
+        assertEquals(0, ch.searchArchives("note:warfarin", 0, 10).total);
+    }
+}
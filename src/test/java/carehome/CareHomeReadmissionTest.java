@@ -0,0 +1,41 @@
+package carehome;
+
+import carehome.model.*;
+import carehome.persistence.JdbcStore;
+import carehome.service.CareHome;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CareHomeReadmissionTest {
+
+    @Test
+    void readmissionFindsPriorStaysInMemoryAndInTheStore(@TempDir Path tmp) {
+        CareHome ch = Fixtures.staffed("W1: 2 2");
+        LocalDateTime when = Fixtures.DAY.atTime(9, 0);
+        ch.addResidentToBed("M1", "W1-R1-B1", new Resident("R1", "Ann", Gender.FEMALE, 80));
+        ch.addResidentToBed("M1", "W1-R2-B1", new Resident("R2", "Bob", Gender.MALE, 81));
+        ch.dischargeResident("N1", "W1-R1-B1", when);
+        ch.dischargeResident("N1", "W1-R2-B1", when);
+        assertTrue(ch.getArchivedStays("R3").isEmpty());
+        assertEquals(List.of("W1-R1-B1"), ch.getArchivedStays(" r1 ").stream().map(s -> s.lastBedId).toList());
+
+        ch.addResidentToBed("M1", "W1-R2-B2", new Resident("R1", "Ann", Gender.FEMALE, 81));
+        assertTrue(ch.getLogs().get(ch.getLogs().size() - 1).action.contains("readmission: 1 prior stay"));
+        ch.dischargeResident("N1", "W1-R2-B2", when.plusMinutes(5));
+        assertEquals(List.of("W1-R1-B1", "W1-R2-B2"), ch.getArchivedStays("R1").stream().map(s -> s.lastBedId).toList());
+
+        JdbcStore store = new JdbcStore("jdbc:sqlite:" + tmp.resolve("readmit.db"));
+        store.init();
+        store.saveAll(ch);
+        List<ArchivedStay> stored = store.loadArchivedStays("r1");
+        assertEquals(List.of("W1-R1-B1", "W1-R2-B2"), stored.stream().map(s -> s.lastBedId).toList());
+        assertEquals(81, stored.get(1).age);
+        assertEquals(1, store.loadAll().getArchivedStays("R2").size());
+    }
+}
@@ -0,0 +1,51 @@
+package carehome;
+
+import carehome.exception.ValidationException;
+import carehome.model.*;
+import carehome.persistence.JdbcStore;
+import carehome.service.CareHome;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CareHomeResidentLookupTest {
+
+    @Test
+    void residentLookupFollowsEveryBedChange(@TempDir Path tmp) {
+        CareHome ch = Fixtures.staffed("W1: 2 2\nW2: 2 2");
+        LocalDateTime when = Fixtures.DAY.atTime(9, 0);
+        ch.addResidentToBed("M1", "W1-R1-B1", new Resident("R5", "Ann", Gender.FEMALE, 80));
+        Map<String, String> placed = ch.admitResidents("M1", List.of(
+                new Resident(null, "Bob", Gender.MALE, 70), new Resident(null, "Cat", Gender.FEMALE, 70)), 1);
+        assertEquals(Set.of("R6", "R7"), placed.keySet());
+        assertEquals(Optional.of(placed.get("R6")), ch.findResidentBed("R6"));
+        assertEquals("Ann", ch.findResident(" r5 ").orElseThrow().name);
+        assertThrows(ValidationException.class,
+                () -> ch.addResidentToBed("M1", "W2-R1-B1", new Resident("r5", "Dup", Gender.FEMALE, 70)));
+
+        ch.moveResident("N1", "W1-R1-B1", "W2-R2-B2", when);
+        assertEquals(Optional.of("W2-R2-B2"), ch.findResidentBed("R5"));
+        ch.transferWard("N1", 2, 1, when);
+        assertEquals(1, ch.findResidentBedKey("R5").orElseThrow().ward());
+
+        String bed = ch.findResidentBed("R5").orElseThrow();
+        ch.dischargeResident("N1", bed, when);
+        assertFalse(ch.isResidentActive("R5"));
+        assertTrue(ch.findResidentBed("R5").isEmpty());
+        assertEquals(2, ch.getActiveResidentCount());
+
+        JdbcStore store = new JdbcStore("jdbc:sqlite:" + tmp.resolve("lookup.db"));
+        store.init();
+        store.saveAll(ch);
+        CareHome loaded = store.loadAll();
+        assertEquals(ch.findResidentBed("R7"), loaded.findResidentBed("R7"));
+        // ids keep counting past archived residents
+        loaded.addResidentToBed("M1", bed, new Resident(null, "Dan", Gender.FEMALE, 70));
+        assertEquals(Optional.of(bed), loaded.findResidentBed("R8"));
+    }
+}
@@ -0,0 +1,174 @@
+package carehome;
+
+import carehome.exception.ResyncRequiredException;
+import carehome.exception.NotAuthenticatedException;
+import carehome.exception.RoomGenderConflictException;
+import carehome.exception.UnauthorizedException;
+import carehome.model.*;
+import carehome.persistence.JdbcStore;
+import carehome.server.CareHomeServer;
+import carehome.server.RemoteCareHome;
+import carehome.service.CareHome;
+import carehome.sim.LoadTest;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.net.InetSocketAddress;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CareHomeServerTest {
+
+    private static final LocalDate DAY = Fixtures.DAY;
+
+    @Test
+    void stationsShareOneModelThroughTheServer(@TempDir Path tmp) throws Exception {
+        JdbcStore store = new JdbcStore("jdbc:sqlite:" + tmp.resolve("server.db"));
+        store.init();
+        CareHome shared = Fixtures.staffed("W1: 2 2\nW2: 1");
+        LocalDateTime rx = DAY.atTime(8, 30);
+        try (CareHomeServer server = new CareHomeServer(shared, store, new InetSocketAddress("127.0.0.1", 0), 0).start()) {
+            RemoteCareHome nurse = RemoteCareHome.connect(server.uri());
+            assertThrows(NotAuthenticatedException.class, nurse::pull);
+            assertThrows(UnauthorizedException.class, () -> nurse.authenticate("N1", "wrong"));
+            assertEquals("Nina", nurse.authenticate("N1", "pass").getName());
+            assertEquals(5, nurse.getBedsByKey().size());
+            RemoteCareHome a = RemoteCareHome.connect(server.uri(), "M1", "pass");
+            RemoteCareHome b = RemoteCareHome.connect(server.uri(), "M1", "pass");
+            RemoteCareHome doctor = RemoteCareHome.connect(server.uri(), "D1", "pass");
+
+            // the server acts as the session's staff member, whoever the caller claims to be
+            assertThrows(UnauthorizedException.class,
+                    () -> nurse.addResidentToBed("M1", "W1-R1-B1", new Resident(null, "Eve", Gender.FEMALE, 80)));
+            assertTrue(server.locked(() -> shared.getBedsByKey().values().stream().allMatch(Bed::isVacant)));
+
+            // generated ids come back to the caller, and both server and replica hold the resident
+            Resident ann = new Resident(null, "Ann", Gender.FEMALE, 80);
+            a.addResidentToBed("M1", "W1-R1-B1", ann);
+            assertEquals("R1", ann.id);
+            assertEquals("Ann", a.getResidentInBed("M1", "W1-R1-B1").name);
+            assertEquals("W1-R1-B1", server.locked(() -> shared.findResidentBed("R1")).orElseThrow());
+
+            // b's replica is stale, but the server still applies the room gender rule to the shared state
+            assertThrows(RoomGenderConflictException.class,
+                    () -> b.addResidentToBed("M1", "W1-R1-B2", new Resident(null, "Bob", Gender.MALE, 80)));
+            assertTrue(b.getBedsByKey().values().stream().allMatch(Bed::isVacant));
+
+            doctor.addPrescription("D1", "W1-R1-B1", new Prescription("P1", "D1", "R1", rx,
+                    List.of(new MedicationDose("Paracetamol", "1g", "PRN"))), rx);
+            nurse.administerMedication("N1", "W1-R1-B1", new Administration("N1", "P1", "Paracetamol", DAY.atTime(9, 0), ""), DAY.atTime(9, 0));
+            nurse.moveResident("N1", "W1-R1-B1", "W2-R1-B1", DAY.atTime(9, 30));
+            ArchivedStay stay = nurse.dischargeResident("N1", "W2-R1-B1", DAY.atTime(10, 0));
+            assertEquals(1, stay.administrations.size());
+            assertEquals("W2-R1-B1", stay.lastBedId);
+
+            RemoteCareHome c = RemoteCareHome.connect(server.uri(), "M1", "pass");
+            assertEquals(1, c.getArchives().size());
+            assertEquals(1, c.getArchivedStays("R1").get(0).prescriptions.size());
+            assertEquals(server.locked(() -> shared.getLogs().size()), c.getLogs().size());
+        }
+        // closing saves what changed
+        assertEquals(1, store.loadAll().getArchives().size());
+    }
+
+    @Test
+    void stationsFollowTheChangeFeed() throws Exception {
+        CareHome shared = Fixtures.staffed("W1: 2 2\nW2: 1");
+        try (CareHomeServer server = new CareHomeServer(shared, null, new InetSocketAddress("127.0.0.1", 0), 0, 4).start()) {
+            RemoteCareHome a = RemoteCareHome.connect(server.uri(), "M1", "pass");
+            RemoteCareHome b = RemoteCareHome.connect(server.uri(), "M1", "pass");
+            RemoteCareHome nurse = RemoteCareHome.connect(server.uri(), "N1", "pass");
+            assertEquals(0, b.getSeq());
+
+            a.addResidentToBed("M1", "W1-R1-B1", new Resident(null, "Ann", Gender.FEMALE, 80));
+            assertEquals(1, a.getSeq());
+            assertEquals(1, b.pull());
+            assertEquals("Ann", b.getResidentInBed("M1", "W1-R1-B1").name);
+            assertEquals(0, b.pull());
+
+            // b is behind when it submits; it applies a's change first, so its replica matches the server
+            a.addResidentToBed("M1", "W2-R1-B1", new Resident(null, "Dan", Gender.MALE, 70));
+            b.addResidentToBed("M1", "W1-R1-B2", new Resident(null, "Cat", Gender.FEMALE, 75));
+            assertEquals(3, b.getSeq());
+            assertEquals("W2-R1-B1", b.findResidentBed("R2").orElseThrow());
+            assertEquals("R3", b.getResidentInBed("M1", "W1-R1-B2").id);
+
+            // subscribed changes are handed to b's own thread (here: the test thread draining a queue)
+            BlockingQueue<Runnable> onB = new LinkedBlockingQueue<>();
+            List<String> heard = new ArrayList<>();
+            b.addChangeListener((seq, command) -> heard.add(seq + " " + command.get("op")));
+            try (RemoteCareHome.Subscription sub = b.subscribe(onB::add)) {
+                nurse.pull();
+                nurse.moveResident("N1", "W1-R1-B1", "W1-R2-B1", DAY.atTime(9, 0));
+                Runnable next = onB.poll(10, TimeUnit.SECONDS);
+                assertNotNull(next, "change event arrives");
+                next.run();
+            }
+            assertEquals(List.of("4 moveResident"), heard);
+            assertEquals("Ann", b.getResidentInBed("M1", "W1-R2-B1").name);
+
+            // the feed keeps the last 4 changes; further behind than that means a fresh snapshot
+            for (int h = 10; h < 15; h++)
+                a.allocateShift("M1", new Shift("D1", DAY.atTime(h, 0), DAY.atTime(h + 1, 0)));
+            assertThrows(ResyncRequiredException.class, b::pull);
+            RemoteCareHome fresh = b.reconnect();
+            assertEquals(9, fresh.getSeq());
+            assertEquals(server.locked(() -> shared.getShifts().size()), fresh.getShifts().size());
+        }
+    }
+
+    @Test
+    void followersDoNotStarveCommands() throws Exception {
+        CareHome shared = Fixtures.staffed("W1: 2 2\nW2: 1");
+        // more than the fixed request pool a Java 17 server falls back to (max(4, 2 x CPUs))
+        int followers = Runtime.getRuntime().availableProcessors() * 2 + 6;
+        HttpClient http = HttpClient.newHttpClient();
+        List<CompletableFuture<HttpResponse<java.io.InputStream>>> open = new ArrayList<>();
+        try (CareHomeServer server = new CareHomeServer(shared, null, new InetSocketAddress("127.0.0.1", 0), 0).start()) {
+            String token = LoadTest.login(server.uri(), "N1", "pass");
+            for (int i = 0; i < followers; i++) {
+                String path = i % 2 == 0 ? "api/events" : "api/changes?since=0&wait=30";
+                open.add(http.sendAsync(HttpRequest.newBuilder(server.uri().resolve(path)).header("Authorization", "Bearer " + token).build(),
+                        HttpResponse.BodyHandlers.ofInputStream()));
+            }
+            for (int i = 0; i < followers; i += 2) assertEquals(200, open.get(i).get(10, TimeUnit.SECONDS).statusCode());
+
+            RemoteCareHome a = RemoteCareHome.connect(server.uri(), "M1", "pass");
+            a.addResidentToBed("M1", "W1-R1-B1", new Resident(null, "Ann", Gender.FEMALE, 80));
+            assertEquals("Ann", server.locked(() -> shared.getResidentInBed("M1", "W1-R1-B1")).name);
+            // the command woke the long polls
+            for (int i = 1; i < followers; i += 2) assertEquals(200, open.get(i).get(10, TimeUnit.SECONDS).statusCode());
+        } finally {
+            for (var f : open) f.cancel(true);
+        }
+    }
+
+    @Test
+    void loadTestReportsThroughput() throws Exception {
+        CareHome ch = LoadTest.facility(40, 5, 1);
+        LoadTest.WriteTarget target = LoadTest.writeTarget(ch);
+        assertNotNull(target);
+        try (CareHomeServer server = new CareHomeServer(ch, null, new InetSocketAddress("127.0.0.1", 0), 0).start()) {
+            String token = LoadTest.login(server.uri(), target.nurseId(), "pass");
+            LoadTest.Result r = LoadTest.run(server.uri(), token, 4, Duration.ofMillis(300), 0.2, target);
+            assertEquals(0, r.errors());
+            assertTrue(r.reads().count > 0 && r.writes().count > 0);
+            assertTrue(r.requestsPerSecond() > 0);
+            assertEquals(r.writes().count, server.locked(() -> ch.getAdministrations().stream()
+                    .filter(x -> "load test".equals(x.notes)).count()));
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package carehome;
+
+import carehome.model.*;
+import carehome.persistence.JdbcStore;
+import carehome.persistence.SnapshotFile;
+import carehome.service.CareHome;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CareHomeSnapshotFileTest {
+
+    private static List<String> logLines(CareHome ch) {
+        return ch.getLogs().stream().map(l -> l.time + " " + l.staffId + " " + l.action).toList();
+    }
+
+    @Test
+    void binarySnapshotRoundTripsTheWholeModel(@TempDir Path tmp) throws IOException {
+        CareHome ch = Fixtures.generated(11, 60, 20);
+        SnapshotFile file = new SnapshotFile(tmp.resolve("home.chs"));
+        long size = file.save(ch);
+        assertEquals(Files.size(file.getPath()), size);
+        assertFalse(Files.exists(tmp.resolve("home.chs.part")));
+
+        CareHome back = file.load();
+        assertEquals(ch.getEntityCounts(), back.getEntityCounts());
+        assertEquals(logLines(ch), logLines(back));
+        assertEquals(ch.getWardLabels(), back.getWardLabels());
+        assertEquals(ch.getRosterVersion(), back.getRosterVersion());
+        assertEquals(ch.getPrescriptionSeq(), back.getPrescriptionSeq());
+        for (Bed b : ch.getBedsByKey().values()) {
+            Bed o = back.getBedsByKey().get(b.key);
+            assertEquals(b.version, o.version, b.id);
+            assertEquals(b.isVacant() ? null : b.occupant.id, o.isVacant() ? null : o.occupant.id, b.id);
+        }
+        for (List<Prescription> ps : ch.getActivePrescriptionsByResident().values())
+            for (Prescription p : ps) assertEquals(ch.getPrescriptionVersion(p.id), back.getPrescriptionVersion(p.id));
+        assertEquals(ch.getArchives().stream().map(s -> s.residentId + s.dischargedAt + s.administrations.size()).toList(),
+                back.getArchives().stream().map(s -> s.residentId + s.dischargedAt + s.administrations.size()).toList());
+        assertNotNull(back.authenticate("M1", "pass"));
+        back.checkCompliance();
+
+        // smaller than the same data in SQLite
+        Path db = tmp.resolve("home.db");
+        JdbcStore store = new JdbcStore("jdbc:sqlite:" + db);
+        store.init();
+        store.saveAll(ch);
+        assertTrue(size < Files.size(db), size + " vs " + Files.size(db));
+    }
+
+    @Test
+    void foreignOrNewerFilesAreRejected(@TempDir Path tmp) throws IOException {
+        Path f = tmp.resolve("x.chs");
+        Files.writeString(f, "not a snapshot at all");
+        IOException e = assertThrows(IOException.class, () -> new SnapshotFile(f).load());
+        assertTrue(e.getMessage().contains("not a care home snapshot"), e.getMessage());
+
+        new SnapshotFile(f).save(Fixtures.generated(11, 60, 20));
+        byte[] bytes = Files.readAllBytes(f);
+        bytes[5] = (byte) (SnapshotFile.FORMAT_VERSION + 1);
+        Files.write(f, bytes);
+        e = assertThrows(IOException.class, () -> new SnapshotFile(f).load());
+        assertTrue(e.getMessage().contains("format version"), e.getMessage());
+
+        bytes[5] = (byte) SnapshotFile.FORMAT_VERSION;
+        Files.write(f, Arrays.copyOf(bytes, bytes.length / 2));
+        assertThrows(IOException.class, () -> new SnapshotFile(f).load());
+    }
+}
@@ -0,0 +1,112 @@
+package carehome;
+
+import carehome.model.*;
+import carehome.persistence.JdbcStore;
+import carehome.service.CareHome;
+import carehome.service.CareHomeSnapshot;
+import carehome.sim.WorkloadGenerator;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CareHomeSnapshotTest {
+
+    private static final LocalDate DAY = Fixtures.DAY;
+    private static final LocalDateTime NINE = DAY.atTime(9, 0);
+
+    // the shared fixture plus an afternoon nurse
+    private static CareHome facility() {
+        CareHome ch = Fixtures.withResident("W1: 2 2");
+        ch.addOrUpdateStaff("M1", new Staff("N2", "Ned", Role.NURSE), "ned", "pass");
+        ch.allocateShift("M1", new Shift("N2", DAY.atTime(14, 0), DAY.atTime(22, 0)));
+        return ch;
+    }
+
+    @Test
+    void snapshotStaysPutWhileTheModelMovesOn(@TempDir Path tmp) {
+        CareHome ch = facility();
+        CareHomeSnapshot snap = ch.snapshot();
+        List<ActionLog> logs = new ArrayList<>(ch.getLogs());
+        Map<String, Integer> counts = ch.getEntityCounts();
+
+        ch.administerMedication("N1", "W1-R1-B1", new Administration("N1", "P1", "Paracetamol", NINE, "1g"), NINE);
+        ch.dischargeResident("N1", "W1-R1-B1", NINE.plusMinutes(5));
+        ch.addResidentToBed("M1", "W1-R2-B1", new Resident(null, "Bob", Gender.MALE, 70));
+        ch.allocateShift("M1", new Shift("D1", DAY.plusDays(1).atTime(8, 0), DAY.plusDays(1).atTime(9, 0)));
+        ch.loadLayout(FacilityLayout.parse("W1: 2 2\nW2: 4"));
+
+        assertEquals(counts, snap.getEntityCounts());
+        assertEquals(logs, snap.getLogs());
+        assertEquals("Ann", snap.getBed(BedKey.parse("W1-R1-B1")).occupant().name);
+        assertTrue(snap.getBed(BedKey.parse("W1-R2-B1")).isVacant());
+        assertEquals(4, snap.getBeds().size());
+        assertEquals(0, snap.getPrescriptionVersion("P1"));
+        assertEquals(List.of("P1"), snap.getActivePrescriptionsByResident().get("R1").stream().map(p -> p.id).toList());
+        assertTrue(snap.getAdministrations().isEmpty());
+        assertTrue(snap.getArchives().isEmpty());
+        assertEquals(3, snap.getRosterVersion());
+        assertEquals(List.of(new CareHomeSnapshot.WardOccupancy(1, ch.getWardLabel(1), 4, 1)), snap.getWardOccupancy());
+        snap.checkCompliance();
+
+        // saving the old snapshot writes the state it was taken at, not the model's current one
+        JdbcStore store = new JdbcStore("jdbc:sqlite:" + tmp.resolve("snap.db"));
+        store.init();
+        store.saveAll(snap);
+        CareHome loaded = store.loadAll();
+        assertEquals("W1-R1-B1", loaded.findResidentBed("R1").orElseThrow());
+        assertFalse(loaded.isResidentActive("R2"));
+        assertEquals(logs.size(), loaded.getLogs().size());
+        assertEquals(snap.getBed(BedKey.parse("W1-R1-B1")).version(), loaded.getBedVersion("W1-R1-B1"));
+        assertEquals(0, loaded.getPrescriptionVersion("P1"));
+        assertTrue(loaded.getArchives().isEmpty());
+    }
+
+    @Test
+    void snapshotOfALongHistoryMatchesTheModel() {
+        WorkloadGenerator.Config cfg = new WorkloadGenerator.Config();
+        cfg.seed = 3;
+        cfg.layout = "W1: 1x4 2x4 4x6";
+        cfg.days = 90;
+        cfg.start = DAY;
+        cfg.meanStayDays = 15;
+        CareHome ch = new WorkloadGenerator(cfg).generate();
+        CareHomeSnapshot snap = ch.snapshot();
+
+        List<ActionLog> logs = new ArrayList<>(ch.getLogs());
+        assertTrue(logs.size() > 1100, "enough entries for a multi-level vector: " + logs.size());
+        for (int i = 0; i < logs.size(); i++) assertSame(logs.get(i), snap.getLogs().get(i));
+        assertEquals(ch.getEntityCounts(), snap.getEntityCounts());
+        assertEquals(new HashMap<>(ch.getStaffById()), new HashMap<>(snap.getStaffById()));
+        assertEquals(new HashMap<>(ch.getActivePrescriptionsByResident()), new HashMap<>(snap.getActivePrescriptionsByResident()));
+        for (Bed b : ch.getBedsByKey().values())
+            assertSame(b.occupant, snap.getBeds().get(b.key).occupant());
+        snap.checkCompliance();
+
+        // discharge everyone; the snapshot still has them
+        int occupied = ch.getActiveResidentCount();
+        LocalDate last = DAY.plusDays(cfg.days - 1);
+        String nurse = rostered(ch, last);
+        for (Bed b : new ArrayList<>(ch.getBedsByKey().values()))
+            if (!b.isVacant()) ch.dischargeResident(nurse, b.id, last.atTime(15, 0));
+        assertEquals(0, ch.getActiveResidentCount());
+        assertEquals(occupied, snap.getEntityCounts().get("residents"));
+        assertEquals(logs, snap.getLogs());
+    }
+
+    // a nurse on shift at 15:00 that day
+    private static String rostered(CareHome ch, LocalDate day) {
+        return ch.getShifts().stream()
+                .filter(s -> ch.getNurseIds().contains(s.getStaffId()) && !day.atTime(15, 0).isBefore(s.getStart())
+                        && day.atTime(15, 0).isBefore(s.getEnd()))
+                .findFirst().orElseThrow().getStaffId();
+    }
+}
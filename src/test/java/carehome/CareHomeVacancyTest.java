@@ -0,0 +1,56 @@
+package carehome;
+
+import carehome.model.*;
+import carehome.service.CareHome;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CareHomeVacancyTest {
+
+    @Test
+    void prefersSameGenderRoomThenEmptyRoomAndSkipsOppositeGender() {
+        CareHome ch = Fixtures.home("W1: 2 2 2");
+        ch.addResidentToBed("M1", "W1-R1-B1", new Resident("R1", "Max", Gender.MALE, 70));
+        ch.addResidentToBed("M1", "W1-R2-B1", new Resident("R2", "Fay", Gender.FEMALE, 71));
+
+        assertEquals(List.of("W1-R2-B2", "W1-R3-B1", "W1-R3-B2"), ch.findVacantBeds(Gender.FEMALE, null, 10));
+        assertEquals("W1-R1-B2", ch.findBestBed(Gender.MALE, null).orElseThrow());
+
+        ch.addResidentToBed("M1", "W1-R2-B2", new Resident("R3", "Gia", Gender.FEMALE, 72));
+        assertEquals("W1-R3-B1", ch.findBestBed(Gender.FEMALE, null).orElseThrow());
+        assertEquals(3, ch.getVacantBedCount());
+    }
+
+    @Test
+    void preferredWardComesFirstAndIndexFollowsMovesAndDischarges() {
+        CareHome ch = Fixtures.staffed("W1: 2\nW2: 2");
+        LocalDate day = Fixtures.DAY;
+
+        assertEquals("W2-R1-B1", ch.findBestBed(Gender.MALE, 2).orElseThrow());
+        assertEquals("W1-R1-B1", ch.findBestBed(Gender.MALE, 9).orElseThrow());
+
+        ch.addResidentToBed("M1", "W1-R1-B1", new Resident("R1", "Ann", Gender.FEMALE, 80));
+        assertEquals("W2-R1-B1", ch.findBestBed(Gender.MALE, 1).orElseThrow());
+
+        ch.moveResident("N1", "W1-R1-B1", "W2-R1-B2", day.atTime(9, 0));
+        assertEquals("W1-R1-B1", ch.findBestBed(Gender.MALE, 1).orElseThrow());
+        assertEquals(List.of("W2-R1-B1"), ch.findVacantBeds(Gender.FEMALE, 2, 1));
+
+        ch.dischargeResident("N1", "W2-R1-B2", day.atTime(10, 0));
+        assertEquals(4, ch.getVacantBedCount());
+        assertEquals("W2-R1-B1", ch.findBestBed(Gender.MALE, 2).orElseThrow());
+    }
+
+    @Test
+    void fullFacilityHasNoCandidates() {
+        CareHome ch = Fixtures.home("W1: 1 1");
+        ch.addResidentToBed("M1", "W1-R1-B1", new Resident("R1", "Ann", Gender.FEMALE, 80));
+        ch.addResidentToBed("M1", "W1-R2-B1", new Resident("R2", "Bob", Gender.MALE, 80));
+        assertTrue(ch.findBestBed(Gender.MALE, null).isEmpty());
+        assertTrue(ch.findVacantBeds(Gender.FEMALE, 1, 5).isEmpty());
+    }
+}
@@ -0,0 +1,94 @@
+package carehome;
+
+import carehome.exception.VersionConflictException;
+import carehome.model.*;
+import carehome.persistence.JdbcStore;
+import carehome.server.CareHomeServer;
+import carehome.server.RemoteCareHome;
+import carehome.service.CareHome;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.net.InetSocketAddress;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CareHomeVersionTest {
+
+    private static final LocalDate DAY = Fixtures.DAY;
+    private static final LocalDateTime NINE = DAY.atTime(9, 0);
+
+    @Test
+    void staleBedVersionIsRejectedWithoutChangingAnything() {
+        CareHome ch = Fixtures.withResident("W1: 2 2");
+        long seen = ch.getBedVersion("W1-R1-B1");
+        assertEquals(0, ch.getBedVersion("W1-R2-B1"));
+
+        // another station moves Ann out and admits Bob into her old bed
+        ch.moveResident("N1", "W1-R1-B1", "W1-R2-B1", NINE, seen, 0);
+        ch.addResidentToBed("M1", "W1-R1-B1", new Resident(null, "Bob", Gender.MALE, 70));
+        assertTrue(ch.getBedVersion("W1-R1-B1") > seen);
+
+        // a discharge based on the old view would have sent Bob home
+        int logs = ch.getLogs().size();
+        assertThrows(VersionConflictException.class, () -> ch.dischargeResident("N1", "W1-R1-B1", NINE, seen));
+        assertThrows(VersionConflictException.class,
+                () -> ch.moveResident("N1", "W1-R2-B1", "W1-R2-B2", NINE, ch.getBedVersion("W1-R2-B1"), 5));
+        assertEquals("Bob", ch.getBeds().get("W1-R1-B1").occupant.name);
+        assertEquals("Ann", ch.getBeds().get("W1-R2-B1").occupant.name);
+        assertEquals(logs, ch.getLogs().size());
+
+        // current versions, or none at all, go through
+        ch.dischargeResident("N1", "W1-R1-B1", NINE, ch.getBedVersion("W1-R1-B1"));
+        ch.moveResident("N1", "W1-R2-B1", "W1-R2-B2", NINE);
+    }
+
+    @Test
+    void doseAndRosterVersions(@TempDir Path tmp) {
+        CareHome ch = Fixtures.withResident("W1: 2 2");
+        long seen = ch.getPrescriptionVersion("P1");
+        ch.administerMedication("N1", "W1-R1-B1", new Administration("N1", "P1", "Paracetamol", NINE, ""), NINE, false, seen);
+        assertEquals(seen + 1, ch.getPrescriptionVersion("P1"));
+        // a second nurse working from the same screen finds the dose already recorded
+        assertThrows(VersionConflictException.class, () -> ch.administerMedication("N1", "W1-R1-B1",
+                new Administration("N1", "P1", "Paracetamol", NINE, ""), NINE, true, seen));
+        assertEquals(1, ch.getAdministrations().size());
+
+        long roster = ch.getRosterVersion();
+        ch.allocateShift("M1", new Shift("D1", DAY.atTime(10, 0), DAY.atTime(11, 0)), roster);
+        assertThrows(VersionConflictException.class,
+                () -> ch.allocateShift("M1", new Shift("D1", DAY.atTime(12, 0), DAY.atTime(13, 0)), roster));
+
+        JdbcStore store = new JdbcStore("jdbc:sqlite:" + tmp.resolve("versions.db"));
+        store.init();
+        store.saveAll(ch);
+        CareHome loaded = store.loadAll();
+        assertEquals(ch.getBedVersion("W1-R1-B1"), loaded.getBedVersion("W1-R1-B1"));
+        assertEquals(ch.getBedVersion("W1-R2-B1"), loaded.getBedVersion("W1-R2-B1"));
+        assertEquals(ch.getPrescriptionVersion("P1"), loaded.getPrescriptionVersion("P1"));
+        assertEquals(ch.getRosterVersion(), loaded.getRosterVersion());
+    }
+
+    @Test
+    void conflictsComeBackFromTheServer() throws Exception {
+        try (CareHomeServer server = new CareHomeServer(Fixtures.withResident("W1: 2 2"), null, new InetSocketAddress("127.0.0.1", 0), 0).start()) {
+            RemoteCareHome a = RemoteCareHome.connect(server.uri(), "N1", "pass");
+            RemoteCareHome b = RemoteCareHome.connect(server.uri(), "N1", "pass");
+            assertEquals(a.getBedVersion("W1-R1-B1"), b.getBedVersion("W1-R1-B1"));
+
+            long bSaw = b.getBedVersion("W1-R1-B1");
+            a.moveResident("N1", "W1-R1-B1", "W1-R2-B1", NINE, a.getBedVersion("W1-R1-B1"), a.getBedVersion("W1-R2-B1"));
+            assertThrows(VersionConflictException.class, () -> b.dischargeResident("N1", "W1-R1-B1", NINE, bSaw));
+
+            // after catching up, b's versions match the server's and the move replays cleanly
+            b.pull();
+            assertEquals(a.getBedVersion("W1-R2-B1"), b.getBedVersion("W1-R2-B1"));
+            b.dischargeResident("N1", "W1-R2-B1", NINE, b.getBedVersion("W1-R2-B1"));
+            assertEquals(1, a.pull());
+            assertTrue(a.getBeds().get("W1-R2-B1").isVacant());
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package carehome;
+
+import carehome.model.*;
+import carehome.persistence.JdbcStore;
+import carehome.service.CareHome;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CareHomeWorklistTest {
+
+    @Test
+    void worklistsFollowPrescriptionsMovesAndDischarge(@TempDir Path tmp) {
+        LocalDate day = Fixtures.DAY;
+        CareHome ch = Fixtures.staffed("W1: 2 2\nW2: 2");
+        ch.addOrUpdateStaff("M1", new Staff("D2", "Dr Eve", Role.DOCTOR), "eve", "pass");
+        ch.allocateShift("M1", new Shift("D2", day.atTime(8, 0), day.atTime(9, 0)));
+        ch.addResidentToBed("M1", "W1-R2-B1", new Resident("R1", "Ann", Gender.FEMALE, 80));
+        ch.addResidentToBed("M1", "W1-R1-B1", new Resident("R2", "Bob", Gender.MALE, 81));
+        LocalDateTime rx = day.atTime(8, 15);
+        List<MedicationDose> meds = List.of(new MedicationDose("Aspirin", "100mg", "daily"));
+        ch.addPrescription("D1", "W1-R2-B1", new Prescription("P1", "D1", "R1", rx, meds), rx);
+        ch.addPrescription("D1", "W1-R1-B1", new Prescription("P2", "D1", "R2", rx, meds), rx);
+        ch.addPrescription("D2", "W1-R2-B1", new Prescription("P3", "D2", "R1", rx, meds), rx);
+
+        assertEquals(List.of("W1-R1-B1", "W1-R2-B1"), ch.getDoctorWorklist("D1").stream().map(w -> w.bedId).toList());
+        assertEquals(List.of("P2", "P1", "P3"), ch.getWardWorklist(1).stream().map(w -> w.prescription.id).toList());
+        assertTrue(ch.getWardWorklist(2).isEmpty());
+
+        ch.moveResident("N1", "W1-R2-B1", "W2-R1-B1", day.atTime(9, 0));
+        assertEquals(List.of("P2"), ch.getWardWorklist(1).stream().map(w -> w.prescription.id).toList());
+        assertEquals(List.of("P1", "P3"), ch.getWardWorklist(2).stream().map(w -> w.prescription.id).toList());
+        assertEquals("W2-R1-B1", ch.getDoctorWorklist("D2").get(0).bedId);
+
+        JdbcStore store = new JdbcStore("jdbc:sqlite:" + tmp.resolve("work.db"));
+        store.init();
+        store.saveAll(ch);
+        CareHome loaded = store.loadAll();
+        assertEquals(2, loaded.getWardWorklist(2).size());
+        assertEquals(2, loaded.getActivePrescriptionsForDoctor("D1").size());
+
+        ch.dischargeResident("N1", "W2-R1-B1", day.atTime(10, 0));
+        assertTrue(ch.getWardWorklist(2).isEmpty());
+        assertTrue(ch.getDoctorWorklist("D2").isEmpty());
+        assertEquals(List.of("P2"), ch.getActivePrescriptionsForDoctor("D1").stream().map(p -> p.id).toList());
+    }
+}
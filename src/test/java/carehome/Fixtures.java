@@ -0,0 +1,56 @@
+package carehome;
+
+import carehome.model.*;
+import carehome.service.CareHome;
+import carehome.sim.WorkloadGenerator;
+
+import java.time.LocalDate;
+import java.util.List;
+
+/** Care homes the tests start from; every password is "pass". */
+final class Fixtures {
+
+    /** The day the hand-built fixtures roster their staff. */
+    static final LocalDate DAY = LocalDate.of(2030, 1, 7);
+
+    private Fixtures() {}
+
+    /** Beds from {@code layout} and manager M1, nothing else. */
+    static CareHome home(String layout) {
+        CareHome ch = new CareHome();
+        ch.setEchoLogs(false);
+        ch.loadLayout(FacilityLayout.parse(layout));
+        ch.addOrUpdateStaff("SYSTEM", new Staff("M1", "Manager", Role.MANAGER), "manager", "pass");
+        return ch;
+    }
+
+    /** As {@link #home}, plus nurse N1 rostered 08-16 and doctor D1 08-09 on {@link #DAY}. */
+    static CareHome staffed(String layout) {
+        CareHome ch = home(layout);
+        ch.addOrUpdateStaff("M1", new Staff("N1", "Nina", Role.NURSE), "nina", "pass");
+        ch.addOrUpdateStaff("M1", new Staff("D1", "Dr Dee", Role.DOCTOR), "dee", "pass");
+        ch.allocateShift("M1", new Shift("N1", DAY.atTime(8, 0), DAY.atTime(16, 0)));
+        ch.allocateShift("M1", new Shift("D1", DAY.atTime(8, 0), DAY.atTime(9, 0)));
+        return ch;
+    }
+
+    /** As {@link #staffed}, plus Ann (R1) in W1-R1-B1 on P1, paracetamol as needed, written at 08:30. */
+    static CareHome withResident(String layout) {
+        CareHome ch = staffed(layout);
+        ch.addResidentToBed("M1", "W1-R1-B1", new Resident(null, "Ann", Gender.FEMALE, 80));
+        ch.addPrescription("D1", "W1-R1-B1", new Prescription("P1", "D1", "R1", DAY.atTime(8, 30),
+                List.of(new MedicationDose("Paracetamol", "1g", "PRN"))), DAY.atTime(8, 30));
+        return ch;
+    }
+
+    /** {@code days} of generated history from {@link #DAY} on one 36-bed ward, for archive and file tests. */
+    static CareHome generated(long seed, int days, int meanStayDays) {
+        WorkloadGenerator.Config cfg = new WorkloadGenerator.Config();
+        cfg.seed = seed;
+        cfg.layout = "W1 East: 1x4 2x4 4x6";
+        cfg.days = days;
+        cfg.start = DAY;
+        cfg.meanStayDays = meanStayDays;
+        return new WorkloadGenerator(cfg).generate();
+    }
+}
@@ -22,4 +22,26 @@ public class ModelBasicsTest {
         b.occupant = new Resident("R9", "Zed", Gender.MALE, 40);
         assertFalse(b.isVacant());
     }
+
+    @Test
+    void bedKeyRoundTripsAndGroupsByRoom() {
+        BedKey k = BedKey.parse("W1-R3-B2");
+        assertEquals(1, k.ward());
+        assertEquals(3, k.room());
+        assertEquals(2, k.bed());
+        assertEquals("W1-R3-B2", k.toString());
+        assertEquals(k, BedKey.fromPacked(k.packed()));
+        assertEquals(k.roomCode(), BedKey.of(1, 3, 4).roomCode());
+        assertNotEquals(k.roomCode(), BedKey.of(1, 4, 2).roomCode());
+        assertNull(BedKey.tryParse("B1"));
+        assertNull(BedKey.tryParse("W1-R3-B2x"));
+    }
+
+    @Test
+    void bedKeysSortNumericallyNotLexically() {
+        assertTrue(BedKey.parse("W1-R2-B1").compareTo(BedKey.parse("W1-R10-B1")) < 0);
+        assertTrue(BedKey.parse("W1-R10-B4").compareTo(BedKey.parse("W2-R1-B1")) < 0);
+        assertTrue(BedKey.of(1, 5, 1).compareTo(BedKey.of(1, 5, 1).roomEnd()) < 0);
+        assertTrue(BedKey.wardEnd(BedKey.MAX_WARD).compareTo(BedKey.of(BedKey.MAX_WARD, 1, 1)) > 0);
+    }
 }
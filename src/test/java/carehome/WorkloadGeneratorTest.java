@@ -0,0 +1,64 @@
+package carehome;
+
+import carehome.model.*;
+import carehome.persistence.JdbcStore;
+import carehome.service.CareHome;
+import carehome.sim.WorkloadGenerator;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class WorkloadGeneratorTest {
+
+    private static WorkloadGenerator.Config config(long seed) {
+        WorkloadGenerator.Config cfg = new WorkloadGenerator.Config();
+        cfg.seed = seed;
+        cfg.layout = "W1: 1x4 2x4 4x6";
+        cfg.days = 60;
+        cfg.start = LocalDate.of(2030, 1, 7);
+        cfg.meanStayDays = 20;
+        cfg.readmissionRate = 0.5;
+        return cfg;
+    }
+
+    private static List<String> fingerprint(CareHome ch) {
+        return ch.getLogs().stream().map(l -> l.time + " " + l.staffId + " " + l.action).toList();
+    }
+
+    @Test
+    void sameSeedGivesSameHistoryThatFollowsTheRules(@TempDir Path tmp) {
+        CareHome a = new WorkloadGenerator(config(7)).generate();
+        CareHome b = new WorkloadGenerator(config(7)).generate();
+        assertEquals(fingerprint(a), fingerprint(b));
+        assertNotEquals(fingerprint(a), fingerprint(new WorkloadGenerator(config(8)).generate()));
+
+        // every day has both nurse slots and a doctor hour; audit times are simulated, not wall clock
+        a.checkCompliance();
+        assertEquals(60 * 3, a.getShifts().size());
+        assertTrue(a.getLogs().stream().allMatch(l -> !l.time.toLocalDate().isBefore(LocalDate.of(2030, 1, 7))
+                && l.time.toLocalDate().isBefore(LocalDate.of(2030, 3, 8))));
+        assertFalse(a.getArchives().isEmpty());
+        assertTrue(a.getArchives().stream().anyMatch(s -> a.getArchivedStays(s.residentId).size() > 1
+                || a.isResidentActive(s.residentId)), "some former residents are readmitted");
+        assertTrue(a.getArchives().stream().anyMatch(s -> !s.administrations.isEmpty()));
+
+        // rooms never mix genders
+        for (Bed bed : a.getBedsByKey().values()) {
+            if (bed.isVacant()) continue;
+            assertTrue(a.getBedsInRoom(bed.key).values().stream()
+                    .allMatch(o -> o.isVacant() || o.occupant.gender == bed.occupant.gender));
+        }
+
+        JdbcStore store = new JdbcStore("jdbc:sqlite:" + tmp.resolve("gen.db"));
+        CareHome saved = new WorkloadGenerator(config(7)).generateInto(store);
+        CareHome loaded = store.loadAll();
+        assertEquals(saved.getArchives().size(), loaded.getArchives().size());
+        assertEquals(saved.getActiveResidentCount(), loaded.getActiveResidentCount());
+        assertEquals(saved.getLogs().size(), loaded.getLogs().size());
+    }
+}